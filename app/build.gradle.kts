@@ -29,6 +29,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.all {
+            // Report-only benchmarks in the unit tests: ./gradlew testDebugUnitTest -Pbenchmarks
+            it.systemProperty("calculator.benchmarks", project.hasProperty("benchmarks"))
+        }
+    }
 }
 
 dependencies {
@@ -45,6 +51,12 @@ dependencies {
     implementation("androidx.room:room-runtime:2.6.0")
     annotationProcessor("androidx.room:room-compiler:2.6.0")
 
+    // Installs the bundled baseline/startup profile on sideloaded installs
+    implementation("androidx.profileinstaller:profileinstaller:1.3.1")
+
+    // Trace sections for startup and hot-path metrics
+    implementation("androidx.tracing:tracing:1.2.0")
+
     // RecyclerView
     implementation("androidx.recyclerview:recyclerview:1.3.2")
 
@@ -0,0 +1,186 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compact expression tree produced by ExpressionParser.
+// Nodes live in parallel arrays and are appended children-first, so every node's
+// operands have smaller indexes than the node itself and a single forward pass
+// evaluates the tree. Each node records the span [start, end) of source it covers.
+final class Ast {
+    // Node kinds
+    static final int NUMBER = 0;
+    static final int CONSTANT = 1;
+    static final int NEGATE = 2;
+    static final int ADD = 3;
+    static final int SUBTRACT = 4;
+    static final int MULTIPLY = 5;
+    static final int DIVIDE = 6;
+    static final int POWER = 7;
+    static final int SQUARE = 8;
+    static final int FACTORIAL = 9;
+    static final int FUNCTION = 10;
+    static final int ERROR = 11;
+    static final int IMAGINARY = 12; // the imaginary unit i, only valid in complex mode
+    static final int VARIABLE = 13;  // Variables slot in data
+    static final int LINE = 14;      // tape line reference Ln, zero-based line index in data
+    // One cell of a list literal: left is the element, right the next cell (NONE at the
+    // end) and data the number of elements from this cell on. {1, 2} is LIST(1, LIST(2)).
+    static final int LIST = 15;
+
+    static final int NONE = -1;
+
+    final String source;
+
+    int size;
+    int[] kinds;
+    int[] left;
+    int[] right;
+    int[] data; // FunctionRegistry id for FUNCTION, Variables slot for VARIABLE, line index for LINE,
+                // element count for LIST
+    double[] values;
+    int[] starts;
+    int[] ends;
+    int root = NONE;
+
+    // Variable name for "name = expression" input, stored once evaluation succeeds
+    String assignment;
+
+    final List<CalculationException> errors = new ArrayList<>(0);
+
+    Ast(String source) {
+        // Almost every node consumes at least one character
+        this(source, source.length() + 1);
+    }
+
+    Ast(String source, int capacity) {
+        this.source = source;
+        capacity = Math.max(4, capacity);
+        kinds = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        data = new int[capacity];
+        values = new double[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    int add(int kind, int leftNode, int rightNode, int start, int end) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int node = size++;
+        kinds[node] = kind;
+        left[node] = leftNode;
+        right[node] = rightNode;
+        data[node] = NONE;
+        starts[node] = start;
+        ends[node] = end;
+        return node;
+    }
+
+    boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    CalculationException firstError() {
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+
+    void error(String message, int start, int end) {
+        errors.add(new CalculationException(message, start, end));
+    }
+
+    // Nested form for tests and debugging, e.g. "(+ 1 (* 2 3))"
+    String toSExpression() {
+        StringBuilder out = new StringBuilder();
+        if (assignment != null) {
+            out.append("(= ").append(assignment).append(' ');
+        }
+        if (root != NONE) {
+            appendNode(out, root);
+        }
+        if (assignment != null) {
+            out.append(')');
+        }
+        return out.toString();
+    }
+
+    // True when the expression reads the given Variables slot
+    boolean references(int slot) {
+        for (int node = 0; node < size; node++) {
+            if (kinds[node] == VARIABLE && data[node] == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendNode(StringBuilder out, int node) {
+        switch (kinds[node]) {
+            case NUMBER:
+                double value = values[node];
+                if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+                    out.append((long) value);
+                } else {
+                    out.append(value);
+                }
+                return;
+            case CONSTANT:
+                out.append(source, starts[node], ends[node]);
+                return;
+            case ERROR:
+                out.append("<error>");
+                return;
+            case IMAGINARY:
+                out.append('i');
+                return;
+            case VARIABLE:
+                out.append(Variables.name(data[node]));
+                return;
+            case LINE:
+                out.append('L').append(data[node] + 1);
+                return;
+            case LIST:
+                out.append('{');
+                for (int cell = node; cell != NONE; cell = right[cell]) {
+                    appendNode(out, left[cell]);
+                    out.append(right[cell] != NONE ? " " : "}");
+                }
+                return;
+            case FUNCTION:
+                out.append('(').append(FunctionRegistry.name(data[node])).append(' ');
+                appendNode(out, left[node]);
+                if (right[node] != NONE) {
+                    out.append(' ');
+                    appendNode(out, right[node]);
+                }
+                out.append(')');
+                return;
+            default:
+                out.append('(').append(OPERATOR_SYMBOLS[kinds[node]]).append(' ');
+                appendNode(out, left[node]);
+                if (right[node] != NONE) {
+                    out.append(' ');
+                    appendNode(out, right[node]);
+                }
+                out.append(')');
+        }
+    }
+
+    private static final String[] OPERATOR_SYMBOLS = {
+            null, null, "neg", "+", "-", "*", "/", "^", "²", "!"
+    };
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        data = Arrays.copyOf(data, capacity);
+        values = Arrays.copyOf(values, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+}
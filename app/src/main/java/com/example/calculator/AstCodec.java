@@ -0,0 +1,146 @@
+package com.example.calculator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Compact binary form of a parsed Ast, stored with each history row so reusing an
+// entry loads the program instead of parsing it again. Nodes are written in order:
+// kind, children as distances back from the node (0 for none), data, the value of
+// literals and the source span, all as varints except the value. Variables are
+// stored by name and resolved again on decode, since slots differ between runs.
+// The header carries ENGINE_VERSION, which changes with the format, the node kinds
+// or the function table; decode returns null for any other version and the caller
+// parses the source instead.
+final class AstCodec {
+    private static final int FORMAT = 1;
+    static final int ENGINE_VERSION = engineVersion();
+
+    private AstCodec() {}
+
+    private static int engineVersion() {
+        int hash = FORMAT * 31 + Ast.LIST;
+        for (int id = 0; id < FunctionRegistry.count(); id++) {
+            hash = hash * 31 + FunctionRegistry.name(id).hashCode() * 3 + FunctionRegistry.arity(id);
+        }
+        return hash;
+    }
+
+    // null for an Ast with errors, which has nothing worth keeping
+    static byte[] encode(Ast ast) {
+        if (ast.hasErrors() || ast.root == Ast.NONE) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ast.size * 6 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(ENGINE_VERSION);
+            writeVarint(out, ast.size);
+            writeVarint(out, ast.root);
+            out.writeBoolean(ast.assignment != null);
+            if (ast.assignment != null) {
+                out.writeUTF(ast.assignment);
+            }
+            for (int node = 0; node < ast.size; node++) {
+                int kind = ast.kinds[node];
+                out.writeByte(kind);
+                writeVarint(out, ast.left[node] == Ast.NONE ? 0 : node - ast.left[node]);
+                writeVarint(out, ast.right[node] == Ast.NONE ? 0 : node - ast.right[node]);
+                if (kind == Ast.VARIABLE) {
+                    out.writeUTF(Variables.name(ast.data[node]));
+                } else if (kind == Ast.FUNCTION || kind == Ast.LINE || kind == Ast.LIST) {
+                    writeVarint(out, ast.data[node]);
+                } else if (kind == Ast.NUMBER || kind == Ast.CONSTANT) {
+                    out.writeDouble(ast.values[node]);
+                }
+                writeVarint(out, ast.starts[node]);
+                writeVarint(out, ast.ends[node] - ast.starts[node]);
+            }
+        } catch (IOException e) {
+            // A ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The Ast of source encoded in bytes, or null when the bytes are from another
+    // engine version, damaged, or name a variable that isn't defined now. Main thread
+    // only, like Variables.
+    static Ast decode(byte[] bytes, String source) {
+        if (bytes == null) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != ENGINE_VERSION) {
+                return null;
+            }
+            int size = readVarint(in);
+            int root = readVarint(in);
+            if (size <= 0 || root >= size) {
+                return null;
+            }
+            Ast ast = new Ast(source, size);
+            if (in.readBoolean()) {
+                ast.assignment = in.readUTF();
+            }
+            for (int node = 0; node < size; node++) {
+                int kind = in.readByte();
+                int left = readVarint(in);
+                int right = readVarint(in);
+                if (kind < 0 || kind > Ast.LIST || left > node || right > node) {
+                    return null;
+                }
+                int data = Ast.NONE;
+                double value = 0;
+                if (kind == Ast.VARIABLE) {
+                    data = Variables.slot(in.readUTF());
+                    if (data == Ast.NONE) {
+                        return null;
+                    }
+                } else if (kind == Ast.FUNCTION || kind == Ast.LINE || kind == Ast.LIST) {
+                    data = readVarint(in);
+                    if (kind == Ast.FUNCTION && data >= FunctionRegistry.count()) {
+                        return null;
+                    }
+                } else if (kind == Ast.NUMBER || kind == Ast.CONSTANT) {
+                    value = in.readDouble();
+                }
+                int start = readVarint(in);
+                int end = start + readVarint(in);
+                if (end > source.length()) {
+                    return null;
+                }
+                ast.add(kind, left == 0 ? Ast.NONE : node - left, right == 0 ? Ast.NONE : node - right, start, end);
+                ast.data[node] = data;
+                ast.values[node] = value;
+            }
+            ast.root = root;
+            return ast;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Prefix trie of past expressions for the autocomplete strip. Expressions are ranked
+// by frecency: log2(uses) + lastUsed / HALF_LIFE_MS, so one use now outweighs two
+// uses a half-life ago, and ranks never need updating as time passes. Each node keeps
+// the TOP best entries of its subtree, so a lookup walks the prefix and reads one
+// list, O(prefix length + k), and recording a use only touches the entry's path.
+// Nodes live in parallel arrays with children as sibling lists. Memory is bounded:
+// at most MAX_ENTRIES expressions of up to MAX_LENGTH chars, the lowest ranked
+// evicted first, and nodes freed by eviction are reused.
+// Not thread-safe: MainActivity builds it in the background, then only touches it
+// on the main thread.
+final class AutocompleteTrie {
+    static final int TOP = 4;
+    static final int MAX_ENTRIES = 1000;
+    static final int MAX_LENGTH = 64;
+    static final long HALF_LIFE_MS = TimeUnit.DAYS.toMillis(14);
+
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+    private static final String[] NO_SUGGESTIONS = new String[0];
+
+    // Entries, by slot
+    private final String[] expressions = new String[MAX_ENTRIES];
+    private final int[] uses = new int[MAX_ENTRIES];
+    private final long[] lastUsed = new long[MAX_ENTRIES];
+    private final double[] ranks = new double[MAX_ENTRIES];
+    private final int[] terminals = new int[MAX_ENTRIES];
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private int entryCount;
+
+    // Nodes; top holds TOP entry slots per node, best first, NONE-padded
+    private char[] labels = new char[64];
+    private int[] parents = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] entries = new int[64];
+    private int[] top = new int[64 * TOP];
+    private int nodeCount;
+    private int liveNodes;
+    // Freed nodes, chained through nextSiblings
+    private int freeNode = NONE;
+
+    AutocompleteTrie() {
+        newNode(NONE, '\0');
+    }
+
+    static double rank(int uses, long lastUsed) {
+        return Math.log(uses) / Math.log(2) + (double) lastUsed / HALF_LIFE_MS;
+    }
+
+    // Records uses of expression, the latest at time; longer expressions are skipped
+    void add(String expression, int count, long time) {
+        if (expression == null || expression.isEmpty() || expression.length() > MAX_LENGTH) {
+            return;
+        }
+        Integer existing = slots.get(expression);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            uses[slot] += count;
+            lastUsed[slot] = Math.max(lastUsed[slot], time);
+        } else {
+            if (entryCount == MAX_ENTRIES) {
+                slot = lowestRanked();
+                evict(slot);
+            } else {
+                slot = entryCount++;
+            }
+            expressions[slot] = expression;
+            uses[slot] = count;
+            lastUsed[slot] = time;
+            terminals[slot] = insertPath(expression);
+            entries[terminals[slot]] = slot;
+            slots.put(expression, slot);
+        }
+        // A use only ever raises the rank, so the entry can just move up each list
+        ranks[slot] = rank(uses[slot], lastUsed[slot]);
+        for (int node = terminals[slot]; node != NONE; node = parents[node]) {
+            promote(node, slot);
+        }
+    }
+
+    void record(String expression, long time) {
+        add(expression, 1, time);
+    }
+
+    // Up to limit of the best ranked expressions starting with prefix, leaving out
+    // prefix itself
+    String[] complete(String prefix, int limit) {
+        int node = ROOT;
+        for (int i = 0; i < prefix.length() && node != NONE; i++) {
+            node = child(node, prefix.charAt(i));
+        }
+        if (node == NONE) {
+            return NO_SUGGESTIONS;
+        }
+        String[] found = new String[Math.min(limit, TOP)];
+        int count = 0;
+        for (int i = node * TOP; i < node * TOP + TOP && top[i] != NONE && count < found.length; i++) {
+            if (top[i] != entries[node]) {
+                found[count++] = expressions[top[i]];
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    int nodeCount() {
+        return liveNodes;
+    }
+
+    // Estimated heap bytes, as HistoryStore counts them
+    long footprintBytes() {
+        long bytes = 3 * HistoryStore.arrayBytes(MAX_ENTRIES, 4) + 2 * HistoryStore.arrayBytes(MAX_ENTRIES, 8)
+                + HistoryStore.arrayBytes(labels.length, 2) + 4 * HistoryStore.arrayBytes(parents.length, 4)
+                + HistoryStore.arrayBytes(top.length, 4);
+        for (int slot = 0; slot < entryCount; slot++) {
+            // The string and its map entry
+            bytes += HistoryStore.stringBytes(expressions[slot]) + 32;
+        }
+        return bytes;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            if (labels[child] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private int insertPath(String expression) {
+        int node = ROOT;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            int next = child(node, c);
+            node = next != NONE ? next : newNode(node, c);
+        }
+        return node;
+    }
+
+    private int newNode(int parent, char label) {
+        int node;
+        if (freeNode != NONE) {
+            node = freeNode;
+            freeNode = nextSiblings[node];
+        } else {
+            node = nodeCount++;
+            if (node == labels.length) {
+                int capacity = labels.length * 2;
+                labels = Arrays.copyOf(labels, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                entries = Arrays.copyOf(entries, capacity);
+                top = Arrays.copyOf(top, capacity * TOP);
+            }
+        }
+        labels[node] = label;
+        parents[node] = parent;
+        firstChildren[node] = NONE;
+        entries[node] = NONE;
+        Arrays.fill(top, node * TOP, node * TOP + TOP, NONE);
+        if (parent != NONE) {
+            nextSiblings[node] = firstChildren[parent];
+            firstChildren[parent] = node;
+        } else {
+            nextSiblings[node] = NONE;
+        }
+        liveNodes++;
+        return node;
+    }
+
+    // Moves slot to its place in node's list, which may push out the last entry
+    private void promote(int node, int slot) {
+        int start = node * TOP;
+        for (int i = start; i < start + TOP && top[i] != NONE; i++) {
+            if (top[i] == slot) {
+                System.arraycopy(top, i + 1, top, i, start + TOP - 1 - i);
+                top[start + TOP - 1] = NONE;
+                break;
+            }
+        }
+        insertSorted(start, slot);
+    }
+
+    private int lowestRanked() {
+        int lowest = 0;
+        for (int slot = 1; slot < entryCount; slot++) {
+            if (ranks[slot] < ranks[lowest]) {
+                lowest = slot;
+            }
+        }
+        return lowest;
+    }
+
+    // Removes the entry in slot, frees nodes left without entries or children, and
+    // refills the lists that held it
+    private void evict(int slot) {
+        slots.remove(expressions[slot]);
+        int node = terminals[slot];
+        entries[node] = NONE;
+        while (node != ROOT && firstChildren[node] == NONE && entries[node] == NONE) {
+            int parent = parents[node];
+            unlink(parent, node);
+            nextSiblings[node] = freeNode;
+            freeNode = node;
+            liveNodes--;
+            node = parent;
+        }
+        for (; node != NONE; node = parents[node]) {
+            refill(node);
+        }
+    }
+
+    private void unlink(int parent, int node) {
+        if (firstChildren[parent] == node) {
+            firstChildren[parent] = nextSiblings[node];
+            return;
+        }
+        int previous = firstChildren[parent];
+        while (nextSiblings[previous] != node) {
+            previous = nextSiblings[previous];
+        }
+        nextSiblings[previous] = nextSiblings[node];
+    }
+
+    // Rebuilds node's list from its own entry and its children's lists
+    private void refill(int node) {
+        int start = node * TOP;
+        Arrays.fill(top, start, start + TOP, NONE);
+        if (entries[node] != NONE) {
+            insertSorted(start, entries[node]);
+        }
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            for (int i = child * TOP; i < child * TOP + TOP && top[i] != NONE; i++) {
+                insertSorted(start, top[i]);
+            }
+        }
+    }
+
+    // Inserts slot, not yet in the list at start, in rank order if it makes the cut
+    private void insertSorted(int start, int slot) {
+        int at = start + TOP - 1;
+        if (top[at] != NONE && ranks[top[at]] >= ranks[slot]) {
+            return;
+        }
+        while (at > start && (top[at - 1] == NONE || ranks[top[at - 1]] < ranks[slot])) {
+            top[at] = top[at - 1];
+            at--;
+        }
+        top[at] = slot;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.calculator;
+
+// Parse or evaluation error, with the character span [start, end) of the offending
+// part of the expression when known (-1 otherwise)
+class CalculationException extends Exception {
+    final int start;
+    final int end;
+
+    CalculationException(String message) {
+        this(message, -1, -1);
+    }
+
+    CalculationException(String message, int start, int end) {
+        super(message);
+        this.start = start;
+        this.end = end;
+    }
+
+    boolean hasSpan() {
+        return start >= 0;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.calculator;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
 import androidx.appcompat.app.AppCompatDelegate;
 
 public class CalculatorApplication extends Application {
@@ -11,5 +12,9 @@ public class CalculatorApplication extends Application {
 
         // Enable automatic day/night theme switching based on system settings
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_FOLLOW_SYSTEM);
+
+        // Hot-path metrics are on by default in debuggable builds only; release builds
+        // can turn them on from the hidden metrics screen (long-press the history button)
+        Metrics.setEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
     }
 }
\ No newline at end of file
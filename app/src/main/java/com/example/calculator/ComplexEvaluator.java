@@ -0,0 +1,133 @@
+package com.example.calculator;
+
+// Evaluates an Ast over the complex numbers. Like ExpressionEvaluator it is one
+// forward pass over the nodes; each value takes two slots of one double[] (real part
+// at 2·node, imaginary at 2·node + 1), so nothing is boxed. Nodes whose operands are
+// all real take the real path, which is ExpressionEvaluator's own arithmetic and
+// FunctionRegistry's kernels, so real inputs give the same results as real mode at
+// nearly the same speed; only values that are or become complex use ComplexMath.
+final class ComplexEvaluator {
+
+    private ComplexEvaluator() {}
+
+    // Writes the real and imaginary parts of the result to out[0] and out[1]
+    static void evaluate(Ast ast, boolean degreeMode, double[] out) throws CalculationException {
+        if (ast.hasErrors()) {
+            throw ast.firstError();
+        }
+        double[] values = new double[2 * ast.size];
+        for (int node = 0; node < ast.size; node++) {
+            apply(ast, node, values, degreeMode);
+        }
+        out[0] = values[2 * ast.root];
+        out[1] = values[2 * ast.root + 1];
+    }
+
+    private static void apply(Ast ast, int node, double[] values, boolean degreeMode) throws CalculationException {
+        int slot = 2 * node;
+        int left = ast.left[node];
+        int right = ast.right[node];
+        double a = left == Ast.NONE ? 0 : values[2 * left];
+        double b = left == Ast.NONE ? 0 : values[2 * left + 1];
+        double c = right == Ast.NONE ? 0 : values[2 * right];
+        double d = right == Ast.NONE ? 0 : values[2 * right + 1];
+        int kind = ast.kinds[node];
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+
+        if (kind == Ast.IMAGINARY) {
+            ComplexMath.set(values, slot, 0, 1);
+            return;
+        }
+        if (b == 0 && d == 0 && isReal(ast, node, kind, a, c)) {
+            ComplexMath.set(values, slot, ExpressionEvaluator.apply(ast, node, a, c, degreeMode), 0);
+            return;
+        }
+
+        switch (kind) {
+            case Ast.NEGATE:
+                ComplexMath.set(values, slot, -a, -b);
+                return;
+            case Ast.ADD:
+                ComplexMath.set(values, slot, a + c, b + d);
+                return;
+            case Ast.SUBTRACT:
+                ComplexMath.set(values, slot, a - c, b - d);
+                return;
+            case Ast.MULTIPLY:
+                ComplexMath.multiply(a, b, c, d, values, slot);
+                return;
+            case Ast.SQUARE:
+                ComplexMath.multiply(a, b, a, b, values, slot);
+                return;
+            case Ast.DIVIDE:
+                if (Math.hypot(c, d) < 1e-15) {
+                    throw new CalculationException("Division by zero", start, end);
+                }
+                ComplexMath.divide(a, b, c, d, values, slot);
+                return;
+            case Ast.POWER:
+                if (a == 0 && b == 0) {
+                    // 0^w is 0 for Re w > 0 and undefined otherwise
+                    if (c <= 0) {
+                        throw new CalculationException("0 to negative power is undefined", start, end);
+                    }
+                    ComplexMath.set(values, slot, 0, 0);
+                    return;
+                }
+                ComplexMath.power(a, b, c, d, values, slot);
+                return;
+            case Ast.FACTORIAL:
+                throw new CalculationException("Factorial only works with non-negative integers", start, end);
+            case Ast.FUNCTION:
+                applyFunction(ast.data[node], a, b, c, d, values, slot, degreeMode, start, end);
+                return;
+            default:
+                throw new CalculationException("Unknown operator", start, end);
+        }
+    }
+
+    // True when the node's value is real for these real operands, so the real path applies
+    private static boolean isReal(Ast ast, int node, int kind, double left, double right) {
+        switch (kind) {
+            case Ast.POWER:
+                return left >= 0 || right == Math.floor(right);
+            case Ast.FUNCTION:
+                int id = ast.data[node];
+                FunctionRegistry.Function function = FunctionRegistry.get(id);
+                // Real domains only exclude arguments whose result is complex. tan's
+                // degree-mode domain marks poles, which FunctionRegistry still reports.
+                if (function.domain != null) {
+                    return function.domain.test(left);
+                }
+                // asin and acos have no registered domain; their real kernels return NaN outside [-1, 1]
+                return !((id == FunctionRegistry.ASIN || id == FunctionRegistry.ACOS) && Math.abs(left) > 1);
+            default:
+                return true;
+        }
+    }
+
+    private static void applyFunction(int id, double a, double b, double c, double d, double[] values, int slot,
+                                      boolean degreeMode, int start, int end) throws CalculationException {
+        Metrics.increment(Metrics.FUNCTION_CALLS);
+        FunctionRegistry.Function function = FunctionRegistry.get(id);
+        ComplexMath.Kernel kernel = ComplexMath.kernel(id);
+        if (kernel == null || d != 0) {
+            throw new CalculationException(function.name + " needs real arguments", start, end);
+        }
+        if (degreeMode && (function.flags & FunctionRegistry.ANGLE_ARGUMENT) != 0) {
+            a = Math.toRadians(a);
+            b = Math.toRadians(b);
+        }
+        kernel.apply(a, b, values, slot);
+        double re = values[slot];
+        double im = values[slot + 1];
+        // Poles and log 0 come back infinite or NaN
+        if (Double.isFinite(a) && Double.isFinite(b) && !(Double.isFinite(re) && Double.isFinite(im))) {
+            throw new CalculationException(function.name + " is undefined at this value", start, end);
+        }
+        if (degreeMode && (function.flags & FunctionRegistry.ANGLE_RESULT) != 0) {
+            ComplexMath.set(values, slot, Math.toDegrees(re), Math.toDegrees(im));
+        }
+    }
+}
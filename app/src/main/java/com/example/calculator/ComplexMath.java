@@ -0,0 +1,231 @@
+package com.example.calculator;
+
+// Complex kernels for ComplexEvaluator. A value is a (re, im) pair of doubles; every
+// kernel takes its operands as parts and writes its result to out[slot] (real) and
+// out[slot + 1] (imaginary), so no Complex objects are ever created. Composite
+// kernels keep intermediate results in the output slot. Principal branches are used
+// throughout, and undefined results (poles, log 0) come back as NaN or infinity.
+final class ComplexMath {
+    private static final double LN_10 = Math.log(10);
+    private static final double LN_2 = Math.log(2);
+
+    // Integer powers up to this are done by repeated squaring, so (1+i)^2 is exactly 2i
+    private static final int MAX_SQUARING_EXPONENT = 1024;
+
+    interface Kernel {
+        void apply(double re, double im, double[] out, int slot);
+    }
+
+    // Indexed by FunctionRegistry id; null for functions that need real arguments
+    private static final Kernel[] KERNELS = new Kernel[FunctionRegistry.count()];
+
+    static {
+        KERNELS[FunctionRegistry.SIN] = ComplexMath::sin;
+        KERNELS[FunctionRegistry.COS] = ComplexMath::cos;
+        KERNELS[FunctionRegistry.TAN] = ComplexMath::tan;
+        KERNELS[FunctionRegistry.ASIN] = ComplexMath::asin;
+        KERNELS[FunctionRegistry.ACOS] = ComplexMath::acos;
+        KERNELS[FunctionRegistry.ATAN] = ComplexMath::atan;
+        KERNELS[FunctionRegistry.LOG] = (re, im, out, slot) -> logBase(re, im, LN_10, out, slot);
+        KERNELS[FunctionRegistry.LN] = ComplexMath::ln;
+        KERNELS[FunctionRegistry.SQRT] = ComplexMath::sqrt;
+        KERNELS[FunctionRegistry.SINH] = ComplexMath::sinh;
+        KERNELS[FunctionRegistry.COSH] = ComplexMath::cosh;
+        KERNELS[FunctionRegistry.TANH] = ComplexMath::tanh;
+        KERNELS[FunctionRegistry.ASINH] = ComplexMath::asinh;
+        KERNELS[FunctionRegistry.ACOSH] = ComplexMath::acosh;
+        KERNELS[FunctionRegistry.ATANH] = ComplexMath::atanh;
+        KERNELS[FunctionRegistry.ABS] = (re, im, out, slot) -> set(out, slot, Math.hypot(re, im), 0);
+        KERNELS[FunctionRegistry.FLOOR] = (re, im, out, slot) -> set(out, slot, Math.floor(re), Math.floor(im));
+        KERNELS[FunctionRegistry.CEIL] = (re, im, out, slot) -> set(out, slot, Math.ceil(re), Math.ceil(im));
+        KERNELS[FunctionRegistry.CBRT] = ComplexMath::cbrt;
+        KERNELS[FunctionRegistry.LOG2] = (re, im, out, slot) -> logBase(re, im, LN_2, out, slot);
+        KERNELS[FunctionRegistry.EXP] = ComplexMath::exp;
+        KERNELS[FunctionRegistry.ARG] = (re, im, out, slot) -> set(out, slot, Math.atan2(im, re), 0);
+        KERNELS[FunctionRegistry.CONJ] = (re, im, out, slot) -> set(out, slot, re, -im);
+    }
+
+    private ComplexMath() {}
+
+    static Kernel kernel(int function) {
+        return KERNELS[function];
+    }
+
+    static void multiply(double a, double b, double c, double d, double[] out, int slot) {
+        set(out, slot, a * c - b * d, a * d + b * c);
+    }
+
+    // Smith's algorithm: scales by the larger part of the divisor so |c|² can't overflow
+    static void divide(double a, double b, double c, double d, double[] out, int slot) {
+        if (Math.abs(c) >= Math.abs(d)) {
+            double ratio = d / c;
+            double denominator = c + d * ratio;
+            set(out, slot, (a + b * ratio) / denominator, (b - a * ratio) / denominator);
+        } else {
+            double ratio = c / d;
+            double denominator = c * ratio + d;
+            set(out, slot, (a * ratio + b) / denominator, (b * ratio - a) / denominator);
+        }
+    }
+
+    // (a + bi)^(c + di). Callers handle a zero base.
+    static void power(double a, double b, double c, double d, double[] out, int slot) {
+        if (d == 0 && c == Math.rint(c) && Math.abs(c) <= MAX_SQUARING_EXPONENT) {
+            integerPower(a, b, (int) Math.abs(c), out, slot);
+            if (c < 0) {
+                divide(1, 0, out[slot], out[slot + 1], out, slot);
+            }
+            return;
+        }
+        // exp(w · ln z)
+        ln(a, b, out, slot);
+        double lnRe = out[slot];
+        double lnIm = out[slot + 1];
+        exp(c * lnRe - d * lnIm, c * lnIm + d * lnRe, out, slot);
+    }
+
+    private static void integerPower(double a, double b, int n, double[] out, int slot) {
+        double re = 1;
+        double im = 0;
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                double t = re * a - im * b;
+                im = re * b + im * a;
+                re = t;
+            }
+            n >>= 1;
+            if (n != 0) {
+                double t = a * a - b * b;
+                b = 2 * a * b;
+                a = t;
+            }
+        }
+        set(out, slot, re, im);
+    }
+
+    static void exp(double re, double im, double[] out, int slot) {
+        double scale = Math.exp(re);
+        // exp of a real stays real, even when scale is infinite
+        set(out, slot, im == 0 ? scale : scale * Math.cos(im), im == 0 ? 0 : scale * Math.sin(im));
+    }
+
+    // ln 0 is -∞ + 0i, which callers report as undefined
+    static void ln(double re, double im, double[] out, int slot) {
+        set(out, slot, Math.log(Math.hypot(re, im)), Math.atan2(im, re));
+    }
+
+    private static void logBase(double re, double im, double lnBase, double[] out, int slot) {
+        ln(re, im, out, slot);
+        out[slot] /= lnBase;
+        out[slot + 1] /= lnBase;
+    }
+
+    // Principal root, computed from |z| so neither part cancels
+    static void sqrt(double re, double im, double[] out, int slot) {
+        if (re == 0 && im == 0) {
+            set(out, slot, 0, im);
+            return;
+        }
+        double t = Math.sqrt((Math.hypot(re, im) + Math.abs(re)) / 2);
+        if (re >= 0) {
+            set(out, slot, t, im / (2 * t));
+        } else {
+            set(out, slot, Math.abs(im) / (2 * t), Math.copySign(t, im));
+        }
+    }
+
+    static void cbrt(double re, double im, double[] out, int slot) {
+        if (im == 0) {
+            // The real cube root, as in real mode, rather than the principal one
+            set(out, slot, Math.cbrt(re), 0);
+            return;
+        }
+        double modulus = Math.cbrt(Math.hypot(re, im));
+        double angle = Math.atan2(im, re) / 3;
+        set(out, slot, modulus * Math.cos(angle), modulus * Math.sin(angle));
+    }
+
+    static void sin(double re, double im, double[] out, int slot) {
+        set(out, slot, Math.sin(re) * Math.cosh(im), Math.cos(re) * Math.sinh(im));
+    }
+
+    static void cos(double re, double im, double[] out, int slot) {
+        set(out, slot, Math.cos(re) * Math.cosh(im), -Math.sin(re) * Math.sinh(im));
+    }
+
+    // (sin 2a + i sinh 2b) / (cos 2a + cosh 2b)
+    static void tan(double re, double im, double[] out, int slot) {
+        double denominator = Math.cos(2 * re) + Math.cosh(2 * im);
+        set(out, slot, Math.sin(2 * re) / denominator, Math.sinh(2 * im) / denominator);
+    }
+
+    static void sinh(double re, double im, double[] out, int slot) {
+        set(out, slot, Math.sinh(re) * Math.cos(im), Math.cosh(re) * Math.sin(im));
+    }
+
+    static void cosh(double re, double im, double[] out, int slot) {
+        set(out, slot, Math.cosh(re) * Math.cos(im), Math.sinh(re) * Math.sin(im));
+    }
+
+    // (sinh 2a + i sin 2b) / (cosh 2a + cos 2b)
+    static void tanh(double re, double im, double[] out, int slot) {
+        double denominator = Math.cosh(2 * re) + Math.cos(2 * im);
+        set(out, slot, Math.sinh(2 * re) / denominator, Math.sin(2 * im) / denominator);
+    }
+
+    // -i · ln(iz + √(1 - z²))
+    static void asin(double re, double im, double[] out, int slot) {
+        // + 0.0 keeps real arguments on the +0 side of the branch cut
+        sqrt(1 - (re * re - im * im), -2 * re * im + 0.0, out, slot);
+        ln(out[slot] - im, out[slot + 1] + re, out, slot);
+        set(out, slot, out[slot + 1], -out[slot]);
+    }
+
+    // π/2 - asin z
+    static void acos(double re, double im, double[] out, int slot) {
+        asin(re, im, out, slot);
+        set(out, slot, Math.PI / 2 - out[slot], -out[slot + 1]);
+    }
+
+    // i/2 · (ln(1 - iz) - ln(1 + iz)); poles at ±i
+    static void atan(double re, double im, double[] out, int slot) {
+        ln(1 + im, -re, out, slot);
+        double re1 = out[slot];
+        double im1 = out[slot + 1];
+        ln(1 - im, re, out, slot);
+        double re2 = out[slot];
+        double im2 = out[slot + 1];
+        set(out, slot, -(im1 - im2) / 2, (re1 - re2) / 2);
+    }
+
+    // ln(z + √(z² + 1))
+    static void asinh(double re, double im, double[] out, int slot) {
+        sqrt(re * re - im * im + 1, 2 * re * im + 0.0, out, slot);
+        ln(re + out[slot], im + out[slot + 1], out, slot);
+    }
+
+    // ln(z + √(z + 1) · √(z - 1))
+    static void acosh(double re, double im, double[] out, int slot) {
+        sqrt(re + 1, im, out, slot);
+        double re1 = out[slot];
+        double im1 = out[slot + 1];
+        sqrt(re - 1, im, out, slot);
+        double re2 = out[slot];
+        double im2 = out[slot + 1];
+        ln(re + re1 * re2 - im1 * im2, im + re1 * im2 + im1 * re2, out, slot);
+    }
+
+    // (ln(1 + z) - ln(1 - z)) / 2; poles at ±1
+    static void atanh(double re, double im, double[] out, int slot) {
+        ln(1 + re, im, out, slot);
+        double re1 = out[slot];
+        double im1 = out[slot + 1];
+        ln(1 - re, -im, out, slot);
+        set(out, slot, (re1 - out[slot]) / 2, (im1 - out[slot + 1]) / 2);
+    }
+
+    static void set(double[] out, int slot, double re, double im) {
+        out[slot] = re;
+        out[slot + 1] = im;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.calculator;
+
+// sin, cos and tan of angles in degrees. Arguments are reduced in degrees, where
+// x % 360 and the quadrant reflections below are exact, so sin(180) is 0, tan(45)
+// is 1 and huge angles keep their precision. In the first quadrant sin(k + f) for a
+// whole degree k is expanded as sin k·cos f + cos k·sin f, with sin k from a table
+// (correctly rounded at multiples of 15° and 18°) and short polynomials for the
+// fraction f < 1°, so no libm call or radian range reduction is needed at all.
+final class DegreeTrig {
+    // sin of each whole degree in [0, 90]; cos k is SIN_TABLE[90 - k]
+    private static final double[] SIN_TABLE = new double[91];
+    // tan of each whole degree in [0, 90)
+    private static final double[] TAN_TABLE = new double[90];
+
+    static {
+        for (int degrees = 0; degrees <= 90; degrees++) {
+            SIN_TABLE[degrees] = Math.sin(Math.toRadians(degrees));
+        }
+        exact(0, 0.0, 0.0);
+        exact(15, 0.25881904510252074, 0.2679491924311227);
+        exact(18, 0.30901699437494745, 0.32491969623290634);
+        exact(30, 0.5, 0.5773502691896257);
+        exact(36, 0.5877852522924731, 0.7265425280053609);
+        exact(45, 0.7071067811865476, 1.0);
+        exact(54, 0.8090169943749475, 1.3763819204711736);
+        exact(60, 0.8660254037844386, 1.7320508075688772);
+        exact(72, 0.9510565162951535, 3.0776835371752536);
+        exact(75, 0.9659258262890683, 3.732050807568877);
+        SIN_TABLE[90] = 1.0;
+        for (int degrees = 0; degrees < 90; degrees++) {
+            if (TAN_TABLE[degrees] == 0 && degrees != 0) {
+                TAN_TABLE[degrees] = SIN_TABLE[degrees] / SIN_TABLE[90 - degrees];
+            }
+        }
+    }
+
+    private DegreeTrig() {}
+
+    // Exact zeros are returned as +0 (0.0 - v negates everything except a zero)
+    static double sin(double degrees) {
+        double r = Math.abs(degrees);
+        if (!(r < Double.POSITIVE_INFINITY)) {
+            return Double.NaN;
+        }
+        // sin(-x) = -sin(x), sin(x + 180) = -sin(x), sin(180 - x) = sin(x)
+        boolean negate = degrees < 0;
+        r = reduce(r, 360);
+        if (r >= 180) {
+            r -= 180;
+            negate = !negate;
+        }
+        if (r > 90) {
+            r = 180 - r;
+        }
+        double value = sinQuadrant(r);
+        return negate ? 0.0 - value : value;
+    }
+
+    static double cos(double degrees) {
+        double r = Math.abs(degrees);
+        if (!(r < Double.POSITIVE_INFINITY)) {
+            return Double.NaN;
+        }
+        // cos(-x) = cos(x), cos(360 - x) = cos(x), cos(x) = sin(90 - x)
+        r = reduce(r, 360);
+        if (r > 180) {
+            r = 360 - r;
+        }
+        // 90 - r is exact from 45° up; below that sin is flat enough near 90° that the
+        // rounding doesn't show
+        return r <= 90 ? sinQuadrant(90 - r) : 0.0 - sinQuadrant(r - 90);
+    }
+
+    // Callers check tanDefined first; returns NaN at the poles
+    static double tan(double degrees) {
+        double r = Math.abs(degrees);
+        if (!(r < Double.POSITIVE_INFINITY) || !tanDefined(degrees)) {
+            return Double.NaN;
+        }
+        // tan(-x) = -tan(x), tan(x + 180) = tan(x), tan(180 - x) = -tan(x)
+        boolean negate = degrees < 0;
+        r = reduce(r, 180);
+        if (r > 90) {
+            r = 180 - r;
+            negate = !negate;
+        }
+        int whole = (int) r;
+        // 90 - r is exact past 45°, where cos is steep; below it cos is flat
+        double value = whole == r ? TAN_TABLE[whole] : sinQuadrant(r) / sinQuadrant(90 - r);
+        return negate ? 0.0 - value : value;
+    }
+
+    // False at odd multiples of 90°, where tan has a pole
+    static boolean tanDefined(double degrees) {
+        return Math.abs(degrees) % 180 != 90;
+    }
+
+    // x % period is exact in floating point; skipped for the common already-reduced case
+    private static double reduce(double degrees, double period) {
+        return degrees < period ? degrees : degrees % period;
+    }
+
+    // sin of r in [0, 90]. Both terms are non-negative, so nothing cancels; for whole
+    // degrees the fraction is 0 and the table value comes back unchanged.
+    private static double sinQuadrant(double r) {
+        int k = (int) r;
+        double x = Math.toRadians(r - k); // r - k is exact; x < 0.0175
+        double x2 = x * x;
+        double sinF = x * (1 - x2 * (1 / 6.0 - x2 * (1 / 120.0 - x2 * (1 / 5040.0))));
+        double cosF = 1 - x2 * (0.5 - x2 * (1 / 24.0 - x2 * (1 / 720.0)));
+        return SIN_TABLE[k] * cosF + SIN_TABLE[90 - k] * sinF;
+    }
+
+    private static void exact(int degrees, double sin, double tan) {
+        SIN_TABLE[degrees] = sin;
+        TAN_TABLE[degrees] = tan;
+    }
+}
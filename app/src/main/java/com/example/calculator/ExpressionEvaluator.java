@@ -0,0 +1,146 @@
+package com.example.calculator;
+
+// Evaluates an Ast. Operands always precede their node, so this is one forward pass
+// over the node arrays with no recursion or operand stack.
+final class ExpressionEvaluator {
+
+    private ExpressionEvaluator() {}
+
+    static double evaluate(Ast ast, boolean degreeMode) throws CalculationException {
+        return evaluate(ast, degreeMode, null);
+    }
+
+    // For tape lines: LINE nodes read lineValues, indexed by line
+    static double evaluate(Ast ast, boolean degreeMode, double[] lineValues) throws CalculationException {
+        if (ast.hasErrors()) {
+            throw ast.firstError();
+        }
+        double[] results = new double[ast.size];
+        for (int node = 0; node < ast.size; node++) {
+            if (ast.kinds[node] == Ast.LINE && lineValues != null) {
+                results[node] = lineValues[ast.data[node]];
+                continue;
+            }
+            int left = ast.left[node];
+            int right = ast.right[node];
+            results[node] = apply(ast, node, left == Ast.NONE ? 0 : results[left],
+                    right == Ast.NONE ? 0 : results[right], degreeMode);
+        }
+        return results[ast.root];
+    }
+
+    // Value of one node given its operand values; shared with ExpressionOptimizer's folding
+    static double apply(Ast ast, int node, double left, double right, boolean degreeMode)
+            throws CalculationException {
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+        switch (ast.kinds[node]) {
+            case Ast.NUMBER:
+            case Ast.CONSTANT:
+                return ast.values[node];
+            case Ast.NEGATE:
+                return -left;
+            case Ast.SQUARE:
+                return left * left;
+            case Ast.FACTORIAL:
+                return applyFactorial(left, start, end);
+            case Ast.FUNCTION:
+                return FunctionRegistry.apply(ast.data[node], left, right, degreeMode, start, end);
+            case Ast.VARIABLE:
+                return Variables.get(ast.data[node]);
+            case Ast.IMAGINARY:
+                throw new CalculationException("i needs complex mode", start, end);
+            case Ast.LINE:
+                throw new CalculationException("Line references only work on the tape", start, end);
+            case Ast.LIST:
+                // ListEvaluator evaluates lists; everything else only takes numbers
+                throw new CalculationException("Lists can't be used here", start, end);
+            default:
+                return applyBinaryOperator(ast.kinds[node], left, right, start, end);
+        }
+    }
+
+    // apply() for loops that only need the value, such as graph sampling and the
+    // numeric solvers: NaN wherever apply() throws, so an undefined point costs no
+    // exception. Keep the checks in step with apply().
+    static double applyOrNaN(Ast ast, int node, double left, double right, boolean degreeMode) {
+        switch (ast.kinds[node]) {
+            case Ast.NUMBER:
+            case Ast.CONSTANT:
+                return ast.values[node];
+            case Ast.NEGATE:
+                return -left;
+            case Ast.SQUARE:
+                return left * left;
+            case Ast.FACTORIAL:
+                return left < 0 || left != Math.floor(left) || left > 170 ? Double.NaN : factorial((int) left);
+            case Ast.FUNCTION:
+                return FunctionRegistry.applyOrNaN(ast.data[node], left, right, degreeMode);
+            case Ast.VARIABLE:
+                return Variables.get(ast.data[node]);
+            case Ast.ADD:
+                return left + right;
+            case Ast.SUBTRACT:
+                return left - right;
+            case Ast.MULTIPLY:
+                return left * right;
+            case Ast.DIVIDE:
+                return Math.abs(right) < 1e-15 ? Double.NaN : left / right;
+            case Ast.POWER:
+                return left == 0 && right < 0 || left < 0 && right != Math.floor(right)
+                        ? Double.NaN : Math.pow(left, right);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    static double applyBinaryOperator(int kind, double left, double right, int start, int end)
+            throws CalculationException {
+        switch (kind) {
+            case Ast.ADD:
+                return left + right;
+            case Ast.SUBTRACT:
+                return left - right;
+            case Ast.MULTIPLY:
+                return left * right;
+            case Ast.DIVIDE:
+                if (Math.abs(right) < 1e-15) {
+                    throw new CalculationException("Division by zero", start, end);
+                }
+                return left / right;
+            case Ast.POWER:
+                // Handle special cases for power operations
+                if (left == 0 && right < 0) {
+                    throw new CalculationException("0 to negative power is undefined", start, end);
+                }
+                if (left < 0 && right != Math.floor(right)) {
+                    throw new CalculationException("Complex result: negative base with non-integer exponent", start, end);
+                }
+                return Math.pow(left, right);
+            default:
+                throw new CalculationException("Unknown operator", start, end);
+        }
+    }
+
+    static double applyFactorial(double operand, int start, int end) throws CalculationException {
+        if (operand < 0 || operand != Math.floor(operand)) {
+            throw new CalculationException("Factorial only works with non-negative integers", start, end);
+        }
+        if (operand > 170) {
+            throw new CalculationException("Factorial argument too large (max 170)", start, end);
+        }
+        return factorial((int) operand);
+    }
+
+    static double factorial(int n) {
+        if (n < 0) return Double.NaN;
+        if (n == 0 || n == 1) return 1;
+        if (n > 170) return Double.POSITIVE_INFINITY; // Prevent overflow
+
+        double result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+}
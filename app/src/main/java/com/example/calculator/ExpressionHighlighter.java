@@ -0,0 +1,72 @@
+package com.example.calculator;
+
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.UnderlineSpan;
+import android.view.View;
+
+import com.google.android.material.color.MaterialColors;
+
+// Colors function names and constants, and marks error spans, using the spans
+// recorded by ExpressionParser.
+final class ExpressionHighlighter {
+    private final int functionColor;
+    private final int constantColor;
+    private final int errorColor;
+
+    ExpressionHighlighter(View view) {
+        functionColor = MaterialColors.getColor(view, androidx.appcompat.R.attr.colorPrimary);
+        constantColor = MaterialColors.getColor(view, com.google.android.material.R.attr.colorTertiary);
+        errorColor = MaterialColors.getColor(view, androidx.appcompat.R.attr.colorError);
+    }
+
+    // Returns the plain source when there is nothing to color
+    CharSequence highlight(Ast ast) {
+        SpannableString text = null;
+        for (int node = 0; node < ast.size; node++) {
+            int kind = ast.kinds[node];
+            if (kind != Ast.FUNCTION && kind != Ast.CONSTANT && kind != Ast.IMAGINARY && kind != Ast.VARIABLE
+                    && kind != Ast.LINE) {
+                continue;
+            }
+            int start = ast.starts[node];
+            int end = kind != Ast.FUNCTION ? ast.ends[node] : start + functionNameLength(ast, node);
+            if (text == null) {
+                text = new SpannableString(ast.source);
+            }
+            text.setSpan(new ForegroundColorSpan(kind == Ast.FUNCTION ? functionColor : constantColor),
+                    start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return text != null ? text : ast.source;
+    }
+
+    // Underlines every parse error, or the failing part of an expression that parsed cleanly
+    CharSequence highlightErrors(Ast ast, CalculationException evaluationError) {
+        CharSequence highlighted = highlight(ast);
+        SpannableString text = highlighted instanceof SpannableString
+                ? (SpannableString) highlighted : new SpannableString(highlighted);
+        if (ast.hasErrors()) {
+            for (CalculationException error : ast.errors) {
+                markError(text, error);
+            }
+        } else if (evaluationError != null) {
+            markError(text, evaluationError);
+        }
+        return text;
+    }
+
+    private void markError(SpannableString text, CalculationException error) {
+        if (!error.hasSpan() || text.length() == 0) {
+            return;
+        }
+        int start = Math.min(error.start, text.length() - 1);
+        int end = Math.max(start + 1, Math.min(error.end, text.length()));
+        text.setSpan(new ForegroundColorSpan(errorColor), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(new UnderlineSpan(), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    private static int functionNameLength(Ast ast, int node) {
+        return ast.source.charAt(ast.starts[node]) == '√' ? 1 : FunctionRegistry.name(ast.data[node]).length();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.calculator;
+
+// Rewrites a parsed Ast into an equivalent, smaller one before evaluation:
+//  - constant subtrees are folded into numbers,
+//  - identical pure subexpressions are hash-consed into one shared node, so
+//    sin(30)+sin(30)×2 computes sin(30) once,
+//  - identities that hold for every IEEE value are applied: x×1, 1×x, x÷1, x^1,
+//    x-0, x+(-0) and -(-x). x+0 is only dropped when x can't be -0, since -0+0 is +0.
+// A subtree whose folding throws is kept as is, so the error is raised by the
+// evaluator with the original span. Trig folding depends on the angle mode, so the
+// result is only valid for the degreeMode it was built with.
+final class ExpressionOptimizer {
+
+    private final Ast ast;
+    private final boolean degreeMode;
+    private final Ast out;
+
+    // Open-addressing table of out's nodes (index + 1, 0 = empty) keyed by their content
+    private final int[] table;
+
+    // For each operation node in out, what it was rewritten to (index + 1, 0 = not yet).
+    // Repeated subexpressions hit this before folding, so each is computed once.
+    private final int[] rewritten;
+
+    private ExpressionOptimizer(Ast ast, boolean degreeMode) {
+        this.ast = ast;
+        this.degreeMode = degreeMode;
+        // Each source node adds at most an operation and a folded number
+        int capacity = ast.size * 2;
+        this.out = new Ast(ast.source, capacity);
+        this.table = new int[Integer.highestOneBit(Math.max(4, capacity) * 2) * 2];
+        this.rewritten = new int[capacity];
+    }
+
+    static Ast optimize(Ast ast, boolean degreeMode) {
+        if (ast.hasErrors() || ast.root == Ast.NONE) {
+            return ast;
+        }
+        return new ExpressionOptimizer(ast, degreeMode).run();
+    }
+
+    private Ast run() {
+        int[] mapping = new int[ast.size];
+        for (int node = 0; node < ast.size; node++) {
+            int kind = ast.kinds[node];
+            if (kind == Ast.NUMBER || kind == Ast.CONSTANT) {
+                mapping[node] = number(ast.values[node], node);
+                continue;
+            }
+            int left = ast.left[node] == Ast.NONE ? Ast.NONE : mapping[ast.left[node]];
+            int right = ast.right[node] == Ast.NONE ? Ast.NONE : mapping[ast.right[node]];
+            int operation = intern(kind, left, right, ast.data[node], 0, node);
+            if (rewritten[operation] == 0) {
+                rewritten[operation] = rewrite(node, operation, left, right) + 1;
+            }
+            mapping[node] = rewritten[operation] - 1;
+        }
+        out.root = mapping[ast.root];
+        return compact(out);
+    }
+
+    private int rewrite(int node, int operation, int left, int right) {
+        int kind = ast.kinds[node];
+        if (isNumber(left) && (right == Ast.NONE || isNumber(right))) {
+            try {
+                double value = ExpressionEvaluator.apply(ast, node, out.values[left],
+                        right == Ast.NONE ? 0 : out.values[right], degreeMode);
+                return number(value, node);
+            } catch (CalculationException e) {
+                // Left for the evaluator to report
+            }
+        }
+
+        switch (kind) {
+            case Ast.MULTIPLY:
+                if (isNumber(right, 1)) return left;
+                if (isNumber(left, 1)) return right;
+                break;
+            case Ast.DIVIDE:
+            case Ast.POWER:
+                if (isNumber(right, 1)) return left;
+                break;
+            case Ast.SUBTRACT:
+                if (isPositiveZero(right)) return left;
+                break;
+            case Ast.ADD:
+                if (isNegativeZero(right) || (isPositiveZero(right) && !canBeNegativeZero(left))) return left;
+                if (isNegativeZero(left) || (isPositiveZero(left) && !canBeNegativeZero(right))) return right;
+                break;
+            case Ast.NEGATE:
+                if (out.kinds[left] == Ast.NEGATE) return out.left[left];
+                break;
+        }
+        return operation;
+    }
+
+    // Copy of the nodes reachable from the root, so folded-away operations and
+    // unused constants are never evaluated
+    private static Ast compact(Ast ast) {
+        boolean[] live = new boolean[ast.size];
+        live[ast.root] = true;
+        int liveCount = 0;
+        for (int node = ast.root; node >= 0; node--) {
+            if (live[node]) {
+                liveCount++;
+                if (ast.left[node] != Ast.NONE) live[ast.left[node]] = true;
+                if (ast.right[node] != Ast.NONE) live[ast.right[node]] = true;
+            }
+        }
+        Ast compacted = new Ast(ast.source, liveCount);
+        int[] mapping = new int[ast.root + 1];
+        for (int node = 0; node <= ast.root; node++) {
+            if (!live[node]) {
+                continue;
+            }
+            int left = ast.left[node] == Ast.NONE ? Ast.NONE : mapping[ast.left[node]];
+            int right = ast.right[node] == Ast.NONE ? Ast.NONE : mapping[ast.right[node]];
+            int copy = compacted.add(ast.kinds[node], left, right, ast.starts[node], ast.ends[node]);
+            compacted.data[copy] = ast.data[node];
+            compacted.values[copy] = ast.values[node];
+            mapping[node] = copy;
+        }
+        compacted.root = mapping[ast.root];
+        return compacted;
+    }
+
+    private int number(double value, int source) {
+        return intern(Ast.NUMBER, Ast.NONE, Ast.NONE, Ast.NONE, value, source);
+    }
+
+    // Returns the existing node with the same content, or appends a new one that
+    // keeps the span of the source node it came from
+    private int intern(int kind, int left, int right, int data, double value, int source) {
+        long bits = Double.doubleToLongBits(value);
+        int hash = kind;
+        hash = hash * 31 + left;
+        hash = hash * 31 + right;
+        hash = hash * 31 + data;
+        hash = hash * 31 + (int) (bits ^ (bits >>> 32));
+        hash ^= hash >>> 16;
+
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                int node = out.add(kind, left, right, ast.starts[source], ast.ends[source]);
+                out.data[node] = data;
+                out.values[node] = value;
+                table[slot] = node + 1;
+                return node;
+            }
+            if (out.kinds[entry] == kind && out.left[entry] == left && out.right[entry] == right
+                    && out.data[entry] == data && Double.doubleToLongBits(out.values[entry]) == bits) {
+                return entry;
+            }
+        }
+    }
+
+    private boolean isNumber(int node) {
+        return node != Ast.NONE && out.kinds[node] == Ast.NUMBER;
+    }
+
+    private boolean isNumber(int node, double value) {
+        return isNumber(node) && out.values[node] == value;
+    }
+
+    private boolean isPositiveZero(int node) {
+        return isNumber(node) && Double.doubleToRawLongBits(out.values[node]) == 0L;
+    }
+
+    private boolean isNegativeZero(int node) {
+        return isNumber(node) && Double.doubleToRawLongBits(out.values[node]) == Long.MIN_VALUE;
+    }
+
+    private boolean canBeNegativeZero(int node) {
+        switch (out.kinds[node]) {
+            case Ast.NUMBER:
+                return isNegativeZero(node);
+            case Ast.SQUARE:
+            case Ast.FACTORIAL:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
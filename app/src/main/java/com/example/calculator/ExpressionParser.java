@@ -0,0 +1,461 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+// Table-driven Pratt parser producing an Ast in one left-to-right pass.
+// Characters are scanned on demand (no token list), each is consumed once, and
+// binding powers come from per-kind tables, so parsing is linear in the input.
+// Errors are collected on the Ast with their spans and parsing continues, so one
+// parse can report every problem and still drive the highlighter.
+final class ExpressionParser {
+    private static final int MAX_DEPTH = 256;
+
+    // Binding powers. An infix operator continues the current operand while its left
+    // power is greater than the caller's minimum; its right power is the minimum for
+    // its right operand (equal for left-associative, one less for right-associative).
+    private static final int BP_NEGATE = 25;
+    private static final int BP_FUNCTION = 35;
+    private static final int[] LEFT_BP = new int[Ast.ERROR + 1];
+    private static final int[] RIGHT_BP = new int[Ast.ERROR + 1];
+
+    // Operator kind for each character that can follow an operand, or NONE
+    private static final int[] OPERATOR_KINDS = new int[256];
+
+    static {
+        Arrays.fill(OPERATOR_KINDS, Ast.NONE);
+        OPERATOR_KINDS['+'] = Ast.ADD;
+        OPERATOR_KINDS['-'] = Ast.SUBTRACT;
+        OPERATOR_KINDS['*'] = Ast.MULTIPLY;
+        OPERATOR_KINDS['×'] = Ast.MULTIPLY;
+        OPERATOR_KINDS['/'] = Ast.DIVIDE;
+        OPERATOR_KINDS['÷'] = Ast.DIVIDE;
+        OPERATOR_KINDS['^'] = Ast.POWER;
+        OPERATOR_KINDS['²'] = Ast.SQUARE;
+        OPERATOR_KINDS['!'] = Ast.FACTORIAL;
+
+        LEFT_BP[Ast.ADD] = 10;
+        RIGHT_BP[Ast.ADD] = 10;
+        LEFT_BP[Ast.SUBTRACT] = 10;
+        RIGHT_BP[Ast.SUBTRACT] = 10;
+        LEFT_BP[Ast.MULTIPLY] = 20;
+        RIGHT_BP[Ast.MULTIPLY] = 20;
+        LEFT_BP[Ast.DIVIDE] = 20;
+        RIGHT_BP[Ast.DIVIDE] = 20;
+        LEFT_BP[Ast.POWER] = 30;
+        RIGHT_BP[Ast.POWER] = 29;
+        LEFT_BP[Ast.SQUARE] = 40;
+        LEFT_BP[Ast.FACTORIAL] = 40;
+    }
+
+    private final String source;
+    private final int length;
+    private final Ast ast;
+    private int pos;
+    private int depth;
+
+    // Outer span of the operand parsed last, including any parentheses around it
+    private int operandStart;
+    private int operandEnd;
+
+    private ExpressionParser(String source) {
+        this.source = source;
+        this.length = source.length();
+        this.ast = new Ast(source);
+    }
+
+    static Ast parse(String source) {
+        return new ExpressionParser(source).parseAll();
+    }
+
+    private Ast parseAll() {
+        skipSpaces();
+        if (pos == length) {
+            ast.error("Empty expression", 0, length);
+            return ast;
+        }
+        parseAssignment();
+        int node = parseOperand(0);
+        // Only an unmatched ')' or '}' or a stray ',' stops a top-level operand early;
+        // report it and carry on
+        while (skipSpaces() < length) {
+            char c = source.charAt(pos);
+            ast.error(c == ')' ? "Mismatched parentheses" : c == '}' ? "Mismatched braces" : "Unexpected ','",
+                    pos, pos + 1);
+            pos++;
+            node = parseInfix(node, 0);
+        }
+        ast.root = node;
+        return ast;
+    }
+
+    // Consumes a leading "name =" and records it on the Ast
+    private void parseAssignment() {
+        int end = nameEnd(pos);
+        int equals = end;
+        while (equals < length && source.charAt(equals) == ' ') {
+            equals++;
+        }
+        if (end == pos || equals == length || source.charAt(equals) != '=') {
+            return;
+        }
+        String name = source.substring(pos, end);
+        if (!Variables.isAssignable(name)) {
+            ast.error("Can't assign to " + name, pos, end);
+        }
+        ast.assignment = name;
+        pos = equals + 1;
+    }
+
+    // Every nested operand comes through here, the right operands of infix operators
+    // (a chain of ^) as well as groups, arguments and prefix operators, so the depth
+    // cap bounds all of the parser's recursion
+    private int parseOperand(int minBp) {
+        if (++depth > MAX_DEPTH) {
+            ast.error("Expression is nested too deeply", pos, length);
+            pos = length;
+            depth--;
+            return errorNode(length, length);
+        }
+        try {
+            return parseInfix(parsePrefix(), minBp);
+        } finally {
+            depth--;
+        }
+    }
+
+    private int parsePrefix() {
+        while (true) {
+            if (skipSpaces() == length) {
+                return missingOperand();
+            }
+            int start = pos;
+            char c = source.charAt(pos);
+
+            if (isDigit(c) || c == '.') {
+                return parseNumber();
+            }
+            if (c == '(') {
+                return parseGroup();
+            }
+            if (c == '{') {
+                return parseList();
+            }
+            if (c == '-' || c == '+') {
+                pos++;
+                int operand = parseOperand(BP_NEGATE);
+                operandStart = start;
+                return c == '+' ? operand : ast.add(Ast.NEGATE, operand, Ast.NONE, start, operandEnd);
+            }
+
+            if (isImaginaryUnit(pos)) {
+                pos++;
+                return setOperandSpan(ast.add(Ast.IMAGINARY, Ast.NONE, Ast.NONE, start, pos), start, pos);
+            }
+
+            int constantLength = matchConstant(pos);
+            if (constantLength > 0) {
+                pos += constantLength;
+                int node = ast.add(Ast.CONSTANT, Ast.NONE, Ast.NONE, start, pos);
+                ast.values[node] = c == 'e' ? Math.E : Math.PI;
+                return setOperandSpan(node, start, pos);
+            }
+
+            int function = c == '√' ? FunctionRegistry.SQRT : FunctionRegistry.match(source, pos);
+            if (function != Ast.NONE) {
+                pos += c == '√' ? 1 : FunctionRegistry.name(function).length();
+                return parseFunctionArguments(function, start);
+            }
+
+            int nameEnd = nameEnd(pos);
+            if (nameEnd > pos) {
+                return parseVariable(nameEnd);
+            }
+
+            if (isCloser(c) || operatorKind(c) != Ast.NONE) {
+                return missingOperand();
+            }
+            ast.error("Unexpected '" + c + "'", pos, pos + 1);
+            pos++;
+        }
+    }
+
+    private int parseInfix(int left, int minBp) {
+        int start = operandStart;
+        while (skipSpaces() < length) {
+            char c = source.charAt(pos);
+            int kind = operatorKind(c);
+            boolean implicit = false;
+            if (kind == Ast.NONE) {
+                if (isCloser(c)) {
+                    break;
+                }
+                if (!startsOperand(pos)) {
+                    ast.error("Unexpected '" + c + "'", pos, pos + 1);
+                    pos++;
+                    continue;
+                }
+                // Juxtaposed operands: parsed as a product so the rest of the input is
+                // still checked, but reported because the calculator requires an operator
+                kind = Ast.MULTIPLY;
+                implicit = true;
+            }
+            if (LEFT_BP[kind] <= minBp) {
+                break;
+            }
+            if (implicit) {
+                ast.error("Missing operator", pos, pos + 1);
+            } else {
+                pos++;
+            }
+            if (kind == Ast.SQUARE || kind == Ast.FACTORIAL) {
+                left = ast.add(kind, left, Ast.NONE, start, pos);
+                operandEnd = pos;
+            } else {
+                int right = parseOperand(RIGHT_BP[kind]);
+                left = ast.add(kind, left, right, start, operandEnd);
+            }
+        }
+        operandStart = start;
+        return left;
+    }
+
+    private int parseNumber() {
+        int start = pos;
+        boolean decimal = false;
+        boolean valid = true;
+        while (pos < length) {
+            char c = source.charAt(pos);
+            if (isDigit(c)) {
+                pos++;
+            } else if (c == '.') {
+                valid &= !decimal;
+                decimal = true;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        // Scientific notation as produced by formatResult, e.g. 1.5E-7
+        if (pos + 1 < length && source.charAt(pos) == 'E') {
+            int exponent = pos + 1;
+            if (source.charAt(exponent) == '-' || source.charAt(exponent) == '+') {
+                exponent++;
+            }
+            if (exponent < length && isDigit(source.charAt(exponent))) {
+                pos = exponent;
+                while (pos < length && isDigit(source.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+
+        int node = ast.add(Ast.NUMBER, Ast.NONE, Ast.NONE, start, pos);
+        if (valid) {
+            try {
+                ast.values[node] = Double.parseDouble(source.substring(start, pos));
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            ast.error("Invalid number", start, pos);
+        }
+        // Imaginary literal such as 2i or 1.5E-7i, as written in complex results
+        if (pos < length && isImaginaryUnit(pos)) {
+            int unit = ast.add(Ast.IMAGINARY, Ast.NONE, Ast.NONE, pos, pos + 1);
+            pos++;
+            node = ast.add(Ast.MULTIPLY, node, unit, start, pos);
+        }
+        return setOperandSpan(node, start, pos);
+    }
+
+    // Parses "( expression )" starting at the '('; the result spans the parentheses
+    private int parseGroup() {
+        int open = pos++;
+        int inner = parseOperand(0);
+        if (skipSpaces() < length && source.charAt(pos) == ')') {
+            pos++;
+            return setOperandSpan(inner, open, pos);
+        }
+        ast.error("Mismatched parentheses", open, open + 1);
+        return setOperandSpan(inner, open, operandEnd);
+    }
+
+    // Parses "{a, b, …}" starting at the '{' into a chain of LIST cells. The elements
+    // are added first and the cells after them, last to first, so each cell follows
+    // both its element and the rest of the list.
+    private int parseList() {
+        int open = pos++;
+        if (skipSpaces() < length && source.charAt(pos) == '}') {
+            ast.error("Empty list", open, ++pos);
+            return errorNode(open, pos);
+        }
+        int[] elements = new int[4];
+        int count = 0;
+        do {
+            if (count > 0) {
+                pos++;
+            }
+            if (count == elements.length) {
+                elements = Arrays.copyOf(elements, count * 2);
+            }
+            elements[count++] = parseOperand(0);
+        } while (skipSpaces() < length && source.charAt(pos) == ',');
+        int end = operandEnd;
+        if (pos < length && source.charAt(pos) == '}') {
+            end = ++pos;
+        } else {
+            ast.error("Mismatched braces", open, open + 1);
+        }
+        int next = Ast.NONE;
+        for (int i = count - 1; i >= 0; i--) {
+            next = ast.add(Ast.LIST, elements[i], next, open, end);
+            ast.data[next] = count - i;
+        }
+        return setOperandSpan(next, open, end);
+    }
+
+    // sin(x) applies to the parenthesized argument, so sin(x)² is (sin x)²; without
+    // parentheses a unary function takes the next operand with its postfix operators,
+    // so √16² is √(16²) and sin30+1 is (sin 30)+1. Binary functions need "(a, b)".
+    private int parseFunctionArguments(int function, int start) {
+        String name = FunctionRegistry.name(function);
+        int arity = FunctionRegistry.arity(function);
+        int nameEnd = pos;
+        int first;
+        int second = Ast.NONE;
+
+        if (skipSpaces() < length && source.charAt(pos) == '(') {
+            int open = pos++;
+            first = parseOperand(0);
+            int count = 1;
+            while (skipSpaces() < length && source.charAt(pos) == ',') {
+                int comma = pos++;
+                int argument = parseOperand(0);
+                if (++count == 2) {
+                    second = argument;
+                }
+                if (count > arity) {
+                    ast.error("Too many arguments for " + name, comma, operandEnd);
+                }
+            }
+            int end = operandEnd;
+            if (pos < length && source.charAt(pos) == ')') {
+                end = ++pos;
+            } else {
+                ast.error("Mismatched parentheses", open, open + 1);
+            }
+            if (count < arity) {
+                ast.error(name + " needs " + arity + " arguments", start, end);
+                second = errorNode(end, end);
+            }
+            operandEnd = end;
+        } else if (arity == 1) {
+            first = parseOperand(BP_FUNCTION);
+        } else {
+            ast.error("Missing '(' after " + name, start, nameEnd);
+            first = errorNode(nameEnd, nameEnd);
+            second = first;
+        }
+
+        int node = ast.add(Ast.FUNCTION, first, arity == 2 ? second : Ast.NONE, start, operandEnd);
+        ast.data[node] = function;
+        return setOperandSpan(node, start, operandEnd);
+    }
+
+    // Resolves the name to its Variables slot (or tape line) now, so evaluation is an array read
+    private int parseVariable(int end) {
+        int start = pos;
+        String name = source.substring(start, end);
+        pos = end;
+        int line = Tape.lineIndex(name);
+        if (line != Ast.NONE) {
+            int node = ast.add(Ast.LINE, Ast.NONE, Ast.NONE, start, end);
+            ast.data[node] = line;
+            return setOperandSpan(node, start, end);
+        }
+        int slot = Variables.slot(name);
+        if (slot == Ast.NONE) {
+            ast.error("Unknown variable " + name, start, end);
+            return errorNode(start, end);
+        }
+        int node = ast.add(Ast.VARIABLE, Ast.NONE, Ast.NONE, start, end);
+        ast.data[node] = slot;
+        return setOperandSpan(node, start, end);
+    }
+
+    private int missingOperand() {
+        // Point at the character that needed an operand, or the last one at end of input
+        int start = pos < length ? pos : Math.max(0, length - 1);
+        ast.error("Missing operand", start, Math.min(length, start + 1));
+        return errorNode(pos, pos);
+    }
+
+    private int errorNode(int start, int end) {
+        return setOperandSpan(ast.add(Ast.ERROR, Ast.NONE, Ast.NONE, start, end), start, end);
+    }
+
+    private int setOperandSpan(int node, int start, int end) {
+        operandStart = start;
+        operandEnd = end;
+        return node;
+    }
+
+    private int skipSpaces() {
+        while (pos < length && source.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private boolean startsOperand(int index) {
+        char c = source.charAt(index);
+        // Every function, variable and the other constants start with an ASCII letter
+        return isDigit(c) || c == '.' || c == '(' || c == '{' || c == '√' || c == 'π' || Variables.isNameStart(c);
+    }
+
+    // Characters that end an operand inside a group, argument list or list
+    private static boolean isCloser(char c) {
+        return c == ')' || c == ',' || c == '}';
+    }
+
+    // End of the variable name starting at index, or index if there is none
+    private int nameEnd(int index) {
+        if (index == length || !Variables.isNameStart(source.charAt(index))) {
+            return index;
+        }
+        int end = index + 1;
+        while (end < length && Variables.isNamePart(source.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    // A standalone i (not the start of a longer name)
+    private boolean isImaginaryUnit(int index) {
+        return source.charAt(index) == 'i' && (index + 1 == length || !Character.isLetter(source.charAt(index + 1)));
+    }
+
+    // Length of the constant name at index (π, pi or a standalone e), or 0
+    private int matchConstant(int index) {
+        char c = source.charAt(index);
+        if (c == 'π') {
+            return 1;
+        }
+        if (source.startsWith("pi", index)) {
+            return 2;
+        }
+        if (c == 'e' && (index + 1 == length || !Character.isLetter(source.charAt(index + 1)))) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int operatorKind(char c) {
+        return c < OPERATOR_KINDS.length ? OPERATOR_KINDS[c] : Ast.NONE;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
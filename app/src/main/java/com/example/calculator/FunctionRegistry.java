@@ -0,0 +1,265 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+// Every function the parser and evaluator know about. Names are resolved to an int id
+// once at parse time; evaluation is an array lookup plus a primitive kernel call.
+// Adding a function is one register() line here.
+final class FunctionRegistry {
+    // Function flags
+    static final int ANGLE_ARGUMENT = 1; // argument is in the current angle unit
+    static final int ANGLE_RESULT = 2;   // result is an angle in the current angle unit
+    static final int LIST_REDUCTION = 4; // reduces a list argument to a number (ListEvaluator)
+    static final int LIST_RESULT = 8;    // returns a list or matrix, so only ListEvaluator can apply it
+    static final int MATRIX_ARGUMENT = 16; // takes a matrix as a whole, not element by element
+
+    static final class Function {
+        final int id;
+        final String name;
+        final int arity;
+        final int flags;
+        final DoubleUnaryOperator unary;
+        final DoubleBinaryOperator binary;
+        // Arguments outside the domain raise domainError instead of calling the kernel
+        final DoublePredicate domain;
+        final String domainError;
+
+        // Optional degree-mode kernel and domain for ANGLE_ARGUMENT functions, used
+        // instead of converting the argument to radians
+        DoubleUnaryOperator degreeUnary;
+        DoublePredicate degreeDomain;
+        String degreeDomainError;
+
+        Function(int id, String name, int arity, int flags, DoubleUnaryOperator unary,
+                 DoubleBinaryOperator binary, DoublePredicate domain, String domainError) {
+            this.id = id;
+            this.name = name;
+            this.arity = arity;
+            this.flags = flags;
+            this.unary = unary;
+            this.binary = binary;
+            this.domain = domain;
+            this.domainError = domainError;
+        }
+    }
+
+    private static final List<Function> registering = new ArrayList<>();
+
+    static final int SIN = angle("sin", Math::sin, DegreeTrig::sin, null, null);
+    static final int COS = angle("cos", Math::cos, DegreeTrig::cos, null, null);
+    static final int TAN = angle("tan", Math::tan, DegreeTrig::tan,
+            DegreeTrig::tanDefined, "Tangent undefined at odd multiples of 90°");
+    static final int ASIN = unary("asin", ANGLE_RESULT, Math::asin);
+    static final int ACOS = unary("acos", ANGLE_RESULT, Math::acos);
+    static final int ATAN = unary("atan", ANGLE_RESULT, Math::atan);
+    static final int LOG = unary("log", 0, Math::log10, x -> x > 0, "Log of non-positive number");
+    static final int LN = unary("ln", 0, Math::log, x -> x > 0, "Ln of non-positive number");
+    static final int SQRT = unary("sqrt", 0, Math::sqrt, x -> x >= 0, "Square root of negative number");
+    static final int SINH = unary("sinh", 0, Math::sinh);
+    static final int COSH = unary("cosh", 0, Math::cosh);
+    static final int TANH = unary("tanh", 0, Math::tanh);
+    static final int ASINH = unary("asinh", 0, FunctionRegistry::asinh);
+    static final int ACOSH = unary("acosh", 0, x -> Math.log(x + Math.sqrt(x * x - 1)),
+            x -> x >= 1, "Acosh of number below 1");
+    static final int ATANH = unary("atanh", 0, x -> 0.5 * Math.log((1 + x) / (1 - x)),
+            x -> x > -1 && x < 1, "Atanh outside (-1, 1)");
+    static final int ABS = unary("abs", 0, Math::abs);
+    static final int FLOOR = unary("floor", 0, Math::floor);
+    static final int CEIL = unary("ceil", 0, Math::ceil);
+    static final int CBRT = unary("cbrt", 0, Math::cbrt);
+    static final int LOG2 = unary("log2", 0, x -> Math.log(x) / Math.log(2), x -> x > 0, "Log2 of non-positive number");
+    static final int EXP = unary("exp", 0, Math::exp);
+    // Argument and conjugate of a real; ComplexMath has the complex versions
+    static final int ARG = unary("arg", ANGLE_RESULT, x -> x < 0 ? Math.PI : 0);
+    static final int CONJ = unary("conj", 0, x -> x);
+    static final int ATAN2 = binary("atan2", ANGLE_RESULT, Math::atan2);
+    static final int HYPOT = binary("hypot", 0, Math::hypot);
+    // Reductions over a list; the kernels give their value for a single number.
+    // ListEvaluator has the list versions.
+    static final int SUM = unary("sum", LIST_REDUCTION, x -> x);
+    static final int MEAN = unary("mean", LIST_REDUCTION, x -> x);
+    static final int MEDIAN = unary("median", LIST_REDUCTION, x -> x);
+    static final int MIN = unary("min", LIST_REDUCTION, x -> x);
+    static final int MAX = unary("max", LIST_REDUCTION, x -> x);
+    static final int COUNT = unary("count", LIST_REDUCTION, x -> 1);
+    // seq(a, b) is the list a, a ± 1, … up to b. Outside ListEvaluator it fails its
+    // domain check, which is the only place a scalar evaluator looks at it.
+    static final int SEQ = register(new Function(registering.size(), "seq", 2, LIST_RESULT, null,
+            (a, b) -> Double.NaN, x -> false, "Lists can't be used here"));
+    // Matrix functions. A number is a 1×1 matrix, which is what the kernels compute;
+    // ListEvaluator has the matrix versions.
+    static final int DET = unary("det", MATRIX_ARGUMENT, x -> x);
+    static final int INV = unary("inv", MATRIX_ARGUMENT, x -> 1 / x, x -> x != 0, "Matrix is singular");
+    static final int TRANSPOSE = unary("transpose", MATRIX_ARGUMENT, x -> x);
+    // solve(A, b) is x with A×x = b
+    static final int SOLVE = register(new Function(registering.size(), "solve", 2, MATRIX_ARGUMENT, null,
+            (a, b) -> b / a, a -> a != 0, "Matrix is singular"));
+    // identity(n) is the n×n identity matrix
+    static final int IDENTITY = register(new Function(registering.size(), "identity", 1, LIST_RESULT,
+            x -> Double.NaN, null, x -> false, "Lists can't be used here"));
+
+    private static final Function[] FUNCTIONS = registering.toArray(new Function[0]);
+
+    // Ids ordered by descending name length, so "asinh" is matched before "asin"
+    private static final int[] MATCH_ORDER = matchOrder();
+
+    private FunctionRegistry() {}
+
+    static int count() {
+        return FUNCTIONS.length;
+    }
+
+    static Function get(int id) {
+        return FUNCTIONS[id];
+    }
+
+    static String name(int id) {
+        return FUNCTIONS[id].name;
+    }
+
+    static int arity(int id) {
+        return FUNCTIONS[id].arity;
+    }
+
+    // Id of the longest function name starting at index (case-insensitive), or Ast.NONE.
+    // The name must end where a name can: a letter after it would make a longer name
+    // ("detail" isn't det), and so would a digit after a name ending in one ("log25" is
+    // log 25, not log2 5). A digit after a letter is the argument, as in sin30.
+    static int match(String source, int index) {
+        for (int id : MATCH_ORDER) {
+            String name = FUNCTIONS[id].name;
+            if (source.regionMatches(true, index, name, 0, name.length())
+                    && endsName(name, source, index + name.length())) {
+                return id;
+            }
+        }
+        return Ast.NONE;
+    }
+
+    private static boolean endsName(String name, String source, int end) {
+        if (end == source.length()) {
+            return true;
+        }
+        char next = source.charAt(end);
+        boolean digitName = Character.isDigit(name.charAt(name.length() - 1));
+        return digitName ? !Variables.isNamePart(next) : !Variables.isNameStart(next);
+    }
+
+    static double apply(int id, double first, double second, boolean degreeMode, int start, int end)
+            throws CalculationException {
+        Metrics.increment(Metrics.FUNCTION_CALLS);
+        Function function = FUNCTIONS[id];
+        if (!inDomain(function, first, degreeMode)) {
+            throw new CalculationException(degreeMode && function.degreeUnary != null
+                    ? function.degreeDomainError : function.domainError, start, end);
+        }
+        return kernel(function, first, second, degreeMode);
+    }
+
+    // apply() for loops that only need the value: NaN outside the domain instead of
+    // an exception, which would cost a stack trace per undefined sample
+    static double applyOrNaN(int id, double first, double second, boolean degreeMode) {
+        Metrics.increment(Metrics.FUNCTION_CALLS);
+        Function function = FUNCTIONS[id];
+        return inDomain(function, first, degreeMode) ? kernel(function, first, second, degreeMode) : Double.NaN;
+    }
+
+    private static boolean inDomain(Function function, double first, boolean degreeMode) {
+        if (degreeMode && function.degreeUnary != null) {
+            return function.degreeDomain == null || function.degreeDomain.test(first);
+        }
+        return function.domain == null || function.domain.test(first);
+    }
+
+    private static double kernel(Function function, double first, double second, boolean degreeMode) {
+        if (degreeMode && function.degreeUnary != null) {
+            return function.degreeUnary.applyAsDouble(first);
+        }
+        if (degreeMode && (function.flags & ANGLE_ARGUMENT) != 0) {
+            first = Math.toRadians(first);
+        }
+        double result = function.arity == 1
+                ? function.unary.applyAsDouble(first)
+                : function.binary.applyAsDouble(first, second);
+        return degreeMode && (function.flags & ANGLE_RESULT) != 0 ? Math.toDegrees(result) : result;
+    }
+
+    // apply() over every element of a list into results, which may be arguments itself.
+    // The mode and flag checks are hoisted out of the loop, and the whole list is
+    // checked against the domain before any kernel call.
+    static void applyAll(int id, double[] arguments, double[] results, boolean degreeMode, int start, int end)
+            throws CalculationException {
+        Metrics.increment(Metrics.FUNCTION_CALLS);
+        Function function = FUNCTIONS[id];
+        boolean degreeKernel = degreeMode && function.degreeUnary != null;
+        DoublePredicate domain = degreeKernel ? function.degreeDomain : function.domain;
+        if (domain != null) {
+            for (double argument : arguments) {
+                if (!domain.test(argument)) {
+                    throw new CalculationException(degreeKernel ? function.degreeDomainError : function.domainError,
+                            start, end);
+                }
+            }
+        }
+        DoubleUnaryOperator kernel = degreeKernel ? function.degreeUnary : function.unary;
+        boolean toRadians = !degreeKernel && degreeMode && (function.flags & ANGLE_ARGUMENT) != 0;
+        boolean toDegrees = degreeMode && (function.flags & ANGLE_RESULT) != 0;
+        for (int i = 0; i < arguments.length; i++) {
+            double argument = toRadians ? Math.toRadians(arguments[i]) : arguments[i];
+            double result = kernel.applyAsDouble(argument);
+            results[i] = toDegrees ? Math.toDegrees(result) : result;
+        }
+    }
+
+    private static int unary(String name, int flags, DoubleUnaryOperator kernel) {
+        return unary(name, flags, kernel, null, null);
+    }
+
+    private static int unary(String name, int flags, DoubleUnaryOperator kernel,
+                             DoublePredicate domain, String domainError) {
+        return register(new Function(registering.size(), name, 1, flags, kernel, null, domain, domainError));
+    }
+
+    private static int angle(String name, DoubleUnaryOperator radianKernel, DoubleUnaryOperator degreeKernel,
+                             DoublePredicate degreeDomain, String degreeDomainError) {
+        int id = unary(name, ANGLE_ARGUMENT, radianKernel);
+        Function function = registering.get(id);
+        function.degreeUnary = degreeKernel;
+        function.degreeDomain = degreeDomain;
+        function.degreeDomainError = degreeDomainError;
+        return id;
+    }
+
+    private static int binary(String name, int flags, DoubleBinaryOperator kernel) {
+        return register(new Function(registering.size(), name, 2, flags, null, kernel, null, null));
+    }
+
+    private static int register(Function function) {
+        registering.add(function);
+        return function.id;
+    }
+
+    private static int[] matchOrder() {
+        Integer[] ids = new Integer[FUNCTIONS.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, (a, b) -> FUNCTIONS[b].name.length() - FUNCTIONS[a].name.length());
+        int[] order = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = ids[i];
+        }
+        return order;
+    }
+
+    private static double asinh(double x) {
+        // Odd-symmetric form keeps precision for large negative x
+        double a = Math.abs(x);
+        return Math.copySign(Math.log(a + Math.sqrt(a * a + 1)), x);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.calculator;
+
+import java.util.function.DoubleUnaryOperator;
+
+// f(x) compiled once from calculator syntax for plotting, solving and integration.
+// x is an ordinary Variables slot, so the parser resolves it like any other name;
+// evaluation substitutes the sample point for that slot and reads every other variable
+// from a snapshot taken at compile time. Instances are immutable, so several threads
+// can evaluate one at once, each with its own scratch array.
+final class GraphFunction {
+    static final String VARIABLE = "x";
+
+    final String source;
+    final boolean degreeMode;
+    private final Ast ast;
+    private final int xSlot;
+    private final double[] variables;
+
+    private GraphFunction(String source, boolean degreeMode, Ast ast, int xSlot, double[] variables) {
+        this.source = source;
+        this.degreeMode = degreeMode;
+        this.ast = ast;
+        this.xSlot = xSlot;
+        this.variables = variables;
+    }
+
+    // Main thread only: defines x on first use and snapshots the variable table
+    static GraphFunction compile(String source, boolean degreeMode) throws CalculationException {
+        int xSlot = Variables.define(VARIABLE);
+        Ast ast = ExpressionParser.parse(source);
+        if (ast.hasErrors()) {
+            throw ast.firstError();
+        }
+        if (ast.assignment != null) {
+            throw new CalculationException("Graphs can't assign variables", 0, ast.assignment.length());
+        }
+        if (ListEvaluator.usesLists(ast)) {
+            throw new CalculationException("Graphs can't use lists");
+        }
+        return new GraphFunction(source, degreeMode, ExpressionOptimizer.optimize(ast, degreeMode), xSlot,
+                Variables.values());
+    }
+
+    // Size of the scratch array evaluate needs
+    int scratchSize() {
+        return ast.size;
+    }
+
+    // Primitive x → f(x) kernel owning its scratch array, for use by one thread at a time
+    DoubleUnaryOperator kernel() {
+        double[] scratch = new double[ast.size];
+        return x -> evaluate(x, scratch);
+    }
+
+    // NaN where f is undefined or not real. Samplers and solvers hit undefined points
+    // all the time (√x left of 0), so this takes the non-throwing path.
+    double evaluate(double x, double[] scratch) {
+        for (int node = 0; node < ast.size; node++) {
+            int kind = ast.kinds[node];
+            if (kind == Ast.VARIABLE) {
+                int slot = ast.data[node];
+                scratch[node] = slot == xSlot ? x : variables[slot];
+                continue;
+            }
+            int left = ast.left[node];
+            int right = ast.right[node];
+            scratch[node] = ExpressionEvaluator.applyOrNaN(ast, node, left == Ast.NONE ? 0 : scratch[left],
+                    right == Ast.NONE ? 0 : scratch[right], degreeMode);
+        }
+        return scratch[ast.root];
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Adaptive sampling of a GraphFunction for plotting. The range starts as a grid of
+// segments a few pixels wide; a segment is split at its midpoint while the midpoint
+// strays from the straight line between its ends by more than half a pixel, or while
+// the function is defined at some of the three points and not others, down to a
+// quarter pixel. Flat stretches cost one sample per grid step and bends get as many
+// as they need. A quarter-pixel segment that still jumps by more than the plot's
+// height, with its midpoint outside the jump, straddles a pole: it gets a NaN break
+// so it isn't drawn as a vertical line. Steep but monotone stretches keep the line.
+final class GraphSampler {
+    private static final int GRID_SPACING_PX = 4;
+    private static final double MIN_SEGMENT_PX = 0.25;
+
+    // Shared by parallel sampling and GraphView's tile rendering
+    static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    // Points in ascending x; NaN y values break the curve
+    static final class Samples {
+        double[] xs;
+        double[] ys;
+        int size;
+
+        Samples(int capacity) {
+            xs = new double[Math.max(4, capacity)];
+            ys = new double[xs.length];
+        }
+
+        void add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+
+    private final GraphFunction function;
+    private final double[] scratch;
+    private final double tolerance;
+    private final double minSegment;
+    private final double jump;
+    private final Samples out;
+
+    private GraphSampler(GraphFunction function, double unitsPerPixel, int heightPx, Samples out) {
+        this.function = function;
+        this.scratch = new double[function.scratchSize()];
+        this.tolerance = unitsPerPixel / 2;
+        this.minSegment = unitsPerPixel * MIN_SEGMENT_PX;
+        this.jump = unitsPerPixel * heightPx;
+        this.out = out;
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Samples [xMin, xMax] for a plot widthPx by heightPx pixels, with the same scale on both axes
+    static Samples sample(GraphFunction function, double xMin, double xMax, int widthPx, int heightPx) {
+        int segments = segmentCount(widthPx);
+        return sampleSegments(function, xMin, xMax, segments, 0, segments, (xMax - xMin) / widthPx, heightPx);
+    }
+
+    // Same points as sample(), with the grid split into one run of segments per core
+    static Samples sampleParallel(GraphFunction function, double xMin, double xMax, int widthPx, int heightPx)
+            throws InterruptedException {
+        int segments = segmentCount(widthPx);
+        int chunks = Math.min(EXECUTOR.getMaximumPoolSize(), segments);
+        if (chunks <= 1) {
+            return sample(function, xMin, xMax, widthPx, heightPx);
+        }
+        double unitsPerPixel = (xMax - xMin) / widthPx;
+        List<Future<Samples>> futures = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int first = segments * chunk / chunks;
+            int last = segments * (chunk + 1) / chunks;
+            futures.add(EXECUTOR.submit(() ->
+                    sampleSegments(function, xMin, xMax, segments, first, last, unitsPerPixel, heightPx)));
+        }
+        Samples result = new Samples(segments * 2);
+        try {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                Samples part = futures.get(chunk).get();
+                // Each run starts with the point the previous one ended on
+                for (int i = chunk == 0 ? 0 : 1; i < part.size; i++) {
+                    result.add(part.xs[i], part.ys[i]);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Samples> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    private static int segmentCount(int widthPx) {
+        return Math.max(8, widthPx / GRID_SPACING_PX);
+    }
+
+    // Grid segments [first, last) of segments equal steps over [xMin, xMax]
+    private static Samples sampleSegments(GraphFunction function, double xMin, double xMax, int segments,
+                                          int first, int last, double unitsPerPixel, int heightPx) {
+        Samples out = new Samples((last - first) * 2 + 1);
+        GraphSampler sampler = new GraphSampler(function, unitsPerPixel, heightPx, out);
+        double step = (xMax - xMin) / segments;
+        double x0 = xMin + first * step;
+        double y0 = sampler.evaluate(x0);
+        out.add(x0, y0);
+        for (int segment = first; segment < last; segment++) {
+            // The last grid point is exactly xMax rather than an accumulated sum
+            double x1 = segment + 1 == segments ? xMax : xMin + (segment + 1) * step;
+            double y1 = sampler.evaluate(x1);
+            sampler.refine(x0, y0, x1, y1);
+            out.add(x1, y1);
+            x0 = x1;
+            y0 = y1;
+        }
+        return out;
+    }
+
+    private double evaluate(double x) {
+        return function.evaluate(x, scratch);
+    }
+
+    // Adds the points strictly between x0 and x1
+    private void refine(double x0, double y0, double x1, double y1) {
+        if (x1 - x0 <= minSegment) {
+            if (Double.isFinite(y0) && Double.isFinite(y1) && Math.abs(y1 - y0) > jump) {
+                double ym = evaluate((x0 + x1) / 2);
+                if (!(ym >= Math.min(y0, y1) && ym <= Math.max(y0, y1))) {
+                    out.add((x0 + x1) / 2, Double.NaN);
+                }
+            }
+            return;
+        }
+        double xm = (x0 + x1) / 2;
+        double ym = evaluate(xm);
+        boolean finite0 = Double.isFinite(y0);
+        boolean finiteM = Double.isFinite(ym);
+        boolean finite1 = Double.isFinite(y1);
+        boolean split;
+        if (finite0 && finiteM && finite1) {
+            split = Math.abs(ym - (y0 + y1) / 2) > tolerance;
+        } else {
+            // Find where the function becomes defined or undefined
+            split = finite0 != finiteM || finiteM != finite1;
+        }
+        if (split) {
+            refine(x0, y0, xm, ym);
+            out.add(xm, ym);
+            refine(xm, ym, x1, y1);
+        }
+    }
+}
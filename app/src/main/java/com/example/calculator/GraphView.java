@@ -0,0 +1,356 @@
+package com.example.calculator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.material.color.MaterialColors;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Plots a GraphFunction with pan and pinch zoom. The plane is cut into square tiles
+// per zoom level, each level doubling the units per pixel. Tiles are rendered to
+// bitmaps on GraphSampler.EXECUTOR and kept in an LRU cache, so a pan frame only
+// draws cached bitmaps and tiles scrolling into view are rendered in the background;
+// zooming back to a level reuses its tiles, and between levels tiles are drawn
+// scaled, falling back to the coarser level while the finer one renders. All tiles
+// of one column share a single sampling pass: columns are rendered as one job each
+// and their downsampled samples are cached too. Axes and labels are drawn per frame.
+final class GraphView extends View {
+    private static final int TILE_SIZE = 256;
+    // Units per pixel at zoom level 0, and the initial zoom: about ±8 across a phone
+    private static final double BASE_UNITS_PER_PIXEL = 1.0 / 64;
+    private static final double MIN_UNITS_PER_PIXEL = 1e-12;
+    private static final double MAX_UNITS_PER_PIXEL = 1e12;
+    // Grid lines are at least this far apart
+    private static final int GRID_SPACING_PX = 48;
+    // Points kept per column after downsampling
+    private static final int COLUMN_POINTS = TILE_SIZE * 2;
+    // Column samples reach this many pixels into the neighbouring columns so curves join
+    private static final int COLUMN_OVERLAP_PX = 2;
+
+    private GraphFunction function;
+    private double centerX;
+    private double centerY;
+    private double unitsPerPixel = BASE_UNITS_PER_PIXEL;
+
+    private final LruCache<Long, Bitmap> tiles;
+    private final LruCache<Long, GraphSampler.Samples> columns = new LruCache<>(64);
+    // Tile columns being rendered, by column key
+    private final Set<Long> pendingColumns = new HashSet<>();
+    // Bumped when the function changes, so results of older jobs are dropped
+    private int generation;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint axisPaint = new Paint();
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Rect source = new Rect();
+    private final RectF destination = new RectF();
+
+    private final ScaleGestureDetector scaleDetector;
+    private float lastTouchX;
+    private float lastTouchY;
+
+    GraphView(Context context) {
+        super(context);
+        // An eighth of the heap for tiles, counted in kilobytes
+        int cacheKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        tiles = new LruCache<Long, Bitmap>(cacheKb) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+
+        curvePaint.setColor(MaterialColors.getColor(this, androidx.appcompat.R.attr.colorPrimary));
+        curvePaint.setStyle(Paint.Style.STROKE);
+        curvePaint.setStrokeWidth(3 * getResources().getDisplayMetrics().density);
+        curvePaint.setStrokeCap(Paint.Cap.ROUND);
+        int onSurface = MaterialColors.getColor(this, com.google.android.material.R.attr.colorOnSurface);
+        gridPaint.setColor(onSurface);
+        gridPaint.setAlpha(28);
+        axisPaint.setColor(onSurface);
+        axisPaint.setAlpha(160);
+        axisPaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+        labelPaint.setColor(onSurface);
+        labelPaint.setAlpha(160);
+        labelPaint.setTextSize(11 * getResources().getDisplayMetrics().scaledDensity);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+    }
+
+    void setFunction(GraphFunction function) {
+        this.function = function;
+        generation++;
+        pendingColumns.clear();
+        tiles.evictAll();
+        columns.evictAll();
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        generation++;
+        pendingColumns.clear();
+        tiles.evictAll();
+        columns.evictAll();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                // Pan from wherever the fingers are now, so lifting one doesn't jump
+                lastTouchX = event.getX();
+                lastTouchY = event.getY();
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!scaleDetector.isInProgress() && event.getPointerCount() == 1) {
+                    centerX -= (event.getX() - lastTouchX) * unitsPerPixel;
+                    centerY += (event.getY() - lastTouchY) * unitsPerPixel;
+                    invalidate();
+                }
+                lastTouchX = event.getX();
+                lastTouchY = event.getY();
+                return true;
+            case MotionEvent.ACTION_UP:
+                performClick();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    // Scales about a screen point, which stays over the same point of the plane
+    private void zoom(float factor, float focusX, float focusY) {
+        double focusWorldX = centerX + (focusX - getWidth() / 2.0) * unitsPerPixel;
+        double focusWorldY = centerY - (focusY - getHeight() / 2.0) * unitsPerPixel;
+        unitsPerPixel = Math.max(MIN_UNITS_PER_PIXEL, Math.min(MAX_UNITS_PER_PIXEL, unitsPerPixel / factor));
+        centerX = focusWorldX - (focusX - getWidth() / 2.0) * unitsPerPixel;
+        centerY = focusWorldY + (focusY - getHeight() / 2.0) * unitsPerPixel;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        if (function == null || getWidth() == 0) {
+            return;
+        }
+        int level = (int) Math.round(Math.log(unitsPerPixel / BASE_UNITS_PER_PIXEL) / Math.log(2));
+        double left = centerX - getWidth() / 2.0 * unitsPerPixel;
+        double top = centerY + getHeight() / 2.0 * unitsPerPixel;
+        double right = left + getWidth() * unitsPerPixel;
+        double bottom = top - getHeight() * unitsPerPixel;
+
+        double tileUnits = TILE_SIZE * tileUnitsPerPixel(level);
+        long firstColumn = (long) Math.floor(left / tileUnits);
+        long lastColumn = (long) Math.floor(right / tileUnits);
+        long firstRow = (long) Math.floor(bottom / tileUnits);
+        long lastRow = (long) Math.floor(top / tileUnits);
+        float tileScreenSize = (float) (tileUnits / unitsPerPixel);
+
+        for (long column = firstColumn; column <= lastColumn; column++) {
+            boolean missing = false;
+            float screenX = (float) ((column * tileUnits - left) / unitsPerPixel);
+            for (long row = firstRow; row <= lastRow; row++) {
+                float screenY = (float) ((top - (row + 1) * tileUnits) / unitsPerPixel);
+                destination.set(screenX, screenY, screenX + tileScreenSize, screenY + tileScreenSize);
+                Bitmap tile = tiles.get(tileKey(level, column, row));
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, destination, tilePaint);
+                    continue;
+                }
+                missing = true;
+                drawCoarserTile(canvas, level, column, row);
+            }
+            if (missing) {
+                renderColumn(level, column, firstRow, lastRow);
+            }
+        }
+        drawAxes(canvas, level, left, top);
+    }
+
+    // Half of the coarser level's tile covering (column, row) stands in until it renders
+    private void drawCoarserTile(Canvas canvas, int level, long column, long row) {
+        Bitmap coarse = tiles.get(tileKey(level + 1, Math.floorDiv(column, 2), Math.floorDiv(row, 2)));
+        if (coarse == null) {
+            return;
+        }
+        int half = TILE_SIZE / 2;
+        int sourceLeft = Math.floorMod(column, 2) * half;
+        // Rows count up the plane, bitmap rows count down
+        int sourceTop = Math.floorMod(row, 2) == 0 ? half : 0;
+        source.set(sourceLeft, sourceTop, sourceLeft + half, sourceTop + half);
+        canvas.drawBitmap(coarse, source, destination, tilePaint);
+    }
+
+    // Renders the visible rows of one column off the main thread, sampling it once
+    private void renderColumn(int level, long column, long firstRow, long lastRow) {
+        long columnKey = tileKey(level, column, 0);
+        if (!pendingColumns.add(columnKey)) {
+            return;
+        }
+        GraphFunction function = this.function;
+        int jobGeneration = generation;
+        int heightPx = getHeight();
+        GraphSampler.EXECUTOR.execute(() -> {
+            double tileUnitsPerPixel = tileUnitsPerPixel(level);
+            GraphSampler.Samples samples = columns.get(columnKey);
+            if (samples == null) {
+                double overlap = COLUMN_OVERLAP_PX * tileUnitsPerPixel;
+                double xMin = column * TILE_SIZE * tileUnitsPerPixel - overlap;
+                double xMax = (column + 1) * TILE_SIZE * tileUnitsPerPixel + overlap;
+                samples = Lttb.downsample(GraphSampler.sample(function, xMin, xMax,
+                        TILE_SIZE + 2 * COLUMN_OVERLAP_PX, heightPx), COLUMN_POINTS);
+                columns.put(columnKey, samples);
+            }
+            long rows = lastRow - firstRow + 1;
+            Bitmap[] rendered = new Bitmap[(int) rows];
+            for (int i = 0; i < rows; i++) {
+                rendered[i] = renderTile(samples, level, column, firstRow + i);
+            }
+            mainHandler.post(() -> {
+                pendingColumns.remove(columnKey);
+                if (jobGeneration != generation) {
+                    return;
+                }
+                for (int i = 0; i < rows; i++) {
+                    Long key = tileKey(level, column, firstRow + i);
+                    if (tiles.get(key) == null) {
+                        tiles.put(key, rendered[i]);
+                    }
+                }
+                invalidate();
+            });
+        });
+    }
+
+    private Bitmap renderTile(GraphSampler.Samples samples, int level, long column, long row) {
+        double tileUnitsPerPixel = tileUnitsPerPixel(level);
+        double tileLeft = column * TILE_SIZE * tileUnitsPerPixel;
+        double tileTop = (row + 1) * TILE_SIZE * tileUnitsPerPixel;
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        double step = gridStep(tileUnitsPerPixel);
+        for (double x = Math.ceil(tileLeft / step) * step; x < tileLeft + TILE_SIZE * tileUnitsPerPixel; x += step) {
+            float px = (float) ((x - tileLeft) / tileUnitsPerPixel);
+            canvas.drawLine(px, 0, px, TILE_SIZE, gridPaint);
+        }
+        double tileBottom = tileTop - TILE_SIZE * tileUnitsPerPixel;
+        for (double y = Math.ceil(tileBottom / step) * step; y < tileTop; y += step) {
+            float py = (float) ((tileTop - y) / tileUnitsPerPixel);
+            canvas.drawLine(0, py, TILE_SIZE, py, gridPaint);
+        }
+
+        Path path = new Path();
+        boolean drawing = false;
+        for (int i = 0; i < samples.size; i++) {
+            double y = samples.ys[i];
+            if (Double.isNaN(y)) {
+                drawing = false;
+                continue;
+            }
+            float px = (float) ((samples.xs[i] - tileLeft) / tileUnitsPerPixel);
+            // Far off-tile points are clamped so float coordinates stay well-behaved
+            float py = (float) Math.max(-4 * TILE_SIZE, Math.min(5 * TILE_SIZE, (tileTop - y) / tileUnitsPerPixel));
+            if (drawing) {
+                path.lineTo(px, py);
+            } else {
+                path.moveTo(px, py);
+                drawing = true;
+            }
+        }
+        canvas.drawPath(path, curvePaint);
+        return bitmap;
+    }
+
+    private void drawAxes(Canvas canvas, int level, double left, double top) {
+        float axisX = (float) (-left / unitsPerPixel);
+        float axisY = (float) (top / unitsPerPixel);
+        // Labels stay on screen, along the edge, when an axis is scrolled away
+        float labelX = Math.max(4, Math.min(getWidth() - 48, axisX + 4));
+        float labelY = Math.max(labelPaint.getTextSize() + 4, Math.min(getHeight() - 4, axisY - 4));
+        if (axisX >= 0 && axisX <= getWidth()) {
+            canvas.drawLine(axisX, 0, axisX, getHeight(), axisPaint);
+        }
+        if (axisY >= 0 && axisY <= getHeight()) {
+            canvas.drawLine(0, axisY, getWidth(), axisY, axisPaint);
+        }
+        // Every other grid line is labelled
+        double step = 2 * gridStep(tileUnitsPerPixel(level));
+        for (double x = Math.ceil(left / step) * step; x <= left + getWidth() * unitsPerPixel; x += step) {
+            if (Math.abs(x) > step / 2) {
+                canvas.drawText(formatTick(x, step), (float) ((x - left) / unitsPerPixel) + 2, labelY, labelPaint);
+            }
+        }
+        double bottom = top - getHeight() * unitsPerPixel;
+        for (double y = Math.ceil(bottom / step) * step; y <= top; y += step) {
+            if (Math.abs(y) > step / 2) {
+                canvas.drawText(formatTick(y, step), labelX, (float) ((top - y) / unitsPerPixel) - 2, labelPaint);
+            }
+        }
+    }
+
+    private static double tileUnitsPerPixel(int level) {
+        return Math.scalb(BASE_UNITS_PER_PIXEL, level);
+    }
+
+    // 1, 2 or 5 times a power of ten, at least GRID_SPACING_PX apart
+    static double gridStep(double unitsPerPixel) {
+        double minimum = GRID_SPACING_PX * unitsPerPixel;
+        double power = Math.pow(10, Math.floor(Math.log10(minimum)));
+        for (int multiple : new int[] {1, 2, 5, 10}) {
+            if (multiple * power >= minimum) {
+                return multiple * power;
+            }
+        }
+        return 10 * power;
+    }
+
+    private static String formatTick(double value, double step) {
+        if (Math.abs(value) >= 1e6 || step < 1e-4) {
+            return String.format(Locale.US, "%.2g", value);
+        }
+        int decimals = Math.max(0, (int) -Math.floor(Math.log10(step)));
+        return String.format(Locale.US, "%." + decimals + "f", value);
+    }
+
+    // Level in the top 8 bits, then 28 bits each of column and row
+    private static long tileKey(int level, long column, long row) {
+        return ((long) (level & 0xFF) << 56) | ((column & 0xFFFFFFFL) << 28) | (row & 0xFFFFFFFL);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.calculator;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.function.BooleanSupplier;
+
+// Enforces a HistoryRetention on the stored history. The policy becomes one last_used
+// cutoff, and rows at or before it are deleted BATCH_SIZE at a time, each batch its own
+// short statement, so calculations saved meanwhile interleave with a large cleanup
+// instead of waiting behind it. reclaim() then returns the freed space to the file
+// system. MainActivity runs both on the background executor once the UI is idle.
+final class HistoryCompactor {
+    static final int BATCH_SIZE = 500;
+    // Vacuum once at least this share of the file is free pages
+    private static final double VACUUM_FREE_RATIO = 0.25;
+
+    private HistoryCompactor() {}
+
+    // Deletes expired and excess rows, least recently used first; returns how many.
+    // Rows tied with the last one over the limit go too, which only matters for
+    // calculations saved within the same millisecond.
+    static int compact(CalculationHistoryDao dao, HistoryRetention policy, long now, BooleanSupplier cancelled) {
+        long cutoff = policy.ageCutoff(now);
+        int count = dao.getHistoryCount();
+        int limit = policy.rowLimit(count, dao.getHistoryBytes());
+        if (count > limit) {
+            Long firstExcess = dao.getLastUsedAt(limit);
+            if (firstExcess != null) {
+                cutoff = Math.max(cutoff, firstExcess);
+            }
+        }
+        if (cutoff == Long.MIN_VALUE) {
+            return 0;
+        }
+        int deleted = 0;
+        int batch;
+        do {
+            if (cancelled.getAsBoolean()) {
+                break;
+            }
+            batch = dao.deleteUsedUntil(cutoff, BATCH_SIZE);
+            deleted += batch;
+        } while (batch == BATCH_SIZE);
+        return deleted;
+    }
+
+    // Vacuums when enough of the file is free pages, then checkpoints the write-ahead
+    // log into the database file and truncates it. Must not run inside a transaction.
+    static void reclaim(SupportSQLiteDatabase database) {
+        long pages = pragma(database, "page_count");
+        long free = pragma(database, "freelist_count");
+        if (pages > 0 && free >= pages * VACUUM_FREE_RATIO) {
+            database.execSQL("VACUUM");
+        }
+        pragma(database, "wal_checkpoint(TRUNCATE)");
+    }
+
+    private static long pragma(SupportSQLiteDatabase database, String pragma) {
+        try (Cursor cursor = database.query("PRAGMA " + pragma)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+// How much history to keep: rows unused for longer than maxAgeMillis expire, and past
+// maxRows or maxBytes the least recently used rows go first. 0 means no limit.
+// HistoryCompactor enforces the policy; the user picks one of the PRESETS. Until they
+// do, everything is kept. Saved choices are indexes, so presets are only ever appended.
+final class HistoryRetention {
+    static final HistoryRetention[] PRESETS = {
+            new HistoryRetention("1 week, up to 500 entries", TimeUnit.DAYS.toMillis(7), 500, 128 * 1024),
+            new HistoryRetention("30 days, up to 2,000 entries", TimeUnit.DAYS.toMillis(30), 2000, 512 * 1024),
+            new HistoryRetention("1 year, up to 10,000 entries", TimeUnit.DAYS.toMillis(365), 10_000, 2 * 1024 * 1024),
+            new HistoryRetention("No age limit, up to 50,000 entries", 0, 50_000, 8 * 1024 * 1024),
+            new HistoryRetention("Keep everything", 0, 0, 0),
+    };
+    static final int DEFAULT_PRESET = 4;
+
+    final String label;
+    final long maxAgeMillis;
+    final int maxRows;
+    final long maxBytes;
+
+    HistoryRetention(String label, long maxAgeMillis, int maxRows, long maxBytes) {
+        this.label = label;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    // The preset at index, or the default for an index saved by another version
+    static HistoryRetention preset(int index) {
+        return PRESETS[index >= 0 && index < PRESETS.length ? index : DEFAULT_PRESET];
+    }
+
+    // True when nothing ever expires, so there is nothing to compact
+    boolean isUnlimited() {
+        return maxAgeMillis == 0 && maxRows == 0 && maxBytes == 0;
+    }
+
+    // Rows last used at or before this time have expired, or Long.MIN_VALUE for none
+    long ageCutoff(long now) {
+        return maxAgeMillis > 0 ? now - maxAgeMillis : Long.MIN_VALUE;
+    }
+
+    // Most rows to keep when count rows take bytes: maxRows, lowered so the rows fit
+    // in maxBytes at their current average size
+    int rowLimit(int count, long bytes) {
+        long limit = maxRows > 0 ? maxRows : Integer.MAX_VALUE;
+        if (maxBytes > 0 && bytes > maxBytes && count > 0) {
+            limit = Math.min(limit, maxBytes * count / bytes);
+        }
+        return (int) limit;
+    }
+}
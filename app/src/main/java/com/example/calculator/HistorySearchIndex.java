@@ -0,0 +1,193 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// Pre-lowercased search snapshot of a HistoryStore with a trigram index.
+// Built and queried on the search thread; rows are addressed by their store index.
+final class HistorySearchIndex {
+    private static final int GRAM = 3;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private final String[] haystacks;
+    private final Map<Long, int[]> postings;
+
+    HistorySearchIndex(HistoryStore store) {
+        // Lowercase each distinct string once; repeated rows share the result
+        String[] normalized = new String[store.distinctStringCount()];
+        for (int ref = 0; ref < normalized.length; ref++) {
+            normalized[ref] = normalize(store.distinctString(ref));
+        }
+
+        int count = store.size();
+        haystacks = new String[count];
+        Map<Long, IntList> building = new HashMap<>();
+        for (int row = 0; row < count; row++) {
+            // Expression and result are searched separately; the separator can't be typed,
+            // so a query never matches across the two
+            String haystack = normalized[store.expressionRef(row)] + '\u0000' + normalized[store.resultRef(row)];
+            haystacks[row] = haystack;
+            for (int i = 0; i + GRAM <= haystack.length(); i++) {
+                Long key = gramKey(haystack, i);
+                IntList list = building.get(key);
+                if (list == null) {
+                    list = new IntList();
+                    building.put(key, list);
+                }
+                // Rows are visited in order, so each posting list stays sorted and unique
+                list.addIfNotLast(row);
+            }
+        }
+        postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, IntList> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    // The closed range [low, high] of result values a query such as "> 1000",
+    // "result <= 2.5", "= 42" or "10..20" asks for, or null for a text query. Strict
+    // bounds step to the next double, so SQL can always compare inclusively.
+    static double[] valueRange(String query) {
+        String text = normalize(query).trim();
+        if (text.startsWith("result")) {
+            text = text.substring("result".length()).trim();
+        }
+        try {
+            int dots = text.indexOf("..");
+            if (dots > 0) {
+                double low = Double.parseDouble(text.substring(0, dots).trim());
+                double high = Double.parseDouble(text.substring(dots + 2).trim());
+                return low <= high ? new double[] {low, high} : null;
+            }
+            int length = text.startsWith(">=") || text.startsWith("<=") ? 2
+                    : text.startsWith(">") || text.startsWith("<") || text.startsWith("=") ? 1 : 0;
+            if (length == 0) {
+                return null;
+            }
+            double value = Double.parseDouble(text.substring(length).trim());
+            if (Double.isNaN(value)) {
+                return null;
+            }
+            switch (text.substring(0, length)) {
+                case ">":
+                    return new double[] {Math.nextUp(value), Double.POSITIVE_INFINITY};
+                case ">=":
+                    return new double[] {value, Double.POSITIVE_INFINITY};
+                case "<":
+                    return new double[] {Double.NEGATIVE_INFINITY, Math.nextDown(value)};
+                case "<=":
+                    return new double[] {Double.NEGATIVE_INFINITY, value};
+                default:
+                    return new double[] {value, value};
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    int size() {
+        return haystacks.length;
+    }
+
+    // Returns the ascending indexes of rows containing the (already normalized) query.
+    // When candidates is non-null only those rows are checked, which is how a query that
+    // extends the previous one narrows the previous matches. Returns null if cancelled.
+    int[] search(String query, int[] candidates, BooleanSupplier cancelled) {
+        if (query.isEmpty()) {
+            return candidates != null ? candidates : allRows();
+        }
+
+        int[] rows = candidates;
+        if (query.length() >= GRAM) {
+            int[] rarest = rarestPosting(query);
+            if (rarest == null) {
+                return new int[0];
+            }
+            rows = rows == null ? rarest : intersect(rows, rarest);
+        }
+
+        int[] matches = new int[rows == null ? haystacks.length : rows.length];
+        int matchCount = 0;
+        int total = rows == null ? haystacks.length : rows.length;
+        for (int i = 0; i < total; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            int row = rows == null ? i : rows[i];
+            if (haystacks[row].contains(query)) {
+                matches[matchCount++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    private int[] allRows() {
+        int[] rows = new int[haystacks.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    // Shortest posting list among the query's trigrams, or null if any trigram never occurs
+    private int[] rarestPosting(String query) {
+        int[] rarest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            int[] posting = postings.get(gramKey(query, i));
+            if (posting == null) {
+                return null;
+            }
+            if (rarest == null || posting.length < rarest.length) {
+                rarest = posting;
+            }
+        }
+        return rarest;
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static Long gramKey(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addIfNotLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
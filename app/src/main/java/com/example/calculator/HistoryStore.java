@@ -0,0 +1,240 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable, column-oriented copy of loaded history rows.
+// Ids and timestamps live in primitive arrays, and expression/result strings are
+// deduplicated into one table that rows reference by index, so a repeated
+// calculation costs a few array slots instead of an entity plus two strings.
+// Views over the store (full list, search results) are int[] arrays of row indexes.
+// Each row's compiled program (AstCodec bytes, or null) is kept for reuse.
+// Relative-time labels are cached per row, not per ViewHolder, so a recycled holder
+// bound to a row shown before finds its label still valid.
+final class HistoryStore {
+    static final HistoryStore EMPTY = new HistoryStore(new int[0], new long[0], new int[0], new int[0], new String[0],
+            new byte[0][]);
+
+    private final int[] ids;
+    private final long[] timestamps;
+    private final int[] expressionRefs;
+    private final int[] resultRefs;
+    private final String[] strings;
+    private final byte[][] programs;
+
+    // "= result" labels, created lazily per distinct string on the main thread
+    private final String[] displayResults;
+
+    // Relative-time labels and their validity windows (from, until pairs), filled in on
+    // the main thread as rows are bound. Allocated in pages, so rows never bound cost
+    // one reference per page.
+    private static final int LABEL_PAGE_SHIFT = 8;
+    private static final int LABEL_PAGE_MASK = (1 << LABEL_PAGE_SHIFT) - 1;
+    private final String[][] timeLabels;
+    private final long[][] timeLabelWindows;
+
+    private HistoryStore(int[] ids, long[] timestamps, int[] expressionRefs, int[] resultRefs, String[] strings,
+                         byte[][] programs) {
+        this.ids = ids;
+        this.timestamps = timestamps;
+        this.expressionRefs = expressionRefs;
+        this.resultRefs = resultRefs;
+        this.strings = strings;
+        this.programs = programs;
+        this.displayResults = new String[strings.length];
+        int pages = (ids.length + LABEL_PAGE_MASK) >>> LABEL_PAGE_SHIFT;
+        this.timeLabels = new String[pages][];
+        this.timeLabelWindows = new long[pages][];
+    }
+
+    static HistoryStore from(List<CalculationHistory> rows) {
+        int count = rows.size();
+        int[] ids = new int[count];
+        long[] timestamps = new long[count];
+        int[] expressionRefs = new int[count];
+        int[] resultRefs = new int[count];
+        byte[][] programs = new byte[count][];
+        Map<String, Integer> stringIndex = new HashMap<>();
+        String[] strings = new String[Math.max(4, count)];
+        int stringCount = 0;
+
+        for (int row = 0; row < count; row++) {
+            CalculationHistory item = rows.get(row);
+            ids[row] = item.id;
+            timestamps[row] = item.lastUsed;
+            programs[row] = item.compiled;
+            for (int column = 0; column < 2; column++) {
+                String value = column == 0 ? item.expression : item.result;
+                if (value == null) {
+                    value = "";
+                }
+                Integer ref = stringIndex.get(value);
+                if (ref == null) {
+                    if (stringCount == strings.length) {
+                        strings = Arrays.copyOf(strings, stringCount * 2);
+                    }
+                    ref = stringCount;
+                    strings[stringCount++] = value;
+                    stringIndex.put(value, ref);
+                }
+                if (column == 0) {
+                    expressionRefs[row] = ref;
+                } else {
+                    resultRefs[row] = ref;
+                }
+            }
+        }
+        return new HistoryStore(ids, timestamps, expressionRefs, resultRefs,
+                Arrays.copyOf(strings, stringCount), programs);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    int id(int row) {
+        return ids[row];
+    }
+
+    long timestamp(int row) {
+        return timestamps[row];
+    }
+
+    String expression(int row) {
+        return strings[expressionRefs[row]];
+    }
+
+    String result(int row) {
+        return strings[resultRefs[row]];
+    }
+
+    // AstCodec bytes of the row's expression, or null
+    byte[] program(int row) {
+        return programs[row];
+    }
+
+    String displayResult(int row) {
+        int ref = resultRefs[row];
+        String label = displayResults[ref];
+        if (label == null) {
+            label = "= " + strings[ref];
+            displayResults[ref] = label;
+        }
+        return label;
+    }
+
+    // The row's "5 minutes ago" label as of now, reformatted only once its window passes
+    String relativeTime(int row, long now, RelativeTimeFormatter formatter) {
+        int page = row >>> LABEL_PAGE_SHIFT;
+        int slot = row & LABEL_PAGE_MASK;
+        if (timeLabels[page] == null) {
+            timeLabels[page] = new String[LABEL_PAGE_MASK + 1];
+            timeLabelWindows[page] = new long[2 * (LABEL_PAGE_MASK + 1)];
+        }
+        if (relativeTimeExpired(row, now)) {
+            timeLabels[page][slot] = formatter.format(timestamps[row], now);
+            timeLabelWindows[page][2 * slot] = formatter.validFrom();
+            timeLabelWindows[page][2 * slot + 1] = formatter.validUntil();
+        }
+        return timeLabels[page][slot];
+    }
+
+    // True when the row's label was never formatted or no longer holds at now
+    boolean relativeTimeExpired(int row, long now) {
+        String[] texts = timeLabels[row >>> LABEL_PAGE_SHIFT];
+        int slot = row & LABEL_PAGE_MASK;
+        if (texts == null || texts[slot] == null) {
+            return true;
+        }
+        long[] windows = timeLabelWindows[row >>> LABEL_PAGE_SHIFT];
+        return now < windows[2 * slot] || now >= windows[2 * slot + 1];
+    }
+
+    // When the row's label stops holding, or Long.MAX_VALUE if it was never formatted
+    long relativeTimeUntil(int row) {
+        String[] texts = timeLabels[row >>> LABEL_PAGE_SHIFT];
+        int slot = row & LABEL_PAGE_MASK;
+        if (texts == null || texts[slot] == null) {
+            return Long.MAX_VALUE;
+        }
+        return timeLabelWindows[row >>> LABEL_PAGE_SHIFT][2 * slot + 1];
+    }
+
+    int distinctStringCount() {
+        return strings.length;
+    }
+
+    String distinctString(int ref) {
+        return strings[ref];
+    }
+
+    int expressionRef(int row) {
+        return expressionRefs[row];
+    }
+
+    int resultRef(int row) {
+        return resultRefs[row];
+    }
+
+    // Ascending indexes of the rows with the given ids; ids not loaded are skipped
+    int[] rowsWithIds(List<Integer> wanted) {
+        int[] sorted = new int[wanted.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = wanted.get(i);
+        }
+        Arrays.sort(sorted);
+        int[] rows = new int[Math.min(sorted.length, ids.length)];
+        int count = 0;
+        for (int row = 0; row < ids.length && count < rows.length; row++) {
+            if (Arrays.binarySearch(sorted, ids[row]) >= 0) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // View containing every row in load order
+    int[] allRows() {
+        int[] rows = new int[ids.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    // Approximate retained heap size, assuming compressed oops (4-byte references,
+    // 12-byte object headers, 8-byte alignment) and compact Latin-1 strings
+    long footprintBytes() {
+        long bytes = arrayBytes(ids.length, 4) + arrayBytes(timestamps.length, 8)
+                + arrayBytes(expressionRefs.length, 4) + arrayBytes(resultRefs.length, 4)
+                + arrayBytes(strings.length, 4) + arrayBytes(displayResults.length, 4)
+                + arrayBytes(programs.length, 4)
+                + arrayBytes(timeLabels.length, 4) + arrayBytes(timeLabelWindows.length, 4);
+        for (int page = 0; page < timeLabels.length; page++) {
+            if (timeLabels[page] != null) {
+                bytes += arrayBytes(timeLabels[page].length, 4) + arrayBytes(timeLabelWindows[page].length, 8);
+            }
+        }
+        for (String value : strings) {
+            bytes += stringBytes(value);
+        }
+        for (byte[] program : programs) {
+            bytes += program == null ? 0 : arrayBytes(program.length, 1);
+        }
+        return bytes;
+    }
+
+    static long arrayBytes(int length, int elementSize) {
+        return align(16 + (long) length * elementSize);
+    }
+
+    static long stringBytes(String value) {
+        return align(24) + arrayBytes(value.length(), 1);
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.calculator;
+
+// Digit formatting for programmer mode, on longs only. Binary, octal and hex read the
+// word's bit pattern a digit at a time through the DIGITS table; decimal divides by 100
+// and takes both digits from the DIGIT_PAIRS table, halving the divisions.
+final class IntegerFormat {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] DIGIT_PAIRS = new char[200];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (char) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (char) ('0' + i % 10);
+        }
+    }
+
+    private IntegerFormat() {}
+
+    // value as held by ProgrammerEvaluator for the word size: sign-extended when signed,
+    // zero-extended otherwise. Bases other than 10 show the word's two's complement bits.
+    static String format(long value, int base, int bits, boolean signed) {
+        if (base == 10) {
+            return signed || bits < 64 ? decimal(value) : unsignedDecimal(value);
+        }
+        int shift = base == 16 ? 4 : base == 8 ? 3 : 1;
+        long digitMask = base - 1;
+        long word = bits == 64 ? value : value & ((1L << bits) - 1);
+        char[] out = new char[64];
+        int i = out.length;
+        do {
+            out[--i] = DIGITS[(int) (word & digitMask)];
+            word >>>= shift;
+        } while (word != 0);
+        return new String(out, i, out.length - i);
+    }
+
+    // format() with the digits in groups from the right, e.g. "1111 0000" in binary
+    static String grouped(long value, int base, int bits, boolean signed) {
+        String digits = format(value, base, bits, signed);
+        int size = base == 10 ? 3 : 4;
+        char separator = base == 10 ? ',' : ' ';
+        int start = digits.charAt(0) == '-' ? 1 : 0;
+        int length = digits.length() - start;
+        if (length <= size) {
+            return digits;
+        }
+        StringBuilder out = new StringBuilder(digits.length() + length / size);
+        out.append(digits, 0, start);
+        int first = length % size == 0 ? size : length % size;
+        out.append(digits, start, start + first);
+        for (int i = start + first; i < digits.length(); i += size) {
+            out.append(separator).append(digits, i, i + size);
+        }
+        return out.toString();
+    }
+
+    private static String decimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            return "-9223372036854775808";
+        }
+        char[] out = new char[20];
+        int i = digits(Math.abs(value), out, out.length);
+        if (value < 0) {
+            out[--i] = '-';
+        }
+        return new String(out, i, out.length - i);
+    }
+
+    // value read as an unsigned 64-bit number
+    private static String unsignedDecimal(long value) {
+        if (value >= 0) {
+            return decimal(value);
+        }
+        // Halve before dividing so the quotient fits in a signed long
+        long quotient = (value >>> 1) / 5;
+        int lastDigit = (int) (value - quotient * 10);
+        char[] out = new char[20];
+        out[19] = DIGITS[lastDigit];
+        int i = digits(quotient, out, 19);
+        return new String(out, i, out.length - i);
+    }
+
+    // Writes the digits of a non-negative value ending before out[end]; returns the first index
+    private static int digits(long value, char[] out, int end) {
+        int i = end;
+        while (value >= 100) {
+            long quotient = value / 100;
+            int pair = (int) (value - quotient * 100) * 2;
+            out[--i] = DIGIT_PAIRS[pair + 1];
+            out[--i] = DIGIT_PAIRS[pair];
+            value = quotient;
+        }
+        int pair = (int) value * 2;
+        out[--i] = DIGIT_PAIRS[pair + 1];
+        if (value >= 10) {
+            out[--i] = DIGIT_PAIRS[pair];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleUnaryOperator;
+
+// Definite integrals by adaptive Gauss–Kronrod quadrature. Each subinterval gets the
+// 15-point Kronrod rule and its embedded 7-point Gauss rule; their difference is the
+// error estimate. Subintervals over their share of the tolerance are halved, and the
+// halves are ForkJoin tasks, so the pool's workers steal the refinement of difficult
+// regions from each other. Every worker thread has its own compiled kernel.
+final class Integrator {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final double RELATIVE_TOLERANCE = 1e-10;
+    private static final double ABSOLUTE_TOLERANCE = 1e-12;
+    private static final int MAX_DEPTH = 40;
+    private static final long MAX_EVALUATIONS = 10_000_000;
+    // Error still accepted, relative to max(1, |value|), when some subinterval hit a limit
+    private static final double LIMIT_TOLERANCE = 1e-6;
+
+    // Kronrod abscissae on [-1, 1] (odd indexes are the Gauss points) and weights
+    private static final double[] XGK = {
+            0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245, 0
+    };
+    private static final double[] WGK = {
+            0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649, 0.209482141084727828012999174891714
+    };
+    private static final double[] WG = {
+            0.129484966168869693270611432679082, 0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975, 0.417959183673469387755102040816327
+    };
+
+    private final ThreadLocal<DoubleUnaryOperator> kernels;
+    private final BooleanSupplier cancelled;
+    private final DoubleConsumer progress;
+    private final double totalWidth;
+    private final LongAdder evaluations = new LongAdder();
+    private final DoubleAdder error = new DoubleAdder();
+    private final DoubleAdder doneWidth = new DoubleAdder();
+    // Progress is reported in whole percent, once per step
+    private final AtomicLong reportedPercent = new AtomicLong();
+    private volatile boolean stopped;
+    // Some subinterval stopped at a limit rather than meeting its tolerance
+    private volatile boolean limited;
+
+    private Integrator(GraphFunction function, double width, BooleanSupplier cancelled, DoubleConsumer progress) {
+        this.kernels = ThreadLocal.withInitial(function::kernel);
+        this.totalWidth = width;
+        this.cancelled = cancelled;
+        this.progress = progress;
+    }
+
+    // ∫ f(x) dx from a to b; null when cancelled. progress receives the fraction done.
+    static NumericResult integrate(GraphFunction function, double a, double b, BooleanSupplier cancelled,
+                                   DoubleConsumer progress) throws CalculationException {
+        if (!Double.isFinite(a) || !Double.isFinite(b)) {
+            throw new CalculationException("Bounds must be finite numbers");
+        }
+        long start = System.nanoTime();
+        if (a == b) {
+            return new NumericResult(0, 0, 0, 0);
+        }
+        // Integrate left to right and flip the sign for reversed bounds
+        double sign = a < b ? 1 : -1;
+        double low = Math.min(a, b);
+        double high = Math.max(a, b);
+        Integrator integrator = new Integrator(function, high - low, cancelled, progress);
+        double[] whole = integrator.kronrod(low, high);
+        double tolerance = Math.max(ABSOLUTE_TOLERANCE, RELATIVE_TOLERANCE * Math.abs(whole[0]));
+        double value = sign * POOL.invoke(integrator.new Task(low, high, whole, tolerance, 0));
+        if (integrator.stopped && cancelled.getAsBoolean()) {
+            return null;
+        }
+        // Refining a singularity to the depth limit is fine when its error is still small,
+        // as for 1/√x at 0; a non-integrable one like 1/x at 0 leaves a large error
+        double error = integrator.error.sum();
+        if (!Double.isFinite(value)
+                || integrator.limited && error > LIMIT_TOLERANCE * Math.max(1, Math.abs(value))) {
+            throw new CalculationException("The integral doesn't converge on this interval");
+        }
+        progress.accept(1);
+        return new NumericResult(value, error, integrator.evaluations.sum(),
+                System.nanoTime() - start);
+    }
+
+    // {Kronrod estimate, |Kronrod - Gauss|} on [a, b]
+    private double[] kronrod(double a, double b) {
+        DoubleUnaryOperator f = kernels.get();
+        double center = (a + b) / 2;
+        double half = (b - a) / 2;
+        double fc = f.applyAsDouble(center);
+        double kronrod = fc * WGK[7];
+        double gauss = fc * WG[3];
+        for (int j = 0; j < 7; j++) {
+            double offset = half * XGK[j];
+            double sum = f.applyAsDouble(center - offset) + f.applyAsDouble(center + offset);
+            kronrod += WGK[j] * sum;
+            if (j % 2 == 1) {
+                gauss += WG[j / 2] * sum;
+            }
+        }
+        evaluations.add(15);
+        return new double[] {kronrod * half, Math.abs((kronrod - gauss) * half)};
+    }
+
+    private final class Task extends RecursiveTask<Double> {
+        private final double a;
+        private final double b;
+        private double[] estimate; // computed by the task itself unless given
+        private final double tolerance;
+        private final int depth;
+
+        Task(double a, double b, double[] estimate, double tolerance, int depth) {
+            this.a = a;
+            this.b = b;
+            this.estimate = estimate;
+            this.tolerance = tolerance;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Double compute() {
+            if (stopped || cancelled.getAsBoolean()) {
+                stopped = true;
+                return Double.NaN;
+            }
+            if (estimate == null) {
+                estimate = kronrod(a, b);
+            }
+            double middle = (a + b) / 2;
+            if (Double.isNaN(estimate[0])) {
+                // Undefined somewhere in here; the NaN propagates to the total
+                return estimate[0];
+            }
+            if (estimate[1] > tolerance && (depth == MAX_DEPTH || !(a < middle && middle < b)
+                    || evaluations.sum() > MAX_EVALUATIONS)) {
+                limited = true;
+                accept(estimate[1], b - a);
+                return estimate[0];
+            }
+            if (estimate[1] <= tolerance) {
+                accept(estimate[1], b - a);
+                return estimate[0];
+            }
+            // The halves split the tolerance and each evaluates its own rule, so the
+            // forked half's evaluations can run on another worker
+            Task left = new Task(a, middle, null, tolerance / 2, depth + 1);
+            Task right = new Task(middle, b, null, tolerance / 2, depth + 1);
+            left.fork();
+            double rightValue = right.compute();
+            return left.join() + rightValue;
+        }
+    }
+
+    private void accept(double intervalError, double width) {
+        error.add(intervalError);
+        doneWidth.add(width);
+        long percent = (long) (100 * doneWidth.sum() / totalWidth);
+        long reported = reportedPercent.get();
+        if (percent > reported && reportedPercent.compareAndSet(reported, percent)) {
+            progress.accept(percent / 100.0);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.example.calculator;
+
+// Evaluates an Ast whose values may be lists or matrices, such as {1, 2, 3}×2+{4, 5, 6},
+// sum(seq(1, 100)) or inv({{1, 2}, {3, 4}}). Like ExpressionEvaluator it is one forward
+// pass over the nodes; a node's value is a number in scalars[node] or a primitive
+// double[] in lists[node], which for a matrix holds its entries row-major with the row
+// count in rows[node] (0 for a list). A list of equal-length lists is a matrix.
+// Element-wise operators are plain counted loops over the arrays with every check
+// hoisted out, the shape HotSpot's and ART's loop vectorizers compile to SIMD, and a
+// number meeting a list is applied to every element. Between matrices × is the matrix
+// product and ^ a matrix power, both from Matrix. A list read by only one node is
+// overwritten with that node's result, so a chain like (a×2+1)÷3 allocates one array
+// rather than one per operator. Nodes without list operands go through
+// ExpressionEvaluator.apply, and expressions without lists never come here (see
+// usesLists), so they keep ExpressionEvaluator's cost.
+final class ListEvaluator {
+    static final int MAX_LENGTH = 10_000_000;
+
+    private final Ast ast;
+    private final boolean degreeMode;
+    private final double[] scalars;
+    private final double[][] lists;
+    private final int[] rows;
+    // Number of nodes reading each node
+    private final int[] readers;
+
+    private ListEvaluator(Ast ast, boolean degreeMode) {
+        this.ast = ast;
+        this.degreeMode = degreeMode;
+        scalars = new double[ast.size];
+        lists = new double[ast.size][];
+        rows = new int[ast.size];
+        readers = new int[ast.size];
+        for (int node = 0; node < ast.size; node++) {
+            if (ast.left[node] != Ast.NONE) {
+                readers[ast.left[node]]++;
+            }
+            if (ast.right[node] != Ast.NONE) {
+                readers[ast.right[node]]++;
+            }
+        }
+    }
+
+    // True when the expression has a list literal or a list-valued function
+    static boolean usesLists(Ast ast) {
+        for (int node = 0; node < ast.size; node++) {
+            int kind = ast.kinds[node];
+            if (kind == Ast.LIST || kind == Ast.FUNCTION
+                    && (FunctionRegistry.get(ast.data[node]).flags & FunctionRegistry.LIST_RESULT) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static double[] evaluate(Ast ast, boolean degreeMode, double[] scalarResult) throws CalculationException {
+        return evaluate(ast, degreeMode, scalarResult, new int[1]);
+    }
+
+    // The list or matrix result, with the matrix row count in rowsResult[0] (0 for a
+    // list); or null with the numeric result in scalarResult[0]
+    static double[] evaluate(Ast ast, boolean degreeMode, double[] scalarResult, int[] rowsResult)
+            throws CalculationException {
+        if (ast.hasErrors()) {
+            throw ast.firstError();
+        }
+        ListEvaluator evaluator = new ListEvaluator(ast, degreeMode);
+        for (int node = 0; node < ast.size; node++) {
+            evaluator.apply(node);
+        }
+        double[] list = evaluator.list(ast.root);
+        scalarResult[0] = evaluator.scalars[ast.root];
+        rowsResult[0] = evaluator.rows[ast.root];
+        return list;
+    }
+
+    // The list value of a node, or null for a number. A chain of LIST cells is copied
+    // into an array when something uses it, so the cells inside a literal never copy
+    // the rest of the list.
+    private double[] list(int node) throws CalculationException {
+        if (node == Ast.NONE) {
+            return null;
+        }
+        if (ast.kinds[node] == Ast.LIST && lists[node] == null) {
+            int count = ast.data[node];
+            int first = ast.left[node];
+            double[] firstRow = list(first);
+            if (firstRow != null) {
+                lists[node] = matrix(node, count, firstRow.length);
+                rows[node] = count;
+                return lists[node];
+            }
+            double[] values = new double[count];
+            int cell = node;
+            for (int i = 0; i < count; i++) {
+                int element = ast.left[cell];
+                if (list(element) != null) {
+                    throw new CalculationException("Matrix rows must all be lists of the same length",
+                            ast.starts[element], ast.ends[element]);
+                }
+                values[i] = scalars[element];
+                cell = ast.right[cell];
+            }
+            lists[node] = values;
+        }
+        return lists[node];
+    }
+
+    // The entries of a literal whose elements are its rows
+    private double[] matrix(int node, int count, int columns) throws CalculationException {
+        if ((long) count * columns > MAX_LENGTH) {
+            throw new CalculationException("Lists are limited to " + MAX_LENGTH + " elements",
+                    ast.starts[node], ast.ends[node]);
+        }
+        double[] values = new double[count * columns];
+        int cell = node;
+        for (int i = 0; i < count; i++) {
+            int element = ast.left[cell];
+            double[] row = list(element);
+            if (row != null && rows[element] > 0) {
+                throw new CalculationException("Matrices can't contain matrices", ast.starts[element], ast.ends[element]);
+            }
+            if (row == null || row.length != columns) {
+                throw new CalculationException("Matrix rows must all be lists of the same length",
+                        ast.starts[element], ast.ends[element]);
+            }
+            System.arraycopy(row, 0, values, i * columns, columns);
+            cell = ast.right[cell];
+        }
+        return values;
+    }
+
+    private void apply(int node) throws CalculationException {
+        int kind = ast.kinds[node];
+        if (kind == Ast.LIST) {
+            return;
+        }
+        int left = ast.left[node];
+        int right = ast.right[node];
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+        double[] a = list(left);
+        double[] b = list(right);
+        double x = left == Ast.NONE ? 0 : scalars[left];
+        double y = right == Ast.NONE ? 0 : scalars[right];
+
+        if (kind == Ast.FUNCTION) {
+            int id = ast.data[node];
+            if (id == FunctionRegistry.SEQ) {
+                if (a != null || b != null) {
+                    throw new CalculationException("seq needs two numbers", start, end);
+                }
+                lists[node] = sequence(x, y, start, end);
+                return;
+            }
+            if (id == FunctionRegistry.IDENTITY) {
+                if (a != null || !(x >= 1 && x == Math.floor(x) && x * x <= MAX_LENGTH)) {
+                    throw new CalculationException("identity needs a size from 1 to " + (int) Math.sqrt(MAX_LENGTH),
+                            start, end);
+                }
+                rows[node] = (int) x;
+                lists[node] = Matrix.identity(rows[node]);
+                return;
+            }
+            int flags = FunctionRegistry.get(id).flags;
+            if (a != null && (flags & FunctionRegistry.LIST_REDUCTION) != 0) {
+                scalars[node] = reduce(id, a);
+                return;
+            }
+            if ((a != null || b != null) && (flags & FunctionRegistry.MATRIX_ARGUMENT) != 0) {
+                applyMatrixFunction(node, id, a, b);
+                return;
+            }
+        }
+        if (a == null && b == null) {
+            scalars[node] = ExpressionEvaluator.apply(ast, node, x, y, degreeMode);
+            return;
+        }
+        if ((a != null && rows[left] > 0 || b != null && rows[right] > 0) && applyMatrixOperator(node, a, b, y)) {
+            return;
+        }
+        if (a != null && b != null && (a.length != b.length || rows[left] != rows[right])) {
+            throw new CalculationException(rows[left] == 0 && rows[right] == 0
+                    ? "Lists have different lengths (" + a.length + " and " + b.length + ")"
+                    : "Sizes don't match (" + shape(left) + " and " + shape(right) + ")", start, end);
+        }
+        rows[node] = a != null ? rows[left] : rows[right];
+
+        // The kernels allow out to be one of their inputs
+        double[] out = a != null && readers[left] == 1 ? a
+                : b != null && readers[right] == 1 ? b
+                : new double[a != null ? a.length : b.length];
+        switch (kind) {
+            case Ast.NEGATE:
+                negate(a, out);
+                break;
+            case Ast.SQUARE:
+                multiply(a, a, out);
+                break;
+            case Ast.ADD:
+                if (a == null) {
+                    add(b, x, out);
+                } else if (b == null) {
+                    add(a, y, out);
+                } else {
+                    add(a, b, out);
+                }
+                break;
+            case Ast.SUBTRACT:
+                if (a == null) {
+                    subtract(x, b, out);
+                } else if (b == null) {
+                    add(a, -y, out);
+                } else {
+                    subtract(a, b, out);
+                }
+                break;
+            case Ast.MULTIPLY:
+                if (a == null) {
+                    multiply(b, x, out);
+                } else if (b == null) {
+                    multiply(a, y, out);
+                } else {
+                    multiply(a, b, out);
+                }
+                break;
+            case Ast.DIVIDE:
+                checkDivisors(b, y, start, end);
+                if (a == null) {
+                    divide(x, b, out);
+                } else if (b == null) {
+                    divide(a, y, out);
+                } else {
+                    divide(a, b, out);
+                }
+                break;
+            case Ast.POWER:
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = ExpressionEvaluator.applyBinaryOperator(Ast.POWER, a != null ? a[i] : x,
+                            b != null ? b[i] : y, start, end);
+                }
+                break;
+            case Ast.FACTORIAL:
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = ExpressionEvaluator.applyFactorial(a[i], start, end);
+                }
+                break;
+            case Ast.FUNCTION:
+                int id = ast.data[node];
+                if (FunctionRegistry.arity(id) == 1) {
+                    FunctionRegistry.applyAll(id, a, out, degreeMode, start, end);
+                } else {
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = FunctionRegistry.apply(id, a != null ? a[i] : x, b != null ? b[i] : y, degreeMode,
+                                start, end);
+                    }
+                }
+                break;
+            default:
+                throw new CalculationException("Lists can't be used here", start, end);
+        }
+        lists[node] = out;
+    }
+
+    // Operators whose meaning for matrices isn't element by element; false leaves the
+    // node to the element-wise path (a matrix with a number, or + and -)
+    private boolean applyMatrixOperator(int node, double[] a, double[] b, double y) throws CalculationException {
+        int left = ast.left[node];
+        int right = ast.right[node];
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+        switch (ast.kinds[node]) {
+            case Ast.MULTIPLY:
+                if (a == null || b == null) {
+                    return false;
+                }
+                // A list is a column vector on the right of a matrix and a row vector on its left
+                int n = rows[left] > 0 ? rows[left] : 1;
+                int m = a.length / n;
+                int p = rows[right] > 0 ? b.length / rows[right] : rows[left] > 0 ? 1 : b.length;
+                int bRows = rows[right] > 0 ? rows[right] : rows[left] > 0 ? b.length : 1;
+                if (m != bRows) {
+                    throw new CalculationException("Can't multiply " + shape(left) + " by " + shape(right), start, end);
+                }
+                lists[node] = Matrix.multiply(a, b, n, m, p);
+                rows[node] = rows[left] > 0 && rows[right] > 0 ? n : 0;
+                return true;
+            case Ast.SQUARE:
+            case Ast.POWER:
+                if (b != null) {
+                    throw new CalculationException("Exponents must be numbers", start, end);
+                }
+                double exponent = ast.kinds[node] == Ast.SQUARE ? 2 : y;
+                int size = squareSize(left, "A matrix power", start, end);
+                if (exponent != Math.rint(exponent) || Math.abs(exponent) > 1e9) {
+                    throw new CalculationException("Matrix powers need whole exponents", start, end);
+                }
+                lists[node] = Matrix.power(a, size, (long) exponent);
+                if (lists[node] == null) {
+                    throw new CalculationException("Matrix is singular", start, end);
+                }
+                rows[node] = size;
+                return true;
+            case Ast.DIVIDE:
+                if (b != null && rows[right] > 0) {
+                    throw new CalculationException("Can't divide by a matrix; multiply by inv() instead", start, end);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void applyMatrixFunction(int node, int id, double[] a, double[] b) throws CalculationException {
+        int left = ast.left[node];
+        int right = ast.right[node];
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+        String name = FunctionRegistry.name(id);
+        if (id == FunctionRegistry.TRANSPOSE) {
+            if (rows[left] == 0) {
+                throw new CalculationException(name + " needs a matrix", start, end);
+            }
+            lists[node] = Matrix.transpose(a, rows[left], a.length / rows[left]);
+            rows[node] = a.length / rows[left];
+            return;
+        }
+        int n = squareSize(left, name, start, end);
+        if (id == FunctionRegistry.DET) {
+            scalars[node] = Matrix.determinant(a, n);
+            return;
+        }
+        double[] result;
+        if (id == FunctionRegistry.SOLVE) {
+            if (b == null || b.length % n != 0 || (rows[right] > 0 ? rows[right] : b.length) != n) {
+                throw new CalculationException("solve needs a list or matrix with " + n + " rows", start, end);
+            }
+            result = Matrix.solve(a, n, b, b.length / n);
+            rows[node] = rows[right];
+        } else {
+            result = Matrix.inverse(a, n);
+            rows[node] = n;
+        }
+        if (result == null) {
+            throw new CalculationException("Matrix is singular", start, end);
+        }
+        lists[node] = result;
+    }
+
+    // Row count of a square matrix operand
+    private int squareSize(int node, String what, int start, int end) throws CalculationException {
+        int n = rows[node];
+        if (lists[node] == null || n == 0 || n * n != lists[node].length) {
+            throw new CalculationException(what + " needs a square matrix", start, end);
+        }
+        return n;
+    }
+
+    // "2×3" for a matrix, "list of 4" for a list
+    private String shape(int node) {
+        return rows[node] > 0
+                ? rows[node] + "×" + lists[node].length / rows[node]
+                : "list of " + lists[node].length;
+    }
+
+    private static double[] sequence(double from, double to, int start, int end) throws CalculationException {
+        if (!Double.isFinite(from) || !Double.isFinite(to)) {
+            throw new CalculationException("seq needs finite bounds", start, end);
+        }
+        double span = Math.floor(Math.abs(to - from));
+        if (span >= MAX_LENGTH) {
+            throw new CalculationException("Lists are limited to " + MAX_LENGTH + " elements", start, end);
+        }
+        double step = to >= from ? 1 : -1;
+        double[] values = new double[(int) span + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = from + i * step;
+        }
+        return values;
+    }
+
+    private static double reduce(int id, double[] values) {
+        if (id == FunctionRegistry.SUM) {
+            return sum(values);
+        } else if (id == FunctionRegistry.MEAN) {
+            return sum(values) / values.length;
+        } else if (id == FunctionRegistry.MEDIAN) {
+            return StatsData.quantile(values.clone(), 0.5);
+        } else if (id == FunctionRegistry.MIN) {
+            return min(values);
+        } else if (id == FunctionRegistry.MAX) {
+            return max(values);
+        }
+        return values.length;
+    }
+
+    // Kernels. Each is a single counted loop with no calls or branches in its body.
+
+    static void negate(double[] a, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = -a[i];
+        }
+    }
+
+    static void add(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    static void add(double[] a, double y, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] + y;
+        }
+    }
+
+    static void subtract(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    static void subtract(double x, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = x - b[i];
+        }
+    }
+
+    static void multiply(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    static void multiply(double[] a, double y, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] * y;
+        }
+    }
+
+    static void divide(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] / b[i];
+        }
+    }
+
+    static void divide(double[] a, double y, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] / y;
+        }
+    }
+
+    static void divide(double x, double[] b, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = x / b[i];
+        }
+    }
+
+    // Same rule as ExpressionEvaluator, checked for the whole divisor list up front
+    private static void checkDivisors(double[] b, double y, int start, int end) throws CalculationException {
+        boolean zero = false;
+        if (b == null) {
+            zero = Math.abs(y) < 1e-15;
+        } else {
+            for (double divisor : b) {
+                zero |= Math.abs(divisor) < 1e-15;
+            }
+        }
+        if (zero) {
+            throw new CalculationException("Division by zero", start, end);
+        }
+    }
+
+    // Floating-point addition isn't associative, so a single running sum can't be
+    // vectorized; four independent partial sums let consecutive adds overlap
+    static double sum(double[] values) {
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int i = 0;
+        for (; i + 3 < values.length; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < values.length; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static double min(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    static double max(double[] values) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
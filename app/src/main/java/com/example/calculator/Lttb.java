@@ -0,0 +1,89 @@
+package com.example.calculator;
+
+// Largest-Triangle-Three-Buckets downsampling for plotting. Keeps the first and last
+// point and, from each bucket in between, the point forming the largest triangle with
+// the previously kept point and the average of the next bucket, so peaks and corners
+// survive while flat runs collapse. NaN breaks split the input into runs that are
+// downsampled separately, each keeping its share of the budget, so gaps stay gaps.
+final class Lttb {
+
+    private Lttb() {}
+
+    // At most about threshold points; input with no more than that is returned as is
+    static GraphSampler.Samples downsample(GraphSampler.Samples in, int threshold) {
+        if (in.size <= threshold) {
+            return in;
+        }
+        GraphSampler.Samples out = new GraphSampler.Samples(threshold + 8);
+        int runStart = 0;
+        for (int i = 0; i <= in.size; i++) {
+            if (i < in.size && !Double.isNaN(in.ys[i])) {
+                continue;
+            }
+            int runLength = i - runStart;
+            if (runLength > 0) {
+                // A run's share of the budget, with room for both ends
+                int budget = Math.max(2, (int) ((long) threshold * runLength / in.size));
+                downsampleRun(in, runStart, runLength, budget, out);
+            }
+            if (i < in.size) {
+                out.add(in.xs[i], Double.NaN);
+            }
+            runStart = i + 1;
+        }
+        return out;
+    }
+
+    private static void downsampleRun(GraphSampler.Samples in, int start, int length, int threshold,
+                                      GraphSampler.Samples out) {
+        double[] xs = in.xs;
+        double[] ys = in.ys;
+        if (length <= threshold) {
+            for (int i = start; i < start + length; i++) {
+                out.add(xs[i], ys[i]);
+            }
+            return;
+        }
+        int end = start + length;
+        // Interior points split into threshold - 2 buckets
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int kept = start;
+        out.add(xs[kept], ys[kept]);
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int bucketStart = start + 1 + (int) (bucket * bucketSize);
+            int bucketEnd = start + 1 + (int) ((bucket + 1) * bucketSize);
+
+            // Average of the next bucket, or the last point for the final bucket
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min(end, start + 1 + (int) ((bucket + 2) * bucketSize));
+            if (bucket == threshold - 3 || nextStart >= nextEnd) {
+                nextStart = end - 1;
+                nextEnd = end;
+            }
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += xs[i];
+                averageY += ys[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            double keptX = xs[kept];
+            double keptY = ys[kept];
+            double maxArea = -1;
+            int chosen = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                // Twice the triangle's area; only the comparison matters
+                double area = Math.abs((keptX - averageX) * (ys[i] - keptY) - (keptX - xs[i]) * (averageY - keptY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            out.add(xs[chosen], ys[chosen]);
+            kept = chosen;
+        }
+        out.add(xs[end - 1], ys[end - 1]);
+    }
+}
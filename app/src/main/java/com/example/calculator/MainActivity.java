@@ -3,6 +3,8 @@ package com.example.calculator;
 import android.app.Dialog;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -18,13 +20,19 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.room.Dao;
 import androidx.room.Database;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Room;
+import androidx.room.Transaction;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.tracing.Trace;
 
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.textfield.TextInputEditText;
@@ -35,20 +43,25 @@ import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.Stack;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 // Room Database Entity
 import androidx.room.Entity;
 import androidx.room.PrimaryKey;
 import androidx.room.ColumnInfo;
+import androidx.room.Index;
 import androidx.room.RoomDatabase;
 
 import android.graphics.drawable.ColorDrawable;
@@ -60,8 +73,12 @@ import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
 
-// Room Database Entity
-@Entity(tableName = "calculation_history")
+// Room Database Entity. Next to the display strings, a row keeps the result as a
+// number for range queries (null when it isn't real) and the parsed expression in
+// AstCodec form (null when it didn't come from the expression parser). Repeating a
+// calculation doesn't add a row: the one (expression, result) row counts another use.
+@Entity(tableName = "calculation_history", indices = {@Index("result_value"),
+        @Index(value = {"expression", "result"}, unique = true), @Index("last_used")})
 class CalculationHistory {
     @PrimaryKey(autoGenerate = true)
     public int id;
@@ -75,28 +92,77 @@ class CalculationHistory {
     @ColumnInfo(name = "timestamp")
     public long timestamp;
 
+    @ColumnInfo(name = "result_value")
+    public Double resultValue;
+
+    @ColumnInfo(name = "compiled", typeAffinity = ColumnInfo.BLOB)
+    public byte[] compiled;
+
+    @ColumnInfo(name = "use_count")
+    public int useCount;
+
+    // When the calculation was last made; timestamp is when it was first made
+    @ColumnInfo(name = "last_used")
+    public long lastUsed;
+
     public CalculationHistory(String expression, String result, long timestamp) {
         this.expression = expression;
         this.result = result;
         this.timestamp = timestamp;
+        this.useCount = 1;
+        this.lastUsed = timestamp;
     }
 }
 
+// How often and how recently an expression was calculated, for autocomplete
+class ExpressionUsage {
+    public String expression;
+
+    @ColumnInfo(name = "use_count")
+    public int useCount;
+
+    @ColumnInfo(name = "last_used")
+    public long lastUsed;
+}
+
 // Room Database DAO
 @Dao
 interface CalculationHistoryDao {
-    @Insert
-    void insert(CalculationHistory calculation);
+    // -1 when the (expression, result) row already exists
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertIfNew(CalculationHistory calculation);
+
+    // Counts another use of an existing row, keeping its compiled form unless given a new one
+    @Query("UPDATE calculation_history SET use_count = use_count + 1, last_used = :now, "
+            + "compiled = IFNULL(:compiled, compiled) WHERE expression = :expression AND result = :result")
+    void markUsed(String expression, String result, long now, byte[] compiled);
+
+    // Saves a calculation, or records another use of the identical row
+    @Transaction
+    default void record(CalculationHistory calculation) {
+        if (insertIfNew(calculation) == -1) {
+            markUsed(calculation.expression, calculation.result, calculation.lastUsed, calculation.compiled);
+        }
+    }
 
-    @Query("SELECT * FROM calculation_history ORDER BY timestamp DESC LIMIT 50")
+    @Query("SELECT * FROM calculation_history ORDER BY last_used DESC LIMIT 50")
     List<CalculationHistory> getRecentCalculations();
 
-    @Query("SELECT * FROM calculation_history ORDER BY timestamp DESC")
+    @Query("SELECT * FROM calculation_history ORDER BY last_used DESC")
     List<CalculationHistory> getAllCalculations();
 
-    @Query("SELECT * FROM calculation_history WHERE expression LIKE :searchQuery OR result LIKE :searchQuery ORDER BY timestamp DESC LIMIT 50")
+    @Query("SELECT * FROM calculation_history WHERE expression LIKE :searchQuery OR result LIKE :searchQuery ORDER BY last_used DESC LIMIT 50")
     List<CalculationHistory> searchCalculations(String searchQuery);
 
+    // Up to limit expressions, most recently used first, with their uses over all results
+    @Query("SELECT expression, SUM(use_count) AS use_count, MAX(last_used) AS last_used "
+            + "FROM calculation_history GROUP BY expression ORDER BY last_used DESC LIMIT :limit")
+    List<ExpressionUsage> getExpressionUsage(int limit);
+
+    // Ids of rows whose result lies in [low, high], using the result_value index
+    @Query("SELECT id FROM calculation_history WHERE result_value BETWEEN :low AND :high")
+    List<Integer> findIdsByResultRange(double low, double high);
+
     @Query("DELETE FROM calculation_history WHERE id = :id")
     void deleteById(int id);
 
@@ -105,13 +171,219 @@ interface CalculationHistoryDao {
 
     @Query("SELECT COUNT(*) FROM calculation_history")
     int getHistoryCount();
+
+    // Estimated bytes held by history rows: their text and compiled form plus about
+    // 40 bytes of fixed columns and record overhead each
+    @Query("SELECT IFNULL(SUM(LENGTH(expression) + LENGTH(result) + IFNULL(LENGTH(compiled), 0) + 40), 0) "
+            + "FROM calculation_history")
+    long getHistoryBytes();
+
+    // last_used of the row at offset in most recently used order, or null past the end
+    @Query("SELECT last_used FROM calculation_history ORDER BY last_used DESC LIMIT 1 OFFSET :offset")
+    Long getLastUsedAt(int offset);
+
+    // Deletes up to limit of the rows last used at or before cutoff, oldest first
+    @Query("DELETE FROM calculation_history WHERE id IN (SELECT id FROM calculation_history "
+            + "WHERE last_used <= :cutoff ORDER BY last_used LIMIT :limit)")
+    int deleteUsedUntil(long cutoff, int limit);
+}
+
+// One line of the calculation tape; values are recomputed from the expressions on load
+@Entity(tableName = "tape_lines")
+class TapeLine {
+    // Zero-based line index, shown as L(position + 1)
+    @PrimaryKey
+    public int position;
+
+    @ColumnInfo(name = "expression")
+    public String expression;
+
+    public TapeLine(int position, String expression) {
+        this.position = position;
+        this.expression = expression;
+    }
+}
+
+@Dao
+interface TapeLineDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(TapeLine line);
+
+    @Query("SELECT * FROM tape_lines ORDER BY position")
+    List<TapeLine> getAllLines();
+
+    @Query("DELETE FROM tape_lines")
+    void clearTape();
+}
+
+// One chunk of the statistics data list, its values packed as little-endian doubles,
+// so adding a value rewrites one row rather than the whole list
+@Entity(tableName = "stats_chunks")
+class StatsChunk {
+    // Chunk index; chunk i holds values i × StatsData.CHUNK_SIZE onwards
+    @PrimaryKey
+    public int position;
+
+    @ColumnInfo(name = "data_values")
+    public byte[] values;
+
+    public StatsChunk(int position, byte[] values) {
+        this.position = position;
+        this.values = values;
+    }
+}
+
+@Dao
+interface StatsChunkDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(List<StatsChunk> chunks);
+
+    @Query("SELECT * FROM stats_chunks ORDER BY position")
+    List<StatsChunk> getAllChunks();
+
+    @Query("DELETE FROM stats_chunks WHERE position >= :position")
+    void deleteFrom(int position);
+
+    // Writes the changed chunks and drops those past the end, so no save is seen half done
+    @Transaction
+    default void save(List<StatsChunk> chunks, int chunkCount) {
+        upsert(chunks);
+        deleteFrom(chunkCount);
+    }
+}
+
+// A ResultMemo entry on disk: the value of a canonical expression key, the engine
+// version that computed it, and how long that took
+@Entity(tableName = "result_memo", indices = {@Index("last_hit")})
+class MemoEntry {
+    @PrimaryKey
+    @NonNull
+    public String key;
+
+    @ColumnInfo(name = "engine_version")
+    public int engineVersion;
+
+    @ColumnInfo(name = "value")
+    public double value;
+
+    @ColumnInfo(name = "cost_nanos")
+    public long costNanos;
+
+    @ColumnInfo(name = "last_hit")
+    public long lastHit;
+
+    public MemoEntry(@NonNull String key, int engineVersion, double value, long costNanos, long lastHit) {
+        this.key = key;
+        this.engineVersion = engineVersion;
+        this.value = value;
+        this.costNanos = costNanos;
+        this.lastHit = lastHit;
+    }
+}
+
+@Dao
+interface MemoEntryDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(MemoEntry entry);
+
+    @Query("SELECT * FROM result_memo WHERE engine_version = :engineVersion ORDER BY last_hit DESC LIMIT :limit")
+    List<MemoEntry> getRecent(int engineVersion, int limit);
+
+    @Query("UPDATE result_memo SET last_hit = :time WHERE `key` IN (:keys)")
+    void markHits(List<String> keys, long time);
+
+    // Drops entries computed by other engine versions, which may no longer hold
+    @Query("DELETE FROM result_memo WHERE engine_version <> :engineVersion")
+    int deleteOtherVersions(int engineVersion);
+
+    // Keeps the keep most recently hit entries
+    @Query("DELETE FROM result_memo WHERE `key` IN "
+            + "(SELECT `key` FROM result_memo ORDER BY last_hit DESC LIMIT -1 OFFSET :keep)")
+    int trim(int keep);
 }
 
 // Room Database
-@Database(entities = {CalculationHistory.class}, version = 1, exportSchema = false)
+@Database(entities = {CalculationHistory.class, TapeLine.class, StatsChunk.class, MemoEntry.class}, version = 6,
+        exportSchema = false)
 abstract class CalculationDatabase extends RoomDatabase {
     public abstract CalculationHistoryDao calculationHistoryDao();
 
+    public abstract TapeLineDao tapeLineDao();
+
+    public abstract StatsChunkDao statsChunkDao();
+
+    public abstract MemoEntryDao memoEntryDao();
+
+    // Version 2 adds the tape next to the history
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `tape_lines` "
+                    + "(`position` INTEGER NOT NULL, `expression` TEXT, PRIMARY KEY(`position`))");
+        }
+    };
+
+    // Version 3 adds the statistics data list
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `stats_chunks` "
+                    + "(`position` INTEGER NOT NULL, `data_values` BLOB, PRIMARY KEY(`position`))");
+        }
+    };
+
+    // Version 4 adds the numeric result and compiled expression to history rows. Older
+    // rows get a result_value when their result is a plain decimal number; their
+    // compiled form stays null and they are parsed when reused.
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `calculation_history` ADD COLUMN `result_value` REAL");
+            database.execSQL("ALTER TABLE `calculation_history` ADD COLUMN `compiled` BLOB");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_calculation_history_result_value` "
+                    + "ON `calculation_history` (`result_value`)");
+            database.execSQL("UPDATE `calculation_history` SET `result_value` = CAST(`result` AS REAL) "
+                    + "WHERE `result` <> '' AND `result` NOT GLOB '*[^0-9.E+-]*'");
+        }
+    };
+
+    // Version 5 collapses identical (expression, result) rows into one with a use count
+    // and last use time. The table is rebuilt, since SQLite can't add the unique index
+    // while duplicates remain; each group keeps its newest id and compiled form.
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE `calculation_history_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`expression` TEXT, `result` TEXT, `timestamp` INTEGER NOT NULL, `result_value` REAL, "
+                    + "`compiled` BLOB, `use_count` INTEGER NOT NULL, `last_used` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO `calculation_history_new` SELECT `newest`.`id`, `newest`.`expression`, "
+                    + "`newest`.`result`, `groups`.`first_used`, `newest`.`result_value`, `newest`.`compiled`, "
+                    + "`groups`.`uses`, `groups`.`last_used` FROM (SELECT MAX(`id`) AS `id`, "
+                    + "MIN(`timestamp`) AS `first_used`, MAX(`timestamp`) AS `last_used`, COUNT(*) AS `uses` "
+                    + "FROM `calculation_history` GROUP BY `expression`, `result`) AS `groups` "
+                    + "JOIN `calculation_history` AS `newest` ON `newest`.`id` = `groups`.`id`");
+            database.execSQL("DROP TABLE `calculation_history`");
+            database.execSQL("ALTER TABLE `calculation_history_new` RENAME TO `calculation_history`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_calculation_history_result_value` "
+                    + "ON `calculation_history` (`result_value`)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_calculation_history_expression_result` "
+                    + "ON `calculation_history` (`expression`, `result`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_calculation_history_last_used` "
+                    + "ON `calculation_history` (`last_used`)");
+        }
+    };
+
+    // Version 6 adds the result memo
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `result_memo` (`key` TEXT NOT NULL, "
+                    + "`engine_version` INTEGER NOT NULL, `value` REAL NOT NULL, `cost_nanos` INTEGER NOT NULL, "
+                    + "`last_hit` INTEGER NOT NULL, PRIMARY KEY(`key`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_result_memo_last_hit` ON `result_memo` (`last_hit`)");
+        }
+    };
+
     private static volatile CalculationDatabase INSTANCE;
 
     static CalculationDatabase getDatabase(final android.content.Context context) {
@@ -120,6 +392,7 @@ abstract class CalculationDatabase extends RoomDatabase {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                                     CalculationDatabase.class, "calculation_database")
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
                             .build();
                 }
             }
@@ -129,16 +402,58 @@ abstract class CalculationDatabase extends RoomDatabase {
 }
 
 // History Adapter for RecyclerView
-class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder> {
-    private List<CalculationHistory> historyList = new ArrayList<>();
-    private List<CalculationHistory> filteredHistoryList = new ArrayList<>();
+class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHolder>
+        implements MinuteTicker.OnMinuteTickListener {
+    // Change payload that only refreshes the relative timestamp of a row
+    static final Object PAYLOAD_TIMESTAMP = new Object();
+
+    // Loaded rows are kept column-wise in an immutable store; the adapter only holds
+    // ascending row indexes: every row not deleted yet, and the rows currently shown
+    private HistoryStore store = HistoryStore.EMPTY;
+    private int[] allRows = new int[0];
+    private int[] visibleRows = new int[0];
     private OnHistoryItemClickListener listener;
     private OnHistoryItemActionListener actionListener;
+    private ResultRangeQuery resultRangeQuery;
     private boolean isLandscapeMode = false;
     private Set<Integer> pendingDeletions = new HashSet<>();
-
-    public List<CalculationHistory> getFilteredHistoryList() {
-        return new ArrayList<>(filteredHistoryList);
+    private final RelativeTimeFormatter timeFormatter = new RelativeTimeFormatter();
+    private RecyclerView recyclerView;
+
+    // Searches run one at a time off the main thread. A newer query or list change bumps
+    // the generation, which cancels in-flight work and drops its stale result.
+    private static final ThreadPoolExecutor SEARCH_EXECUTOR = createSearchExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private String currentQuery = "";
+
+    // Owned by the search thread
+    private HistoryStore searchIndexStore;
+    private HistorySearchIndex searchIndex;
+    private String lastSearchQuery = "";
+    private int[] lastSearchMatches;
+
+    // Ticks only while the list is on screen, so a dismissed dialog stops refreshing
+    private final View.OnAttachStateChangeListener tickerAttachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(@NonNull View v) {
+            MinuteTicker.register(HistoryAdapter.this);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(@NonNull View v) {
+            MinuteTicker.unregister(HistoryAdapter.this);
+        }
+    };
+
+    // Position of the item in the current (filtered) list, or -1
+    public int findPosition(int itemId) {
+        for (int i = 0; i < visibleRows.length; i++) {
+            if (store.id(visibleRows[i]) == itemId) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public boolean isDeletionPending(int itemId) {
@@ -160,8 +475,18 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHold
 
     public interface OnHistoryItemActionListener {
         void onCopyResult(String result);
-        void onDeleteItem(CalculationHistory item, int position);
-        void onUseExpression(String expression);
+        void onDeleteItem(int itemId, int position);
+        void onUseExpression(String expression, byte[] program);
+    }
+
+    // Ids of the history rows whose result value lies in [low, high]; runs on the
+    // search thread
+    public interface ResultRangeQuery {
+        List<Integer> findIds(double low, double high);
+    }
+
+    public void setResultRangeQuery(ResultRangeQuery resultRangeQuery) {
+        this.resultRangeQuery = resultRangeQuery;
     }
 
     public void setLandscapeMode(boolean landscapeMode) {
@@ -176,43 +501,117 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHold
         this.actionListener = actionListener;
     }
 
-    public void setHistoryList(List<CalculationHistory> historyList) {
-        this.historyList = historyList;
-        this.filteredHistoryList = new ArrayList<>(historyList);
+    public void setHistoryStore(HistoryStore store) {
+        this.store = store;
+        this.allRows = store.allRows();
+        this.visibleRows = allRows;
+        searchGeneration.incrementAndGet();
+        rebuildSearchIndex(store);
         notifyDataSetChanged();
+        if (!currentQuery.isEmpty()) {
+            filter(currentQuery);
+        }
     }
 
     public void removeItem(int position) {
-        if (position >= 0 && position < filteredHistoryList.size()) {
-            CalculationHistory removedItem = filteredHistoryList.get(position);
-            filteredHistoryList.remove(position);
+        if (position >= 0 && position < visibleRows.length) {
+            int removedRow = visibleRows[position];
+            visibleRows = removeAt(visibleRows, position);
+
+            // Also remove from the full list
+            int index = Arrays.binarySearch(allRows, removedRow);
+            if (index >= 0) {
+                allRows = removeAt(allRows, index);
+            }
 
-            // Also remove from the main list if it exists there
-            historyList.removeIf(item -> item.id == removedItem.id);
+            // Drop in-flight results that may still contain the removed row
+            searchGeneration.incrementAndGet();
 
             notifyItemRemoved(position);
 
             // If the list is now empty, trigger a refresh to show empty state
-            if (filteredHistoryList.isEmpty()) {
+            if (visibleRows.length == 0) {
                 notifyDataSetChanged();
+            } else if (!currentQuery.isEmpty()) {
+                filter(currentQuery);
             }
         }
     }
 
+    private static int[] removeAt(int[] rows, int index) {
+        int[] result = new int[rows.length - 1];
+        System.arraycopy(rows, 0, result, 0, index);
+        System.arraycopy(rows, index + 1, result, index, rows.length - index - 1);
+        return result;
+    }
+
     public void filter(String searchText) {
-        filteredHistoryList.clear();
-        if (searchText.isEmpty()) {
-            filteredHistoryList.addAll(historyList);
-        } else {
-            String searchLower = searchText.toLowerCase();
-            for (CalculationHistory item : historyList) {
-                if (item.expression.toLowerCase().contains(searchLower) ||
-                        item.result.toLowerCase().contains(searchLower)) {
-                    filteredHistoryList.add(item);
+        currentQuery = searchText;
+        String query = HistorySearchIndex.normalize(searchText);
+        double[] range = resultRangeQuery == null ? null : HistorySearchIndex.valueRange(searchText);
+        int generation = searchGeneration.incrementAndGet();
+        HistoryStore searchedStore = store;
+        int[] oldRows = visibleRows;
+        int[] presentRows = allRows;
+
+        Metrics.recordQueueDepth(Metrics.QUEUE_SEARCH, SEARCH_EXECUTOR.getQueue().size());
+        SEARCH_EXECUTOR.execute(() -> {
+            BooleanSupplier cancelled = () -> searchGeneration.get() != generation;
+            if (searchIndexStore != searchedStore || cancelled.getAsBoolean()) {
+                return;
+            }
+
+            int[] matches;
+            long start = Metrics.begin(Metrics.HISTORY_SEARCH);
+            if (range != null) {
+                // Result comparisons such as "> 1000" go to the indexed result_value column
+                matches = searchedStore.rowsWithIds(resultRangeQuery.findIds(range[0], range[1]));
+                Metrics.end(Metrics.HISTORY_SEARCH, start);
+                lastSearchQuery = "";
+                lastSearchMatches = null;
+            } else {
+                // A query that extends the previous one only needs to re-check its matches
+                int[] candidates = !lastSearchQuery.isEmpty() && query.startsWith(lastSearchQuery)
+                        ? lastSearchMatches : null;
+                matches = searchIndex.search(query, candidates, cancelled);
+                Metrics.end(Metrics.HISTORY_SEARCH, start);
+                if (matches == null) {
+                    Metrics.increment(Metrics.SEARCHES_CANCELLED);
+                    return;
                 }
+                lastSearchQuery = query;
+                lastSearchMatches = matches;
             }
-        }
-        notifyDataSetChanged();
+
+            // The index covers the whole store; leave out rows deleted since it was built
+            int[] newRows = HistorySearchIndex.intersect(matches, presentRows);
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new HistoryDiffCallback(oldRows, newRows), false);
+
+            mainHandler.post(() -> {
+                if (searchGeneration.get() != generation) {
+                    return;
+                }
+                visibleRows = newRows;
+                diff.dispatchUpdatesTo(HistoryAdapter.this);
+            });
+        });
+    }
+
+    // Builds the lowercased, trigram-indexed snapshot searched by filter()
+    private void rebuildSearchIndex(HistoryStore store) {
+        SEARCH_EXECUTOR.execute(() -> {
+            searchIndex = new HistorySearchIndex(store);
+            searchIndexStore = store;
+            lastSearchQuery = "";
+            lastSearchMatches = null;
+        });
+    }
+
+    private static ThreadPoolExecutor createSearchExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     @NonNull
@@ -220,153 +619,197 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHold
     public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.history_item_modern, parent, false);
-        return new HistoryViewHolder(view);
+        HistoryViewHolder holder = new HistoryViewHolder(view);
+        setupListeners(holder);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
-        CalculationHistory calculation = filteredHistoryList.get(position);
+        int row = visibleRows[position];
 
         // Set the expression and result
-        holder.expressionText.setText(calculation.expression);
-        holder.resultText.setText("= " + calculation.result);
+        holder.expressionText.setText(store.expression(row));
+        holder.resultText.setText(store.displayResult(row));
 
         // Format and set timestamp
-        holder.timestampText.setText(getRelativeTimeString(calculation.timestamp));
+        holder.timestampText.setText(store.relativeTime(row, System.currentTimeMillis(), timeFormatter));
+        MinuteTicker.tickBy(store.relativeTimeUntil(row));
 
         // Handle quick actions in landscape mode
-
         if (holder.quickActionButtons != null) {
             holder.quickActionButtons.setVisibility(View.VISIBLE);
-            setupQuickActions(holder, calculation, position);
         }
 
         holder.actionButtonsContainer.setVisibility(View.GONE);
+    }
 
-        holder.itemView.setOnLongClickListener(v -> {
-            boolean isVisible = holder.actionButtonsContainer.getVisibility() == View.VISIBLE;
-            holder.actionButtonsContainer.setVisibility(isVisible ? View.GONE : View.VISIBLE);
-            return true;
-        });
+    @Override
+    public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !isTimestampOnly(payloads)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int row = visibleRows[position];
+        holder.timestampText.setText(store.relativeTime(row, System.currentTimeMillis(), timeFormatter));
+        MinuteTicker.tickBy(store.relativeTimeUntil(row));
+    }
 
-        setupStandardListeners(holder, calculation);
+    private static boolean isTimestampOnly(List<Object> payloads) {
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_TIMESTAMP) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void setupQuickActions(HistoryViewHolder holder, CalculationHistory calculation, int position) {
-        if (holder.quickDeleteButton != null) {
-            holder.quickDeleteButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    // Use the actual item from filteredHistoryList instead of position
-                    int currentPosition = holder.getBindingAdapterPosition();
-                    if (currentPosition != RecyclerView.NO_POSITION && currentPosition < filteredHistoryList.size()) {
-                        CalculationHistory itemToDelete = filteredHistoryList.get(currentPosition);
-                        actionListener.onDeleteItem(itemToDelete, currentPosition);
-                    }
-                }
-            });
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+        recyclerView.addOnAttachStateChangeListener(tickerAttachListener);
+        if (recyclerView.isAttachedToWindow()) {
+            MinuteTicker.register(this);
         }
+    }
 
-        if (holder.quickUseButton != null) {
-            holder.quickUseButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    actionListener.onUseExpression(calculation.expression);
-                }
-            });
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnAttachStateChangeListener(tickerAttachListener);
+        MinuteTicker.unregister(this);
+        this.recyclerView = null;
+    }
+
+    // Sends a timestamp-only payload to the visible rows whose label crossed
+    // a minute/hour/day/week boundary since they were bound, and returns when the
+    // next of the others does; rebinding reports the refreshed rows' deadlines
+    @Override
+    public long onMinuteTick(long now) {
+        long next = Long.MAX_VALUE;
+        if (recyclerView == null) {
+            return next;
+        }
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            HistoryViewHolder holder = (HistoryViewHolder) recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            int row = getBoundRow(holder);
+            if (row < 0) {
+                continue;
+            }
+            if (store.relativeTimeExpired(row, now)) {
+                notifyItemChanged(holder.getBindingAdapterPosition(), PAYLOAD_TIMESTAMP);
+            } else {
+                next = Math.min(next, store.relativeTimeUntil(row));
+            }
         }
+        return next;
+    }
 
-        if (holder.deleteButton != null) {
-            holder.deleteButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    // Use the actual item from filteredHistoryList instead of position
-                    int currentPosition = holder.getBindingAdapterPosition();
-                    if (currentPosition != RecyclerView.NO_POSITION && currentPosition < filteredHistoryList.size()) {
-                        CalculationHistory itemToDelete = filteredHistoryList.get(currentPosition);
-                        actionListener.onDeleteItem(itemToDelete, currentPosition);
-                    }
-                }
-            });
+    // Returns the store row currently bound to the holder, or -1 while it is being removed
+    private int getBoundRow(HistoryViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        if (position == RecyclerView.NO_POSITION || position >= visibleRows.length) {
+            return -1;
         }
+        return visibleRows[position];
     }
 
-    private void setupStandardListeners(HistoryViewHolder holder, CalculationHistory calculation) {
+    // Listeners are attached once per ViewHolder and resolve the bound row when clicked,
+    // so binding a recycled row doesn't allocate anything
+    private void setupListeners(HistoryViewHolder holder) {
         // Main item click
         holder.itemView.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onHistoryItemClick(calculation.result);
+            int row = getBoundRow(holder);
+            if (listener != null && row >= 0) {
+                listener.onHistoryItemClick(store.result(row));
             }
         });
 
+        holder.itemView.setOnLongClickListener(v -> {
+            boolean isVisible = holder.actionButtonsContainer.getVisibility() == View.VISIBLE;
+            holder.actionButtonsContainer.setVisibility(isVisible ? View.GONE : View.VISIBLE);
+            return true;
+        });
+
         // Expression click
         holder.expressionText.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onExpressionClick(calculation.expression);
+            int row = getBoundRow(holder);
+            if (listener != null && row >= 0) {
+                listener.onExpressionClick(store.expression(row));
             }
         });
 
         // Copy button
         holder.copyButton.setOnClickListener(v -> {
-            if (actionListener != null) {
-                actionListener.onCopyResult(calculation.result);
+            int row = getBoundRow(holder);
+            if (actionListener != null && row >= 0) {
+                actionListener.onCopyResult(store.result(row));
             }
         });
 
-        // Action button listeners (for expanded view)
+        // Use expression (expanded view and landscape quick action)
+        View.OnClickListener useListener = v -> {
+            int row = getBoundRow(holder);
+            if (actionListener != null && row >= 0) {
+                actionListener.onUseExpression(store.expression(row), store.program(row));
+            }
+        };
         if (holder.useExpressionButton != null) {
-            holder.useExpressionButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    actionListener.onUseExpression(calculation.expression);
-                }
-            });
+            holder.useExpressionButton.setOnClickListener(useListener);
+        }
+        if (holder.quickUseButton != null) {
+            holder.quickUseButton.setOnClickListener(useListener);
         }
 
+        // Delete (expanded view and landscape quick action)
+        View.OnClickListener deleteListener = v -> {
+            int row = getBoundRow(holder);
+            if (actionListener != null && row >= 0) {
+                actionListener.onDeleteItem(store.id(row), holder.getBindingAdapterPosition());
+            }
+        };
         if (holder.deleteButton != null) {
-            holder.deleteButton.setOnClickListener(v -> {
-                if (actionListener != null) {
-                    actionListener.onDeleteItem(calculation, holder.getAdapterPosition());
-                }
-            });
+            holder.deleteButton.setOnClickListener(deleteListener);
+        }
+        if (holder.quickDeleteButton != null) {
+            holder.quickDeleteButton.setOnClickListener(deleteListener);
         }
     }
 
     @Override
     public int getItemCount() {
-        return filteredHistoryList.size();
+        return visibleRows.length;
     }
 
-    private String getRelativeTimeString(long timestamp) {
-        long now = System.currentTimeMillis();
-        long diff = now - timestamp;
-
-        long seconds = diff / 1000;
-        long minutes = seconds / 60;
-        long hours = minutes / 60;
-        long days = hours / 24;
-        long weeks = days / 7;
-        long months = days / 30;
-
-        if (seconds < 60) {
-            return "Just now";
-        } else if (minutes < 60) {
-            return minutes == 1 ? "1 minute ago" : minutes + " minutes ago";
-        } else if (hours < 24) {
-            return hours == 1 ? "1 hour ago" : hours + " hours ago";
-        } else if (days < 7) {
-            return days == 1 ? "1 day ago" : days + " days ago";
-        } else if (weeks < 4) {
-            return weeks == 1 ? "1 week ago" : weeks + " weeks ago";
-        } else {
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(timestamp);
-            Calendar now_cal = Calendar.getInstance();
+    private static class HistoryDiffCallback extends DiffUtil.Callback {
+        private final int[] oldRows;
+        private final int[] newRows;
 
-            SimpleDateFormat sdf;
-            if (cal.get(Calendar.YEAR) == now_cal.get(Calendar.YEAR)) {
-                sdf = new SimpleDateFormat("MMM dd, HH:mm", Locale.getDefault());
-            } else {
-                sdf = new SimpleDateFormat("MMM dd, yyyy, HH:mm", Locale.getDefault());
-            }
+        HistoryDiffCallback(int[] oldRows, int[] newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.length;
+        }
 
-            return sdf.format(new Date(timestamp));
+        @Override
+        public int getNewListSize() {
+            return newRows.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldRows[oldItemPosition] == newRows[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // Store rows are immutable, so the same row means the same content
+            return true;
         }
     }
 
@@ -398,58 +841,6 @@ class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.HistoryViewHold
     }
 }
 
-// Token class for expression parsing
-class Token {
-    enum Type { NUMBER, OPERATOR, FUNCTION, PARENTHESIS, CONSTANT }
-
-    Type type;
-    String value;
-    double numValue;
-    int precedence;
-    boolean rightAssociative;
-
-    Token(Type type, String value) {
-        this.type = type;
-        this.value = value;
-        this.rightAssociative = false;
-
-        if (type == Type.NUMBER || type == Type.CONSTANT) {
-            try {
-                this.numValue = Double.parseDouble(value);
-            } catch (NumberFormatException e) {
-                this.numValue = 0;
-            }
-        }
-
-        if (type == Type.OPERATOR) {
-            switch (value) {
-                case "+":
-                case "-":
-                    this.precedence = 1;
-                    break;
-                case "*":
-                case "/":
-                case "×":
-                case "÷":
-                    this.precedence = 2;
-                    break;
-                case "^":
-                    this.precedence = 3;
-                    this.rightAssociative = true;
-                    break;
-                case "²":
-                case "!":
-                    this.precedence = 4;
-                    break;
-                default:
-                    this.precedence = 0;
-            }
-        } else if (type == Type.FUNCTION) {
-            this.precedence = 4;
-        }
-    }
-}
-
 public class MainActivity extends AppCompatActivity {
 
     // UI Components
@@ -465,13 +856,84 @@ public class MainActivity extends AppCompatActivity {
     private boolean isDegreeMode = true;
     private boolean hasDecimalPoint = false;
 
-    // Database
-    private CalculationDatabase database;
-    private ExecutorService executor;
+    // Calculation modes, cycled by the mode button. Exact mode evaluates + - × ÷ and
+    // integer powers over fractions (RationalEvaluator); the last exact result can be
+    // flipped between fraction and decimal by tapping it. Complex mode allows i and
+    // complex results (ComplexEvaluator). Programmer mode evaluates integer words in
+    // long arithmetic (ProgrammerEvaluator); tapping its result switches the base.
+    private static final int MODE_DECIMAL = 0;
+    private static final int MODE_EXACT = 1;
+    private static final int MODE_COMPLEX = 2;
+    private static final int MODE_PROGRAMMER = 3;
+    private static final String[] MODE_LABELS = {"DEC", "EXACT", "CPLX", "PROG"};
+    private int calculationMode = MODE_DECIMAL;
+    private boolean showFraction = true;
+    private Rational exactResult;
+    // Real and imaginary part of the last complex-mode result, noise already dropped
+    private final double[] complexResult = new double[2];
+    private boolean isComplexResultDisplayed = false;
+    // The shown result is a list; its display may be abridged, so reuse takes the expression
+    private boolean isListResultDisplayed = false;
+    // Programmer mode: input and display base, word size and signedness, and the last
+    // result, kept as a word so switching bases never re-evaluates
+    private static final int[] PROGRAMMER_BASES = {16, 10, 8, 2};
+    private static final String[] PROGRAMMER_BASE_LABELS = {"HEX", "DEC", "OCT", "BIN"};
+    private int programmerBase = 10;
+    private int programmerBits = 64;
+    private boolean programmerSigned = true;
+    private long programmerResult;
+    private boolean isProgrammerResultDisplayed = false;
+    // Unit of the shown conversion result; its number is in ANS
+    private String resultUnit;
+
+    // Last evaluated expression, re-evaluated without parsing when a variable it reads
+    // changes; the real value of the displayed result (NaN when it isn't real); and the
+    // result text ANS was set from, so chaining reuses the unrounded value via ANS
+    private Ast resultAst;
+    private double resultValue = Double.NaN;
+    private String ansText;
+    // Ast decoded from the history entry picked with "use expression", reused instead
+    // of parsing while the input is still exactly that expression
+    private Ast reusedAst;
+
+    // Past expressions for the autocomplete strip, loaded when the UI is first idle;
+    // calculations made before that wait in pendingSuggestions
+    private AutocompleteTrie suggestionTrie;
+    private final List<String> pendingSuggestions = new ArrayList<>();
+
+    // Results of pure expressions; the disk tier is merged in when the UI is first idle
+    private final ResultMemo resultMemo = new ResultMemo();
+
+    // Calculation tape, loaded from Room the first time it's opened
+    private Tape tape;
+
+    // Statistics data list, likewise loaded on first use
+    private StatsData stats;
+
+    // Background executor, created on first use so it stays off the startup path.
+    // The Room database is opened lazily by the first task that needs it (see getDatabase).
+    private ThreadPoolExecutor executor;
+
+    // Stats and tape writes, run one at a time in the order they were made, so a clear
+    // can't overtake the add queued before it. Shared by every instance so writes from a
+    // destroyed activity still land before the next one reads. Created on first use.
+    private static ThreadPoolExecutor writeExecutor;
+
+    // Solving and integration get their own thread, so a long run doesn't hold up the
+    // history saves queued on executor. Also created on first use.
+    private ThreadPoolExecutor numericExecutor;
+    // Cancels the numeric run in progress and stops its progress poll, or null
+    private Runnable cancelNumeric;
+
+    // Created on first use; resolves theme colors from the display
+    private ExpressionHighlighter highlighter;
 
     // Scroll Views for display
     private HorizontalScrollView displayScrollView;
     private HorizontalScrollView expressionScrollView;
+    // Autocomplete strip; only in layouts that have one
+    private HorizontalScrollView suggestionScrollView;
+    private TextView[] suggestionViews;
 
     // Auto-scroll state tracking
     private boolean userScrolledDisplay = false;
@@ -490,26 +952,191 @@ public class MainActivity extends AppCompatActivity {
     private static final String STATE_DISPLAY_TEXT = "display_text";
     private static final String STATE_EXPRESSION_TEXT = "expression_text";
     private static final String STATE_HAS_DECIMAL = "has_decimal";
+    private static final String STATE_CALCULATION_MODE = "calculation_mode";
+    private static final String STATE_SHOW_FRACTION = "show_fraction";
+    private static final String STATE_VARIABLE_NAMES = "variable_names";
+    private static final String STATE_VARIABLE_VALUES = "variable_values";
+    private static final String STATE_ANS_TEXT = "ans_text";
+    private static final String STATE_PROGRAMMER_BASE = "programmer_base";
+    private static final String STATE_PROGRAMMER_BITS = "programmer_bits";
+    private static final String STATE_PROGRAMMER_SIGNED = "programmer_signed";
+
+    // Settings kept across launches
+    private static final String PREFS_NAME = "calculator_settings";
+    private static final String PREF_HISTORY_RETENTION = "history_retention";
+
+    // Inputs evaluated while the main thread is idle after startup, so the first real
+    // calculation doesn't pay for class loading and JIT of the parser, every operator
+    // and function path and the result formatter
+    private static final String[] WARM_UP_EXPRESSIONS = {
+            "12+3×4-5÷2", "2^10", "√(16)+ln(e)", "sin(30)+cos(60)×tan(45)", "log(1000)", "5!+3²", "1÷3"
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
+        Trace.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+
+            Trace.beginSection("setContentView");
+            setContentView(R.layout.activity_main);
+            Trace.endSection();
+
+            initializeViews();
+
+            // Restore state if available
+            if (savedInstanceState != null) {
+                restoreState(savedInstanceState);
+            }
 
-        // Initialize database and executor
-        database = CalculationDatabase.getDatabase(this);
-        executor = Executors.newFixedThreadPool(2);
+            // Only the basic keypad is wired before the first frame
+            Trace.beginSection("setupButtonListeners");
+            setupButtonListeners();
+            Trace.endSection();
 
-        initializeViews();
+            // Messages posted from onCreate run after the first traversal, so the
+            // scientific (landscape) controls are wired once the keypad is on screen
+            new Handler(Looper.getMainLooper()).post(this::setupScientificControls);
+            Looper.myQueue().addIdleHandler(this::warmUpEvaluator);
+        } finally {
+            Trace.endSection();
+        }
+    }
 
-        // Restore state if available
-        if (savedInstanceState != null) {
-            restoreState(savedInstanceState);
+    private void setupScientificControls() {
+        Trace.beginSection("setupScientificControls");
+        try {
+            setupScientificButtons();
+            updateFunctionButtonLabels();
+            updateDegreeRadianButton();
+        } finally {
+            Trace.endSection();
         }
+    }
 
-        setupButtonListeners();
-        updateFunctionButtonLabels();
-        updateDegreeRadianButton();
+    private boolean warmUpEvaluator() {
+        if (isFinishing()) {
+            return false;
+        }
+        Trace.beginSection("warmUpEvaluator");
+        try {
+            // Resolves the unit definitions and builds the conversion tables
+            UnitRegistry.standard();
+            // Not recorded, so the cold runs stay out of the evaluation counts and latencies.
+            // Other threads' recordings during these few milliseconds are dropped too.
+            boolean recording = Metrics.isEnabled();
+            Metrics.setEnabled(false);
+            try {
+                for (String expression : WARM_UP_EXPRESSIONS) {
+                    try {
+                        formatResult(evaluateExpression(expression));
+                    } catch (CalculationException ignored) {
+                        // Warm-up only; results are discarded
+                    }
+                }
+            } finally {
+                Metrics.setEnabled(recording);
+            }
+            runInBackground(this::compactHistory);
+            runInBackground(this::loadSuggestions);
+            runInBackground(this::loadResultMemo);
+        } finally {
+            Trace.endSection();
+        }
+        // One-shot
+        return false;
+    }
+
+    private void runInBackground(Runnable task) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        }
+        executor.execute(task);
+        Metrics.recordQueueDepth(Metrics.QUEUE_BACKGROUND, executor.getQueue().size());
+    }
+
+    // Runs a write after every write queued before it; main thread only
+    private void runWrite(Runnable task) {
+        if (writeExecutor == null) {
+            writeExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            writeExecutor.allowCoreThreadTimeOut(true);
+        }
+        writeExecutor.execute(task);
+    }
+
+    // Applies the retention policy to the stored history and reclaims the freed space.
+    // Nothing happens until the user picks a limit. Call from executor tasks only.
+    private void compactHistory() {
+        HistoryRetention policy = historyRetention();
+        if (policy.isUnlimited()) {
+            return;
+        }
+        CalculationDatabase database = getDatabase();
+        int deleted = HistoryCompactor.compact(database.calculationHistoryDao(), policy,
+                System.currentTimeMillis(), this::isFinishing);
+        Metrics.add(Metrics.HISTORY_COMPACTED, deleted);
+        HistoryCompactor.reclaim(database.getOpenHelper().getWritableDatabase());
+    }
+
+    // Builds the autocomplete trie from history off the main thread, then hands it over
+    private void loadSuggestions() {
+        AutocompleteTrie trie = new AutocompleteTrie();
+        for (ExpressionUsage usage : getDatabase().calculationHistoryDao()
+                .getExpressionUsage(AutocompleteTrie.MAX_ENTRIES)) {
+            trie.add(usage.expression, usage.useCount, usage.lastUsed);
+        }
+        runOnUiThread(() -> {
+            long now = System.currentTimeMillis();
+            for (String expression : pendingSuggestions) {
+                trie.record(expression, now);
+            }
+            pendingSuggestions.clear();
+            suggestionTrie = trie;
+        });
+    }
+
+    // Shows the best ranked past expressions that extend input; main thread only
+    private void updateSuggestions(String input) {
+        if (suggestionScrollView == null) {
+            return;
+        }
+        String[] suggestions = suggestionTrie == null || input.isEmpty() || isResultDisplayed
+                || calculationMode == MODE_PROGRAMMER
+                ? new String[0] : suggestionTrie.complete(input, suggestionViews.length);
+        for (int i = 0; i < suggestionViews.length; i++) {
+            if (i < suggestions.length) {
+                suggestionViews[i].setText(suggestions[i]);
+                suggestionViews[i].setVisibility(View.VISIBLE);
+            } else {
+                suggestionViews[i].setVisibility(View.GONE);
+            }
+        }
+        // Invisible rather than gone, so the display doesn't jump as suggestions come and go
+        suggestionScrollView.setVisibility(suggestions.length > 0 ? View.VISIBLE : View.INVISIBLE);
+        suggestionScrollView.scrollTo(0, 0);
+    }
+
+    // Drops stale and excess memo rows, then loads the most recently hit into memory
+    private void loadResultMemo() {
+        MemoEntryDao dao = getDatabase().memoEntryDao();
+        dao.deleteOtherVersions(ResultMemo.ENGINE_VERSION);
+        dao.trim(ResultMemo.DISK_CAPACITY);
+        List<MemoEntry> rows = dao.getRecent(ResultMemo.ENGINE_VERSION, ResultMemo.CAPACITY);
+        runOnUiThread(() -> resultMemo.load(rows));
+    }
+
+    private int historyRetentionIndex() {
+        return getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getInt(PREF_HISTORY_RETENTION, HistoryRetention.DEFAULT_PRESET);
+    }
+
+    private HistoryRetention historyRetention() {
+        return HistoryRetention.preset(historyRetentionIndex());
+    }
+
+    // Call from executor tasks only: the first call builds and opens the Room database
+    private CalculationDatabase getDatabase() {
+        return CalculationDatabase.getDatabase(this);
     }
 
     @Override
@@ -525,6 +1152,14 @@ public class MainActivity extends AppCompatActivity {
         outState.putString(STATE_DISPLAY_TEXT, displayText.getText().toString());
         outState.putString(STATE_EXPRESSION_TEXT, expressionText.getText().toString());
         outState.putBoolean(STATE_HAS_DECIMAL, hasDecimalPoint);
+        outState.putInt(STATE_CALCULATION_MODE, calculationMode);
+        outState.putBoolean(STATE_SHOW_FRACTION, showFraction);
+        outState.putStringArray(STATE_VARIABLE_NAMES, Variables.names());
+        outState.putDoubleArray(STATE_VARIABLE_VALUES, Variables.values());
+        outState.putString(STATE_ANS_TEXT, ansText);
+        outState.putInt(STATE_PROGRAMMER_BASE, programmerBase);
+        outState.putInt(STATE_PROGRAMMER_BITS, programmerBits);
+        outState.putBoolean(STATE_PROGRAMMER_SIGNED, programmerSigned);
     }
 
     private void restoreState(Bundle savedInstanceState) {
@@ -534,6 +1169,17 @@ public class MainActivity extends AppCompatActivity {
         isInverseModeActive = savedInstanceState.getBoolean(STATE_IS_INVERSE_MODE, false);
         isDegreeMode = savedInstanceState.getBoolean(STATE_IS_DEGREE_MODE, true);
         hasDecimalPoint = savedInstanceState.getBoolean(STATE_HAS_DECIMAL, false);
+        calculationMode = savedInstanceState.getInt(STATE_CALCULATION_MODE, MODE_DECIMAL);
+        showFraction = savedInstanceState.getBoolean(STATE_SHOW_FRACTION, true);
+        String[] variableNames = savedInstanceState.getStringArray(STATE_VARIABLE_NAMES);
+        double[] variableValues = savedInstanceState.getDoubleArray(STATE_VARIABLE_VALUES);
+        if (variableNames != null && variableValues != null) {
+            Variables.restore(variableNames, variableValues);
+        }
+        ansText = savedInstanceState.getString(STATE_ANS_TEXT);
+        programmerBase = savedInstanceState.getInt(STATE_PROGRAMMER_BASE, 10);
+        programmerBits = savedInstanceState.getInt(STATE_PROGRAMMER_BITS, 64);
+        programmerSigned = savedInstanceState.getBoolean(STATE_PROGRAMMER_SIGNED, true);
 
         String displayTextValue = savedInstanceState.getString(STATE_DISPLAY_TEXT, "0");
         String expressionTextValue = savedInstanceState.getString(STATE_EXPRESSION_TEXT, "");
@@ -552,6 +1198,15 @@ public class MainActivity extends AppCompatActivity {
         historyButton = findViewById(R.id.btnHistory);
         displayScrollView = findViewById(R.id.displayScrollView);
         expressionScrollView = findViewById(R.id.expressionScrollView);
+        suggestionScrollView = findViewById(R.id.suggestionScrollView);
+        if (suggestionScrollView != null) {
+            suggestionViews = new TextView[]{
+                    findViewById(R.id.suggestion1), findViewById(R.id.suggestion2), findViewById(R.id.suggestion3)
+            };
+            for (TextView view : suggestionViews) {
+                view.setOnClickListener(v -> useExpression(((TextView) v).getText().toString(), null));
+            }
+        }
 
         // Set initial display only if not restoring state
         if (displayText.getText().toString().isEmpty()) {
@@ -627,7 +1282,7 @@ public class MainActivity extends AppCompatActivity {
         setNumberButtonListener(R.id.btn9, "9");
 
         // Decimal point
-        findViewById(R.id.btnDecimal).setOnClickListener(v -> appendDecimal());
+        setKeyListener(findViewById(R.id.btnDecimal), this::appendDecimal);
 
         // Basic operations
         setOperatorButtonListener(R.id.btnAdd, "+");
@@ -636,17 +1291,45 @@ public class MainActivity extends AppCompatActivity {
         setOperatorButtonListener(R.id.btnDivide, "÷");
 
         // Control buttons
-        findViewById(R.id.btnClear).setOnClickListener(v -> clearAll());
+        setKeyListener(findViewById(R.id.btnClear), this::clearAll);
         findViewById(R.id.btnEquals).setOnClickListener(v -> calculateResult());
+        // Long-press = for memory registers, ANS and variables
+        findViewById(R.id.btnEquals).setOnLongClickListener(v -> {
+            showMemoryDialog();
+            return true;
+        });
 
         // Percentage button
         findViewById(R.id.btnPercent).setOnClickListener(v -> addPercentage());
 
-        // History button
+        // Calculation mode; tapping an exact result switches fraction and decimal
+        Button modeButton = findViewById(R.id.btnMode);
+        modeButton.setOnClickListener(v -> cycleCalculationMode());
+        // Long-press the mode button for the calculation tape
+        modeButton.setOnLongClickListener(v -> {
+            openTape();
+            return true;
+        });
+        updateModeButton();
+        displayText.setOnClickListener(v -> toggleFractionDisplay());
+        // Programmer mode keeps its extra keys and settings behind a long-press of the display
+        displayText.setOnLongClickListener(v -> {
+            if (calculationMode != MODE_PROGRAMMER) {
+                return false;
+            }
+            showProgrammerPicker();
+            return true;
+        });
+
+        // History button; long-press opens the hidden metrics screen
         historyButton.setOnClickListener(v -> showHistoryModal());
+        historyButton.setOnLongClickListener(v -> {
+            showMetricsDialog();
+            return true;
+        });
 
-        // Scientific functions (landscape only)
-        setupScientificButtons();
+        // Scientific functions (landscape only) are wired after the first frame,
+        // see setupScientificControls
     }
 
     private void setupScientificButtons() {
@@ -680,6 +1363,16 @@ public class MainActivity extends AppCompatActivity {
             btnSqrt.setOnClickListener(v -> addScientificFunction("√"));
         }
 
+        for (int id : new int[]{R.id.btnSin, R.id.btnCos, R.id.btnTan, R.id.btnLog, R.id.btnLn, R.id.btnSqrt}) {
+            View button = findViewById(id);
+            if (button != null) {
+                button.setOnLongClickListener(v -> {
+                    showFunctionPicker();
+                    return true;
+                });
+            }
+        }
+
         Button btnPower = findViewById(R.id.btnPower);
         if (btnPower != null) {
             btnPower.setOnClickListener(v -> addOperator("^"));
@@ -710,7 +1403,7 @@ public class MainActivity extends AppCompatActivity {
         // Backspace
         Button btnBackspace = findViewById(R.id.btnBackspace);
         if (btnBackspace != null) {
-            btnBackspace.setOnClickListener(v -> backspace());
+            setKeyListener(btnBackspace, this::backspace);
         }
 
         // Mode toggles
@@ -737,11 +1430,20 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setNumberButtonListener(int buttonId, String number) {
-        findViewById(buttonId).setOnClickListener(v -> appendNumber(number));
+        setKeyListener(findViewById(buttonId), () -> appendNumber(number));
     }
 
     private void setOperatorButtonListener(int buttonId, String operator) {
-        findViewById(buttonId).setOnClickListener(v -> addOperator(operator));
+        setKeyListener(findViewById(buttonId), () -> addOperator(operator));
+    }
+
+    // Keypad input, timed as a keystroke span
+    private void setKeyListener(View button, Runnable action) {
+        button.setOnClickListener(v -> {
+            long start = Metrics.begin(Metrics.KEYSTROKE);
+            action.run();
+            Metrics.end(Metrics.KEYSTROKE, start);
+        });
     }
 
     private void appendNumber(String number) {
@@ -764,6 +1466,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void appendDecimal() {
+        if (calculationMode == MODE_PROGRAMMER) {
+            Toast.makeText(this, "Programmer mode works with integers", Toast.LENGTH_SHORT).show();
+            return;
+        }
         if (isResultDisplayed) {
             clearAll();
             isResultDisplayed = false;
@@ -800,7 +1506,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void addOperator(String operator) {
         if (isResultDisplayed) {
-            currentExpression = displayText.getText().toString();
+            currentExpression = displayedResultOperand();
             currentNumber = "";
             hasDecimalPoint = false;
             isResultDisplayed = false;
@@ -827,17 +1533,17 @@ public class MainActivity extends AppCompatActivity {
 
     private void appendOperator(String operator) {
         if (isResultDisplayed) {
-            if (operator.equals("(")) {
+            if (operator.equals("(") || operator.equals("{")) {
                 clearAll();
             } else {
-                currentExpression = displayText.getText().toString();
+                currentExpression = displayedResultOperand();
                 currentNumber = "";
                 hasDecimalPoint = false;
                 isResultDisplayed = false;
             }
         }
 
-        if (!currentNumber.isEmpty() && !operator.equals("(")) {
+        if (!currentNumber.isEmpty() && !operator.equals("(") && !operator.equals("{")) {
             currentExpression += currentNumber;
             currentNumber = "";
             hasDecimalPoint = false;
@@ -848,11 +1554,6 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void addScientificFunction(String function) {
-        if (isResultDisplayed) {
-            clearAll();
-            isResultDisplayed = false;
-        }
-
         String actualFunction = function;
         if (isInverseModeActive) {
             switch (function) {
@@ -865,23 +1566,83 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
+        insertFunction(actualFunction);
+    }
+
+    private void insertFunction(String function) {
+        if (isResultDisplayed) {
+            clearAll();
+            isResultDisplayed = false;
+        }
+
         if (!currentNumber.isEmpty()) {
             currentExpression += currentNumber;
             currentNumber = "";
             hasDecimalPoint = false;
         }
 
-        if (actualFunction.equals("x²")) {
+        if (function.equals("x²")) {
             currentExpression += "²";
-        } else if (actualFunction.equals("10^") || actualFunction.equals("e^")) {
-            currentExpression = actualFunction + "(" + currentExpression + ")";
+        } else if (function.equals("10^") || function.equals("e^")) {
+            currentExpression = function + "(" + currentExpression + ")";
         } else {
-            currentExpression += actualFunction + "(";
+            currentExpression += function + "(";
         }
 
         updateDisplay();
     }
 
+    // Long-pressing a function key lists every registered function, including the
+    // ones without a key of their own
+    private void showFunctionPicker() {
+        if (calculationMode == MODE_PROGRAMMER) {
+            showProgrammerPicker();
+            return;
+        }
+        int count = FunctionRegistry.count();
+        String[] items = new String[count + 10];
+        for (int id = 0; id < count; id++) {
+            items[id] = FunctionRegistry.name(id) + (FunctionRegistry.arity(id) == 2 ? "(a, b)" : "(x)");
+        }
+        items[count] = ",  argument separator";
+        items[count + 1] = "i  imaginary unit (CPLX mode)";
+        items[count + 2] = "x  graph variable";
+        items[count + 3] = "Graph y = f(x)";
+        items[count + 4] = "Solve f(x) = 0";
+        items[count + 5] = "Integrate f(x) dx";
+        items[count + 6] = "Statistics";
+        items[count + 7] = "{  start a list";
+        items[count + 8] = "}  end a list";
+        items[count + 9] = "Units and conversion";
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Functions")
+                .setItems(items, (d, which) -> {
+                    if (which < count) {
+                        insertFunction(FunctionRegistry.name(which));
+                    } else if (which == count) {
+                        appendOperator(",");
+                    } else if (which == count + 1) {
+                        appendConstant("i");
+                    } else if (which == count + 2) {
+                        Variables.define(GraphFunction.VARIABLE);
+                        appendConstant(GraphFunction.VARIABLE);
+                    } else if (which == count + 3) {
+                        showGraph();
+                    } else if (which == count + 6) {
+                        openStats();
+                    } else if (which == count + 7) {
+                        appendOperator("{");
+                    } else if (which == count + 8) {
+                        appendOperator("}");
+                    } else if (which == count + 9) {
+                        showUnitPicker();
+                    } else {
+                        showNumericDialog(which == count + 5);
+                    }
+                })
+                .show();
+    }
+
     private void addPercentage() {
         if (!currentNumber.isEmpty()) {
             try {
@@ -906,7 +1667,7 @@ public class MainActivity extends AppCompatActivity {
                     Toast.makeText(this, "Factorial only works with non-negative integers ≤ 170", Toast.LENGTH_SHORT).show();
                     return;
                 }
-                double result = factorial((int) value);
+                double result = ExpressionEvaluator.factorial((int) value);
                 String resultStr = formatResult(result);
 
                 saveCalculationToHistory(displayValue + "!", resultStr);
@@ -942,18 +1703,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private double factorial(int n) {
-        if (n < 0) return Double.NaN;
-        if (n == 0 || n == 1) return 1;
-        if (n > 170) return Double.POSITIVE_INFINITY; // Prevent overflow
-
-        double result = 1;
-        for (int i = 2; i <= n; i++) {
-            result *= i;
-        }
-        return result;
-    }
-
     private void clearAll() {
         currentExpression = "";
         currentNumber = "";
@@ -961,6 +1710,8 @@ public class MainActivity extends AppCompatActivity {
         displayText.setText("0");
         expressionText.setText("");
         isResultDisplayed = false;
+        isProgrammerResultDisplayed = false;
+        resultUnit = null;
 
         // Reset scroll states and position properly
         userScrolledDisplay = false;
@@ -1007,6 +1758,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void calculateResult() {
         String fullExpression = currentExpression + currentNumber;
+        updateSuggestions("");
         if (fullExpression.isEmpty() || fullExpression.trim().isEmpty()) {
             if (!currentNumber.isEmpty()) {
                 displayText.setText(currentNumber);
@@ -1015,12 +1767,34 @@ public class MainActivity extends AppCompatActivity {
             }
             return;
         }
+        if (calculationMode == MODE_PROGRAMMER) {
+            calculateProgrammerResult(fullExpression);
+            return;
+        }
+        if (UnitConversion.isConversion(fullExpression)) {
+            calculateConversion(fullExpression);
+            return;
+        }
 
+        // One parse feeds both evaluation and the error highlight
+        Ast ast = parseInput(fullExpression.trim());
+        if (ast == reusedAst) {
+            Metrics.increment(Metrics.COMPILED_REUSES);
+        }
         try {
-            double result = evaluateExpression(fullExpression);
-            String resultStr = formatResult(result);
+            String resultStr = evaluateForDisplay(ast);
+            if (ast.assignment != null) {
+                if (Double.isNaN(resultValue)) {
+                    throw new CalculationException("Variables hold real numbers only");
+                }
+                int slot = Variables.define(ast.assignment);
+                Variables.set(slot, resultValue);
+                notifyTape(slot);
+            }
+            setAns(resultStr);
+            resultAst = ast;
 
-            saveCalculationToHistory(fullExpression, resultStr);
+            saveCalculationToHistory(fullExpression, resultStr, ast, resultValue);
 
             displayText.setText(resultStr);
             expressionText.setText(fullExpression + " =");
@@ -1030,14 +1804,249 @@ public class MainActivity extends AppCompatActivity {
             hasDecimalPoint = false;
             isResultDisplayed = true;
 
-        } catch (Exception e) {
+        } catch (CalculationException e) {
+            displayText.setText("Error");
+            expressionText.setText(getHighlighter().highlightErrors(ast, e));
+            Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        } catch (RuntimeException e) {
+            // A bug rather than a bad expression; shown as before instead of closing the app
             displayText.setText("Error");
             expressionText.setText("Invalid expression");
             Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
 
+    private void calculateConversion(String fullExpression) {
+        UnitConversion conversion;
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            conversion = UnitConversion.evaluate(fullExpression.trim(), UnitRegistry.standard(), isDegreeMode);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            displayText.setText("Error");
+            expressionText.setText(fullExpression);
+            Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
+        }
+        showComputedResult(fullExpression + " =", conversion.value);
+        resultUnit = conversion.unit;
+        String resultStr = displayText.getText() + " " + resultUnit;
+        displayText.setText(resultStr);
+        saveCalculationToHistory(fullExpression, resultStr, null, conversion.value);
+    }
+
+    private void calculateProgrammerResult(String fullExpression) {
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            programmerResult = ProgrammerEvaluator.evaluate(fullExpression.trim(), programmerBase, programmerBits,
+                    programmerSigned);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            displayText.setText("Error");
+            expressionText.setText(fullExpression);
+            Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
+        }
+        String resultStr = IntegerFormat.format(programmerResult, programmerBase, programmerBits, programmerSigned);
+        saveCalculationToHistory(fullExpression, resultStr, null, programmerResult);
+        exactResult = null;
+        isComplexResultDisplayed = false;
+        isListResultDisplayed = false;
+        isProgrammerResultDisplayed = true;
+        resultUnit = null;
+        resultAst = null;
+        resultValue = Double.NaN;
+        displayText.setText(resultStr);
+        expressionText.setText(fullExpression + " =   " + formatProgrammerBases(programmerResult));
+        currentExpression = "";
+        currentNumber = "";
+        hasDecimalPoint = false;
+        isResultDisplayed = true;
+    }
+
+    // The word in every base at once, e.g. "HEX FF · DEC 255 · OCT 377 · BIN 1111 1111"
+    private String formatProgrammerBases(long value) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < PROGRAMMER_BASES.length; i++) {
+            text.append(i > 0 ? " · " : "").append(PROGRAMMER_BASE_LABELS[i]).append(' ')
+                    .append(IntegerFormat.grouped(value, PROGRAMMER_BASES[i], programmerBits, programmerSigned));
+        }
+        return text.toString();
+    }
+
+    // Switches the programmer base, showing the current result in it
+    private void cycleProgrammerBase() {
+        int index = 0;
+        while (PROGRAMMER_BASES[index] != programmerBase) {
+            index++;
+        }
+        index = (index + 1) % PROGRAMMER_BASES.length;
+        programmerBase = PROGRAMMER_BASES[index];
+        if (isResultDisplayed && isProgrammerResultDisplayed) {
+            displayText.setText(IntegerFormat.format(programmerResult, programmerBase, programmerBits,
+                    programmerSigned));
+        } else {
+            Toast.makeText(this, PROGRAMMER_BASE_LABELS[index] + " input", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Word size or signedness changed: the shown result is truncated or reinterpreted to match
+    private void updateProgrammerWord() {
+        programmerResult = ProgrammerEvaluator.wrap(programmerResult, programmerBits, programmerSigned);
+        if (isResultDisplayed && isProgrammerResultDisplayed) {
+            displayText.setText(IntegerFormat.format(programmerResult, programmerBase, programmerBits,
+                    programmerSigned));
+            expressionText.setText(formatProgrammerBases(programmerResult));
+        }
+    }
+
+    // Inserts " to " or a unit name; units are listed by category
+    private void showUnitPicker() {
+        UnitRegistry units = UnitRegistry.standard();
+        String[] items = new String[units.count() + 1];
+        items[0] = "to  convert to";
+        for (int i = 0; i < units.count(); i++) {
+            items[i + 1] = units.symbol(i) + "  " + units.category(i);
+        }
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Units")
+                .setItems(items, (d, which) ->
+                        appendOperator(which == 0 ? " to " : " " + units.symbol(which - 1)))
+                .show();
+    }
+
+    // Hex digits, bitwise operators and the word settings, which the keypad doesn't have
+    private void showProgrammerPicker() {
+        String[] keys = {"A", "B", "C", "D", "E", "F", " and ", " or ", " xor ", "not ", " << ", " >> ",
+                " rol ", " ror ", " mod "};
+        String[] items = new String[keys.length + 3];
+        for (int i = 0; i < keys.length; i++) {
+            items[i] = keys[i].trim();
+        }
+        int base = 0;
+        while (PROGRAMMER_BASES[base] != programmerBase) {
+            base++;
+        }
+        items[keys.length] = "Base: " + PROGRAMMER_BASE_LABELS[base];
+        items[keys.length + 1] = "Word: " + programmerBits + "-bit";
+        items[keys.length + 2] = programmerSigned ? "Signed" : "Unsigned";
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Programmer")
+                .setItems(items, (d, which) -> {
+                    if (which < 6) {
+                        appendNumber(keys[which]);
+                    } else if (which < keys.length) {
+                        appendOperator(keys[which]);
+                    } else if (which == keys.length) {
+                        cycleProgrammerBase();
+                    } else if (which == keys.length + 1) {
+                        int[] sizes = ProgrammerEvaluator.WORD_SIZES;
+                        int index = 0;
+                        while (sizes[index] != programmerBits) {
+                            index++;
+                        }
+                        programmerBits = sizes[(index + 1) % sizes.length];
+                        updateProgrammerWord();
+                    } else {
+                        programmerSigned = !programmerSigned;
+                        updateProgrammerWord();
+                    }
+                })
+                .show();
+    }
+
+    // Evaluates in the current calculation mode, leaving the value in resultValue
+    // (and exactResult or complexResult), and returns the text to display
+    private String evaluateForDisplay(Ast ast) throws CalculationException {
+        exactResult = null;
+        isComplexResultDisplayed = false;
+        isListResultDisplayed = false;
+        isProgrammerResultDisplayed = false;
+        resultUnit = null;
+        resultValue = Double.NaN;
+        if (calculationMode != MODE_COMPLEX && ListEvaluator.usesLists(ast)) {
+            return evaluateList(ast);
+        }
+        if (calculationMode == MODE_COMPLEX) {
+            evaluateComplex(ast);
+            String text = formatComplexResult();
+            isComplexResultDisplayed = true;
+            if (complexResult[1] == 0) {
+                resultValue = complexResult[0];
+            }
+            return text;
+        }
+        exactResult = calculationMode == MODE_EXACT ? evaluateExact(ast) : null;
+        if (exactResult != null) {
+            resultValue = exactResult.doubleValue();
+            return formatExactResult(exactResult);
+        }
+        resultValue = evaluateMemoized(ast);
+        return formatResult(resultValue);
+    }
+
+    // evaluateExpression through the result memo. Hits cost building the key and a
+    // lookup; new results that took well over that are remembered. Both tiers are
+    // updated off the main thread, hit times a batch at a time.
+    private double evaluateMemoized(Ast ast) throws CalculationException {
+        long start = System.nanoTime();
+        String key = ResultMemo.key(ast, isDegreeMode);
+        if (key == null) {
+            return evaluateExpression(ast);
+        }
+        long keyNanos = System.nanoTime() - start;
+        ResultMemo.Entry hit = resultMemo.get(key, keyNanos);
+        if (hit != null) {
+            if (resultMemo.pendingHits() >= ResultMemo.HIT_BATCH) {
+                flushMemoHits();
+            }
+            return hit.value;
+        }
+        start = System.nanoTime();
+        double value = evaluateExpression(ast);
+        long cost = System.nanoTime() - start;
+        if (resultMemo.put(key, value, cost, keyNanos)) {
+            MemoEntry entry = new MemoEntry(key, ResultMemo.ENGINE_VERSION, value, cost,
+                    System.currentTimeMillis());
+            runInBackground(() -> getDatabase().memoEntryDao().upsert(entry));
+        }
+        return value;
+    }
+
+    // Writes the last_hit time of the memo entries hit since the last flush
+    private void flushMemoHits() {
+        if (resultMemo.pendingHits() == 0) {
+            return;
+        }
+        List<String> keys = resultMemo.drainHits();
+        long now = System.currentTimeMillis();
+        runInBackground(() -> getDatabase().memoEntryDao().markHits(keys, now));
+    }
+
+    private void setAns(String resultText) {
+        if (!Double.isNaN(resultValue)) {
+            Variables.set(Variables.ANS, resultValue);
+            ansText = resultText;
+            notifyTape(Variables.ANS);
+        }
+    }
+
     private String formatResult(double result) {
+        long start = Metrics.begin(Metrics.FORMAT_RESULT);
+        try {
+            return formatResultTimed(result);
+        } finally {
+            Metrics.end(Metrics.FORMAT_RESULT, start);
+        }
+    }
+
+    private String formatResultTimed(double result) {
         if (Double.isNaN(result)) {
             return "NaN";
         }
@@ -1060,14 +2069,536 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private String formatExactResult(Rational result) {
+        long start = Metrics.begin(Metrics.FORMAT_RESULT);
+        try {
+            return showFraction ? result.toFractionString() : result.toDecimalString();
+        } finally {
+            Metrics.end(Metrics.FORMAT_RESULT, start);
+        }
+    }
+
+    // The shown result as the start of a new expression; fractions and a+bi are
+    // parenthesized so 1/3 followed by ^2 squares the whole fraction
+    private String displayedResultOperand() {
+        if (isListResultDisplayed && resultAst != null) {
+            return "(" + resultAst.source + ")";
+        }
+        if (resultUnit != null) {
+            return Variables.name(Variables.ANS);
+        }
+        if (isProgrammerResultDisplayed) {
+            String result = IntegerFormat.format(programmerResult, programmerBase, programmerBits, programmerSigned);
+            return programmerResult < 0 && programmerBase == 10 && programmerSigned ? "(" + result + ")" : result;
+        }
+        String result = displayText.getText().toString();
+        // Decimal results are shown rounded; ANS carries the full value
+        if (calculationMode == MODE_DECIMAL && result.equals(ansText)) {
+            return Variables.name(Variables.ANS);
+        }
+        boolean fraction = exactResult != null && showFraction && !exactResult.isInteger();
+        boolean sum = isComplexResultDisplayed && complexResult[0] != 0 && complexResult[1] != 0;
+        return fraction || sum ? "(" + result + ")" : result;
+    }
+
+    // a+bi with parts formatted like real results. A part below 1e-15 of the other is
+    // rounding noise (e^(iπ) is -1, not -1+1.2E-16i) and is dropped.
+    private String formatComplexResult() {
+        if (Math.abs(complexResult[1]) < 1e-15 * Math.abs(complexResult[0])) {
+            complexResult[1] = 0;
+        } else if (Math.abs(complexResult[0]) < 1e-15 * Math.abs(complexResult[1])) {
+            complexResult[0] = 0;
+        }
+        double re = complexResult[0];
+        double im = complexResult[1];
+        if (im == 0) {
+            return formatResult(re);
+        }
+        String imaginary = Math.abs(im) == 1 ? "i" : formatResult(Math.abs(im)) + "i";
+        if (re == 0) {
+            return im < 0 ? "-" + imaginary : imaginary;
+        }
+        return formatResult(re) + (im < 0 ? "-" : "+") + imaginary;
+    }
+
+    private void showMemoryDialog() {
+        final int fixedItems = 6;
+        int namedCount = Variables.count() - 2;
+        String[] items = new String[fixedItems + namedCount];
+        items[0] = "MR  recall memory (" + formatResult(Variables.get(Variables.MEMORY)) + ")";
+        items[1] = "M+  add to memory";
+        items[2] = "M−  subtract from memory";
+        items[3] = "MC  clear memory";
+        items[4] = "ANS  last answer (" + formatResult(Variables.get(Variables.ANS)) + ")";
+        items[5] = "Store value as variable…";
+        for (int i = 0; i < namedCount; i++) {
+            int slot = i + 2;
+            items[fixedItems + i] = Variables.name(slot) + " = " + formatResult(Variables.get(slot));
+        }
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Memory and variables")
+                .setItems(items, (d, which) -> {
+                    switch (which) {
+                        case 0:
+                            appendConstant(Variables.name(Variables.MEMORY));
+                            break;
+                        case 1:
+                        case 2:
+                            addToMemory(which == 1 ? 1 : -1);
+                            break;
+                        case 3:
+                            setVariable(Variables.MEMORY, 0);
+                            break;
+                        case 4:
+                            appendConstant(Variables.name(Variables.ANS));
+                            break;
+                        case 5:
+                            promptForVariableName();
+                            break;
+                        default:
+                            appendConstant(Variables.name(which - fixedItems + 2));
+                    }
+                })
+                .show();
+    }
+
+    private void addToMemory(int sign) {
+        try {
+            double memory = Variables.get(Variables.MEMORY) + sign * currentValue();
+            setVariable(Variables.MEMORY, memory);
+            Toast.makeText(this, "M = " + formatResult(memory), Toast.LENGTH_SHORT).show();
+        } catch (CalculationException e) {
+            Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void promptForVariableName() {
+        android.widget.EditText input = new android.widget.EditText(this);
+        input.setSingleLine();
+        input.setHint("Name, e.g. x");
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Store value as")
+                .setView(input)
+                .setPositiveButton("Store", (d, which) -> {
+                    String name = input.getText().toString().trim();
+                    if (!Variables.isAssignable(name)) {
+                        Toast.makeText(this, "Use a letter then letters or digits, not a function or constant name",
+                                Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    try {
+                        double value = currentValue();
+                        setVariable(Variables.define(name), value);
+                        Toast.makeText(this, name + " = " + formatResult(value), Toast.LENGTH_SHORT).show();
+                    } catch (CalculationException e) {
+                        Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    // The value memory and variable commands act on: the shown result, or the current input
+    private double currentValue() throws CalculationException {
+        String expression = isResultDisplayed ? displayedResultOperand() : currentExpression + currentNumber;
+        return expression.trim().isEmpty() ? 0 : evaluateExpression(expression);
+    }
+
+    private void setVariable(int slot, double value) {
+        Variables.set(slot, value);
+        notifyTape(slot);
+        refreshDependentResult(slot);
+    }
+
+    private void notifyTape(int slot) {
+        if (tape != null) {
+            tape.variableChanged(slot);
+        }
+    }
+
+    // Re-evaluates the shown result from its compiled form when it reads the changed
+    // slot. Results that read ANS are left alone: ANS has moved on to that result.
+    private void refreshDependentResult(int slot) {
+        if (!isResultDisplayed || resultAst == null
+                || !resultAst.references(slot) || resultAst.references(Variables.ANS)) {
+            return;
+        }
+        try {
+            String resultStr = evaluateForDisplay(resultAst);
+            if (resultAst.assignment != null && !Double.isNaN(resultValue)) {
+                int assigned = Variables.define(resultAst.assignment);
+                Variables.set(assigned, resultValue);
+                notifyTape(assigned);
+            }
+            setAns(resultStr);
+            displayText.setText(resultStr);
+        } catch (CalculationException e) {
+            displayText.setText("Error");
+        }
+    }
+
+    // f(x) from the current input, or the last calculation when a result is shown;
+    // null after telling the user why there is none
+    private GraphFunction compileFunctionOfX() {
+        String expression = isResultDisplayed && resultAst != null
+                ? resultAst.source : (currentExpression + currentNumber).trim();
+        if (expression.isEmpty()) {
+            Toast.makeText(this, "Enter an expression in x first", Toast.LENGTH_SHORT).show();
+            return null;
+        }
+        try {
+            return GraphFunction.compile(expression, isDegreeMode);
+        } catch (CalculationException e) {
+            Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            return null;
+        }
+    }
+
+    private void showGraph() {
+        GraphFunction function = compileFunctionOfX();
+        if (function == null) {
+            return;
+        }
+        String expression = function.source;
+        GraphView graphView = new GraphView(this);
+        graphView.setFunction(function);
+        android.widget.FrameLayout container = new android.widget.FrameLayout(this);
+        container.addView(graphView, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, dpToPx(360)));
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("y = " + expression)
+                .setView(container)
+                .setPositiveButton("Close", null)
+                .show();
+    }
+
+    // Asks for the interval, then solves or integrates f(x) over it in the background
+    private void showNumericDialog(boolean integrate) {
+        GraphFunction function = compileFunctionOfX();
+        if (function == null) {
+            return;
+        }
+        android.widget.EditText from = new android.widget.EditText(this);
+        from.setSingleLine();
+        from.setHint(integrate ? "From" : "Search from");
+        from.setText(integrate ? "0" : "-10");
+        android.widget.EditText to = new android.widget.EditText(this);
+        to.setSingleLine();
+        to.setHint(integrate ? "To" : "Search to");
+        to.setText(integrate ? "1" : "10");
+        LinearLayout bounds = new LinearLayout(this);
+        bounds.setOrientation(LinearLayout.VERTICAL);
+        bounds.setPadding(dpToPx(20), dpToPx(8), dpToPx(20), 0);
+        bounds.addView(from);
+        bounds.addView(to);
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle(integrate ? "∫ " + function.source + " dx" : function.source + " = 0")
+                .setView(bounds)
+                .setPositiveButton(integrate ? "Integrate" : "Solve", (d, which) -> {
+                    try {
+                        // Bounds are expressions too, e.g. π÷2
+                        double a = evaluateExpression(from.getText().toString().trim());
+                        double b = evaluateExpression(to.getText().toString().trim());
+                        runNumeric(function, integrate, a, b);
+                    } catch (CalculationException e) {
+                        Toast.makeText(this, "Calculation error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void runNumeric(GraphFunction function, boolean integrate, double a, double b) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // Written by the worker, shown by a 10 Hz poll on the main thread
+        AtomicLong progressPercent = new AtomicLong();
+        androidx.appcompat.app.AlertDialog progressDialog = new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle(integrate ? "Integrating…" : "Solving…")
+                .setMessage("0%")
+                .setNegativeButton("Cancel", (d, which) -> cancelled.set(true))
+                .setCancelable(false)
+                .show();
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable poll = new Runnable() {
+            @Override
+            public void run() {
+                progressDialog.setMessage(progressPercent.get() + "%");
+                handler.postDelayed(this, 100);
+            }
+        };
+        handler.postDelayed(poll, 100);
+        // onDestroy runs this, so neither the poll nor the worker outlives the activity
+        Runnable cancel = () -> {
+            cancelled.set(true);
+            handler.removeCallbacks(poll);
+        };
+        cancelNumeric = cancel;
+
+        if (numericExecutor == null) {
+            numericExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            numericExecutor.allowCoreThreadTimeOut(true);
+        }
+        numericExecutor.execute(() -> {
+            NumericResult result = null;
+            String error = null;
+            try {
+                java.util.function.DoubleConsumer progress = fraction -> progressPercent.set((long) (fraction * 100));
+                result = integrate
+                        ? Integrator.integrate(function, a, b, cancelled::get, progress)
+                        : Solver.solve(function, a, b, cancelled::get, progress);
+            } catch (CalculationException e) {
+                error = e.getMessage();
+            }
+            NumericResult finalResult = result;
+            String finalError = error;
+            runOnUiThread(() -> {
+                handler.removeCallbacks(poll);
+                if (cancelNumeric == cancel) {
+                    cancelNumeric = null;
+                }
+                // The dialog went with a destroyed activity; dismissing it would throw
+                if (isDestroyed()) {
+                    return;
+                }
+                progressDialog.dismiss();
+                if (finalError != null) {
+                    Toast.makeText(this, "Calculation error: " + finalError, Toast.LENGTH_SHORT).show();
+                } else if (finalResult != null && !isFinishing()) {
+                    showNumericResult(function, integrate, finalResult);
+                }
+            });
+        });
+    }
+
+    private void showNumericResult(GraphFunction function, boolean integrate, NumericResult result) {
+        String value = formatResult(result.value);
+        StringBuilder message = new StringBuilder(integrate ? "∫ = " : "x = ").append(value);
+        if (!Double.isNaN(result.error)) {
+            message.append("\nestimated error ").append(String.format(Locale.US, "%.1e", result.error));
+        }
+        message.append(String.format(Locale.US, "\n%,d evaluations, %,.0f per second",
+                result.evaluations, result.evaluationsPerSecond()));
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle(integrate ? "∫ " + function.source + " dx" : function.source + " = 0")
+                .setMessage(message)
+                .setPositiveButton("Use", (d, which) ->
+                        showComputedResult((integrate ? "∫ " : "root of ") + function.source + " =", result.value))
+                .setNegativeButton("Close", null)
+                .show();
+    }
+
+    // Shows a value computed outside the expression, like a calculation result, so it
+    // chains through ANS
+    private void showComputedResult(String label, double value) {
+        String text = formatResult(value);
+        exactResult = null;
+        isComplexResultDisplayed = false;
+        isListResultDisplayed = false;
+        isProgrammerResultDisplayed = false;
+        resultUnit = null;
+        resultAst = null;
+        resultValue = value;
+        setAns(text);
+        displayText.setText(text);
+        expressionText.setText(label);
+        currentExpression = "";
+        currentNumber = "";
+        hasDecimalPoint = false;
+        isResultDisplayed = true;
+        updateSuggestions("");
+    }
+
+    private void openStats() {
+        if (stats != null) {
+            showStatsDialog();
+            return;
+        }
+        // On the writer, so it reads what earlier saves wrote
+        runWrite(() -> {
+            List<StatsChunk> rows = getDatabase().statsChunkDao().getAllChunks();
+            runOnUiThread(() -> {
+                if (isFinishing()) {
+                    return;
+                }
+                if (stats == null) {
+                    stats = new StatsData();
+                    for (StatsChunk row : rows) {
+                        stats.appendChunk(row.values);
+                    }
+                    stats.takeDirtyChunks();
+                }
+                showStatsDialog();
+            });
+        });
+    }
+
+    // Summary of the data list; tapping a statistic shows it as the result
+    private void showStatsDialog() {
+        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Statistics")
+                .setPositiveButton("Add values", (d, which) -> addStatsValues())
+                .setNegativeButton("Close", null);
+        if (stats.size() == 0) {
+            builder.setMessage("Type or paste numbers separated by spaces, commas or new lines");
+            builder.show();
+            return;
+        }
+        String[] labels = {"n", "Σx", "mean", "s", "σ", "min", "Q1", "median", "Q3", "P90", "max"};
+        double[] values = {stats.size(), stats.sum(), stats.mean(), stats.standardDeviation(),
+                Math.sqrt(stats.populationVariance()), stats.min(), stats.quantile(0.25), stats.median(),
+                stats.quantile(0.75), stats.quantile(0.9), stats.max()};
+        String[] items = new String[labels.length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = labels[i] + " = " + formatResult(values[i]);
+        }
+        builder.setItems(items, (d, which) -> showComputedResult(labels[which] + " =", values[which]))
+                .setNeutralButton("Remove last", (d, which) -> {
+                    stats.removeLast();
+                    saveStats();
+                    showStatsDialog();
+                })
+                .show();
+    }
+
+    private void addStatsValues() {
+        android.widget.EditText input = new android.widget.EditText(this);
+        input.setHint("1.5, 2, 7 …");
+        if (isResultDisplayed) {
+            input.setText(displayText.getText().toString());
+        }
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Add values")
+                .setView(input)
+                .setPositiveButton("Add", (d, which) -> {
+                    try {
+                        for (double value : StatsData.parse(input.getText().toString())) {
+                            stats.add(value);
+                        }
+                        saveStats();
+                    } catch (CalculationException e) {
+                        Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                    showStatsDialog();
+                })
+                .setNeutralButton("Clear all", (d, which) -> {
+                    stats.clear();
+                    saveStats();
+                    showStatsDialog();
+                })
+                .setNegativeButton("Cancel", (d, which) -> showStatsDialog())
+                .show();
+    }
+
+    // Writes the chunks changed since the last save; adding a value rewrites one chunk
+    private void saveStats() {
+        int[] changed = stats.takeDirtyChunks();
+        int chunkCount = stats.chunkCount();
+        List<StatsChunk> rows = new ArrayList<>();
+        for (int chunk : changed) {
+            if (chunk < chunkCount) {
+                rows.add(new StatsChunk(chunk, stats.chunkBytes(chunk)));
+            }
+        }
+        runWrite(() -> getDatabase().statsChunkDao().save(rows, chunkCount));
+    }
+
+    private void openTape() {
+        if (tape != null) {
+            showTapeDialog();
+            return;
+        }
+        // On the writer, so it reads what earlier edits wrote
+        runWrite(() -> {
+            List<TapeLine> rows = getDatabase().tapeLineDao().getAllLines();
+            String[] lines = new String[rows.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = rows.get(i).expression;
+            }
+            runOnUiThread(() -> {
+                if (isFinishing()) {
+                    return;
+                }
+                if (tape == null) {
+                    tape = new Tape(isDegreeMode);
+                    tape.load(lines);
+                }
+                showTapeDialog();
+            });
+        });
+    }
+
+    private void showTapeDialog() {
+        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Tape")
+                .setPositiveButton("Add line", (d, which) -> editTapeLine(tape.size()))
+                .setNegativeButton("Close", null);
+        if (tape.size() == 0) {
+            builder.setMessage("Lines can use earlier lines by number, e.g. L1 × 1.2");
+        } else {
+            String[] items = new String[tape.size()];
+            for (int line = 0; line < items.length; line++) {
+                CalculationException error = tape.error(line);
+                items[line] = "L" + (line + 1) + "   " + tape.source(line) + "   "
+                        + (error == null ? "= " + formatResult(tape.value(line)) : "⚠ " + error.getMessage());
+            }
+            builder.setItems(items, (d, which) -> editTapeLine(which))
+                    .setNeutralButton("Clear", (d, which) -> clearTape());
+        }
+        builder.show();
+    }
+
+    // Edits a line, or adds one when line == tape.size(); new lines start from the current input
+    private void editTapeLine(int line) {
+        boolean isNew = line == tape.size();
+        android.widget.EditText input = new android.widget.EditText(this);
+        input.setSingleLine();
+        input.setText(isNew ? (isResultDisplayed ? displayedResultOperand() : currentExpression + currentNumber)
+                : tape.source(line));
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("L" + (line + 1))
+                .setView(input)
+                .setPositiveButton("Save", (d, which) -> {
+                    String expression = input.getText().toString().trim();
+                    if (expression.isEmpty()) {
+                        showTapeDialog();
+                        return;
+                    }
+                    tape.set(line, expression);
+                    runWrite(() -> getDatabase().tapeLineDao().upsert(new TapeLine(line, expression)));
+                    showTapeDialog();
+                })
+                .setNegativeButton("Cancel", (d, which) -> showTapeDialog())
+                .show();
+    }
+
+    private void clearTape() {
+        tape.clear();
+        runWrite(() -> getDatabase().tapeLineDao().clearTape());
+    }
+
+    private void toggleFractionDisplay() {
+        if (calculationMode == MODE_PROGRAMMER) {
+            cycleProgrammerBase();
+            return;
+        }
+        if (!isResultDisplayed || exactResult == null) {
+            return;
+        }
+        showFraction = !showFraction;
+        displayText.setText(formatExactResult(exactResult));
+    }
+
     private void updateDisplay() {
         String display = currentExpression + currentNumber;
         if (display.isEmpty()) {
             displayText.setText("0");
-        } else {
+        } else if (calculationMode == MODE_PROGRAMMER || UnitConversion.isConversion(display)) {
+            // Hex digits, bitwise operators and units aren't in the main grammar
             displayText.setText(display);
+        } else {
+            displayText.setText(getHighlighter().highlight(parseInput(display)));
         }
         expressionText.setText(currentExpression);
+        updateSuggestions(display);
 
         // Auto-scroll to show newest input
         autoScrollToEnd();
@@ -1116,9 +2647,28 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void cycleCalculationMode() {
+        calculationMode = (calculationMode + 1) % MODE_LABELS.length;
+        // Integer words and real results can't be read as each other's operands
+        if (isResultDisplayed && (calculationMode == MODE_PROGRAMMER || isProgrammerResultDisplayed)) {
+            clearAll();
+        }
+        updateModeButton();
+    }
+
+    private void updateModeButton() {
+        Button modeButton = findViewById(R.id.btnMode);
+        if (modeButton != null) {
+            modeButton.setText(MODE_LABELS[calculationMode]);
+        }
+    }
+
     private void toggleDegreeRadianMode() {
         isDegreeMode = !isDegreeMode;
         updateDegreeRadianButton();
+        if (tape != null) {
+            tape.setDegreeMode(isDegreeMode);
+        }
     }
 
     private void updateDegreeRadianButton() {
@@ -1129,7 +2679,24 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void toggleSign() {
-        if (isResultDisplayed) {
+        if (isResultDisplayed && isProgrammerResultDisplayed) {
+            programmerResult = ProgrammerEvaluator.wrap(-programmerResult, programmerBits, programmerSigned);
+            displayText.setText(IntegerFormat.format(programmerResult, programmerBase, programmerBits,
+                    programmerSigned));
+        } else if (isResultDisplayed && (exactResult != null || isComplexResultDisplayed)) {
+            String toggledStr;
+            if (exactResult != null) {
+                exactResult = exactResult.negate();
+                toggledStr = formatExactResult(exactResult);
+            } else {
+                complexResult[0] = -complexResult[0];
+                complexResult[1] = -complexResult[1];
+                toggledStr = formatComplexResult();
+            }
+            displayText.setText(toggledStr);
+            currentNumber = toggledStr;
+            hasDecimalPoint = toggledStr.contains(".");
+        } else if (isResultDisplayed) {
             String displayValue = displayText.getText().toString();
             try {
                 double value = Double.parseDouble(displayValue);
@@ -1161,6 +2728,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void showHistoryModal() {
+        long start = Metrics.begin(Metrics.HISTORY_OPEN);
         boolean isLandscape = getResources().getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE;
         boolean isTablet = (getResources().getConfiguration().screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK) >= Configuration.SCREENLAYOUT_SIZE_LARGE;
 
@@ -1238,6 +2806,9 @@ public class MainActivity extends AppCompatActivity {
 
         HistoryAdapter historyAdapter = new HistoryAdapter();
         historyAdapter.setLandscapeMode(false);
+        // A lambda, so the database is reached on the search thread, never here
+        historyAdapter.setResultRangeQuery(
+                (low, high) -> getDatabase().calculationHistoryDao().findIdsByResultRange(low, high));
         historyRecyclerView.setAdapter(historyAdapter);
 
         setupHistoryItemListeners(historyAdapter, historyDialog);
@@ -1247,6 +2818,30 @@ public class MainActivity extends AppCompatActivity {
                 historyAdapter, emptyStateLayout, historyContentLayout, actionButtonsLayout);
 
         showModalWithAnimation(historyDialog, isLandscape);
+        Metrics.end(Metrics.HISTORY_OPEN, start);
+    }
+
+    // Hidden debug screen with the hot-path metrics
+    private void showMetricsDialog() {
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Metrics")
+                .setMessage(Metrics.dump())
+                .setPositiveButton("Save", (d, which) -> runInBackground(() -> {
+                    java.io.File file = new java.io.File(getFilesDir(), "metrics.txt");
+                    String message;
+                    try {
+                        Metrics.dumpToFile(file);
+                        message = "Saved to " + file.getAbsolutePath();
+                    } catch (java.io.IOException e) {
+                        message = "Could not save metrics: " + e.getMessage();
+                    }
+                    String toast = message;
+                    runOnUiThread(() -> Toast.makeText(this, toast, Toast.LENGTH_SHORT).show());
+                }))
+                .setNeutralButton(Metrics.isEnabled() ? "Disable" : "Enable",
+                        (d, which) -> Metrics.setEnabled(!Metrics.isEnabled()))
+                .setNegativeButton("Reset", (d, which) -> Metrics.reset())
+                .show();
     }
 
     private void handleStatusBarSpacer(Dialog dialog, boolean isLandscape) {
@@ -1319,31 +2914,24 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onDeleteItem(CalculationHistory item, int position) {
+            public void onDeleteItem(int itemId, int position) {
                 // Prevent duplicate deletions
-                if (adapter.isDeletionPending(item.id)) {
+                if (adapter.isDeletionPending(itemId)) {
                     return;
                 }
 
                 // Mark this deletion as pending
-                adapter.markDeletionPending(item.id);
+                adapter.markDeletionPending(itemId);
 
                 // Disable the button temporarily to prevent rapid clicks
-                executor.execute(() -> {
-                    database.calculationHistoryDao().deleteById(item.id);
+                runInBackground(() -> {
+                    getDatabase().calculationHistoryDao().deleteById(itemId);
                     runOnUiThread(() -> {
                         // Mark deletion complete
-                        adapter.markDeletionComplete(item.id);
+                        adapter.markDeletionComplete(itemId);
 
                         // Find the current position of this item in the filtered list
-                        int currentPos = -1;
-                        for (int i = 0; i < adapter.getFilteredHistoryList().size(); i++) {
-                            if (adapter.getFilteredHistoryList().get(i).id == item.id) {
-                                currentPos = i;
-                                break;
-                            }
-                        }
-
+                        int currentPos = adapter.findPosition(itemId);
                         if (currentPos != -1) {
                             adapter.removeItem(currentPos);
                             Toast.makeText(MainActivity.this, "Item deleted", Toast.LENGTH_SHORT).show();
@@ -1353,17 +2941,24 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onUseExpression(String expression) {
-                currentExpression = expression;
-                currentNumber = "";
-                hasDecimalPoint = false;
-                isResultDisplayed = false;
-                updateDisplay();
+            public void onUseExpression(String expression, byte[] program) {
+                useExpression(expression, program);
                 dismissModalWithAnimation(dialog);
             }
         });
     }
 
+    // Replaces the input with a past expression, reusing its compiled form if it has one
+    private void useExpression(String expression, byte[] program) {
+        // Older rows and other engine versions have no usable program; they're parsed
+        reusedAst = AstCodec.decode(program, expression.trim());
+        currentExpression = expression;
+        currentNumber = "";
+        hasDecimalPoint = false;
+        isResultDisplayed = false;
+        updateDisplay();
+    }
+
     private void setupSearchFunctionality(TextInputEditText searchHidden,
                                           TextInputEditText searchVisible,
                                           HistoryAdapter adapter) {
@@ -1382,8 +2977,10 @@ public class MainActivity extends AppCompatActivity {
                     searchHandler.removeCallbacks(searchRunnable);
                 }
 
+                // Filtering runs off the main thread and cancels itself, so the delay only
+                // needs to coalesce the mirrored search fields into one query
                 searchRunnable = () -> adapter.filter(s.toString());
-                searchHandler.postDelayed(searchRunnable, 300);
+                searchHandler.postDelayed(searchRunnable, 16);
             }
 
             @Override
@@ -1416,10 +3013,12 @@ public class MainActivity extends AppCompatActivity {
     private void loadHistoryData(HistoryAdapter adapter, LinearLayout emptyStateLayout,
                                  androidx.constraintlayout.widget.ConstraintLayout historyContentLayout,
                                  LinearLayout actionButtonsLayout) {
-        executor.execute(() -> {
-            List<CalculationHistory> history = database.calculationHistoryDao().getRecentCalculations();
+        runInBackground(() -> {
+            long start = Metrics.begin(Metrics.HISTORY_LOAD);
+            HistoryStore history = HistoryStore.from(getDatabase().calculationHistoryDao().getRecentCalculations());
+            Metrics.end(Metrics.HISTORY_LOAD, start);
             runOnUiThread(() -> {
-                if (history.isEmpty()) {
+                if (history.size() == 0) {
                     emptyStateLayout.setVisibility(View.VISIBLE);
                     historyContentLayout.setVisibility(View.GONE);
                     actionButtonsLayout.setVisibility(View.GONE);
@@ -1427,7 +3026,7 @@ public class MainActivity extends AppCompatActivity {
                     emptyStateLayout.setVisibility(View.GONE);
                     historyContentLayout.setVisibility(View.VISIBLE);
                     actionButtonsLayout.setVisibility(View.VISIBLE);
-                    adapter.setHistoryList(history);
+                    adapter.setHistoryStore(history);
                 }
             });
         });
@@ -1446,10 +3045,13 @@ public class MainActivity extends AppCompatActivity {
                     .setTitle("Clear History")
                     .setMessage("Are you sure you want to clear all calculation history?")
                     .setPositiveButton("Clear", (d, which) -> {
-                        executor.execute(() -> {
-                            database.calculationHistoryDao().clearHistory();
+                        runInBackground(() -> {
+                            getDatabase().calculationHistoryDao().clearHistory();
                             runOnUiThread(() -> {
-                                adapter.setHistoryList(new ArrayList<>());
+                                adapter.setHistoryStore(HistoryStore.EMPTY);
+                                if (suggestionTrie != null) {
+                                    suggestionTrie = new AutocompleteTrie();
+                                }
                                 emptyStateLayout.setVisibility(View.VISIBLE);
                                 historyContentLayout.setVisibility(View.GONE);
                                 actionButtonsLayout.setVisibility(View.GONE);
@@ -1458,15 +3060,40 @@ public class MainActivity extends AppCompatActivity {
                         });
                     })
                     .setNegativeButton("Cancel", null)
+                    .setNeutralButton("Keep…", (d, which) -> showRetentionPicker(adapter, emptyStateLayout,
+                            historyContentLayout, actionButtonsLayout))
                     .show();
         });
 
         exportButton.setOnClickListener(v -> exportHistory());
     }
 
+    // Picks how much history to keep, then compacts and reloads the list
+    private void showRetentionPicker(HistoryAdapter adapter, LinearLayout emptyStateLayout,
+                                     androidx.constraintlayout.widget.ConstraintLayout historyContentLayout,
+                                     LinearLayout actionButtonsLayout) {
+        String[] labels = new String[HistoryRetention.PRESETS.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = HistoryRetention.PRESETS[i].label;
+        }
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Keep history")
+                .setSingleChoiceItems(labels, historyRetentionIndex(), (d, which) -> {
+                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                            .putInt(PREF_HISTORY_RETENTION, which)
+                            .apply();
+                    d.dismiss();
+                    runInBackground(() -> {
+                        compactHistory();
+                        loadHistoryData(adapter, emptyStateLayout, historyContentLayout, actionButtonsLayout);
+                    });
+                })
+                .show();
+    }
+
     private void exportHistory() {
-        executor.execute(() -> {
-            List<CalculationHistory> allHistory = database.calculationHistoryDao().getAllCalculations();
+        runInBackground(() -> {
+            List<CalculationHistory> allHistory = getDatabase().calculationHistoryDao().getAllCalculations();
             StringBuilder exportText = new StringBuilder();
             exportText.append("Calculator History Export\n");
             exportText.append("========================\n\n");
@@ -1538,281 +3165,148 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void saveCalculationToHistory(String expression, String result) {
-        executor.execute(() -> {
+        saveCalculationToHistory(expression, result, null, Double.NaN);
+    }
+
+    // Also stores the result as a number for range searches (unless NaN) and the
+    // parsed expression, when there is one, for reuse without parsing
+    private void saveCalculationToHistory(String expression, String result, Ast ast, double value) {
+        byte[] compiled = ast == null ? null : AstCodec.encode(ast);
+        if (suggestionTrie != null) {
+            suggestionTrie.record(expression, System.currentTimeMillis());
+        } else {
+            pendingSuggestions.add(expression);
+        }
+        runInBackground(() -> {
             CalculationHistory calculation = new CalculationHistory(
                     expression, result, System.currentTimeMillis()
             );
-            database.calculationHistoryDao().insert(calculation);
+            calculation.resultValue = Double.isNaN(value) ? null : value;
+            calculation.compiled = compiled;
+            long start = Metrics.begin(Metrics.DB_INSERT);
+            getDatabase().calculationHistoryDao().record(calculation);
+            Metrics.end(Metrics.DB_INSERT, start);
+            Metrics.increment(Metrics.HISTORY_INSERTS);
         });
     }
 
-    // FIXED EXPRESSION EVALUATOR - This is where the bug was!
-    private double evaluateExpression(String expression) throws Exception {
-        expression = expression.trim();
-        if (expression.isEmpty()) {
-            throw new Exception("Empty expression");
+    // The reused history Ast when it was decoded from exactly source, else a new parse
+    private Ast parseInput(String source) {
+        if (reusedAst != null && reusedAst.source.equals(source)) {
+            return reusedAst;
         }
-
-        // Replace display symbols with standard ones
-        expression = expression.replace("×", "*").replace("÷", "/");
-
-        // Tokenize and evaluate using Shunting Yard algorithm
-        return evaluateWithShuntingYard(expression);
+        return ExpressionParser.parse(source);
     }
 
-    private List<Token> tokenize(String expression) throws Exception {
-        List<Token> tokens = new ArrayList<>();
-        StringBuilder numberBuffer = new StringBuilder();
-        boolean lastWasOperatorOrFunction = true; // Consider start as operator position for unary minus
-
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-
-            if (Character.isDigit(c) || c == '.') {
-                numberBuffer.append(c);
-                lastWasOperatorOrFunction = false;
-            } else if (c == ' ') {
-                continue; // Skip spaces
-            } else {
-                // Process accumulated number
-                if (numberBuffer.length() > 0) {
-                    tokens.add(new Token(Token.Type.NUMBER, numberBuffer.toString()));
-                    numberBuffer.setLength(0);
-                    lastWasOperatorOrFunction = false;
-                }
-
-                // Handle constants
-                if (c == 'π' || (i < expression.length() - 1 && expression.substring(i, i + 2).equals("pi"))) {
-                    tokens.add(new Token(Token.Type.CONSTANT, String.valueOf(PI)));
-                    if (c != 'π') i++; // Skip the 'i' in "pi"
-                    lastWasOperatorOrFunction = false;
-                } else if (c == 'e' && (i == expression.length() - 1 || !Character.isLetter(expression.charAt(i + 1)))) {
-                    tokens.add(new Token(Token.Type.CONSTANT, String.valueOf(E)));
-                    lastWasOperatorOrFunction = false;
-                } else if (c == '(' || c == ')') {
-                    tokens.add(new Token(Token.Type.PARENTHESIS, String.valueOf(c)));
-                    lastWasOperatorOrFunction = (c == '(');
-                } else if (c == '+' || c == '*' || c == '/' || c == '^') {
-                    tokens.add(new Token(Token.Type.OPERATOR, String.valueOf(c)));
-                    lastWasOperatorOrFunction = true;
-                } else if (c == '-') {
-                    if (lastWasOperatorOrFunction) {
-                        // This is a unary minus
-                        tokens.add(new Token(Token.Type.NUMBER, "0"));
-                        tokens.add(new Token(Token.Type.OPERATOR, "-"));
-                    } else {
-                        tokens.add(new Token(Token.Type.OPERATOR, "-"));
-                    }
-                    lastWasOperatorOrFunction = true;
-                } else if (c == '²') {
-                    tokens.add(new Token(Token.Type.OPERATOR, "²"));
-                    lastWasOperatorOrFunction = false;
-                } else if (c == '!') {
-                    tokens.add(new Token(Token.Type.OPERATOR, "!"));
-                    lastWasOperatorOrFunction = false;
-                } else if (c == '√') {
-                    tokens.add(new Token(Token.Type.FUNCTION, "sqrt"));
-                    lastWasOperatorOrFunction = true;
-                } else if (isStartOfFunction(expression, i)) {
-                    String function = extractFunction(expression, i);
-                    tokens.add(new Token(Token.Type.FUNCTION, function));
-                    i += function.length() - 1; // Skip function characters
-                    lastWasOperatorOrFunction = true;
-                }
-            }
-        }
-
-        // Process final number
-        if (numberBuffer.length() > 0) {
-            tokens.add(new Token(Token.Type.NUMBER, numberBuffer.toString()));
-        }
-
-        return tokens;
+    private double evaluateExpression(String expression) throws CalculationException {
+        return evaluateExpression(ExpressionParser.parse(expression.trim()));
     }
 
-    private boolean isStartOfFunction(String expression, int index) {
-        String[] functions = {"sin", "cos", "tan", "log", "ln", "asin", "acos", "atan", "sqrt"};
-        for (String func : functions) {
-            if (expression.substring(index).toLowerCase().startsWith(func)) {
-                return true;
-            }
+    // Evaluates an already parsed expression, so callers can reuse the parse for highlighting
+    private double evaluateExpression(Ast ast) throws CalculationException {
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            return ExpressionEvaluator.evaluate(ExpressionOptimizer.optimize(ast, isDegreeMode), isDegreeMode);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            throw e;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
         }
-        return false;
     }
 
-    private String extractFunction(String expression, int index) {
-        String[] functions = {"asin", "acos", "atan", "sin", "cos", "tan", "log", "ln", "sqrt"};
-        for (String func : functions) {
-            if (expression.substring(index).toLowerCase().startsWith(func)) {
-                return func;
-            }
+    // Exact value, or null when the expression isn't rational and evaluateExpression
+    // should be used instead
+    private Rational evaluateExact(Ast ast) throws CalculationException {
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            return RationalEvaluator.evaluate(ast);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            throw e;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
         }
-        return "";
     }
 
-    private double evaluateWithShuntingYard(String expression) throws Exception {
-        List<Token> tokens = tokenize(expression);
-        Stack<Token> operators = new Stack<>();
-        Stack<Double> operands = new Stack<>();
-
-        for (Token token : tokens) {
-            switch (token.type) {
-                case NUMBER:
-                case CONSTANT:
-                    operands.push(token.numValue);
-                    break;
-
-                case FUNCTION:
-                    operators.push(token);
-                    break;
-
-                case OPERATOR:
-                    // Handle unary operators differently
-                    if (token.value.equals("²") || token.value.equals("!")) {
-                        // Process immediately for postfix operators
-                        processOperator(token, operands);
-                    } else {
-                        while (!operators.empty() &&
-                                operators.peek().type != Token.Type.PARENTHESIS &&
-                                (operators.peek().precedence > token.precedence ||
-                                        (operators.peek().precedence == token.precedence && !token.rightAssociative))) {
-                            processOperator(operators.pop(), operands);
-                        }
-                        operators.push(token);
-                    }
-                    break;
-
-                case PARENTHESIS:
-                    if (token.value.equals("(")) {
-                        operators.push(token);
-                    } else { // ")"
-                        while (!operators.empty() && !operators.peek().value.equals("(")) {
-                            processOperator(operators.pop(), operands);
-                        }
-                        if (operators.empty()) {
-                            throw new Exception("Mismatched parentheses");
-                        }
-                        operators.pop(); // Remove the "("
-
-                        // Process function if present
-                        if (!operators.empty() && operators.peek().type == Token.Type.FUNCTION) {
-                            processOperator(operators.pop(), operands);
-                        }
-                    }
-                    break;
+    // List expressions in decimal arithmetic, whatever the mode; a reduction such as
+    // sum({1, 2}) gives an ordinary number result
+    private String evaluateList(Ast ast) throws CalculationException {
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            double[] scalar = new double[1];
+            int[] rows = new int[1];
+            double[] list = ListEvaluator.evaluate(ExpressionOptimizer.optimize(ast, isDegreeMode), isDegreeMode,
+                    scalar, rows);
+            if (list == null) {
+                resultValue = scalar[0];
+                return formatResult(resultValue);
             }
-        }
-
-        // Process remaining operators
-        while (!operators.empty()) {
-            if (operators.peek().type == Token.Type.PARENTHESIS) {
-                throw new Exception("Mismatched parentheses");
+            isListResultDisplayed = true;
+            return rows[0] > 0 ? formatMatrix(list, rows[0]) : formatList(list);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            throw e;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
+        }
+    }
+
+    // {a, b, …} with long lists cut after the first elements
+    private String formatList(double[] list) {
+        int shown = Math.min(list.length, 12);
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < shown; i++) {
+            text.append(i > 0 ? ", " : "").append(formatResult(list[i]));
+        }
+        if (shown < list.length) {
+            text.append(", … ").append(list.length - shown).append(" more");
+        }
+        return text.append('}').toString();
+    }
+
+    // {{a, b}, {c, d}} with large matrices cut to their top-left corner
+    private String formatMatrix(double[] entries, int rows) {
+        int columns = entries.length / rows;
+        int shownRows = Math.min(rows, 6);
+        int shownColumns = Math.min(columns, 6);
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < shownRows; i++) {
+            text.append(i > 0 ? ", {" : "{");
+            for (int j = 0; j < shownColumns; j++) {
+                text.append(j > 0 ? ", " : "").append(formatResult(entries[i * columns + j]));
             }
-            processOperator(operators.pop(), operands);
+            text.append(shownColumns < columns ? ", …}" : "}");
         }
-
-        if (operands.size() != 1) {
-            throw new Exception("Invalid expression");
+        text.append(shownRows < rows ? ", …}" : "}");
+        if (shownRows < rows || shownColumns < columns) {
+            text.append(" (").append(rows).append('×').append(columns).append(')');
         }
-
-        return operands.pop();
+        return text.toString();
     }
 
-    private void processOperator(Token operator, Stack<Double> operands) throws Exception {
-        if (operator.type == Token.Type.FUNCTION) {
-            if (operands.empty()) {
-                throw new Exception("Missing operand for function " + operator.value);
-            }
-            double operand = operands.pop();
-            double result = applyFunction(operator.value, operand);
-            operands.push(result);
-        } else if (operator.type == Token.Type.OPERATOR) {
-            if (operator.value.equals("²")) {
-                if (operands.empty()) {
-                    throw new Exception("Missing operand for square operation");
-                }
-                double operand = operands.pop();
-                operands.push(operand * operand);
-            } else if (operator.value.equals("!")) {
-                if (operands.empty()) {
-                    throw new Exception("Missing operand for factorial operation");
-                }
-                double operand = operands.pop();
-                if (operand < 0 || operand != Math.floor(operand)) {
-                    throw new Exception("Factorial only works with non-negative integers");
-                }
-                if (operand > 170) {
-                    throw new Exception("Factorial argument too large (max 170)");
-                }
-                operands.push(factorial((int) operand));
-            } else {
-                if (operands.size() < 2) {
-                    throw new Exception("Missing operand for operator " + operator.value);
-                }
-                double right = operands.pop();
-                double left = operands.pop();
-                double result = applyBinaryOperator(operator.value, left, right);
-                operands.push(result);
-            }
+    // Leaves the result in complexResult
+    private void evaluateComplex(Ast ast) throws CalculationException {
+        long start = Metrics.begin(Metrics.EVALUATE);
+        Metrics.increment(Metrics.EVALUATIONS);
+        try {
+            ComplexEvaluator.evaluate(ast, isDegreeMode, complexResult);
+        } catch (CalculationException e) {
+            Metrics.increment(Metrics.EVALUATION_ERRORS);
+            throw e;
+        } finally {
+            Metrics.end(Metrics.EVALUATE, start);
         }
     }
 
-    private double applyFunction(String function, double operand) throws Exception {
-        switch (function.toLowerCase()) {
-            case "sin":
-                return Math.sin(isDegreeMode ? Math.toRadians(operand) : operand);
-            case "cos":
-                return Math.cos(isDegreeMode ? Math.toRadians(operand) : operand);
-            case "tan":
-                return Math.tan(isDegreeMode ? Math.toRadians(operand) : operand);
-            case "asin":
-                double asinResult = Math.asin(operand);
-                return isDegreeMode ? Math.toDegrees(asinResult) : asinResult;
-            case "acos":
-                double acosResult = Math.acos(operand);
-                return isDegreeMode ? Math.toDegrees(acosResult) : acosResult;
-            case "atan":
-                double atanResult = Math.atan(operand);
-                return isDegreeMode ? Math.toDegrees(atanResult) : atanResult;
-            case "log":
-                if (operand <= 0) throw new Exception("Log of non-positive number");
-                return Math.log10(operand);
-            case "ln":
-                if (operand <= 0) throw new Exception("Ln of non-positive number");
-                return Math.log(operand);
-            case "sqrt":
-                if (operand < 0) throw new Exception("Square root of negative number");
-                return Math.sqrt(operand);
-            default:
-                throw new Exception("Unknown function: " + function);
-        }
-    }
-
-    private double applyBinaryOperator(String operator, double left, double right) throws Exception {
-        switch (operator) {
-            case "+":
-                return left + right;
-            case "-":
-                return left - right;
-            case "*":
-                return left * right;
-            case "/":
-                if (Math.abs(right) < 1e-15) {
-                    throw new Exception("Division by zero");
-                }
-                return left / right;
-            case "^":
-                // Handle special cases for power operations
-                if (left == 0 && right < 0) {
-                    throw new Exception("0 to negative power is undefined");
-                }
-                if (left < 0 && right != Math.floor(right)) {
-                    throw new Exception("Complex result: negative base with non-integer exponent");
-                }
-                return Math.pow(left, right);
-            default:
-                throw new Exception("Unknown operator: " + operator);
+    private ExpressionHighlighter getHighlighter() {
+        if (highlighter == null) {
+            highlighter = new ExpressionHighlighter(displayText);
         }
+        return highlighter;
     }
 
     private boolean isOperator(String token) {
@@ -1821,9 +3315,22 @@ public class MainActivity extends AppCompatActivity {
                 token.equals("^") || token.equals("!") || token.equals("²");
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        flushMemoHits();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (cancelNumeric != null) {
+            cancelNumeric.run();
+            cancelNumeric = null;
+        }
+        if (numericExecutor != null) {
+            numericExecutor.shutdown();
+        }
         if (executor != null) {
             executor.shutdown();
         }
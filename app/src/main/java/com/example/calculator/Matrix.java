@@ -0,0 +1,278 @@
+package com.example.calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Dense matrix kernels over row-major double[] (entry (i, j) of an r×c matrix at
+// i×c + j), used by ListEvaluator for matrix values.
+//  - multiply works on BLOCK×BLOCK tiles, so a tile of B stays in cache while a block
+//    of rows of A reuses it, and its innermost loop walks rows of B and C with unit
+//    stride, which the JIT can vectorize. Each entry still sums its products in
+//    ascending order, so results don't depend on blocking or threads.
+//  - LU decomposition with partial pivoting backs det, inverse and solve.
+//  - Work above PARALLEL_WORK multiply-adds is split by rows (columns for solve)
+//    across a ForkJoin pool: the rows of C, or the trailing rows of each LU step.
+final class Matrix {
+    static final int BLOCK = 64;
+    static final long PARALLEL_WORK = 1L << 18;
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // Pivots below this, relative to the largest entry, count as zero
+    private static final double SINGULAR = 1e-12;
+
+    private Matrix() {}
+
+    static double[] identity(int n) {
+        double[] a = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            a[i * n + i] = 1;
+        }
+        return a;
+    }
+
+    // a × b for a n×m and b m×p
+    static double[] multiply(double[] a, double[] b, int n, int m, int p) {
+        double[] c = new double[n * p];
+        long work = (long) n * m * p;
+        if (work < PARALLEL_WORK || n <= BLOCK) {
+            multiplyRows(a, b, c, m, p, 0, n);
+        } else {
+            int grain = (int) Math.max(BLOCK, PARALLEL_WORK / ((long) m * p));
+            parallel(0, n, grain, (from, to) -> multiplyRows(a, b, c, m, p, from, to));
+        }
+        return c;
+    }
+
+    // Adds rows [from, to) of a × b to c, tile by tile
+    private static void multiplyRows(double[] a, double[] b, double[] c, int m, int p, int from, int to) {
+        for (int i0 = from; i0 < to; i0 += BLOCK) {
+            int i1 = Math.min(i0 + BLOCK, to);
+            for (int k0 = 0; k0 < m; k0 += BLOCK) {
+                int k1 = Math.min(k0 + BLOCK, m);
+                for (int j0 = 0; j0 < p; j0 += BLOCK) {
+                    int j1 = Math.min(j0 + BLOCK, p);
+                    for (int i = i0; i < i1; i++) {
+                        int rowA = i * m;
+                        int rowC = i * p;
+                        for (int k = k0; k < k1; k++) {
+                            double aik = a[rowA + k];
+                            int rowB = k * p;
+                            for (int j = j0; j < j1; j++) {
+                                c[rowC + j] += aik * b[rowB + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // The c×r transpose of an r×c matrix, copied tile by tile so reads and writes
+    // both stay within a few cache lines
+    static double[] transpose(double[] a, int rows, int cols) {
+        double[] t = new double[a.length];
+        for (int i0 = 0; i0 < rows; i0 += BLOCK) {
+            int i1 = Math.min(i0 + BLOCK, rows);
+            for (int j0 = 0; j0 < cols; j0 += BLOCK) {
+                int j1 = Math.min(j0 + BLOCK, cols);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++) {
+                        t[j * rows + i] = a[i * cols + j];
+                    }
+                }
+            }
+        }
+        return t;
+    }
+
+    // Factors the n×n matrix lu in place into L (unit diagonal, stored below the
+    // diagonal) and U with P×A = L×U; row i of P×A is row pivots[i] of A. Returns the
+    // sign of the permutation, or 0 when A is singular, leaving lu incomplete.
+    static int decompose(double[] lu, int n, int[] pivots) {
+        double scale = 0;
+        for (double value : lu) {
+            scale = Math.max(scale, Math.abs(value));
+        }
+        for (int i = 0; i < n; i++) {
+            pivots[i] = i;
+        }
+        int sign = 1;
+        for (int k = 0; k < n; k++) {
+            // Partial pivoting: the largest entry left in column k
+            int pivot = k;
+            double largest = Math.abs(lu[k * n + k]);
+            for (int i = k + 1; i < n; i++) {
+                double candidate = Math.abs(lu[i * n + k]);
+                if (candidate > largest) {
+                    largest = candidate;
+                    pivot = i;
+                }
+            }
+            if (!(largest > SINGULAR * scale)) {
+                return 0;
+            }
+            if (pivot != k) {
+                swapRows(lu, n, k, pivot);
+                int index = pivots[k];
+                pivots[k] = pivots[pivot];
+                pivots[pivot] = index;
+                sign = -sign;
+            }
+            int step = k;
+            int remaining = n - k - 1;
+            if ((long) remaining * remaining < PARALLEL_WORK) {
+                eliminate(lu, n, step, k + 1, n);
+            } else {
+                int grain = (int) Math.max(16, PARALLEL_WORK / remaining);
+                parallel(k + 1, n, grain, (from, to) -> eliminate(lu, n, step, from, to));
+            }
+        }
+        return sign;
+    }
+
+    // Eliminates column k from rows [from, to), storing the multipliers in place of the zeros
+    private static void eliminate(double[] lu, int n, int k, int from, int to) {
+        int rowK = k * n;
+        double diagonal = lu[rowK + k];
+        for (int i = from; i < to; i++) {
+            int row = i * n;
+            double factor = lu[row + k] / diagonal;
+            lu[row + k] = factor;
+            for (int j = k + 1; j < n; j++) {
+                lu[row + j] -= factor * lu[rowK + j];
+            }
+        }
+    }
+
+    private static void swapRows(double[] a, int n, int i, int j) {
+        int rowI = i * n;
+        int rowJ = j * n;
+        for (int col = 0; col < n; col++) {
+            double value = a[rowI + col];
+            a[rowI + col] = a[rowJ + col];
+            a[rowJ + col] = value;
+        }
+    }
+
+    // 0 for a singular matrix
+    static double determinant(double[] a, int n) {
+        double[] lu = a.clone();
+        double det = decompose(lu, n, new int[n]);
+        for (int i = 0; det != 0 && i < n; i++) {
+            det *= lu[i * n + i];
+        }
+        return det;
+    }
+
+    // null for a singular matrix
+    static double[] inverse(double[] a, int n) {
+        return solve(a, n, identity(n), n);
+    }
+
+    // X with A×X = B, for A n×n and B n×p; null when A is singular
+    static double[] solve(double[] a, int n, double[] b, int p) {
+        double[] lu = a.clone();
+        int[] pivots = new int[n];
+        if (decompose(lu, n, pivots) == 0) {
+            return null;
+        }
+        double[] x = new double[n * p];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(b, pivots[i] * p, x, i * p, p);
+        }
+        // Columns of X are independent, so large right-hand sides split by column
+        if ((long) n * n * p < PARALLEL_WORK || p < 2 * BLOCK) {
+            substitute(lu, n, x, p, 0, p);
+        } else {
+            parallel(0, p, BLOCK, (from, to) -> substitute(lu, n, x, p, from, to));
+        }
+        return x;
+    }
+
+    // Forward substitution with L, then back substitution with U, for columns [from, to)
+    // of x; each step is a row operation along those columns
+    private static void substitute(double[] lu, int n, double[] x, int p, int from, int to) {
+        for (int i = 1; i < n; i++) {
+            int row = i * p;
+            for (int k = 0; k < i; k++) {
+                double factor = lu[i * n + k];
+                if (factor == 0) {
+                    continue;
+                }
+                int rowK = k * p;
+                for (int j = from; j < to; j++) {
+                    x[row + j] -= factor * x[rowK + j];
+                }
+            }
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            int row = i * p;
+            for (int k = i + 1; k < n; k++) {
+                double factor = lu[i * n + k];
+                int rowK = k * p;
+                for (int j = from; j < to; j++) {
+                    x[row + j] -= factor * x[rowK + j];
+                }
+            }
+            double diagonal = lu[i * n + i];
+            for (int j = from; j < to; j++) {
+                x[row + j] /= diagonal;
+            }
+        }
+    }
+
+    // a^exponent by repeated squaring; null when exponent < 0 and a is singular
+    static double[] power(double[] a, int n, long exponent) {
+        double[] base = a;
+        if (exponent < 0) {
+            base = inverse(a, n);
+            if (base == null) {
+                return null;
+            }
+            exponent = -exponent;
+        }
+        double[] result = identity(n);
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = multiply(result, base, n, n, n);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = multiply(base, base, n, n, n);
+            }
+        }
+        return result;
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    // Runs body over [from, to) in pieces of at most grain, spread over the pool
+    private static void parallel(int from, int to, int grain, Range body) {
+        POOL.invoke(new Split(body, from, to, grain));
+    }
+
+    private static final class Split extends RecursiveAction {
+        private final Range body;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Split(Range body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(body, from, middle, grain), new Split(body, middle, to, grain));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.calculator;
+
+import androidx.tracing.Trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Process-wide latency histograms, counters and executor queue gauges for the hot paths.
+// Spans are also emitted as trace sections so they line up with system traces.
+// When disabled, begin() is a single volatile read and end() a comparison.
+final class Metrics {
+    // Spans
+    static final int KEYSTROKE = 0;
+    static final int EVALUATE = 1;
+    static final int FORMAT_RESULT = 2;
+    static final int DB_INSERT = 3;
+    static final int HISTORY_OPEN = 4;
+    static final int HISTORY_LOAD = 5;
+    static final int HISTORY_SEARCH = 6;
+    private static final String[] SPAN_NAMES = {
+            "keystroke", "evaluateExpression", "formatResult", "db.insert",
+            "history.open", "history.load", "history.search"
+    };
+
+    // Counters
+    static final int EVALUATIONS = 0;
+    static final int EVALUATION_ERRORS = 1;
+    static final int HISTORY_INSERTS = 2;
+    static final int SEARCHES_CANCELLED = 3;
+    static final int FUNCTION_CALLS = 4;
+    static final int EXACT_PROMOTIONS = 5; // exact evaluations that needed BigInteger
+    static final int TAPE_RECOMPUTES = 6;  // tape lines re-evaluated after an edit
+    static final int COMPILED_REUSES = 7;  // history entries run from their stored Ast
+    static final int HISTORY_COMPACTED = 8; // history rows removed by the retention policy
+    static final int MEMO_HITS = 9;
+    static final int MEMO_MISSES = 10;
+    static final int MEMO_NANOS_SAVED = 11; // evaluation time hits saved, less every key built
+    private static final String[] COUNTER_NAMES = {
+            "evaluations", "evaluation errors", "history inserts", "searches cancelled", "function calls",
+            "exact BigInteger promotions", "tape line recomputes", "compiled history reuses",
+            "history rows compacted", "memo hits", "memo misses", "memo ns saved"
+    };
+
+    // Executor queues
+    static final int QUEUE_BACKGROUND = 0;
+    static final int QUEUE_SEARCH = 1;
+    private static final String[] QUEUE_NAMES = {"background executor", "search executor"};
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[SPAN_NAMES.length];
+    private static final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+    private static final AtomicLongArray queueDepths = new AtomicLongArray(QUEUE_NAMES.length);
+    private static final AtomicLongArray queueDepthMax = new AtomicLongArray(QUEUE_NAMES.length);
+
+    private static volatile boolean enabled;
+
+    static {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private Metrics() {}
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    // Starts a span; returns the start time to pass to end(), or 0 when disabled.
+    // begin/end must be called on the same thread.
+    static long begin(int span) {
+        if (!enabled) {
+            return 0;
+        }
+        Trace.beginSection(SPAN_NAMES[span]);
+        return System.nanoTime();
+    }
+
+    static void end(int span, long start) {
+        if (start == 0) {
+            return;
+        }
+        histograms[span].record(System.nanoTime() - start);
+        Trace.endSection();
+    }
+
+    static void increment(int counter) {
+        if (enabled) {
+            counters.incrementAndGet(counter);
+        }
+    }
+
+    static void add(int counter, long delta) {
+        if (enabled) {
+            counters.addAndGet(counter, delta);
+        }
+    }
+
+    static long counter(int counter) {
+        return counters.get(counter);
+    }
+
+    static void recordQueueDepth(int queue, int depth) {
+        if (!enabled) {
+            return;
+        }
+        queueDepths.set(queue, depth);
+        long max = queueDepthMax.get(queue);
+        while (depth > max && !queueDepthMax.compareAndSet(queue, max, depth)) {
+            max = queueDepthMax.get(queue);
+        }
+    }
+
+    static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            counters.set(i, 0);
+        }
+        for (int i = 0; i < QUEUE_NAMES.length; i++) {
+            queueDepths.set(i, 0);
+            queueDepthMax.set(i, 0);
+        }
+    }
+
+    // Plain-text report; latencies in microseconds
+    static String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("Metrics ").append(enabled ? "(enabled)" : "(disabled)").append("\n\n");
+        out.append(String.format(Locale.US, "%-20s %7s %9s %9s %9s %9s %9s%n",
+                "span (µs)", "count", "mean", "p50", "p90", "p99", "max"));
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram h = histograms[i];
+            out.append(String.format(Locale.US, "%-20s %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    SPAN_NAMES[i], h.count(), h.mean() / 1000.0,
+                    h.valueAtPercentile(50) / 1000.0, h.valueAtPercentile(90) / 1000.0,
+                    h.valueAtPercentile(99) / 1000.0, h.max() / 1000.0));
+        }
+        out.append('\n');
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            out.append(String.format(Locale.US, "%-20s %d%n", COUNTER_NAMES[i], counters.get(i)));
+        }
+        out.append('\n');
+        for (int i = 0; i < QUEUE_NAMES.length; i++) {
+            out.append(String.format(Locale.US, "%-20s depth %d (max %d)%n",
+                    QUEUE_NAMES[i], queueDepths.get(i), queueDepthMax.get(i)));
+        }
+        return out.toString();
+    }
+
+    static void dumpToFile(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(dump());
+        }
+    }
+}
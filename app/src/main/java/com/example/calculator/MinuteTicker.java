@@ -0,0 +1,75 @@
+package com.example.calculator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Single shared main-thread ticker used to refresh relative timestamps while at least
+// one listener is registered. A "N minutes ago" label changes at its own timestamp
+// plus whole minutes, not on the wall-clock minute, so the ticker fires at the earliest
+// deadline it was given: each tick returns the listeners' next deadlines, and binding a
+// label brings the tick forward through tickBy().
+final class MinuteTicker {
+
+    interface OnMinuteTickListener {
+        // Refreshes what changed by now; returns the wall-clock time of the next
+        // change, or Long.MAX_VALUE when nothing shown will change
+        long onMinuteTick(long now);
+    }
+
+    // Longest wait, so a wall-clock change is picked up within the hour
+    private static final long MAX_DELAY = 60 * 60_000L;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final List<OnMinuteTickListener> listeners = new ArrayList<>();
+    // Wall-clock time of the scheduled tick, or Long.MAX_VALUE
+    private static long nextTick = Long.MAX_VALUE;
+
+    private static final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            long next = Long.MAX_VALUE;
+            for (int i = listeners.size() - 1; i >= 0; i--) {
+                next = Math.min(next, listeners.get(i).onMinuteTick(now));
+            }
+            nextTick = Long.MAX_VALUE;
+            tickBy(next);
+        }
+    };
+
+    private MinuteTicker() {}
+
+    static void register(OnMinuteTickListener listener) {
+        if (listeners.contains(listener)) {
+            return;
+        }
+        listeners.add(listener);
+        // Pick up labels that expired while nothing was registered, and their deadlines
+        handler.removeCallbacks(tick);
+        nextTick = Long.MAX_VALUE;
+        handler.post(tick);
+    }
+
+    static void unregister(OnMinuteTickListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            handler.removeCallbacks(tick);
+            nextTick = Long.MAX_VALUE;
+        }
+    }
+
+    // Makes sure a tick fires at deadline (wall-clock) or earlier
+    static void tickBy(long deadline) {
+        if (listeners.isEmpty() || deadline >= nextTick) {
+            return;
+        }
+        long delay = Math.min(Math.max(0, deadline - System.currentTimeMillis()), MAX_DELAY);
+        nextTick = deadline;
+        handler.removeCallbacks(tick);
+        handler.postAtTime(tick, SystemClock.uptimeMillis() + delay);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.calculator;
+
+// Outcome of Solver or Integrator: the value, an error estimate (NaN when there is
+// none), and the work it took, for reporting throughput
+final class NumericResult {
+    final double value;
+    final double error;
+    final long evaluations;
+    final long nanos;
+
+    NumericResult(double value, double error, long evaluations, long nanos) {
+        this.value = value;
+        this.error = error;
+        this.evaluations = evaluations;
+        this.nanos = nanos;
+    }
+
+    double evaluationsPerSecond() {
+        return nanos == 0 ? 0 : evaluations * 1e9 / nanos;
+    }
+}
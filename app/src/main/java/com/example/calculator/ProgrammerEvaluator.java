@@ -0,0 +1,323 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+// Programmer mode: integer expressions on a fixed word size, evaluated entirely in
+// long arithmetic. ExpressionParser reads every literal as a double, which can't hold
+// 64-bit words exactly and has no hex digits, so this is a separate table-driven
+// Pratt parser that evaluates as it parses (programmer expressions are short and
+// never re-evaluated, so there's no Ast to keep).
+//  - Literals are in the input base, or prefixed 0x, 0o, 0b or 0d (only 0x and 0o in
+//    hex input, where b and d are digits). Any literal up to the word's unsigned
+//    maximum is read as a bit pattern, so FFFF is -1 in signed 16-bit words.
+//  - Operators, loosest first: or |, xor, and &, shifts (<< >> rol ror), + -, × ÷ mod,
+//    then prefix - and not ~. ÷ truncates; >> is arithmetic for signed words and
+//    logical for unsigned ones.
+//  - Every result wraps to the word: sign-extended when signed, zero-extended when not.
+final class ProgrammerEvaluator {
+    static final int[] WORD_SIZES = {8, 16, 32, 64};
+
+    private static final int MAX_DEPTH = 256;
+
+    // Operators
+    private static final int NONE = 0;
+    private static final int OR = 1;
+    private static final int XOR = 2;
+    private static final int AND = 3;
+    private static final int SHIFT_LEFT = 4;
+    private static final int SHIFT_RIGHT = 5;
+    private static final int ROTATE_LEFT = 6;
+    private static final int ROTATE_RIGHT = 7;
+    private static final int ADD = 8;
+    private static final int SUBTRACT = 9;
+    private static final int MULTIPLY = 10;
+    private static final int DIVIDE = 11;
+    private static final int MODULO = 12;
+
+    private static final int[] BINDING_POWERS = {0, 10, 20, 30, 40, 40, 40, 40, 50, 50, 60, 60, 60};
+    private static final int BP_PREFIX = 70;
+
+    // Operator for each single-character symbol, or NONE
+    private static final int[] SYMBOL_OPERATORS = new int[256];
+    private static final String[] KEYWORDS = {"or", "xor", "and", "shl", "shr", "rol", "ror", "mod"};
+    private static final int[] KEYWORD_OPERATORS = {
+            OR, XOR, AND, SHIFT_LEFT, SHIFT_RIGHT, ROTATE_LEFT, ROTATE_RIGHT, MODULO
+    };
+    // Value of each digit character, or -1
+    private static final int[] DIGIT_VALUES = new int[128];
+
+    static {
+        SYMBOL_OPERATORS['|'] = OR;
+        SYMBOL_OPERATORS['&'] = AND;
+        SYMBOL_OPERATORS['+'] = ADD;
+        SYMBOL_OPERATORS['-'] = SUBTRACT;
+        SYMBOL_OPERATORS['*'] = MULTIPLY;
+        SYMBOL_OPERATORS['×'] = MULTIPLY;
+        SYMBOL_OPERATORS['/'] = DIVIDE;
+        SYMBOL_OPERATORS['÷'] = DIVIDE;
+        SYMBOL_OPERATORS['%'] = MODULO;
+
+        Arrays.fill(DIGIT_VALUES, -1);
+        for (int i = 0; i < 10; i++) {
+            DIGIT_VALUES['0' + i] = i;
+        }
+        for (int i = 0; i < 6; i++) {
+            DIGIT_VALUES['A' + i] = 10 + i;
+            DIGIT_VALUES['a' + i] = 10 + i;
+        }
+    }
+
+    private final String source;
+    private final int length;
+    private final int base;
+    private final int bits;
+    private final boolean signed;
+    // All ones in the word
+    private final long mask;
+    private int pos;
+    private int depth;
+
+    private ProgrammerEvaluator(String source, int base, int bits, boolean signed) {
+        this.source = source;
+        this.length = source.length();
+        this.base = base;
+        this.bits = bits;
+        this.signed = signed;
+        this.mask = bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    // base is the input base (2, 8, 10 or 16) and bits the word size
+    static long evaluate(String source, int base, int bits, boolean signed) throws CalculationException {
+        ProgrammerEvaluator evaluator = new ProgrammerEvaluator(source, base, bits, signed);
+        if (evaluator.skipSpaces() == evaluator.length) {
+            throw new CalculationException("Empty expression", 0, evaluator.length);
+        }
+        long value = evaluator.parseOperand(0);
+        if (evaluator.pos < evaluator.length) {
+            throw new CalculationException("Mismatched parentheses", evaluator.pos, evaluator.pos + 1);
+        }
+        return value;
+    }
+
+    // Truncates a value to the word, sign-extending when signed
+    static long wrap(long value, int bits, boolean signed) {
+        if (bits == 64) {
+            return value;
+        }
+        int unused = 64 - bits;
+        return signed ? value << unused >> unused : value << unused >>> unused;
+    }
+
+    private long wrap(long value) {
+        return wrap(value, bits, signed);
+    }
+
+    private long parseOperand(int minBp) throws CalculationException {
+        long left = parsePrefix();
+        while (skipSpaces() < length && source.charAt(pos) != ')') {
+            int start = pos;
+            int operator = matchOperator();
+            if (operator == NONE) {
+                throw new CalculationException("Missing operator", pos, pos + 1);
+            }
+            if (BINDING_POWERS[operator] <= minBp) {
+                pos = start;
+                break;
+            }
+            int end = pos;
+            long right = parseOperand(BINDING_POWERS[operator]);
+            left = apply(operator, left, right, start, end);
+        }
+        return left;
+    }
+
+    private long parsePrefix() throws CalculationException {
+        if (++depth > MAX_DEPTH) {
+            throw new CalculationException("Expression is nested too deeply", pos, length);
+        }
+        try {
+            if (skipSpaces() == length) {
+                throw missingOperand();
+            }
+            int start = pos;
+            char c = source.charAt(pos);
+            if (c == '(') {
+                pos++;
+                long value = parseOperand(0);
+                if (skipSpaces() == length) {
+                    throw new CalculationException("Mismatched parentheses", start, start + 1);
+                }
+                pos++;
+                return value;
+            }
+            if (c == '-' || c == '+') {
+                pos++;
+                long value = parseOperand(BP_PREFIX);
+                return c == '-' ? wrap(-value) : value;
+            }
+            if (c == '~') {
+                pos++;
+                return wrap(~parseOperand(BP_PREFIX));
+            }
+            int end = wordEnd(pos);
+            if (end == pos) {
+                throw c == ')' || c < 256 && SYMBOL_OPERATORS[c] != NONE
+                        ? missingOperand()
+                        : new CalculationException("Unexpected '" + c + "'", pos, pos + 1);
+            }
+            if (source.regionMatches(true, pos, "not", 0, 3) && end == pos + 3) {
+                pos = end;
+                return wrap(~parseOperand(BP_PREFIX));
+            }
+            pos = end;
+            return parseLiteral(start, end);
+        } finally {
+            depth--;
+        }
+    }
+
+    // Reads [start, end) as a literal in the input base or the base its prefix names
+    private long parseLiteral(int start, int end) throws CalculationException {
+        int radix = base;
+        int digits = start;
+        if (end - start > 2 && source.charAt(start) == '0') {
+            int prefixed = prefixBase(source.charAt(start + 1), base);
+            if (prefixed != 0) {
+                radix = prefixed;
+                digits = start + 2;
+            }
+        }
+        // Largest value that can still take another digit without leaving the word
+        long limit = Long.divideUnsigned(mask, radix);
+        long value = 0;
+        for (int i = digits; i < end; i++) {
+            char c = source.charAt(i);
+            int digit = c < DIGIT_VALUES.length ? DIGIT_VALUES[c] : -1;
+            if (digit < 0 || digit >= radix) {
+                throw new CalculationException(
+                        i == start && Character.isLetter(c) ? "Unknown name " + source.substring(start, end)
+                                : "Invalid digit '" + c + "' for base " + radix, i, i + 1);
+            }
+            if (Long.compareUnsigned(value, limit) > 0
+                    || Long.compareUnsigned(value * radix, mask - digit) > 0) {
+                throw new CalculationException("Number doesn't fit in " + bits + " bits", start, end);
+            }
+            value = value * radix + digit;
+        }
+        return wrap(value);
+    }
+
+    // In hex input b and d are digits, so only 0x and 0o are prefixes there
+    private static int prefixBase(char c, int base) {
+        switch (Character.toLowerCase(c)) {
+            case 'x':
+                return 16;
+            case 'o':
+                return 8;
+            case 'b':
+                return base == 16 ? 0 : 2;
+            case 'd':
+                return base == 16 ? 0 : 10;
+            default:
+                return 0;
+        }
+    }
+
+    // Consumes and returns the operator at pos, or NONE leaving pos unchanged
+    private int matchOperator() {
+        char c = source.charAt(pos);
+        if ((c == '<' || c == '>') && pos + 1 < length && source.charAt(pos + 1) == c) {
+            pos += 2;
+            return c == '<' ? SHIFT_LEFT : SHIFT_RIGHT;
+        }
+        if (c < 256 && SYMBOL_OPERATORS[c] != NONE) {
+            pos++;
+            return SYMBOL_OPERATORS[c];
+        }
+        int end = wordEnd(pos);
+        int operator = keyword(pos, end);
+        if (operator != NONE) {
+            pos = end;
+        }
+        return operator;
+    }
+
+    private int keyword(int start, int end) {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (KEYWORDS[i].length() == end - start && source.regionMatches(true, start, KEYWORDS[i], 0, end - start)) {
+                return KEYWORD_OPERATORS[i];
+            }
+        }
+        return NONE;
+    }
+
+    private long apply(int operator, long a, long b, int start, int end) throws CalculationException {
+        switch (operator) {
+            case OR:
+                return a | b;
+            case XOR:
+                return a ^ b;
+            case AND:
+                return a & b;
+            case ADD:
+                return wrap(a + b);
+            case SUBTRACT:
+                return wrap(a - b);
+            case MULTIPLY:
+                return wrap(a * b);
+            case DIVIDE:
+            case MODULO:
+                if (b == 0) {
+                    throw new CalculationException("Division by zero", start, end);
+                }
+                if (operator == DIVIDE) {
+                    return wrap(signed ? a / b : Long.divideUnsigned(a, b));
+                }
+                return wrap(signed ? a % b : Long.remainderUnsigned(a, b));
+            default:
+                return shift(operator, a, b, start, end);
+        }
+    }
+
+    private long shift(int operator, long a, long count, int start, int end) throws CalculationException {
+        if (operator == ROTATE_LEFT || operator == ROTATE_RIGHT) {
+            // A negative count rotates the other way
+            int n = (int) (signed ? Math.floorMod(count, (long) bits) : Long.remainderUnsigned(count, bits));
+            if (operator == ROTATE_RIGHT) {
+                n = (bits - n) % bits;
+            }
+            long word = a & mask;
+            return n == 0 ? a : wrap(bits == 64 ? Long.rotateLeft(word, n) : word << n | word >>> (bits - n));
+        }
+        if (signed && count < 0) {
+            throw new CalculationException("Shift counts can't be negative", start, end);
+        }
+        if (Long.compareUnsigned(count, bits) >= 0) {
+            // Every bit shifted out; >> of a negative signed word leaves all ones
+            return operator == SHIFT_RIGHT && signed && a < 0 ? -1 : 0;
+        }
+        int n = (int) count;
+        return operator == SHIFT_LEFT ? wrap(a << n) : signed ? a >> n : a >>> n;
+    }
+
+    private CalculationException missingOperand() {
+        int start = pos < length ? pos : Math.max(0, length - 1);
+        return new CalculationException("Missing operand", start, Math.min(length, start + 1));
+    }
+
+    // End of the run of letters and digits starting at index
+    private int wordEnd(int index) {
+        int end = index;
+        while (end < length && (Character.isLetterOrDigit(source.charAt(end)) || source.charAt(end) == '_')) {
+            end++;
+        }
+        return end;
+    }
+
+    private int skipSpaces() {
+        while (pos < length && source.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+// Exact fraction in lowest terms with a positive denominator, as produced by
+// RationalEvaluator. Values that fit keep their parts in two longs; the BigInteger
+// parts are set instead only once a numerator or denominator needs more than 63 bits.
+final class Rational {
+    // Terminating decimals up to this many digits are shown exactly, longer ones rounded
+    private static final int MAX_EXACT_DIGITS = 30;
+    private static final MathContext DISPLAY_CONTEXT = new MathContext(15, RoundingMode.HALF_EVEN);
+    private static final BigDecimal PLAIN_MIN = new BigDecimal("0.000001");
+    private static final BigDecimal PLAIN_MAX = new BigDecimal("999999999999999");
+
+    final long numerator;
+    final long denominator;
+    final BigInteger bigNumerator;   // null when the value fits in the longs
+    final BigInteger bigDenominator;
+
+    private Rational(long numerator, long denominator, BigInteger bigNumerator, BigInteger bigDenominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+        this.bigNumerator = bigNumerator;
+        this.bigDenominator = bigDenominator;
+    }
+
+    // Both factories expect a reduced fraction with a positive denominator
+    static Rational of(long numerator, long denominator) {
+        return new Rational(numerator, denominator, null, null);
+    }
+
+    static Rational of(BigInteger numerator, BigInteger denominator) {
+        if (numerator.bitLength() < 64 && denominator.bitLength() < 64) {
+            return of(numerator.longValue(), denominator.longValue());
+        }
+        return new Rational(0, 0, numerator, denominator);
+    }
+
+    boolean isBig() {
+        return bigNumerator != null;
+    }
+
+    boolean isInteger() {
+        return isBig() ? bigDenominator.equals(BigInteger.ONE) : denominator == 1;
+    }
+
+    BigInteger bigNumerator() {
+        return isBig() ? bigNumerator : BigInteger.valueOf(numerator);
+    }
+
+    BigInteger bigDenominator() {
+        return isBig() ? bigDenominator : BigInteger.valueOf(denominator);
+    }
+
+    Rational negate() {
+        if (isBig() || numerator == Long.MIN_VALUE) {
+            return of(bigNumerator().negate(), bigDenominator());
+        }
+        return of(-numerator, denominator);
+    }
+
+    // Nearest double, e.g. for ANS
+    double doubleValue() {
+        if (!isBig()) {
+            return (double) numerator / denominator;
+        }
+        return new BigDecimal(bigNumerator).divide(new BigDecimal(bigDenominator), new MathContext(20)).doubleValue();
+    }
+
+    // "-7/4", or just the integer
+    String toFractionString() {
+        if (!isBig()) {
+            return denominator == 1 ? Long.toString(numerator) : numerator + "/" + denominator;
+        }
+        return isInteger() ? bigNumerator.toString() : bigNumerator + "/" + bigDenominator;
+    }
+
+    // Exact when the decimal expansion terminates within MAX_EXACT_DIGITS digits,
+    // otherwise rounded to 15 significant digits like formatResult. Scientific notation
+    // uses the E form the parser reads back, e.g. 1.5E-7.
+    String toDecimalString() {
+        BigDecimal numerator = new BigDecimal(bigNumerator());
+        BigDecimal value;
+        try {
+            value = numerator.divide(new BigDecimal(bigDenominator()), new MathContext(MAX_EXACT_DIGITS, RoundingMode.UNNECESSARY));
+        } catch (ArithmeticException e) {
+            // Repeating, or too long to show in full
+            value = numerator.divide(new BigDecimal(bigDenominator()), DISPLAY_CONTEXT);
+        }
+        value = value.stripTrailingZeros();
+        BigDecimal magnitude = value.abs();
+        if (value.signum() == 0) {
+            return "0";
+        }
+        if (magnitude.compareTo(PLAIN_MIN) >= 0
+                && (magnitude.compareTo(PLAIN_MAX) <= 0 || value.precision() <= MAX_EXACT_DIGITS && value.scale() <= 0)) {
+            return value.toPlainString();
+        }
+        return value.round(DISPLAY_CONTEXT).toString();
+    }
+}
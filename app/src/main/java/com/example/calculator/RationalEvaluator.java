@@ -0,0 +1,396 @@
+package com.example.calculator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+// Evaluates an Ast exactly over the rationals: + - × ÷, ², integer powers and
+// factorials of integers. Like ExpressionEvaluator it is one forward pass over the
+// nodes, here keeping each value as a reduced numerator/denominator pair of longs.
+// Overflow is detected with the Math.*Exact operations and only then is that node
+// promoted to BigInteger, so small-integer and decimal inputs never allocate per node.
+final class RationalEvaluator {
+    // Larger powers and results fall back to floating point rather than growing without bound
+    private static final int MAX_EXPONENT = 4096;
+    private static final int MAX_BITS = 1 << 16;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Ast ast;
+    private final long[] numerators;
+    private final long[] denominators;
+    // Allocated on the first overflow; a node is big when its entry is non-null
+    private BigInteger[] bigNumerators;
+    private BigInteger[] bigDenominators;
+
+    private RationalEvaluator(Ast ast) {
+        this.ast = ast;
+        numerators = new long[ast.size];
+        denominators = new long[ast.size];
+    }
+
+    // Exact value, or null when the expression leaves the rationals (constants,
+    // functions, fractional powers) or grows too large, so the caller can fall back
+    // to ExpressionEvaluator
+    static Rational evaluate(Ast ast) throws CalculationException {
+        if (ast.hasErrors()) {
+            throw ast.firstError();
+        }
+        return new RationalEvaluator(ast).run();
+    }
+
+    private Rational run() throws CalculationException {
+        for (int node = 0; node < ast.size; node++) {
+            if (!apply(node, ast.left[node], ast.right[node])) {
+                return null;
+            }
+        }
+        int root = ast.root;
+        return isBig(root)
+                ? Rational.of(bigNumerators[root], bigDenominators[root])
+                : Rational.of(numerators[root], denominators[root]);
+    }
+
+    // False when the node has no exact value
+    private boolean apply(int node, int left, int right) throws CalculationException {
+        int start = ast.starts[node];
+        int end = ast.ends[node];
+        switch (ast.kinds[node]) {
+            case Ast.NUMBER:
+                return parseLiteral(node, start, end);
+            case Ast.NEGATE:
+                return negate(node, left);
+            case Ast.ADD:
+                return add(node, left, right, false);
+            case Ast.SUBTRACT:
+                return add(node, left, right, true);
+            case Ast.MULTIPLY:
+                return multiply(node, left, right, false);
+            case Ast.DIVIDE:
+                if (isZero(right)) {
+                    throw new CalculationException("Division by zero", start, end);
+                }
+                return multiply(node, left, right, true);
+            case Ast.SQUARE:
+                return multiply(node, left, left, false);
+            case Ast.POWER:
+                return power(node, left, right, start, end);
+            case Ast.FACTORIAL:
+                return factorial(node, left, start, end);
+            default:
+                // CONSTANT and FUNCTION values are irrational in general
+                return false;
+        }
+    }
+
+    private boolean negate(int node, int operand) {
+        if (!isBig(operand) && numerators[operand] != Long.MIN_VALUE) {
+            set(node, -numerators[operand], denominators[operand]);
+            return true;
+        }
+        return setBig(node, bigNumerator(operand).negate(), bigDenominator(operand));
+    }
+
+    // left + right, or left - right when subtract is set
+    private boolean add(int node, int left, int right, boolean subtract) {
+        if (!isBig(left) && !isBig(right)) {
+            try {
+                long a = numerators[left];
+                long b = denominators[left];
+                long c = subtract ? Math.negateExact(numerators[right]) : numerators[right];
+                long d = denominators[right];
+                long g = gcd(b, d);
+                if (g == 1) {
+                    // Coprime denominators give a reduced sum
+                    set(node, Math.addExact(Math.multiplyExact(a, d), Math.multiplyExact(c, b)), Math.multiplyExact(b, d));
+                } else {
+                    long t = Math.addExact(Math.multiplyExact(a, d / g), Math.multiplyExact(c, b / g));
+                    long h = gcd(abs(t), g);
+                    set(node, t / h, Math.multiplyExact(b / g, d / h));
+                }
+                return true;
+            } catch (ArithmeticException overflow) {
+                // Redone below with BigInteger
+            }
+        }
+        BigInteger b = bigDenominator(left);
+        BigInteger d = bigDenominator(right);
+        BigInteger c = subtract ? bigNumerator(right).negate() : bigNumerator(right);
+        return setReduced(node, bigNumerator(left).multiply(d).add(c.multiply(b)), b.multiply(d));
+    }
+
+    // left × right, or left ÷ right when divide is set (right is known to be non-zero)
+    private boolean multiply(int node, int left, int right, boolean divide) {
+        if (!isBig(left) && !isBig(right)) {
+            try {
+                long a = numerators[left];
+                long b = denominators[left];
+                long c = divide ? denominators[right] : numerators[right];
+                long d = divide ? numerators[right] : denominators[right];
+                if (d < 0) {
+                    c = Math.negateExact(c);
+                    d = Math.negateExact(d);
+                }
+                if (a == 0 || c == 0) {
+                    set(node, 0, 1);
+                    return true;
+                }
+                // Cross-cancel first so the products stay small and already reduced
+                long g1 = gcd(abs(a), d);
+                long g2 = gcd(abs(c), b);
+                set(node, Math.multiplyExact(a / g1, c / g2), Math.multiplyExact(b / g2, d / g1));
+                return true;
+            } catch (ArithmeticException overflow) {
+                // Redone below with BigInteger
+            }
+        }
+        BigInteger c = divide ? bigDenominator(right) : bigNumerator(right);
+        BigInteger d = divide ? bigNumerator(right) : bigDenominator(right);
+        return setReduced(node, bigNumerator(left).multiply(c), bigDenominator(left).multiply(d));
+    }
+
+    private boolean power(int node, int left, int right, int start, int end) throws CalculationException {
+        if (isBig(right) || denominators[right] != 1) {
+            // Fractional exponents are generally irrational; so are huge ones in practice
+            return false;
+        }
+        long exponent = numerators[right];
+        if (isZero(left)) {
+            if (exponent < 0) {
+                throw new CalculationException("0 to negative power is undefined", start, end);
+            }
+            set(node, exponent == 0 ? 1 : 0, 1);
+            return true;
+        }
+        if (exponent < -MAX_EXPONENT || exponent > MAX_EXPONENT) {
+            return false;
+        }
+        int n = (int) Math.abs(exponent);
+        if (!isBig(left)) {
+            try {
+                long a = pow(numerators[left], n);
+                long b = pow(denominators[left], n);
+                if (exponent >= 0) {
+                    set(node, a, b);
+                } else if (a < 0) {
+                    set(node, Math.negateExact(b), Math.negateExact(a));
+                } else {
+                    set(node, b, a);
+                }
+                return true;
+            } catch (ArithmeticException overflow) {
+                // Redone below with BigInteger
+            }
+        }
+        if ((long) bitLength(left) * n > MAX_BITS) {
+            return false;
+        }
+        BigInteger numerator = bigNumerator(left).pow(n);
+        BigInteger denominator = bigDenominator(left).pow(n);
+        if (exponent < 0) {
+            BigInteger swap = numerator;
+            numerator = denominator.multiply(BigInteger.valueOf(swap.signum()));
+            denominator = swap.abs();
+        }
+        // Powers of a reduced fraction are reduced
+        return setBig(node, numerator, denominator);
+    }
+
+    private boolean factorial(int node, int operand, int start, int end) throws CalculationException {
+        if (isBig(operand) || denominators[operand] != 1 || numerators[operand] < 0) {
+            throw new CalculationException("Factorial only works with non-negative integers", start, end);
+        }
+        long n = numerators[operand];
+        if (n > 170) {
+            throw new CalculationException("Factorial argument too large (max 170)", start, end);
+        }
+        long result = 1;
+        int i = 2;
+        // 20! is the largest factorial that fits in a long
+        for (; i <= Math.min(n, 20); i++) {
+            result *= i;
+        }
+        if (i > n) {
+            set(node, result, 1);
+            return true;
+        }
+        BigInteger big = BigInteger.valueOf(result);
+        for (; i <= n; i++) {
+            big = big.multiply(BigInteger.valueOf(i));
+        }
+        return setBig(node, big, BigInteger.ONE);
+    }
+
+    // Decimal literal, e.g. 0.1 or 1.5E-7, as the exact fraction it denotes
+    private boolean parseLiteral(int node, int start, int end) {
+        String source = ast.source;
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        boolean fits = true;
+        int i = start;
+        for (; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (c == 'E') {
+                break;
+            }
+            if (mantissa > (Long.MAX_VALUE - 9) / 10) {
+                fits = false;
+                break;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (fraction) {
+                fractionDigits++;
+            }
+        }
+        int mark = source.indexOf('E', start);
+        if (mark >= 0 && mark < end) {
+            // Exponents beyond this are far past MAX_BITS anyway, and may be past what
+            // BigDecimal can parse; floating point gives 0 or Infinity for them
+            String digits = source.substring(mark + 1, end);
+            if (digits.length() > 6) {
+                return false;
+            }
+            exponent = Integer.parseInt(digits.startsWith("+") ? digits.substring(1) : digits);
+        }
+        int scale = fractionDigits - exponent;
+        if (fits && scale >= 0 && scale < POWERS_OF_TEN.length) {
+            long denominator = POWERS_OF_TEN[scale];
+            long g = gcd(mantissa, denominator);
+            set(node, mantissa / g, denominator / g);
+            return true;
+        }
+        if (fits && scale < 0 && -scale < POWERS_OF_TEN.length && mantissa <= Long.MAX_VALUE / POWERS_OF_TEN[-scale]) {
+            set(node, mantissa * POWERS_OF_TEN[-scale], 1);
+            return true;
+        }
+        BigDecimal value = new BigDecimal(source.substring(start, end));
+        if (Math.abs((long) value.scale()) * 4 > MAX_BITS) {
+            return false;
+        }
+        BigInteger numerator = value.unscaledValue();
+        BigInteger denominator = BigInteger.ONE;
+        if (value.scale() > 0) {
+            denominator = BigInteger.TEN.pow(value.scale());
+        } else {
+            numerator = numerator.multiply(BigInteger.TEN.pow(-value.scale()));
+        }
+        return setReduced(node, numerator, denominator);
+    }
+
+    private void set(int node, long numerator, long denominator) {
+        numerators[node] = numerator;
+        denominators[node] = denominator;
+        if (bigNumerators != null) {
+            bigNumerators[node] = null;
+        }
+    }
+
+    private boolean setReduced(int node, BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger g = numerator.gcd(denominator);
+        if (!g.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(g);
+            denominator = denominator.divide(g);
+        }
+        return setBig(node, numerator, denominator);
+    }
+
+    // Stores a reduced value, back in the longs when it fits again; false past MAX_BITS
+    private boolean setBig(int node, BigInteger numerator, BigInteger denominator) {
+        if (numerator.bitLength() < 64 && denominator.bitLength() < 64) {
+            set(node, numerator.longValue(), denominator.longValue());
+            return true;
+        }
+        if (numerator.bitLength() + denominator.bitLength() > MAX_BITS) {
+            return false;
+        }
+        if (bigNumerators == null) {
+            bigNumerators = new BigInteger[ast.size];
+            bigDenominators = new BigInteger[ast.size];
+            Metrics.increment(Metrics.EXACT_PROMOTIONS);
+        }
+        bigNumerators[node] = numerator;
+        bigDenominators[node] = denominator;
+        return true;
+    }
+
+    private boolean isBig(int node) {
+        return bigNumerators != null && bigNumerators[node] != null;
+    }
+
+    private boolean isZero(int node) {
+        return !isBig(node) && numerators[node] == 0;
+    }
+
+    private int bitLength(int node) {
+        return isBig(node)
+                ? Math.max(bigNumerators[node].bitLength(), bigDenominators[node].bitLength())
+                : 64 - Long.numberOfLeadingZeros(Math.max(Math.abs(numerators[node]), denominators[node]));
+    }
+
+    private BigInteger bigNumerator(int node) {
+        return isBig(node) ? bigNumerators[node] : BigInteger.valueOf(numerators[node]);
+    }
+
+    private BigInteger bigDenominator(int node) {
+        return isBig(node) ? bigDenominators[node] : BigInteger.valueOf(denominators[node]);
+    }
+
+    // Binary (Stein's) GCD of two non-negative values: shifts and subtractions only
+    static long gcd(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0) {
+            return a;
+        }
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+        do {
+            b >>= Long.numberOfTrailingZeros(b);
+            if (a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        } while (b != 0);
+        return a << shift;
+    }
+
+    private static long abs(long value) {
+        if (value == Long.MIN_VALUE) {
+            throw new ArithmeticException("long overflow");
+        }
+        return Math.abs(value);
+    }
+
+    private static long pow(long base, int exponent) {
+        long result = 1;
+        while (true) {
+            if ((exponent & 1) != 0) {
+                result = Math.multiplyExact(result, base);
+            }
+            exponent >>= 1;
+            if (exponent == 0) {
+                return result;
+            }
+            base = Math.multiplyExact(base, base);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.calculator;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Formats history timestamps as "5 minutes ago" style labels, along with the time
+// window each label stays valid for. HistoryStore caches both per row, so rebinding a
+// row inside that window (e.g. during a fling) allocates nothing.
+// Not thread-safe: used on the main thread only.
+class RelativeTimeFormatter {
+
+    static final long MINUTE = 60_000L;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+    static final long WEEK = 7 * DAY;
+
+    private final Calendar calendar = Calendar.getInstance();
+    private final Date date = new Date();
+
+    // Absolute-date buckets, used as indexes into the per-locale format cache
+    private static final int BUCKET_SAME_YEAR = 0;
+    private static final int BUCKET_OTHER_YEAR = 1;
+    private static final String[] DATE_PATTERNS = {"MMM dd, HH:mm", "MMM dd, yyyy, HH:mm"};
+
+    private final Map<Locale, SimpleDateFormat[]> dateFormats = new HashMap<>();
+
+    // Validity window of the last formatted label
+    private long validFrom;
+    private long validUntil;
+
+    // The label of timestamp as of now; it holds while now is in [validFrom(), validUntil())
+    String format(long timestamp, long now) {
+        long diff = Math.max(0, now - timestamp);
+
+        long minutes = diff / MINUTE;
+        long hours = diff / HOUR;
+        long days = diff / DAY;
+        long weeks = diff / WEEK;
+
+        String text;
+        long from;
+        long until;
+        if (minutes < 1) {
+            text = "Just now";
+            from = Long.MIN_VALUE;
+            until = timestamp + MINUTE;
+        } else if (minutes < 60) {
+            text = minutes == 1 ? "1 minute ago" : minutes + " minutes ago";
+            from = timestamp + minutes * MINUTE;
+            until = from + MINUTE;
+        } else if (hours < 24) {
+            text = hours == 1 ? "1 hour ago" : hours + " hours ago";
+            from = timestamp + hours * HOUR;
+            until = from + HOUR;
+        } else if (days < 7) {
+            text = days == 1 ? "1 day ago" : days + " days ago";
+            from = timestamp + days * DAY;
+            until = from + DAY;
+        } else if (weeks < 4) {
+            text = weeks == 1 ? "1 week ago" : weeks + " weeks ago";
+            from = timestamp + weeks * WEEK;
+            until = from + WEEK;
+        } else {
+            // Absolute date; the year is only shown for older entries, so the label
+            // changes when the current year rolls over
+            calendar.setTimeInMillis(now);
+            int currentYear = calendar.get(Calendar.YEAR);
+            calendar.clear();
+            calendar.set(currentYear, Calendar.JANUARY, 1);
+            long yearStart = calendar.getTimeInMillis();
+            calendar.set(currentYear + 1, Calendar.JANUARY, 1);
+            long nextYearStart = calendar.getTimeInMillis();
+
+            date.setTime(timestamp);
+            text = dateFormat(timestamp >= yearStart ? BUCKET_SAME_YEAR : BUCKET_OTHER_YEAR).format(date);
+            from = Math.max(timestamp + 4 * WEEK, yearStart);
+            until = nextYearStart;
+        }
+
+        validFrom = from;
+        validUntil = until;
+        return text;
+    }
+
+    long validFrom() {
+        return validFrom;
+    }
+
+    long validUntil() {
+        return validUntil;
+    }
+
+    private SimpleDateFormat dateFormat(int bucket) {
+        Locale locale = Locale.getDefault();
+        SimpleDateFormat[] formats = dateFormats.get(locale);
+        if (formats == null) {
+            formats = new SimpleDateFormat[DATE_PATTERNS.length];
+            dateFormats.put(locale, formats);
+        }
+        if (formats[bucket] == null) {
+            formats[bucket] = new SimpleDateFormat(DATE_PATTERNS[bucket], locale);
+        }
+        return formats[bucket];
+    }
+}
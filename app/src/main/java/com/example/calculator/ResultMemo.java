@@ -0,0 +1,211 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Remembered results of real evaluations, in front of ExpressionEvaluator. Only pure
+// expressions qualify: no variables, tape lines or lists, so the value depends on the
+// text and the angle mode alone. The key is a canonical form of the tree (operands
+// of + and × in a fixed order, numbers as their exact bits in hex, whitespace gone)
+// prefixed with the angle mode, so "2×sin(30)" and "sin(30) * 2" share an entry.
+// Building a key costs time too, so only results that took several times as long are
+// kept, and the saving counted is net of every key built, misses included.
+// This is the in-memory LRU tier; MainActivity keeps the same entries in the
+// result_memo table, loads the most recently hit ones at start, drops those of other
+// ENGINE_VERSIONs and writes hit times in batches. Main thread only.
+final class ResultMemo {
+    static final int CAPACITY = 256;
+    // Rows kept in result_memo, the most recently hit
+    static final int DISK_CAPACITY = 2048;
+    // Cheaper evaluations aren't worth an entry, whatever the key cost
+    static final long MIN_COST_NANOS = 20_000;
+    // An evaluation must take this many times as long as building its key
+    static final int MIN_COST_RATIO = 4;
+    // Hits collected before their last_hit times are written
+    static final int HIT_BATCH = 64;
+    // Results change meaning when the parser or function table does, and keys when
+    // their format does
+    private static final int KEY_FORMAT = 2;
+    static final int ENGINE_VERSION = AstCodec.ENGINE_VERSION * 31 + KEY_FORMAT;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static final class Entry {
+        final double value;
+        // What evaluating took, and so what each hit saves before the key cost
+        final long costNanos;
+
+        Entry(double value, long costNanos) {
+            this.value = value;
+            this.costNanos = costNanos;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResultMemo.Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    // Keys hit since the last drainHits()
+    private final LinkedHashSet<String> hitKeys = new LinkedHashSet<>();
+
+    // The memo key of ast in the given angle mode, or null when it can't be memoized
+    static String key(Ast ast, boolean degreeMode) {
+        if (ast.hasErrors() || ast.root == Ast.NONE) {
+            return null;
+        }
+        // Sized up front from the nodes, as a StringBuilder costs more than the tree walk
+        int length = 4;
+        for (int node = 0; node < ast.size; node++) {
+            int kind = ast.kinds[node];
+            if (kind == Ast.VARIABLE || kind == Ast.LINE || kind == Ast.LIST || kind == Ast.IMAGINARY) {
+                return null;
+            }
+            length += kind == Ast.NUMBER || kind == Ast.CONSTANT ? 16
+                    : kind == Ast.FUNCTION ? FunctionRegistry.name(ast.data[node]).length() + 4 : 7;
+        }
+        char[] out = new char[length];
+        (degreeMode ? "deg " : "rad ").getChars(0, 4, out, 0);
+        return new String(out, 0, appendCanonical(ast, ast.root, out, 4));
+    }
+
+    // Writes node at out[at] and returns where it ends
+    private static int appendCanonical(Ast ast, int node, char[] out, int at) {
+        int kind = ast.kinds[node];
+        if (kind == Ast.NUMBER || kind == Ast.CONSTANT) {
+            // π and pi become the same key. The bits in hex, less the trailing zeros
+            // that short literals have plenty of; a separator always follows.
+            long bits = Double.doubleToLongBits(ast.values[node]);
+            do {
+                out[at++] = HEX_DIGITS[(int) (bits >>> 60)];
+                bits <<= 4;
+            } while (bits != 0);
+            return at;
+        }
+        out[at++] = '(';
+        if (kind == Ast.FUNCTION) {
+            String name = FunctionRegistry.name(ast.data[node]);
+            name.getChars(0, name.length(), out, at);
+            at += name.length();
+        } else {
+            out[at++] = '#';
+            out[at++] = (char) ('a' + kind);
+        }
+        int first = ast.left[node];
+        int second = ast.right[node];
+        if (second != Ast.NONE && isCommutative(kind) && compare(ast, first, second) > 0) {
+            // Commutative in floating point too, so either order gives the same value
+            first = ast.right[node];
+            second = ast.left[node];
+        }
+        out[at++] = ' ';
+        at = appendCanonical(ast, first, out, at);
+        if (second != Ast.NONE) {
+            out[at++] = ' ';
+            at = appendCanonical(ast, second, out, at);
+        }
+        out[at++] = ')';
+        return at;
+    }
+
+    private static boolean isCommutative(int kind) {
+        return kind == Ast.ADD || kind == Ast.MULTIPLY;
+    }
+
+    // Orders two subtrees without writing them out. Any fixed order works, as long as
+    // trees with the same canonical form compare equal; most pairs differ at the top.
+    private static int compare(Ast ast, int a, int b) {
+        int kind = leafKind(ast.kinds[a]);
+        if (kind != leafKind(ast.kinds[b])) {
+            return Integer.compare(kind, leafKind(ast.kinds[b]));
+        }
+        if (kind == Ast.NUMBER) {
+            return Long.compare(Double.doubleToLongBits(ast.values[a]), Double.doubleToLongBits(ast.values[b]));
+        }
+        if (kind == Ast.FUNCTION && ast.data[a] != ast.data[b]) {
+            return Integer.compare(ast.data[a], ast.data[b]);
+        }
+        int a1 = ast.left[a];
+        int a2 = ast.right[a];
+        int b1 = ast.left[b];
+        int b2 = ast.right[b];
+        if (a2 == Ast.NONE || b2 == Ast.NONE) {
+            return a2 != b2 ? (a2 == Ast.NONE ? -1 : 1) : compare(ast, a1, b1);
+        }
+        if (isCommutative(kind)) {
+            if (compare(ast, a1, a2) > 0) {
+                a1 = ast.right[a];
+                a2 = ast.left[a];
+            }
+            if (compare(ast, b1, b2) > 0) {
+                b1 = ast.right[b];
+                b2 = ast.left[b];
+            }
+        }
+        int order = compare(ast, a1, b1);
+        return order != 0 ? order : compare(ast, a2, b2);
+    }
+
+    // Numbers and constants are written alike, so they sort alike
+    private static int leafKind(int kind) {
+        return kind == Ast.CONSTANT ? Ast.NUMBER : kind;
+    }
+
+    // The remembered result for key, counting the hit or miss. keyNanos is what
+    // building the key took, which a hit saves less of and a miss wastes.
+    Entry get(String key, long keyNanos) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Metrics.increment(Metrics.MEMO_MISSES);
+            Metrics.add(Metrics.MEMO_NANOS_SAVED, -keyNanos);
+            return null;
+        }
+        Metrics.increment(Metrics.MEMO_HITS);
+        Metrics.add(Metrics.MEMO_NANOS_SAVED, entry.costNanos - keyNanos);
+        hitKeys.add(key);
+        return entry;
+    }
+
+    // Remembers a result that cost costNanos and whose key took keyNanos; returns
+    // whether it was worth keeping
+    boolean put(String key, double value, long costNanos, long keyNanos) {
+        if (costNanos < MIN_COST_NANOS || costNanos < MIN_COST_RATIO * keyNanos) {
+            return false;
+        }
+        entries.put(key, new Entry(value, costNanos));
+        return true;
+    }
+
+    int pendingHits() {
+        return hitKeys.size();
+    }
+
+    // Keys hit since the last call, for writing their last_hit in one statement
+    List<String> drainHits() {
+        List<String> keys = new ArrayList<>(hitKeys);
+        hitKeys.clear();
+        return keys;
+    }
+
+    // Adds entries loaded from disk, given most recently hit first. They go in as
+    // older than any made since, so those stay when the memo is full.
+    void load(List<MemoEntry> rows) {
+        Map<String, Entry> recent = new LinkedHashMap<>(entries);
+        entries.clear();
+        for (int i = Math.min(rows.size(), CAPACITY) - 1; i >= 0; i--) {
+            MemoEntry row = rows.get(i);
+            if (row.engineVersion == ENGINE_VERSION) {
+                entries.put(row.key, new Entry(row.value, row.costNanos));
+            }
+        }
+        entries.putAll(recent);
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
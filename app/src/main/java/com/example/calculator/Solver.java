@@ -0,0 +1,158 @@
+package com.example.calculator;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleUnaryOperator;
+
+// Finds a root of f(x) = 0 in [a, b]. The interval is scanned on a uniform grid for
+// the first sign change, then Brent's method narrows that bracket: inverse quadratic
+// interpolation or secant steps while they make progress, bisection when they don't,
+// so it converges superlinearly on smooth functions and never leaves the bracket.
+// Runs on the calling thread; cancelled is polled between evaluations.
+final class Solver {
+    private static final int SCAN_SEGMENTS = 256;
+    private static final int MAX_ITERATIONS = 200;
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private final DoubleUnaryOperator f;
+    private final BooleanSupplier cancelled;
+    private long evaluations;
+
+    private Solver(GraphFunction function, BooleanSupplier cancelled) {
+        this.f = function.kernel();
+        this.cancelled = cancelled;
+    }
+
+    // Null when cancelled. progress receives the fraction done, from 0 to 1.
+    static NumericResult solve(GraphFunction function, double a, double b, BooleanSupplier cancelled,
+                               DoubleConsumer progress) throws CalculationException {
+        if (!Double.isFinite(a) || !Double.isFinite(b) || a == b) {
+            throw new CalculationException("Bounds must be two different finite numbers");
+        }
+        long start = System.nanoTime();
+        Solver solver = new Solver(function, cancelled);
+        Double root = solver.scanAndSolve(Math.min(a, b), Math.max(a, b), progress);
+        if (root == null) {
+            return null;
+        }
+        progress.accept(1);
+        return new NumericResult(root, Double.NaN, solver.evaluations, System.nanoTime() - start);
+    }
+
+    private double evaluate(double x) {
+        evaluations++;
+        return f.applyAsDouble(x);
+    }
+
+    private Double scanAndSolve(double a, double b, DoubleConsumer progress) throws CalculationException {
+        double step = (b - a) / SCAN_SEGMENTS;
+        double x0 = a;
+        double f0 = evaluate(x0);
+        double scale = Double.isFinite(f0) ? Math.abs(f0) : 0;
+        for (int segment = 1; segment <= SCAN_SEGMENTS; segment++) {
+            if (f0 == 0) {
+                return x0;
+            }
+            double x1 = segment == SCAN_SEGMENTS ? b : a + segment * step;
+            double f1 = evaluate(x1);
+            if (Double.isFinite(f1)) {
+                scale = Math.max(scale, Math.abs(f1));
+            }
+            if (Double.isFinite(f0) && Double.isFinite(f1) && (f0 < 0) != (f1 < 0) && f1 != 0) {
+                progress.accept(0.5);
+                Double root = brent(x0, f0, x1, f1);
+                if (root == null) {
+                    return null;
+                }
+                // A sign change across a pole or jump isn't a root
+                double residual = Math.abs(evaluate(root));
+                if (residual <= 1e-6 * Math.max(1, scale)) {
+                    return root;
+                }
+            }
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            progress.accept(0.5 * segment / SCAN_SEGMENTS);
+            x0 = x1;
+            f0 = f1;
+        }
+        if (f0 == 0) {
+            return x0;
+        }
+        throw new CalculationException("No root found between " + a + " and " + b);
+    }
+
+    // Brent's zeroin on a bracket with f(a) and f(b) of opposite signs
+    private Double brent(double a, double fa, double b, double fb) throws CalculationException {
+        double c = a;
+        double fc = fa;
+        double d = b - a;
+        double e = d;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            if ((fb > 0) == (fc > 0)) {
+                // Keep the root between b and c
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                // b is the best estimate so far
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance = 2 * EPSILON * Math.abs(b) + Double.MIN_NORMAL;
+            double middle = (c - b) / 2;
+            if (Math.abs(middle) <= tolerance || fb == 0) {
+                return b;
+            }
+            if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    // Secant step
+                    p = 2 * middle * s;
+                    q = 1 - s;
+                } else {
+                    // Inverse quadratic interpolation
+                    double r = fb / fc;
+                    double t = fa / fc;
+                    p = s * (2 * middle * t * (t - r) - (b - a) * (r - 1));
+                    q = (t - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                } else {
+                    p = -p;
+                }
+                if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = middle;
+                    e = d;
+                }
+            } else {
+                d = middle;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance ? d : Math.copySign(tolerance, middle);
+            fb = evaluate(b);
+            if (Double.isNaN(fb)) {
+                throw new CalculationException("f(x) is undefined inside the bracket near " + b);
+            }
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+        }
+        return b;
+    }
+}
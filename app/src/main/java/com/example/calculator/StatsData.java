@@ -0,0 +1,304 @@
+package com.example.calculator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+// The data list of statistics mode. Values live in fixed-size primitive chunks, so
+// appending never copies the list, and the moments are kept up to date as values come
+// and go: Welford's running mean and sum of squared deviations, and a compensated
+// (Kahan–Babuška) sum, all O(1) per add or removal. min and max are exact and only
+// rescanned after the extreme itself was removed. Quantiles are exact, by quickselect
+// on a copy that is reused until the data changes. Chunks touched since the last save
+// are tracked so only those are persisted. Main thread only.
+final class StatsData {
+    static final int CHUNK_SIZE = 4096;
+
+    private double[][] chunks = new double[4][];
+    private int size;
+    private double mean;
+    private double squaredDeviations;
+    private double sum;
+    private double compensation;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private boolean extremesStale;
+    // Copy of the values, partially ordered by earlier selections; null after a change
+    private double[] selection;
+    private final BitSet dirty = new BitSet();
+
+    int size() {
+        return size;
+    }
+
+    double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return chunks[index / CHUNK_SIZE][index % CHUNK_SIZE];
+    }
+
+    void add(double value) {
+        int chunk = size / CHUNK_SIZE;
+        if (chunk == chunks.length) {
+            chunks = java.util.Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new double[CHUNK_SIZE];
+        }
+        chunks[chunk][size % CHUNK_SIZE] = value;
+        size++;
+        dirty.set(chunk);
+        selection = null;
+
+        double delta = value - mean;
+        mean += delta / size;
+        squaredDeviations += delta * (value - mean);
+        accumulate(value);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // Removes the value at index by moving the last value into its place, so the
+    // order of the list isn't kept
+    void remove(int index) {
+        double value = get(index);
+        int last = size - 1;
+        chunks[index / CHUNK_SIZE][index % CHUNK_SIZE] = get(last);
+        dirty.set(index / CHUNK_SIZE);
+        dirty.set(last / CHUNK_SIZE);
+        size = last;
+        selection = null;
+        if (size == 0) {
+            clear();
+            return;
+        }
+        // Welford's update run backwards
+        double delta = value - mean;
+        mean -= delta / size;
+        squaredDeviations = Math.max(0, squaredDeviations - delta * (value - mean));
+        accumulate(-value);
+        if (value == min || value == max) {
+            extremesStale = true;
+        }
+    }
+
+    void removeLast() {
+        remove(size - 1);
+    }
+
+    void clear() {
+        chunks = new double[4][];
+        dirty.set(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        size = 0;
+        mean = 0;
+        squaredDeviations = 0;
+        sum = 0;
+        compensation = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        extremesStale = false;
+        selection = null;
+    }
+
+    // Kahan–Babuška: the low-order bits lost by each addition are carried separately
+    private void accumulate(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+
+    double sum() {
+        return sum + compensation;
+    }
+
+    // NaN for an empty list
+    double mean() {
+        return size == 0 ? Double.NaN : mean;
+    }
+
+    // Sample variance, dividing by n - 1; NaN below two values
+    double variance() {
+        return size < 2 ? Double.NaN : squaredDeviations / (size - 1);
+    }
+
+    double populationVariance() {
+        return size == 0 ? Double.NaN : squaredDeviations / size;
+    }
+
+    double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    double min() {
+        refreshExtremes();
+        return size == 0 ? Double.NaN : min;
+    }
+
+    double max() {
+        refreshExtremes();
+        return size == 0 ? Double.NaN : max;
+    }
+
+    private void refreshExtremes() {
+        if (!extremesStale) {
+            return;
+        }
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            double value = get(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        extremesStale = false;
+    }
+
+    double median() {
+        return quantile(0.5);
+    }
+
+    // The q-quantile, 0 ≤ q ≤ 1, interpolating linearly between the two nearest ranks
+    // (the same definition as Excel's PERCENTILE.INC); NaN for an empty list
+    double quantile(double q) {
+        if (size == 0 || !(q >= 0 && q <= 1)) {
+            return Double.NaN;
+        }
+        if (selection == null) {
+            selection = toArray();
+        }
+        return quantile(selection, q);
+    }
+
+    // quantile() of a non-empty array, reordering it; also used by ListEvaluator
+    static double quantile(double[] values, double q) {
+        double rank = q * (values.length - 1);
+        int lower = (int) rank;
+        double lowerValue = select(values, lower);
+        if (lower == rank) {
+            return lowerValue;
+        }
+        // Selection left everything above lower unordered; the next rank is their minimum
+        double upperValue = Double.POSITIVE_INFINITY;
+        for (int i = lower + 1; i < values.length; i++) {
+            upperValue = Math.min(upperValue, values[i]);
+        }
+        return lowerValue + (rank - lower) * (upperValue - lowerValue);
+    }
+
+    double[] toArray() {
+        double[] values = new double[size];
+        for (int chunk = 0; chunk * CHUNK_SIZE < size; chunk++) {
+            System.arraycopy(chunks[chunk], 0, values, chunk * CHUNK_SIZE,
+                    Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE));
+        }
+        return values;
+    }
+
+    // Hoare's quickselect with a median-of-three pivot: puts the k-th smallest value at
+    // values[k], smaller ones before it and larger ones after. Expected O(n).
+    static double select(double[] values, int k) {
+        int low = 0;
+        int high = values.length - 1;
+        while (high > low) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < values[low]) {
+                swap(values, middle, low);
+            }
+            if (values[high] < values[low]) {
+                swap(values, high, low);
+            }
+            if (values[high] < values[middle]) {
+                swap(values, high, middle);
+            }
+            double pivot = values[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    int chunkCount() {
+        return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    // Chunks changed since the last call, in order; a changed chunk at or past
+    // chunkCount() has been emptied and should be deleted
+    int[] takeDirtyChunks() {
+        int[] changed = dirty.stream().toArray();
+        dirty.clear();
+        return changed;
+    }
+
+    // The values of a chunk as little-endian doubles, for storage
+    byte[] chunkBytes(int chunk) {
+        int count = Math.max(0, Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE));
+        ByteBuffer buffer = ByteBuffer.allocate(count * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(chunks[chunk], 0, count);
+        return buffer.array();
+    }
+
+    // Appends the values of a stored chunk; chunks must be appended in order
+    void appendChunk(byte[] bytes) {
+        java.nio.DoubleBuffer values = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        while (values.hasRemaining()) {
+            add(values.get());
+        }
+    }
+
+    // Numbers separated by whitespace, commas or semicolons, as typed or pasted
+    static double[] parse(String text) throws CalculationException {
+        String[] tokens = text.trim().split("[\\s,;]+");
+        if (tokens.length == 1 && tokens[0].isEmpty()) {
+            return new double[0];
+        }
+        double[] values = new double[tokens.length];
+        int position = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            position = text.indexOf(tokens[i], position);
+            try {
+                values[i] = Double.parseDouble(tokens[i].replace('−', '-'));
+            } catch (NumberFormatException e) {
+                values[i] = Double.NaN;
+            }
+            // parseDouble also takes "NaN" and "Infinity"
+            if (!Double.isFinite(values[i])) {
+                throw new CalculationException("Not a number: " + tokens[i], position, position + tokens[i].length());
+            }
+            position += tokens[i].length();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Spreadsheet-like calculation tape. Any line can read another as Ln (Ast.LINE nodes,
+// 1-based in text). Each line keeps its optimized Ast, value and error along with both
+// directions of the reference graph, so an edit re-evaluates only that line and the
+// lines depending on it, transitively, in topological order: the work is proportional
+// to the affected lines and their edges, not to the tape length. Lines on or behind a
+// reference cycle show "Circular reference" until the cycle is broken. Variables slots
+// get reverse edges too, so changing a variable only re-evaluates the lines reading it.
+// A reference to a line past the end waits in a sparse map until that line is appended.
+// Lines are evaluated as real numbers whatever the calculation mode. Main thread only.
+final class Tape {
+    private static final int[] NO_LINES = new int[0];
+
+    private String[] sources = new String[16];
+    private Ast[] asts = new Ast[16];
+    private double[] values = new double[16];
+    private CalculationException[] errors = new CalculationException[16];
+    private int[][] dependencies = new int[16][];  // distinct lines each line reads, ascending
+    private int[][] dependents = new int[16][];    // reverse edges; first dependentCounts[line] are used
+    private int[] dependentCounts = new int[16];
+    private int[][] variableReads = new int[16][]; // distinct Variables slots each line reads
+    private int[][] readers = new int[0][];        // per slot, the lines reading it
+    private int[] readerCounts = new int[0];
+    private int[][] missingReads = new int[16][];  // distinct lines past the end each line reads
+    // Per line past the end, the lines reading it, given their edge when it's appended
+    private final HashMap<Integer, int[]> waiting = new HashMap<>();
+    private int count;
+    private boolean degreeMode;
+
+    // Recompute scratch, reused across edits. A line is affected when marks[line] == mark,
+    // so starting a recompute never clears anything.
+    private int[] marks = new int[16];
+    private int mark;
+    private int[] pending = new int[16];
+    private int[] affected = new int[16];
+    private int[] ready = new int[16];
+
+    Tape(boolean degreeMode) {
+        this.degreeMode = degreeMode;
+    }
+
+    // Index of the line an "L12" style name refers to, or Ast.NONE
+    static int lineIndex(String name) {
+        int length = name.length();
+        if (length < 2 || length > 7 || name.charAt(0) != 'L' || name.charAt(1) == '0') {
+            return Ast.NONE;
+        }
+        int number = 0;
+        for (int i = 1; i < length; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return Ast.NONE;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number - 1;
+    }
+
+    int size() {
+        return count;
+    }
+
+    String source(int line) {
+        return sources[line];
+    }
+
+    double value(int line) {
+        return values[line];
+    }
+
+    // Null when the line evaluated
+    CalculationException error(int line) {
+        return errors[line];
+    }
+
+    // Replaces line, or appends when line == size(). Returns how many lines were re-evaluated.
+    int set(int line, String source) {
+        int[] roots = {line};
+        if (line == count) {
+            ensureCapacity(count + 1);
+            initialize(count);
+            count++;
+            int[] waiters = waiting.remove(line);
+            if (waiters != null) {
+                for (int waiter : waiters) {
+                    compile(waiter, sources[waiter]);
+                }
+                roots = Arrays.copyOf(waiters, waiters.length + 1);
+                roots[waiters.length] = line;
+            }
+        }
+        compile(line, source);
+        return recompute(roots, roots.length);
+    }
+
+    // Replaces the whole tape, e.g. with lines loaded from the database
+    void load(String[] lines) {
+        clear();
+        ensureCapacity(lines.length);
+        for (int line = 0; line < lines.length; line++) {
+            initialize(line);
+        }
+        count = lines.length;
+        for (int line = 0; line < lines.length; line++) {
+            compile(line, lines[line]);
+        }
+        recomputeAll();
+    }
+
+    void clear() {
+        Arrays.fill(sources, 0, count, null);
+        Arrays.fill(asts, 0, count, null);
+        Arrays.fill(errors, 0, count, null);
+        Arrays.fill(dependentCounts, 0, count, 0);
+        Arrays.fill(readerCounts, 0);
+        waiting.clear();
+        count = 0;
+    }
+
+    private void initialize(int line) {
+        dependencies[line] = NO_LINES;
+        dependents[line] = NO_LINES;
+        dependentCounts[line] = 0;
+        variableReads[line] = NO_LINES;
+        missingReads[line] = NO_LINES;
+    }
+
+    // Trig folding depends on the angle mode, so every line is compiled again
+    void setDegreeMode(boolean degreeMode) {
+        if (this.degreeMode == degreeMode) {
+            return;
+        }
+        this.degreeMode = degreeMode;
+        for (int line = 0; line < count; line++) {
+            asts[line] = ExpressionOptimizer.optimize(parse(sources[line]), degreeMode);
+        }
+        recomputeAll();
+    }
+
+    // Re-evaluates the lines that read a Variables slot, and their dependents
+    int variableChanged(int slot) {
+        if (slot >= readerCounts.length || readerCounts[slot] == 0) {
+            return 0;
+        }
+        return recompute(Arrays.copyOf(readers[slot], readerCounts[slot]), readerCounts[slot]);
+    }
+
+    private void recomputeAll() {
+        int[] roots = new int[count];
+        for (int line = 0; line < count; line++) {
+            roots[line] = line;
+        }
+        recompute(roots, count);
+    }
+
+    // Parses the line and swaps its outgoing edges for the ones it now has
+    private void compile(int line, String source) {
+        sources[line] = source;
+        Ast ast = parse(source);
+        asts[line] = ExpressionOptimizer.optimize(ast, degreeMode);
+
+        for (int dependency : dependencies[line]) {
+            removeEdge(dependents, dependentCounts, dependency, line);
+        }
+        for (int slot : variableReads[line]) {
+            removeEdge(readers, readerCounts, slot, line);
+        }
+        for (int missing : missingReads[line]) {
+            stopWaiting(missing, line);
+        }
+        int[] lines = new int[ast.size];
+        int lineCount = 0;
+        int[] absent = new int[ast.size];
+        int absentCount = 0;
+        int[] slots = new int[ast.size];
+        int slotCount = 0;
+        for (int node = 0; node < ast.size; node++) {
+            // Lines past the end get an error at evaluation instead of an edge
+            if (ast.kinds[node] == Ast.LINE) {
+                if (ast.data[node] < count) {
+                    lines[lineCount++] = ast.data[node];
+                } else {
+                    absent[absentCount++] = ast.data[node];
+                }
+            } else if (ast.kinds[node] == Ast.VARIABLE) {
+                slots[slotCount++] = ast.data[node];
+            }
+        }
+        missingReads[line] = distinct(absent, absentCount);
+        for (int missing : missingReads[line]) {
+            int[] waiters = waiting.get(missing);
+            if (waiters == null) {
+                waiters = NO_LINES;
+            }
+            waiters = Arrays.copyOf(waiters, waiters.length + 1);
+            waiters[waiters.length - 1] = line;
+            waiting.put(missing, waiters);
+        }
+        dependencies[line] = distinct(lines, lineCount);
+        for (int dependency : dependencies[line]) {
+            dependents[dependency] = addEdge(dependents[dependency], dependentCounts, dependency, line);
+        }
+        variableReads[line] = distinct(slots, slotCount);
+        for (int slot : variableReads[line]) {
+            if (slot >= readers.length) {
+                int grown = Math.max(slot + 1, readers.length * 2);
+                readers = Arrays.copyOf(readers, grown);
+                readerCounts = Arrays.copyOf(readerCounts, grown);
+            }
+            if (readers[slot] == null) {
+                readers[slot] = NO_LINES;
+            }
+            readers[slot] = addEdge(readers[slot], readerCounts, slot, line);
+        }
+    }
+
+    // Drops line from the lines waiting for missing; gone already once missing was appended
+    private void stopWaiting(int missing, int line) {
+        int[] waiters = waiting.get(missing);
+        if (waiters == null) {
+            return;
+        }
+        if (waiters.length == 1) {
+            waiting.remove(missing);
+            return;
+        }
+        int[] remaining = new int[waiters.length - 1];
+        int n = 0;
+        for (int waiter : waiters) {
+            if (waiter != line) {
+                remaining[n++] = waiter;
+            }
+        }
+        waiting.put(missing, remaining);
+    }
+
+    private static Ast parse(String source) {
+        Ast ast = ExpressionParser.parse(source);
+        if (ast.assignment != null && !ast.hasErrors()) {
+            ast.error("Tape lines can't assign variables", 0, ast.assignment.length());
+        }
+        return ast;
+    }
+
+    // Sorted copy of the first n values without duplicates
+    private static int[] distinct(int[] values, int n) {
+        if (n == 0) {
+            return NO_LINES;
+        }
+        Arrays.sort(values, 0, n);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (values[distinct - 1] != values[i]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, distinct);
+    }
+
+    // Kahn's algorithm over the roots and everything downstream of them. Whatever is
+    // left without a value at the end sits on or behind a cycle.
+    private int recompute(int[] roots, int rootCount) {
+        if (++mark == 0) {
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+        int affectedCount = 0;
+        for (int i = 0; i < rootCount; i++) {
+            if (marks[roots[i]] != mark) {
+                marks[roots[i]] = mark;
+                affected[affectedCount++] = roots[i];
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            int line = affected[i];
+            for (int j = 0; j < dependentCounts[line]; j++) {
+                int dependent = dependents[line][j];
+                if (marks[dependent] != mark) {
+                    marks[dependent] = mark;
+                    affected[affectedCount++] = dependent;
+                }
+            }
+        }
+
+        int readyCount = 0;
+        for (int i = 0; i < affectedCount; i++) {
+            int line = affected[i];
+            int waiting = 0;
+            for (int dependency : dependencies[line]) {
+                if (marks[dependency] == mark) {
+                    waiting++;
+                }
+            }
+            pending[line] = waiting;
+            if (waiting == 0) {
+                ready[readyCount++] = line;
+            }
+        }
+        for (int i = 0; i < readyCount; i++) {
+            int line = ready[i];
+            evaluate(line);
+            for (int j = 0; j < dependentCounts[line]; j++) {
+                int dependent = dependents[line][j];
+                if (--pending[dependent] == 0) {
+                    ready[readyCount++] = dependent;
+                }
+            }
+        }
+        if (readyCount < affectedCount) {
+            for (int i = 0; i < affectedCount; i++) {
+                int line = affected[i];
+                if (pending[line] > 0) {
+                    values[line] = Double.NaN;
+                    errors[line] = new CalculationException("Circular reference", 0, sources[line].length());
+                }
+            }
+        }
+        Metrics.add(Metrics.TAPE_RECOMPUTES, affectedCount);
+        return affectedCount;
+    }
+
+    private void evaluate(int line) {
+        Ast ast = asts[line];
+        values[line] = Double.NaN;
+        errors[line] = null;
+        try {
+            for (int node = 0; node < ast.size; node++) {
+                if (ast.kinds[node] != Ast.LINE) {
+                    continue;
+                }
+                int reference = ast.data[node];
+                if (reference >= count) {
+                    throw new CalculationException("No line L" + (reference + 1), ast.starts[node], ast.ends[node]);
+                }
+                if (errors[reference] != null) {
+                    throw new CalculationException("L" + (reference + 1) + " has an error",
+                            ast.starts[node], ast.ends[node]);
+                }
+            }
+            values[line] = ExpressionEvaluator.evaluate(ast, degreeMode, values);
+        } catch (CalculationException e) {
+            errors[line] = e;
+        }
+    }
+
+    // Appends target to the edge list of from, returning the list, grown if it had to be
+    private static int[] addEdge(int[] list, int[] counts, int from, int target) {
+        int size = counts[from];
+        if (size == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, size * 2));
+        }
+        list[size] = target;
+        counts[from] = size + 1;
+        return list;
+    }
+
+    // Edge lists are unordered, so the last edge fills the gap
+    private static void removeEdge(int[][] lists, int[] counts, int from, int target) {
+        int[] list = lists[from];
+        int size = counts[from];
+        for (int i = 0; i < size; i++) {
+            if (list[i] == target) {
+                list[i] = list[size - 1];
+                counts[from] = size - 1;
+                return;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sources.length) {
+            return;
+        }
+        int grown = Math.max(capacity, sources.length * 2);
+        sources = Arrays.copyOf(sources, grown);
+        asts = Arrays.copyOf(asts, grown);
+        values = Arrays.copyOf(values, grown);
+        errors = Arrays.copyOf(errors, grown);
+        dependencies = Arrays.copyOf(dependencies, grown);
+        dependents = Arrays.copyOf(dependents, grown);
+        dependentCounts = Arrays.copyOf(dependentCounts, grown);
+        variableReads = Arrays.copyOf(variableReads, grown);
+        missingReads = Arrays.copyOf(missingReads, grown);
+        marks = Arrays.copyOf(marks, grown);
+        pending = Arrays.copyOf(pending, grown);
+        affected = Arrays.copyOf(affected, grown);
+        ready = Arrays.copyOf(ready, grown);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.calculator;
+
+// A conversion such as "5 km/h to m/s" or "3 ft 2 in to cm": one or more terms, each a
+// magnitude and a unit, summed in the unit after "to" (or →). A magnitude is a number,
+// a variable such as ANS, or a parenthesized expression, evaluated like any other.
+final class UnitConversion {
+    final double value;
+    final String unit;
+
+    private UnitConversion(double value, String unit) {
+        this.value = value;
+        this.unit = unit;
+    }
+
+    static boolean isConversion(String input) {
+        return input.contains(" to ") || input.indexOf('→') >= 0;
+    }
+
+    static UnitConversion evaluate(String input, UnitRegistry units, boolean degreeMode)
+            throws CalculationException {
+        int arrow = input.lastIndexOf('→');
+        int split = arrow >= 0 ? arrow : input.lastIndexOf(" to ");
+        int targetStart = arrow >= 0 ? arrow + 1 : split + 4;
+        if (split < 0) {
+            throw new CalculationException("Missing 'to'");
+        }
+        UnitRegistry.Unit target = units.parse(input, targetStart, input.length());
+
+        double sum = 0;
+        int terms = 0;
+        boolean offset = false;
+        int pos = skipSpaces(input, 0, split);
+        if (pos == split) {
+            throw new CalculationException("Missing number", 0, Math.max(1, split));
+        }
+        while (pos < split) {
+            int magnitudeEnd = magnitudeEnd(input, pos, split);
+            double magnitude = evaluateMagnitude(input, pos, magnitudeEnd, degreeMode);
+            int unitEnd = unitEnd(input, magnitudeEnd, split);
+            UnitRegistry.Unit unit = units.parse(input, magnitudeEnd, unitEnd);
+            // Sums of temperatures on an offset scale have no meaning
+            offset |= unit.offset != 0 || target.offset != 0;
+            if (++terms > 1 && offset) {
+                throw new CalculationException("Temperatures can't be added", pos, unitEnd);
+            }
+            sum += units.convert(magnitude, unit, target);
+            pos = skipSpaces(input, unitEnd, split);
+        }
+        return new UnitConversion(sum, target.text);
+    }
+
+    // End of the magnitude starting at start: a parenthesized group, a name, or a
+    // number with an optional sign and exponent such as 1.5E-7
+    private static int magnitudeEnd(String input, int start, int end) throws CalculationException {
+        int pos = start;
+        char c = input.charAt(pos);
+        if (c == '(') {
+            int depth = 0;
+            do {
+                char d = input.charAt(pos++);
+                depth += d == '(' ? 1 : d == ')' ? -1 : 0;
+            } while (depth > 0 && pos < end);
+            if (depth > 0) {
+                throw new CalculationException("Mismatched parentheses", start, start + 1);
+            }
+            return pos;
+        }
+        if (Variables.isNameStart(c)) {
+            while (pos < end && Variables.isNamePart(input.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+        if (c == '-' || c == '+') {
+            pos++;
+        }
+        while (pos < end && (isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+            pos++;
+        }
+        if (pos + 1 < end && input.charAt(pos) == 'E') {
+            int exponent = pos + 1;
+            if (input.charAt(exponent) == '-' || input.charAt(exponent) == '+') {
+                exponent++;
+            }
+            if (exponent < end && isDigit(input.charAt(exponent))) {
+                pos = exponent;
+                while (pos < end && isDigit(input.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+        if (pos == start) {
+            throw new CalculationException("Missing number", start, start + 1);
+        }
+        return pos;
+    }
+
+    private static double evaluateMagnitude(String input, int start, int end, boolean degreeMode)
+            throws CalculationException {
+        try {
+            return ExpressionEvaluator.evaluate(ExpressionParser.parse(input.substring(start, end)), degreeMode);
+        } catch (CalculationException e) {
+            // Spans are relative to the magnitude; move them to the whole input
+            throw e.hasSpan() ? new CalculationException(e.getMessage(), start + e.start, start + e.end) : e;
+        }
+    }
+
+    // End of the unit after a magnitude: up to the next term's magnitude, which starts
+    // with a digit, a point or a parenthesis (digits after ^ are the unit's power)
+    private static int unitEnd(String input, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            char c = input.charAt(pos);
+            if (c == '^') {
+                pos++;
+                if (pos < end && input.charAt(pos) == '-') {
+                    pos++;
+                }
+                while (pos < end && isDigit(input.charAt(pos))) {
+                    pos++;
+                }
+                continue;
+            }
+            if (isDigit(c) || c == '.' || c == '(') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipSpaces(String input, int pos, int end) {
+        while (pos < end && input.charAt(pos) == ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Units known to conversions, each with a dimension vector (exponents of the SI base
+// dimensions plus information), its size in SI units and, for °C and °F, the SI value
+// of its zero. Units are defined in terms of earlier ones (ft = 12 in, N = kg m/s²),
+// which resolves the whole definition graph once at load. Then every pair of units
+// of the same dimension gets its factor and shift in one flattened n×n table, so
+// converting between two named units is x × factor + shift with no search.
+// Compound units like km/h are parsed into a scale and dimensions and need one
+// multiply and one divide.
+final class UnitRegistry {
+    static final int DIMENSIONS = 8; // m, kg, s, A, K, mol, cd, bit
+    private static final int MAX_UNITS = 128;
+
+    private final String[] symbols = new String[MAX_UNITS];
+    private final String[] categories = new String[MAX_UNITS];
+    private final double[] scales = new double[MAX_UNITS];
+    private final double[] offsets = new double[MAX_UNITS];
+    private final int[][] dimensions = new int[MAX_UNITS][];
+    // Every accepted name, alias or symbol to its index
+    private final HashMap<String, Integer> lookup = new HashMap<>();
+    private int count;
+    private String category;
+    // x in unit i is x × factors[i × count + j] + shifts[i × count + j] in unit j;
+    // the factor is NaN when the dimensions differ
+    private double[] factors;
+    private double[] shifts;
+
+    private static UnitRegistry standard;
+
+    // A parsed unit expression: its SI scale, the SI value of its zero (only a lone
+    // °C or °F has one; in compounds they measure differences), its dimensions, and
+    // its index when it is a single registry unit
+    static final class Unit {
+        final String text;
+        final double scale;
+        final double offset;
+        final int[] dimensions;
+        final int index;
+
+        Unit(String text, double scale, double offset, int[] dimensions, int index) {
+            this.text = text;
+            this.scale = scale;
+            this.offset = offset;
+            this.dimensions = dimensions;
+            this.index = index;
+        }
+    }
+
+    private UnitRegistry() {}
+
+    // The shared registry, loaded on first use (MainActivity warms it up when idle)
+    static synchronized UnitRegistry standard() {
+        if (standard == null) {
+            standard = load();
+        }
+        return standard;
+    }
+
+    static UnitRegistry load() {
+        UnitRegistry units = new UnitRegistry();
+        units.category = "Length";
+        units.base("m meter meters metre metres", 0);
+        units.define("km kilometer kilometers", 1000, "m");
+        units.define("cm centimeter centimeters", 0.01, "m");
+        units.define("mm millimeter millimeters", 0.001, "m");
+        units.define("µm um micrometer micrometers", 1e-6, "m");
+        units.define("nm nanometer nanometers", 1e-9, "m");
+        units.define("in inch inches", 2.54, "cm");
+        units.define("ft foot feet", 12, "in");
+        units.define("yd yard yards", 3, "ft");
+        units.define("mi mile miles", 5280, "ft");
+        units.define("nmi", 1852, "m");
+        units.define("au", 149597870700.0, "m");
+        units.define("ly lightyear lightyears", 9460730472580800.0, "m");
+
+        units.category = "Mass";
+        units.base("kg kilogram kilograms", 1);
+        units.define("g gram grams", 0.001, "kg");
+        units.define("mg milligram milligrams", 0.001, "g");
+        units.define("t tonne tonnes", 1000, "kg");
+        units.define("lb lbs pound pounds", 0.45359237, "kg");
+        units.define("oz ounce ounces", 1.0 / 16, "lb");
+        units.define("st stone", 14, "lb");
+
+        units.category = "Time";
+        units.base("s sec second seconds", 2);
+        units.define("ms millisecond milliseconds", 0.001, "s");
+        units.define("µs us microsecond microseconds", 1e-6, "s");
+        units.define("min minute minutes", 60, "s");
+        units.define("h hr hour hours", 60, "min");
+        units.define("d day days", 24, "h");
+        units.define("wk week weeks", 7, "d");
+        units.define("yr year years", 365.25, "d");
+
+        units.category = "Temperature";
+        units.base("K kelvin", 4);
+        units.define("°C C degC celsius", 1, "K", 273.15);
+        units.define("°F F degF fahrenheit", 5.0 / 9, "K", 459.67 * 5 / 9);
+        units.define("°R R rankine", 5.0 / 9, "K");
+
+        units.category = "Area";
+        units.define("ha hectare hectares", 10000, "m²");
+        units.define("acre acres", 43560, "ft²");
+
+        units.category = "Volume";
+        units.define("L l liter liters litre litres", 0.001, "m³");
+        units.define("mL ml milliliter milliliters", 0.001, "L");
+        units.define("gal gallon gallons", 231, "in³");
+        units.define("qt quart quarts", 0.25, "gal");
+        units.define("pt pint pints", 0.5, "qt");
+        units.define("cup cups", 0.5, "pt");
+        units.define("floz", 0.125, "cup");
+        units.define("tbsp", 0.5, "floz");
+        units.define("tsp", 1.0 / 3, "tbsp");
+
+        units.category = "Speed";
+        units.define("kph", 1, "km/h");
+        units.define("mph", 1, "mi/h");
+        units.define("kn knot knots", 1, "nmi/h");
+
+        units.category = "Force";
+        units.define("N newton newtons", 1, "kg m/s²");
+        units.define("kN", 1000, "N");
+        units.define("lbf", 9.80665, "lb m/s²");
+
+        units.category = "Energy";
+        units.define("J joule joules", 1, "N m");
+        units.define("kJ", 1000, "J");
+        units.define("cal calorie calories", 4.184, "J");
+        units.define("kcal Cal", 1000, "cal");
+        units.define("Wh", 3600, "J");
+        units.define("kWh", 1000, "Wh");
+        units.define("eV", 1.602176634e-19, "J");
+        units.define("BTU btu", 1055.05585262, "J");
+
+        units.category = "Power";
+        units.define("W watt watts", 1, "J/s");
+        units.define("kW", 1000, "W");
+        units.define("MW", 1e6, "W");
+        units.define("hp", 745.69987158227022, "W");
+
+        units.category = "Pressure";
+        units.define("Pa pascal pascals", 1, "N/m²");
+        units.define("kPa", 1000, "Pa");
+        units.define("bar", 1e5, "Pa");
+        units.define("atm", 101325, "Pa");
+        units.define("psi", 1, "lbf/in²");
+        units.define("mmHg", 133.322387415, "Pa");
+
+        units.category = "Data";
+        units.base("bit bits", 7);
+        units.define("B byte bytes", 8, "bit");
+        units.define("kB KB", 1000, "B");
+        units.define("MB", 1000, "kB");
+        units.define("GB", 1000, "MB");
+        units.define("TB", 1000, "GB");
+        units.define("KiB", 1024, "B");
+        units.define("MiB", 1024, "KiB");
+        units.define("GiB", 1024, "MiB");
+
+        units.flatten();
+        return units;
+    }
+
+    // A unit of one base dimension with scale 1
+    private void base(String names, int dimension) {
+        int[] vector = new int[DIMENSIONS];
+        vector[dimension] = 1;
+        add(names, 1, 0, vector);
+    }
+
+    private void define(String names, double factor, String definition) {
+        define(names, factor, definition, 0);
+    }
+
+    // names is factor × definition, with the given SI value for its zero
+    private void define(String names, double factor, String definition, double offset) {
+        Unit unit;
+        try {
+            unit = parse(definition, 0, definition.length());
+        } catch (CalculationException e) {
+            throw new IllegalStateException("Bad definition of " + names + ": " + e.getMessage(), e);
+        }
+        add(names, factor * unit.scale, offset, unit.dimensions);
+    }
+
+    private void add(String names, double scale, double offset, int[] vector) {
+        String[] aliases = names.split(" ");
+        symbols[count] = aliases[0];
+        categories[count] = category;
+        scales[count] = scale;
+        offsets[count] = offset;
+        dimensions[count] = vector;
+        for (String alias : aliases) {
+            if (lookup.put(alias, count) != null) {
+                throw new IllegalStateException("Unit defined twice: " + alias);
+            }
+        }
+        count++;
+    }
+
+    // Fills the pairwise tables, once all units are defined
+    private void flatten() {
+        factors = new double[count * count];
+        shifts = new double[count * count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                int pair = i * count + j;
+                if (Arrays.equals(dimensions[i], dimensions[j])) {
+                    factors[pair] = scales[i] / scales[j];
+                    shifts[pair] = (offsets[i] - offsets[j]) / scales[j];
+                } else {
+                    factors[pair] = Double.NaN;
+                }
+            }
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    String symbol(int index) {
+        return symbols[index];
+    }
+
+    String category(int index) {
+        return categories[index];
+    }
+
+    // Parses the unit expression in source[start, end): names joined by spaces, ·, × or
+    // *, each optionally raised with ^n, ² or ³, and / dividing by the name after it
+    // (so m/s/s is m/s²). Error spans are positions in source.
+    Unit parse(String source, int start, int end) throws CalculationException {
+        double scale = 1;
+        int[] vector = new int[DIMENSIONS];
+        int single = Ast.NONE;
+        int terms = 0;
+        boolean divide = false;
+        int pos = start;
+        while (true) {
+            while (pos < end && source.charAt(pos) == ' ') {
+                pos++;
+            }
+            if (pos == end) {
+                break;
+            }
+            char c = source.charAt(pos);
+            if (c == '/' || c == '·' || c == '×' || c == '*') {
+                if (terms == 0 || divide) {
+                    throw new CalculationException("Missing unit", pos, pos + 1);
+                }
+                divide = c == '/';
+                pos++;
+                continue;
+            }
+            int nameStart = pos;
+            while (pos < end && (Character.isLetter(source.charAt(pos)) || source.charAt(pos) == '°')) {
+                pos++;
+            }
+            if (pos == nameStart) {
+                throw new CalculationException("Unexpected '" + c + "'", pos, pos + 1);
+            }
+            String name = source.substring(nameStart, pos);
+            Integer index = lookup.get(name);
+            if (index == null) {
+                throw new CalculationException("Unknown unit " + name, nameStart, pos);
+            }
+            int exponent = 1;
+            if (pos < end && (source.charAt(pos) == '²' || source.charAt(pos) == '³')) {
+                exponent = source.charAt(pos) == '²' ? 2 : 3;
+                pos++;
+            } else if (pos < end && source.charAt(pos) == '^') {
+                int exponentStart = ++pos;
+                if (pos < end && source.charAt(pos) == '-') {
+                    pos++;
+                }
+                while (pos < end && source.charAt(pos) >= '0' && source.charAt(pos) <= '9') {
+                    pos++;
+                }
+                try {
+                    exponent = Integer.parseInt(source.substring(exponentStart, pos));
+                } catch (NumberFormatException e) {
+                    throw new CalculationException("Unit powers must be whole numbers", exponentStart - 1, pos);
+                }
+            }
+            if (divide) {
+                exponent = -exponent;
+                divide = false;
+            }
+            scale *= Math.pow(scales[index], exponent);
+            for (int d = 0; d < DIMENSIONS; d++) {
+                vector[d] += exponent * dimensions[index][d];
+            }
+            single = terms == 0 && exponent == 1 ? index : Ast.NONE;
+            terms++;
+        }
+        if (terms == 0 || divide) {
+            throw new CalculationException("Missing unit", Math.max(start, end - 1), end);
+        }
+        if (terms > 1) {
+            single = Ast.NONE;
+        }
+        return new Unit(source.substring(start, end).trim(), scale, single == Ast.NONE ? 0 : offsets[single],
+                vector, single);
+    }
+
+    // value in from, expressed in to
+    double convert(double value, Unit from, Unit to) throws CalculationException {
+        if (from.index != Ast.NONE && to.index != Ast.NONE) {
+            int pair = from.index * count + to.index;
+            double factor = factors[pair];
+            if (factor == factor) {
+                return value * factor + shifts[pair];
+            }
+        } else if (Arrays.equals(from.dimensions, to.dimensions)) {
+            return (value * from.scale + from.offset - to.offset) / to.scale;
+        }
+        throw new CalculationException("Can't convert " + from.text + " to " + to.text);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+// Slot table holding ANS, the memory register M and user variables as raw doubles.
+// The parser resolves a name to its slot once (Ast.VARIABLE nodes keep it in
+// Ast.data), so evaluation is an array read and changing a value never needs a
+// re-parse. Slots are never removed, so a slot index stays valid. Main thread only.
+final class Variables {
+    static final int ANS = 0;
+    static final int MEMORY = 1;
+    private static final int FIXED_SLOTS = 2;
+
+    private static String[] names = {"ANS", "M"};
+    private static double[] values = new double[names.length];
+    private static int count = FIXED_SLOTS;
+
+    private Variables() {}
+
+    static int count() {
+        return count;
+    }
+
+    static String name(int slot) {
+        return names[slot];
+    }
+
+    static double get(int slot) {
+        return values[slot];
+    }
+
+    static void set(int slot, double value) {
+        values[slot] = value;
+    }
+
+    // Slot of name, or Ast.NONE when it isn't defined
+    static int slot(String name) {
+        for (int slot = 0; slot < count; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return Ast.NONE;
+    }
+
+    // Slot of name, added with the value 0 if it's new. Callers check isAssignable first.
+    static int define(String name) {
+        int slot = slot(name);
+        if (slot != Ast.NONE) {
+            return slot;
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        names[count] = name;
+        values[count] = 0;
+        return count++;
+    }
+
+    // A letter followed by letters and digits, and not a name the parser reads as
+    // something else (a function, constant, i, a tape line Ln) or ANS, which only evaluation sets
+    static boolean isAssignable(String name) {
+        if (name.isEmpty() || !isNameStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!isNamePart(name.charAt(i))) {
+                return false;
+            }
+        }
+        // e and i stand alone unless a letter follows, so "e2" reads as e then 2
+        char first = name.charAt(0);
+        if ((first == 'e' || first == 'i') && (name.length() == 1 || !isNameStart(name.charAt(1)))) {
+            return false;
+        }
+        return !name.equals("ANS") && !name.startsWith("pi")
+                && FunctionRegistry.match(name, 0) == Ast.NONE && Tape.lineIndex(name) == Ast.NONE;
+    }
+
+    static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isNamePart(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9');
+    }
+
+    // Names and values of every slot, for saving across process death
+    static String[] names() {
+        return Arrays.copyOf(names, count);
+    }
+
+    static double[] values() {
+        return Arrays.copyOf(values, count);
+    }
+
+    static void restore(String[] savedNames, double[] savedValues) {
+        for (int i = 0; i < savedNames.length; i++) {
+            set(define(savedNames[i]), savedValues[i]);
+        }
+    }
+
+    // Back to just ANS and M, both 0; for tests
+    static void reset() {
+        Arrays.fill(values, 0);
+        count = FIXED_SLOTS;
+    }
+}
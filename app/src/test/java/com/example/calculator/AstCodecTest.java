@@ -0,0 +1,105 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AstCodecTest {
+
+    private static final double EPSILON = 1e-12;
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private static Ast roundTrip(String expression) {
+        Ast parsed = ExpressionParser.parse(expression);
+        byte[] bytes = AstCodec.encode(parsed);
+        assertNotNull(bytes);
+        Ast decoded = AstCodec.decode(bytes, expression);
+        assertNotNull(decoded);
+        assertEquals(parsed.toSExpression(), decoded.toSExpression());
+        assertEquals(parsed.size, decoded.size);
+        assertArrayEquals(Arrays.copyOf(parsed.starts, parsed.size), Arrays.copyOf(decoded.starts, decoded.size));
+        assertArrayEquals(Arrays.copyOf(parsed.ends, parsed.size), Arrays.copyOf(decoded.ends, decoded.size));
+        return decoded;
+    }
+
+    @Test
+    public void roundTripsTreesAndSpans() throws CalculationException {
+        assertEquals(7, ExpressionEvaluator.evaluate(roundTrip("1+2×3"), true), EPSILON);
+        assertEquals(0.5, ExpressionEvaluator.evaluate(roundTrip("sin(30)"), true), EPSILON);
+        assertEquals(Math.PI * 4, ExpressionEvaluator.evaluate(roundTrip("π×2²"), true), EPSILON);
+        assertEquals(120, ExpressionEvaluator.evaluate(roundTrip("5!"), true), EPSILON);
+        assertEquals(3, ExpressionEvaluator.evaluate(roundTrip("abs(-3) + floor(0.5)"), true), EPSILON);
+        assertEquals(0.1 + 0.2, ExpressionEvaluator.evaluate(roundTrip("0.1+0.2"), true), 0);
+        double[] scalar = new double[1];
+        assertArrayEquals(new double[]{2, 4, 6},
+                ListEvaluator.evaluate(roundTrip("{1,2,3}×2"), true, scalar), EPSILON);
+        assertEquals("(* L3 1.2)", roundTrip("L3*1.2").toSExpression());
+    }
+
+    @Test
+    public void resolvesVariablesByName() throws CalculationException {
+        int rate = Variables.define("rate");
+        Variables.set(rate, 0.5);
+        byte[] bytes = AstCodec.encode(ExpressionParser.parse("rate×ANS"));
+        Variables.set(Variables.ANS, 8);
+        assertEquals(4, ExpressionEvaluator.evaluate(AstCodec.decode(bytes, "rate×ANS"), true), EPSILON);
+
+        Ast assignment = roundTrip("total = rate×10");
+        assertEquals("total", assignment.assignment);
+        assertEquals(5, ExpressionEvaluator.evaluate(assignment, true), EPSILON);
+    }
+
+    @Test
+    public void rejectsProgramsItCannotLoad() {
+        Variables.define("rate");
+        byte[] bytes = AstCodec.encode(ExpressionParser.parse("rate+1"));
+        // A fresh process that hasn't defined rate yet
+        Variables.reset();
+        assertNull(AstCodec.decode(bytes, "rate+1"));
+
+        byte[] other = AstCodec.encode(ExpressionParser.parse("1+1"));
+        other[0] ^= 1;
+        assertNull(AstCodec.decode(other, "1+1"));
+        assertNull(AstCodec.decode(Arrays.copyOf(AstCodec.encode(ExpressionParser.parse("1+1")), 7), "1+1"));
+        assertNull(AstCodec.decode(null, "1+1"));
+        // Spans past the end of the given source
+        assertNull(AstCodec.decode(AstCodec.encode(ExpressionParser.parse("100+200")), "1+2"));
+    }
+
+    @Test
+    public void doesNotEncodeErrors() {
+        assertNull(AstCodec.encode(ExpressionParser.parse("1+")));
+        assertNull(AstCodec.encode(ExpressionParser.parse("foo(2)")));
+    }
+
+    // Loading the stored form must clearly beat parsing the text again
+    @Test
+    public void decodingBeatsParsing() {
+        String expression = "sqrt(3²+4²)×sin(30)+log(1000)-2^10÷(1+e)+abs(-3)×ln(2)";
+        byte[] bytes = AstCodec.encode(ExpressionParser.parse(expression));
+        long sink = 0;
+        long parseNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 2_000; i++) {
+                sink += ExpressionParser.parse(expression).size;
+            }
+            parseNanos = Math.min(parseNanos, (System.nanoTime() - start) / 2_000);
+            start = System.nanoTime();
+            for (int i = 0; i < 2_000; i++) {
+                sink += AstCodec.decode(bytes, expression).size;
+            }
+            decodeNanos = Math.min(decodeNanos, (System.nanoTime() - start) / 2_000);
+        }
+        assertTrue(sink > 0);
+        assertTrue("parse " + parseNanos + " ns, decode " + decodeNanos + " ns", decodeNanos * 2 <= parseNanos);
+    }
+}
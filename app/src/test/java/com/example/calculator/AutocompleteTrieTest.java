@@ -0,0 +1,123 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AutocompleteTrieTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long NOW = 1000 * DAY;
+
+    @Test
+    public void completesPrefixesBestRankedFirst() {
+        AutocompleteTrie trie = new AutocompleteTrie();
+        trie.add("1.0825×", 12, NOW - DAY);
+        trie.add("1.5×2", 1, NOW - DAY);
+        trie.add("12×12", 3, NOW - DAY);
+        trie.add("sin(30)", 1, NOW);
+
+        assertArrayEquals(new String[]{"1.0825×", "12×12", "1.5×2"}, trie.complete("1", 3));
+        assertArrayEquals(new String[]{"1.0825×", "1.5×2"}, trie.complete("1.", 3));
+        assertArrayEquals(new String[]{"1.0825×"}, trie.complete("1.", 1));
+        assertArrayEquals(new String[]{"sin(30)"}, trie.complete("s", 3));
+        assertEquals(0, trie.complete("cos", 3).length);
+        // The input itself isn't a suggestion
+        assertEquals(0, trie.complete("12×12", 3).length);
+    }
+
+    @Test
+    public void recentUseOutranksOlderFrequentUse() {
+        AutocompleteTrie trie = new AutocompleteTrie();
+        // Four uses three half-lives ago count for half of one use now
+        trie.add("2^10", 4, NOW - 3 * AutocompleteTrie.HALF_LIFE_MS);
+        trie.add("2×pi", 1, NOW);
+        assertArrayEquals(new String[]{"2×pi", "2^10"}, trie.complete("2", 3));
+
+        trie.add("2^10", 4, NOW - 3 * AutocompleteTrie.HALF_LIFE_MS);
+        // Eight uses then tie with one use now; one more use today breaks the tie
+        trie.record("2^10", NOW);
+        assertArrayEquals(new String[]{"2^10", "2×pi"}, trie.complete("2", 3));
+    }
+
+    @Test
+    public void listsStayCorrectAfterManyUpdates() {
+        AutocompleteTrie trie = new AutocompleteTrie();
+        Random random = new Random(7);
+        String[] expressions = {"1+1", "1+2", "1+3", "1×4", "10÷5", "100", "1.5", "1-1"};
+        int[] uses = new int[expressions.length];
+        for (int i = 0; i < 500; i++) {
+            int pick = random.nextInt(expressions.length);
+            uses[pick]++;
+            trie.add(expressions[pick], 1, NOW);
+        }
+        // Same time for all, so rank follows use counts
+        String[] best = trie.complete("1", AutocompleteTrie.TOP);
+        for (int i = 1; i < best.length; i++) {
+            assertTrue(uses[indexOf(expressions, best[i - 1])] >= uses[indexOf(expressions, best[i])]);
+        }
+        int mostUsed = 0;
+        for (int i = 1; i < uses.length; i++) {
+            if (uses[i] > uses[mostUsed]) {
+                mostUsed = i;
+            }
+        }
+        assertEquals(expressions[mostUsed], best[0]);
+    }
+
+    @Test
+    public void evictsLowestRankedAndBoundsMemory() {
+        AutocompleteTrie trie = new AutocompleteTrie();
+        trie.add("7×7", 50, NOW);
+        for (int i = 0; i < 20_000; i++) {
+            trie.record(i + "+" + i, NOW - DAY + i);
+        }
+        assertEquals(AutocompleteTrie.MAX_ENTRIES, trie.size());
+        // The oldest were evicted, the frequent one stayed
+        assertArrayEquals(new String[]{"7×7"}, trie.complete("7×", 3));
+        assertEquals(0, trie.complete("0+", 3).length);
+        assertArrayEquals(new String[]{"19999+19999"}, trie.complete("19999", 3));
+        assertTrue(trie.nodeCount() <= AutocompleteTrie.MAX_ENTRIES * 12);
+
+        // Expressions longer than MAX_LENGTH aren't kept
+        String longExpression = new String(new char[AutocompleteTrie.MAX_LENGTH + 1]).replace('\0', '1');
+        trie.record(longExpression, NOW);
+        assertEquals(0, trie.complete("1111", 3).length);
+    }
+
+    @Test
+    public void benchmarkLookups() {
+        Benchmarks.assumeEnabled();
+        AutocompleteTrie trie = new AutocompleteTrie();
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < AutocompleteTrie.MAX_ENTRIES; i++) {
+            trie.add(random.nextInt(1000) + "×" + random.nextInt(1000) + "+" + random.nextInt(100),
+                    1 + random.nextInt(20), NOW - random.nextInt(100) * DAY);
+        }
+        long buildNanos = System.nanoTime() - start;
+        String[] prefixes = {"1", "12", "123×", "5", "99", "7×", "42×1"};
+        long sink = 0;
+        long lookupNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < 100_000; i++) {
+                sink += trie.complete(prefixes[i % prefixes.length], 3).length;
+            }
+            lookupNanos = Math.min(lookupNanos, (System.nanoTime() - start) / 100_000);
+        }
+        System.out.printf("autocomplete: %d entries, %d nodes, %d KB, built in %.2f ms, %d ns per lookup (%d)%n",
+                trie.size(), trie.nodeCount(), trie.footprintBytes() / 1024, buildNanos / 1e6, lookupNanos, sink);
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.calculator;
+
+import org.junit.Assume;
+
+// Report-only benchmarks take seconds and print timings instead of asserting, so they
+// are skipped unless the tests run with ./gradlew testDebugUnitTest -Pbenchmarks. Tests
+// for the performance claims themselves assert relative bounds and always run.
+final class Benchmarks {
+    static final String PROPERTY = "calculator.benchmarks";
+
+    private Benchmarks() {}
+
+    static void assumeEnabled() {
+        Assume.assumeTrue("benchmarks run with -Pbenchmarks", Boolean.getBoolean(PROPERTY));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ComplexEvaluatorTest {
+
+    private static final double EPSILON = 1e-12;
+
+    private static double[] eval(String expression, boolean degreeMode) throws CalculationException {
+        double[] result = new double[2];
+        ComplexEvaluator.evaluate(ExpressionParser.parse(expression), degreeMode, result);
+        return result;
+    }
+
+    private static void assertComplex(double re, double im, String expression) throws CalculationException {
+        double[] result = eval(expression, false);
+        assertEquals(expression, re, result[0], EPSILON);
+        assertEquals(expression, im, result[1], EPSILON);
+    }
+
+    @Test
+    public void parsesTheImaginaryUnit() {
+        assertEquals("(+ 3 (* 2 i))", ExpressionParser.parse("3+2i").toSExpression());
+        assertEquals("(neg i)", ExpressionParser.parse("-i").toSExpression());
+        assertEquals("(* 1.5E-7 i)", ExpressionParser.parse("1.5E-7i").toSExpression());
+        assertEquals("(sin i)", ExpressionParser.parse("sin(i)").toSExpression());
+        assertFalse(ExpressionParser.parse("2×i").hasErrors());
+    }
+
+    @Test
+    public void imaginaryUnitNeedsComplexMode() {
+        try {
+            ExpressionEvaluator.evaluate(ExpressionParser.parse("1+i"), true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("i needs complex mode", e.getMessage());
+            assertEquals(2, e.start);
+        }
+    }
+
+    @Test
+    public void arithmetic() throws CalculationException {
+        assertComplex(-1, 0, "i²");
+        assertComplex(-1, 0, "i^2");
+        assertComplex(0, 2, "(1+i)^2");
+        assertComplex(0.5, -0.5, "1÷(1+i)");
+        assertComplex(11, -2, "(3+4i)×(1-2i)");
+        assertComplex(-4, 0, "(3+4i)-(7+4i)");
+        assertComplex(0.5, 0.5, "(1+i)^-1×i");
+    }
+
+    @Test
+    public void extendsRealDomains() throws CalculationException {
+        assertComplex(0, 2, "sqrt(-4)");
+        assertComplex(0, 2, "√(-4)");
+        assertComplex(0, Math.PI, "ln(-1)");
+        assertComplex(1, Math.sqrt(3), "(-8)^(1÷3)");
+        assertComplex(Math.PI / 2, -Math.log(2 + Math.sqrt(3)), "asin(2)");
+        assertComplex(0, Math.acos(0.5), "acosh(0.5)");
+        assertComplex(Math.log(3) / 2, Math.PI / 2, "atanh(2)");
+        assertComplex(-1, 0, "exp(i×π)");
+    }
+
+    @Test
+    public void newFunctions() throws CalculationException {
+        assertComplex(5, 0, "abs(3+4i)");
+        assertComplex(Math.PI / 2, 0, "arg(2i)");
+        assertComplex(3, -4, "conj(3+4i)");
+        assertEquals(90, eval("arg(i)", true)[0], EPSILON);
+        assertEquals(180, eval("arg(-1)", true)[0], EPSILON);
+    }
+
+    @Test
+    public void complexFunctionsMatchIdentities() throws CalculationException {
+        String[] arguments = {"0.3+0.7i", "-1.2+0.4i", "2-3i", "-0.5-0.5i"};
+        for (String z : arguments) {
+            // Each pair should round-trip or satisfy a standard identity
+            assertComplex(0, 0, "sin(" + z + ")²+cos(" + z + ")²-1");
+            assertComplex(0, 0, "exp(ln(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "sin(asin(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "cos(acos(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "tan(atan(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "sinh(asinh(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "cosh(acosh(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "tanh(atanh(" + z + "))-(" + z + ")");
+            assertComplex(0, 0, "sqrt(" + z + ")²-(" + z + ")");
+            assertComplex(0, 0, "cbrt(" + z + ")^3-(" + z + ")");
+            assertComplex(0, 0, "tan(" + z + ")-sin(" + z + ")÷cos(" + z + ")");
+            assertComplex(0, 0, "tanh(" + z + ")-sinh(" + z + ")÷cosh(" + z + ")");
+        }
+    }
+
+    @Test
+    public void reportsErrors() {
+        String[][] cases = {
+                {"1÷(i-i)", "Division by zero"},
+                {"ln(0)", "ln is undefined at this value"},
+                {"atanh(1)", "atanh is undefined at this value"},
+                {"atan(i)", "atan is undefined at this value"},
+                {"i!", "Factorial only works with non-negative integers"},
+                {"hypot(i, 1)", "hypot needs real arguments"},
+                {"0^(-1+i)", "0 to negative power is undefined"},
+        };
+        for (String[] c : cases) {
+            try {
+                eval(c[0], false);
+                fail(c[0]);
+            } catch (CalculationException e) {
+                assertEquals(c[0], c[1], e.getMessage());
+            }
+        }
+        try {
+            eval("tan(90)", true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Tangent undefined at odd multiples of 90°", e.getMessage());
+        }
+    }
+
+    @Test
+    public void realInputsMatchTheRealEngine() throws CalculationException {
+        String[] expressions = {
+                "12+3×4-5÷2", "2^10", "√(16)+ln(e)", "sin(30)+cos(60)×tan(45)", "log(1000)",
+                "5!+3²", "1÷3", "asin(0.5)+acos(0.5)", "(-8)^3", "atan2(1, -1)", "hypot(3, 4)"
+        };
+        for (String expression : expressions) {
+            for (boolean degreeMode : new boolean[] {true, false}) {
+                double expected = ExpressionEvaluator.evaluate(ExpressionParser.parse(expression), degreeMode);
+                double[] actual = eval(expression, degreeMode);
+                assertEquals(expression, expected, actual[0], 0);
+                assertEquals(expression, 0, actual[1], 0);
+            }
+        }
+    }
+
+    // On real-only inputs the complex engine stays within a small factor of the real one
+    @Test
+    public void realInputsCostCloseToRealEngine() throws CalculationException {
+        Ast[] asts = new Ast[] {
+                ExpressionParser.parse("12+3×4-5÷2×(7-1)^2"),
+                ExpressionParser.parse("sin(30)+cos(60)×tan(45)"),
+                ExpressionParser.parse("√(16)+ln(7)×log(1000)-2^0.5"),
+        };
+        double[] out = new double[2];
+        double sink = 0;
+        long realNanos = Long.MAX_VALUE;
+        long complexNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 200; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                sink += ExpressionEvaluator.evaluate(asts[i % asts.length], true);
+            }
+            realNanos = Math.min(realNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                ComplexEvaluator.evaluate(asts[i % asts.length], true, out);
+                sink += out[0];
+            }
+            complexNanos = Math.min(complexNanos, System.nanoTime() - start);
+        }
+        assertTrue(sink != 0);
+        assertTrue("real engine " + realNanos / 1000 + " ns, complex engine " + complexNanos / 1000 + " ns",
+                complexNanos <= realNanos * 3);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DegreeTrigTest {
+
+    @Test
+    public void exactAtSpecialAngles() {
+        assertEquals(0.0, DegreeTrig.sin(180), 0);
+        assertEquals(0.0, DegreeTrig.sin(-360), 0);
+        assertEquals(0.5, DegreeTrig.sin(30), 0);
+        assertEquals(-0.5, DegreeTrig.sin(210), 0);
+        assertEquals(-1.0, DegreeTrig.sin(-90), 0);
+        assertEquals(0.0, DegreeTrig.cos(90), 0);
+        assertEquals(0.0, DegreeTrig.cos(270), 0);
+        assertEquals(-1.0, DegreeTrig.cos(180), 0);
+        assertEquals(0.5, DegreeTrig.cos(60), 0);
+        assertEquals(-0.5, DegreeTrig.cos(-120), 0);
+        assertEquals(1.0, DegreeTrig.tan(45), 0);
+        assertEquals(-1.0, DegreeTrig.tan(135), 0);
+        assertEquals(0.0, DegreeTrig.tan(180), 0);
+        assertEquals(Math.sqrt(3), DegreeTrig.tan(60), 0);
+        assertEquals(0.5, DegreeTrig.sin(30 + 360 * 1e6), 0);
+        assertEquals(0.0, DegreeTrig.sin(360 * 0x1p40), 0);
+    }
+
+    @Test
+    public void tanHasPolesAtOddMultiplesOf90() {
+        assertFalse(DegreeTrig.tanDefined(90));
+        assertFalse(DegreeTrig.tanDefined(-270));
+        assertFalse(DegreeTrig.tanDefined(90 + 180 * 1e9));
+        assertTrue(DegreeTrig.tanDefined(89.999));
+        try {
+            ExpressionEvaluator.evaluate(ExpressionParser.parse("tan(90)"), true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Tangent undefined at odd multiples of 90°", e.getMessage());
+        }
+    }
+
+    // Special angles must match the correctly rounded table values, everything else
+    // the radian path on the same (small) angle to within an ulp or two
+    @Test
+    public void sweepMatchesReferenceWithinTwoUlps() {
+        for (int degrees = -1080; degrees <= 1080; degrees++) {
+            check(degrees);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            check((random.nextDouble() - 0.5) * 2000);
+        }
+    }
+
+    private static void check(double degrees) {
+        double radians = Math.toRadians(degrees);
+        assertClose(degrees, Math.sin(radians), DegreeTrig.sin(degrees));
+        assertClose(degrees, Math.cos(radians), DegreeTrig.cos(degrees));
+        if (DegreeTrig.tanDefined(degrees) && Math.abs(Math.cos(radians)) > 1e-3) {
+            double expected = Math.tan(radians);
+            double actual = DegreeTrig.tan(degrees);
+            // Near the poles the reference's rounded argument is amplified by 1 + tan²
+            double tolerance = (1e-15 + Math.abs(radians) * Math.ulp(1.0)) * (1 + expected * expected);
+            assertEquals("tan " + degrees, expected, actual, tolerance);
+        }
+    }
+
+    private static void assertClose(double degrees, double reference, double actual) {
+        // toRadians rounds the argument; the reference carries that error, bounded
+        // by |x| times an ulp of pi/180
+        double tolerance = 2 * Math.ulp(1.0) + Math.abs(Math.toRadians(degrees)) * Math.ulp(1.0);
+        assertEquals(String.valueOf(degrees), reference, actual, tolerance);
+    }
+
+    // The degree kernel must be at least as fast as Math.toRadians before sin and cos.
+    // It usually runs in about 0.8 of the time, but how the JIT compiles it depends on
+    // the tests run before it in the same JVM, so the bound leaves room for that.
+    @Test
+    public void keepsUpWithToRadiansPath() {
+        double[] inputs = new double[4096];
+        Random random = new Random(7);
+        for (int i = 0; i < inputs.length; i++) {
+            // Half whole degrees as typed on the keypad, half arbitrary angles
+            inputs[i] = i % 2 == 0 ? random.nextInt(721) - 360 : (random.nextDouble() - 0.5) * 720;
+        }
+        double sink = 0;
+        long degreeNanos = Long.MAX_VALUE;
+        long radianNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 200; round++) {
+            long start = System.nanoTime();
+            for (double x : inputs) {
+                sink += DegreeTrig.sin(x) + DegreeTrig.cos(x);
+            }
+            degreeNanos = Math.min(degreeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (double x : inputs) {
+                sink += Math.sin(Math.toRadians(x)) + Math.cos(Math.toRadians(x));
+            }
+            radianNanos = Math.min(radianNanos, System.nanoTime() - start);
+        }
+        assertTrue(sink != 0);
+        assertTrue("degree kernel " + degreeNanos + " ns, Math.toRadians path " + radianNanos + " ns",
+                degreeNanos <= radianNanos * 1.5);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.calculator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionOptimizerTest {
+
+    // Expressions of the kind that end up in history: re-used trig and log terms,
+    // Pythagorean checks, repeated roots and the constant arithmetic around them
+    private static final String[] CORPUS = {
+            "sin(30)+sin(30)×2",
+            "sin(45)^2+cos(45)^2",
+            "√(2)×√(2)",
+            "log(1000)+log(1000)÷2",
+            "ln(e)×ln(e)+ln(e)",
+            "(1+2)×(1+2)",
+            "tan(60)×tan(60)-3",
+            "√(3²+4²)+√(3²+4²)",
+            "asin(0.5)+acos(0.5)",
+            "2×π×√(10÷9.81)",
+            "12+3×4-5÷2",
+            "5!+3²",
+            "sin(30)×cos(60)+sin(30)×cos(60)",
+            "log(2)×10+log(2)×10",
+            "atan(1)+atan(1)+atan(1)+atan(1)",
+            "ln(10)÷ln(2)",
+    };
+
+    private static Ast optimize(String expression) {
+        return ExpressionOptimizer.optimize(ExpressionParser.parse(expression), true);
+    }
+
+    @Before
+    public void enableMetrics() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void disableMetrics() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void foldsConstantSubtrees() {
+        Ast ast = optimize("(1+2)×3-4÷2");
+        assertEquals("7", ast.toSExpression());
+        assertEquals(Ast.NUMBER, ast.kinds[ast.root]);
+    }
+
+    @Test
+    public void sharesRepeatedSubexpressions() {
+        Ast ast = optimize("sin(30)+sin(30)×2");
+        assertEquals(1.5, ast.values[ast.root], 1e-12);
+        assertEquals(1, Metrics.counter(Metrics.FUNCTION_CALLS));
+    }
+
+    @Test
+    public void keepsFailingSubtreesWithTheirSpans() {
+        Ast ast = optimize("1+2÷(3-3)");
+        assertEquals("(+ 1 (/ 2 0))", ast.toSExpression());
+        try {
+            ExpressionEvaluator.evaluate(ast, true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Division by zero", e.getMessage());
+            assertEquals(2, e.start);
+            assertEquals(9, e.end);
+        }
+    }
+
+    @Test
+    public void appliesOnlyIeeeSafeIdentities() {
+        assertEquals("(/ 1 0)", optimize("(1÷0)×1").toSExpression());
+        assertEquals("(/ 1 0)", optimize("1×(1÷0)^1÷1").toSExpression());
+        assertEquals("(/ 1 0)", optimize("(1÷0)-0").toSExpression());
+        assertEquals("(/ 1 0)", optimize("-(-(1÷0))").toSExpression());
+        // -0+0 is +0, so x+0 stays unless x can't be -0
+        assertEquals("(+ (/ 1 0) 0)", optimize("(1÷0)+0").toSExpression());
+        assertEquals("(² (/ 1 0))", optimize("(1÷0)²+0").toSExpression());
+        // x×0 is not 0 for NaN or infinities
+        assertEquals("(* (/ 1 0) 0)", optimize("(1÷0)×0").toSExpression());
+    }
+
+    @Test
+    public void matchesUnoptimizedResults() throws CalculationException {
+        for (String expression : CORPUS) {
+            for (boolean degreeMode : new boolean[]{true, false}) {
+                Ast ast = ExpressionParser.parse(expression);
+                double expected = ExpressionEvaluator.evaluate(ast, degreeMode);
+                double actual = ExpressionEvaluator.evaluate(ExpressionOptimizer.optimize(ast, degreeMode), degreeMode);
+                assertEquals(expression, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+            }
+        }
+    }
+
+    // Function calls over the corpus with and without the optimization pass, counting
+    // the calls made while folding
+    @Test
+    public void callsFewerFunctionsOnHistoryCorpus() throws CalculationException {
+        Ast[] parsed = new Ast[CORPUS.length];
+        for (int i = 0; i < CORPUS.length; i++) {
+            parsed[i] = ExpressionParser.parse(CORPUS[i]);
+        }
+
+        Metrics.reset();
+        for (Ast ast : parsed) {
+            ExpressionEvaluator.evaluate(ast, true);
+        }
+        long plainCalls = Metrics.counter(Metrics.FUNCTION_CALLS);
+
+        Metrics.reset();
+        for (Ast ast : parsed) {
+            ExpressionEvaluator.evaluate(ExpressionOptimizer.optimize(ast, true), true);
+        }
+        long optimizedCalls = Metrics.counter(Metrics.FUNCTION_CALLS);
+
+        assertEquals(30, plainCalls);
+        assertEquals(17, optimizedCalls);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionParserTest {
+
+    private static double eval(String expression) throws CalculationException {
+        return ExpressionEvaluator.evaluate(ExpressionParser.parse(expression), true);
+    }
+
+    private static String tree(String expression) {
+        Ast ast = ExpressionParser.parse(expression);
+        assertFalse(expression + " " + ast.errors, ast.hasErrors());
+        return ast.toSExpression();
+    }
+
+    @Test
+    public void appliesPrecedenceAndAssociativity() {
+        assertEquals("(- (- 1 2) 3)", tree("1-2-3"));
+        assertEquals("(+ 1 (* 2 3))", tree("1+2×3"));
+        assertEquals("(^ 2 (^ 3 2))", tree("2^3^2"));
+        assertEquals("(neg (^ 2 2))", tree("-2^2"));
+        assertEquals("(* 2 (neg 3))", tree("2*-3"));
+        assertEquals("(^ 2 (neg 1))", tree("2^-1"));
+        assertEquals("(neg (² 2))", tree("-2²"));
+        assertEquals("(+ (! 3) (² 2))", tree("3!+2²"));
+    }
+
+    @Test
+    public void functionsTakeParenthesizedOrPostfixOperand() {
+        assertEquals("(² (sin 30))", tree("sin(30)²"));
+        assertEquals("(sqrt (² 16))", tree("√16²"));
+        assertEquals("(+ (sin 30) 1)", tree("sin30+1"));
+        assertEquals("(^ (log 100) 2)", tree("log100^2"));
+        assertEquals("(* 2 (asin (+ 0.5 0)))", tree("2×asin(0.5+0)"));
+    }
+
+    @Test
+    public void evaluatesLikeTheCalculator() throws CalculationException {
+        assertEquals(-4, eval("-2^2"), 0);
+        assertEquals(-6, eval("2×-3"), 0);
+        assertEquals(0.5, eval("2^-1"), 0);
+        assertEquals(512, eval("2^3^2"), 0);
+        assertEquals(10.5, eval("12+3×4-5÷2-11"), 1e-12);
+        assertEquals(1, eval("sin(30)+cos(60)"), 1e-12);
+        assertEquals(5, eval("√(16)+ln(e)"), 1e-12);
+        assertEquals(Math.PI * 2, eval("2×π"), 0);
+        assertEquals(129, eval("5!+3²"), 0);
+        assertEquals(3, eval("log(1000)"), 1e-12);
+        assertEquals(1.5e-7, eval("1.5E-7"), 0);
+        assertEquals(7, eval(" ( 3 + 4 ) "), 0);
+    }
+
+    @Test
+    public void recordsSpansForEveryNode() {
+        Ast ast = ExpressionParser.parse("(1+2)×sin(30)");
+        assertEquals(0, ast.starts[ast.root]);
+        assertEquals(13, ast.ends[ast.root]);
+        for (int node = 0; node < ast.size; node++) {
+            if (ast.kinds[node] == Ast.FUNCTION) {
+                assertEquals("sin(30)", ast.source.substring(ast.starts[node], ast.ends[node]));
+            }
+            if (ast.kinds[node] == Ast.ADD) {
+                assertEquals("1+2", ast.source.substring(ast.starts[node], ast.ends[node]));
+            }
+        }
+    }
+
+    @Test
+    public void recoversAndReportsEveryError() {
+        Ast ast = ExpressionParser.parse("(2+×3)+4)#");
+        assertEquals(3, ast.errors.size());
+        assertEquals("Missing operand", ast.errors.get(0).getMessage());
+        assertEquals(3, ast.errors.get(0).start);
+        assertEquals("Mismatched parentheses", ast.errors.get(1).getMessage());
+        assertEquals(8, ast.errors.get(1).start);
+        assertEquals("Unexpected '#'", ast.errors.get(2).getMessage());
+        assertEquals(9, ast.errors.get(2).start);
+
+        ast = ExpressionParser.parse("sin(30");
+        assertEquals("Mismatched parentheses", ast.firstError().getMessage());
+        assertEquals(3, ast.firstError().start);
+
+        ast = ExpressionParser.parse("2(3)");
+        assertEquals("Missing operator", ast.firstError().getMessage());
+        assertEquals(1, ast.firstError().start);
+
+        ast = ExpressionParser.parse("5+");
+        assertEquals("Missing operand", ast.firstError().getMessage());
+        assertEquals(1, ast.firstError().start);
+
+        assertEquals("Invalid number", ExpressionParser.parse("1.2.3").firstError().getMessage());
+        assertEquals("Empty expression", ExpressionParser.parse("  ").firstError().getMessage());
+    }
+
+    @Test
+    public void evaluationErrorsPointAtTheFailingNode() {
+        try {
+            eval("1+2÷(3-3)");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Division by zero", e.getMessage());
+            assertEquals(2, e.start);
+            assertEquals(9, e.end);
+        }
+        try {
+            eval("ln(0)+1");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Ln of non-positive number", e.getMessage());
+            assertEquals(0, e.start);
+            assertEquals(5, e.end);
+        }
+    }
+
+    @Test
+    public void deepNestingIsReportedInsteadOfOverflowing() {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            expression.append('(');
+        }
+        expression.append('1');
+        Ast ast = ExpressionParser.parse(expression.toString());
+        assertTrue(ast.hasErrors());
+        assertEquals("Expression is nested too deeply", ast.firstError().getMessage());
+    }
+
+    @Test
+    public void longPowerChainsAreReportedInsteadOfOverflowing() throws CalculationException {
+        // ^ is right-associative, so each exponent nests one level deeper
+        Ast ast = ExpressionParser.parse("2" + "^1".repeat(20_000));
+        assertTrue(ast.hasErrors());
+        assertEquals("Expression is nested too deeply", ast.firstError().getMessage());
+        assertEquals(2, eval("2" + "^1".repeat(200)), 0);
+    }
+
+    @Test
+    public void parsingIsLinear() {
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 0; i < 100_000; i++) {
+            expression.append("+2×3");
+        }
+        Ast ast = ExpressionParser.parse(expression.toString());
+        assertFalse(ast.hasErrors());
+        assertEquals(400_001, ast.size);
+    }
+}
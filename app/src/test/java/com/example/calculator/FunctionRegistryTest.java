@@ -0,0 +1,91 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionRegistryTest {
+
+    private static double eval(String expression, boolean degreeMode) throws CalculationException {
+        return ExpressionEvaluator.evaluate(ExpressionParser.parse(expression), degreeMode);
+    }
+
+    @Test
+    public void namesAreUniqueAndIdsIndexTheTable() {
+        for (int id = 0; id < FunctionRegistry.count(); id++) {
+            assertEquals(id, FunctionRegistry.get(id).id);
+            for (int other = id + 1; other < FunctionRegistry.count(); other++) {
+                assertNotEquals(FunctionRegistry.name(id), FunctionRegistry.name(other));
+            }
+        }
+    }
+
+    @Test
+    public void matchesTheLongestName() {
+        assertEquals(FunctionRegistry.ASINH, FunctionRegistry.match("asinh(1)", 0));
+        assertEquals(FunctionRegistry.ASIN, FunctionRegistry.match("asin(1)", 0));
+        assertEquals(FunctionRegistry.LOG2, FunctionRegistry.match("log2(8)", 0));
+        assertEquals(FunctionRegistry.LOG, FunctionRegistry.match("LOG(8)", 0));
+        assertEquals(Ast.NONE, FunctionRegistry.match("xyz", 0));
+    }
+
+    @Test
+    public void namesEndAtAWordBoundary() throws CalculationException {
+        // A digit run after log stays its argument; log2 needs a boundary
+        assertEquals(FunctionRegistry.LOG, FunctionRegistry.match("log25", 0));
+        assertEquals(Math.log10(25), eval("log25", true), 1e-12);
+        assertEquals(Math.log10(20), eval("log20", true), 1e-12);
+        assertEquals(3, eval("log2(8)", true), 1e-12);
+        assertEquals(3, eval("log2 8", true), 1e-12);
+        assertEquals(4, eval("log2(8)+1", true), 1e-12);
+        assertEquals(0.5, eval("sin30", true), 1e-12);
+        // A longer name is a name of its own, not a function applied to the rest
+        assertEquals(Ast.NONE, FunctionRegistry.match("detail", 0));
+        assertEquals("Unknown variable detail", ExpressionParser.parse("detail").firstError().getMessage());
+    }
+
+    @Test
+    public void evaluatesRegisteredFunctions() throws CalculationException {
+        assertEquals(3, eval("log2(8)", true), 1e-12);
+        assertEquals(3, eval("cbrt(27)", true), 1e-12);
+        assertEquals(2.5, eval("abs(-2.5)", true), 0);
+        assertEquals(-3, eval("floor(-2.5)", true), 0);
+        assertEquals(-2, eval("ceil(-2.5)", true), 0);
+        assertEquals(1, eval("cosh(0)", true), 0);
+        assertEquals(1.5, eval("asinh(sinh(1.5))", true), 1e-12);
+        assertEquals(-1.5, eval("asinh(sinh(-1.5))", true), 1e-12);
+        assertEquals(2, eval("acosh(cosh(2))", true), 1e-12);
+        assertEquals(0.5, eval("atanh(tanh(0.5))", true), 1e-12);
+        assertEquals(5, eval("hypot(3, 4)", true), 0);
+        assertEquals(135, eval("atan2(1, -1)", true), 1e-12);
+        assertEquals(3 * Math.PI / 4, eval("atan2(1, -1)", false), 1e-12);
+        assertEquals(Math.E, eval("exp(1)", true), 1e-15);
+    }
+
+    @Test
+    public void reportsDomainErrorsWithTheirSpan() {
+        try {
+            eval("1+log(-1)", true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Log of non-positive number", e.getMessage());
+            assertEquals(2, e.start);
+            assertEquals(9, e.end);
+        }
+        try {
+            eval("acosh(0.5)", true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Acosh of number below 1", e.getMessage());
+        }
+    }
+
+    @Test
+    public void checksArity() {
+        assertEquals("hypot needs 2 arguments", ExpressionParser.parse("hypot(3)").firstError().getMessage());
+        assertEquals("Too many arguments for sin", ExpressionParser.parse("sin(1, 2)").firstError().getMessage());
+        assertEquals("Missing '(' after atan2", ExpressionParser.parse("atan2 1").firstError().getMessage());
+        assertEquals("Unexpected ','", ExpressionParser.parse("1, 2").firstError().getMessage());
+        assertEquals("(hypot 3 (+ 2 2))", ExpressionParser.parse("hypot(3, 2+2)").toSExpression());
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GraphSamplerTest {
+
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 600;
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private static GraphFunction compile(String expression) throws CalculationException {
+        return GraphFunction.compile(expression, false);
+    }
+
+    private static int countNaN(GraphSampler.Samples samples) {
+        int count = 0;
+        for (int i = 0; i < samples.size; i++) {
+            if (Double.isNaN(samples.ys[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The non-throwing path gives NaN exactly where the evaluator reports an error,
+    // and the same value everywhere else
+    @Test
+    public void undefinedPointsMatchEvaluatorErrors() throws CalculationException {
+        String[] expressions = {"sqrt(x)", "ln(x)+log(x)", "x!", "1÷(x-1)", "x^0.5", "0^x", "tan(x×45)",
+                "acosh(x)+atanh(x÷4)", "asin(x)"};
+        int slot = Variables.define(GraphFunction.VARIABLE);
+        for (boolean degreeMode : new boolean[] {true, false}) {
+            for (String expression : expressions) {
+                GraphFunction function = GraphFunction.compile(expression, degreeMode);
+                Ast ast = ExpressionOptimizer.optimize(ExpressionParser.parse(expression), degreeMode);
+                double[] scratch = new double[function.scratchSize()];
+                for (double x = -4; x <= 4; x += 0.5) {
+                    Variables.set(slot, x);
+                    double expected;
+                    try {
+                        expected = ExpressionEvaluator.evaluate(ast, degreeMode);
+                    } catch (CalculationException e) {
+                        expected = Double.NaN;
+                    }
+                    assertEquals(expression + " at " + x, expected, function.evaluate(x, scratch), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compilesWithXAsAVariable() throws CalculationException {
+        GraphFunction function = compile("x²+2×x");
+        double[] scratch = new double[function.scratchSize()];
+        assertEquals(15, function.evaluate(3, scratch), 0);
+        assertEquals(0, function.evaluate(-2, scratch), 0);
+        // Other variables are read as they were when the graph was compiled
+        Variables.set(Variables.define("k"), 2);
+        GraphFunction scaled = compile("k×x");
+        Variables.set(Variables.slot("k"), 5);
+        assertEquals(8, scaled.evaluate(4, new double[scaled.scratchSize()]), 0);
+        assertTrue(Double.isNaN(function.evaluate(Double.NaN, scratch)));
+        assertTrue(Double.isNaN(compile("1÷x").evaluate(0, new double[4])));
+    }
+
+    @Test
+    public void straightLinesNeedNoRefinement() throws CalculationException {
+        GraphSampler.Samples samples = GraphSampler.sample(compile("2×x+1"), -10, 10, WIDTH, HEIGHT);
+        assertEquals(WIDTH / 4 + 1, samples.size);
+        assertEquals(-10, samples.xs[0], 0);
+        assertEquals(10, samples.xs[samples.size - 1], 0);
+    }
+
+    @Test
+    public void refinesWhereTheCurveBends() throws CalculationException {
+        GraphFunction function = compile("sin(x×x)");
+        GraphSampler.Samples samples = GraphSampler.sample(function, -6, 6, WIDTH, HEIGHT);
+        int nearZero = 0;
+        int farOut = 0;
+        for (int i = 0; i < samples.size; i++) {
+            double x = samples.xs[i];
+            if (Math.abs(x) < 1) nearZero++;
+            if (Math.abs(x) > 5) farOut++;
+        }
+        // Same x span, far more bending out where the frequency is high
+        assertTrue(farOut > 2 * nearZero);
+
+        // Between samples the chord stays within half a pixel of the curve
+        double unitsPerPixel = 12.0 / WIDTH;
+        double[] scratch = new double[function.scratchSize()];
+        for (int i = 0; i + 1 < samples.size; i++) {
+            double x = (samples.xs[i] + samples.xs[i + 1]) / 2;
+            double chord = (samples.ys[i] + samples.ys[i + 1]) / 2;
+            assertEquals(function.evaluate(x, scratch), chord, unitsPerPixel / 2 + 1e-12);
+        }
+    }
+
+    @Test
+    public void findsDomainEdgesAndBreaksAtPoles() throws CalculationException {
+        GraphSampler.Samples root = GraphSampler.sample(compile("sqrt(x)"), -1, 1, WIDTH, HEIGHT);
+        double firstDefined = Double.NaN;
+        for (int i = 0; i < root.size; i++) {
+            if (!Double.isNaN(root.ys[i])) {
+                firstDefined = root.xs[i];
+                break;
+            }
+        }
+        assertEquals(0, firstDefined, 2.0 / WIDTH);
+
+        // tan has poles at ±π/2 in [-3, 3]; each gets a break rather than a vertical line
+        GraphSampler.Samples tan = GraphSampler.sample(compile("tan(x)"), -3, 3, WIDTH, HEIGHT);
+        assertEquals(2, countNaN(tan));
+    }
+
+    @Test
+    public void parallelSamplingMatchesSequential() throws Exception {
+        GraphFunction function = compile("sin(x)÷x+tan(x)");
+        GraphSampler.Samples sequential = GraphSampler.sample(function, -40, 40, WIDTH, HEIGHT);
+        GraphSampler.Samples parallel = GraphSampler.sampleParallel(function, -40, 40, WIDTH, HEIGHT);
+        assertEquals(sequential.size, parallel.size);
+        for (int i = 0; i < sequential.size; i++) {
+            assertEquals(sequential.xs[i], parallel.xs[i], 0);
+            assertEquals(sequential.ys[i], parallel.ys[i], 0);
+        }
+    }
+
+    @Test
+    public void lttbKeepsEndsPeaksAndGaps() {
+        GraphSampler.Samples samples = new GraphSampler.Samples(0);
+        for (int i = 0; i < 1000; i++) {
+            samples.add(i, i == 400 ? 50 : i == 700 ? Double.NaN : Math.sin(i / 50.0));
+        }
+        GraphSampler.Samples reduced = Lttb.downsample(samples, 100);
+        assertTrue(reduced.size <= 102);
+        assertEquals(0, reduced.xs[0], 0);
+        assertEquals(999, reduced.xs[reduced.size - 1], 0);
+        assertEquals(1, countNaN(reduced));
+        boolean keptPeak = false;
+        for (int i = 0; i < reduced.size; i++) {
+            keptPeak |= reduced.ys[i] == 50;
+        }
+        assertTrue(keptPeak);
+        for (int i = 1; i < reduced.size; i++) {
+            assertTrue(reduced.xs[i] > reduced.xs[i - 1]);
+        }
+        assertSame(samples, Lttb.downsample(samples, 5000));
+    }
+
+    @Test
+    public void gridStepsAreRound() {
+        assertEquals(1, GraphView.gridStep(1.0 / 64), 0);
+        assertEquals(0.5, GraphView.gridStep(1.0 / 128), 0);
+        assertEquals(200, GraphView.gridStep(3), 0);
+    }
+
+    @Test
+    public void benchmarkSampling() throws Exception {
+        Benchmarks.assumeEnabled();
+        GraphFunction function = compile("sin(x)÷x+0.1×tan(x)");
+        long sequentialNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        long lttbNanos = Long.MAX_VALUE;
+        int points = 0;
+        for (int round = 0; round < 30; round++) {
+            long start = System.nanoTime();
+            GraphSampler.Samples samples = GraphSampler.sample(function, -50, 50, 1080, 1920);
+            sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            GraphSampler.sampleParallel(function, -50, 50, 1080, 1920);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            Lttb.downsample(samples, 256);
+            lttbNanos = Math.min(lttbNanos, System.nanoTime() - start);
+            points = samples.size;
+        }
+        System.out.printf("graph sampling, %d points over 1080 px: %.0f us sequential, %.0f us on %d threads, "
+                        + "LTTB to 256 in %.0f us%n", points, sequentialNanos / 1000.0, parallelNanos / 1000.0,
+                GraphSampler.EXECUTOR.getMaximumPoolSize(), lttbNanos / 1000.0);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.Assert.*;
+
+public class HistoryCompactorTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    // The history table in memory, following the queries' SQL
+    private static final class FakeHistoryDao implements CalculationHistoryDao {
+        final List<CalculationHistory> rows = new ArrayList<>();
+        int nextId = 1;
+        int deleteCalls;
+
+        @Override
+        public long insertIfNew(CalculationHistory calculation) {
+            for (CalculationHistory row : rows) {
+                if (Objects.equals(row.expression, calculation.expression)
+                        && Objects.equals(row.result, calculation.result)) {
+                    return -1;
+                }
+            }
+            calculation.id = nextId++;
+            rows.add(calculation);
+            return calculation.id;
+        }
+
+        @Override
+        public void markUsed(String expression, String result, long now, byte[] compiled) {
+            for (CalculationHistory row : rows) {
+                if (Objects.equals(row.expression, expression) && Objects.equals(row.result, result)) {
+                    row.useCount++;
+                    row.lastUsed = now;
+                    row.compiled = compiled != null ? compiled : row.compiled;
+                }
+            }
+        }
+
+        @Override
+        public List<CalculationHistory> getRecentCalculations() {
+            List<CalculationHistory> recent = getAllCalculations();
+            return recent.subList(0, Math.min(50, recent.size()));
+        }
+
+        @Override
+        public List<CalculationHistory> getAllCalculations() {
+            List<CalculationHistory> all = new ArrayList<>(rows);
+            all.sort(Comparator.comparingLong((CalculationHistory row) -> row.lastUsed).reversed());
+            return all;
+        }
+
+        @Override
+        public List<CalculationHistory> searchCalculations(String searchQuery) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ExpressionUsage> getExpressionUsage(int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Integer> findIdsByResultRange(double low, double high) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteById(int id) {
+            rows.removeIf(row -> row.id == id);
+        }
+
+        @Override
+        public void clearHistory() {
+            rows.clear();
+        }
+
+        @Override
+        public int getHistoryCount() {
+            return rows.size();
+        }
+
+        @Override
+        public long getHistoryBytes() {
+            long bytes = 0;
+            for (CalculationHistory row : rows) {
+                bytes += row.expression.length() + row.result.length() + 40;
+            }
+            return bytes;
+        }
+
+        @Override
+        public Long getLastUsedAt(int offset) {
+            List<CalculationHistory> all = getAllCalculations();
+            return offset < all.size() ? all.get(offset).lastUsed : null;
+        }
+
+        @Override
+        public int deleteUsedUntil(long cutoff, int limit) {
+            deleteCalls++;
+            List<CalculationHistory> oldest = getAllCalculations();
+            int deleted = 0;
+            for (int i = oldest.size() - 1; i >= 0 && deleted < limit; i--) {
+                if (oldest.get(i).lastUsed <= cutoff) {
+                    rows.remove(oldest.get(i));
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+    }
+
+    private static void record(FakeHistoryDao dao, String expression, String result, long time) {
+        dao.record(new CalculationHistory(expression, result, time));
+    }
+
+    @Test
+    public void repeatedCalculationsShareOneRow() {
+        FakeHistoryDao dao = new FakeHistoryDao();
+        record(dao, "2+2", "4", 100);
+        record(dao, "3+1", "4", 200);
+        record(dao, "2+2", "4", 300);
+        record(dao, "2+2", "4", 400);
+
+        List<CalculationHistory> recent = dao.getRecentCalculations();
+        assertEquals(2, recent.size());
+        assertEquals("2+2", recent.get(0).expression);
+        assertEquals(3, recent.get(0).useCount);
+        assertEquals(100, recent.get(0).timestamp);
+        assertEquals(400, recent.get(0).lastUsed);
+        assertEquals(1, recent.get(1).useCount);
+    }
+
+    @Test
+    public void expiresRowsByAgeAndKeepsRecentlyUsedOnes() {
+        FakeHistoryDao dao = new FakeHistoryDao();
+        long now = 400 * DAY;
+        record(dao, "1+1", "2", now - 40 * DAY);
+        record(dao, "2+2", "4", now - 35 * DAY);
+        record(dao, "3+3", "6", now - 5 * DAY);
+        // Used again recently, so it stays
+        record(dao, "2+2", "4", now - DAY);
+
+        HistoryRetention policy = new HistoryRetention("30 days", 30 * DAY, 0, 0);
+        assertEquals(1, HistoryCompactor.compact(dao, policy, now, () -> false));
+        assertEquals(2, dao.getHistoryCount());
+        assertEquals("2+2", dao.getRecentCalculations().get(0).expression);
+    }
+
+    @Test
+    public void trimsLeastRecentlyUsedRowsInBatches() {
+        FakeHistoryDao dao = new FakeHistoryDao();
+        for (int i = 0; i < 1300; i++) {
+            record(dao, i + "+0", String.valueOf(i), i);
+        }
+        HistoryRetention policy = new HistoryRetention("100 rows", 0, 100, 0);
+        assertEquals(1200, HistoryCompactor.compact(dao, policy, 2000, () -> false));
+        assertEquals(100, dao.getHistoryCount());
+        assertEquals(3, dao.deleteCalls);
+        assertEquals(1200, (long) dao.getLastUsedAt(99));
+
+        // Nothing more to do
+        assertEquals(0, HistoryCompactor.compact(dao, policy, 2000, () -> false));
+        assertEquals(0, HistoryCompactor.compact(dao,
+                new HistoryRetention("none", 0, 0, 0), 2000, () -> false));
+    }
+
+    @Test
+    public void sizeLimitLowersTheRowLimit() {
+        HistoryRetention policy = new HistoryRetention("1 KB", 0, 1000, 1024);
+        assertEquals(1000, policy.rowLimit(10, 500));
+        // 2048 bytes in 100 rows is about 20 bytes a row, so 50 fit
+        assertEquals(50, policy.rowLimit(100, 2048));
+        assertEquals(Long.MIN_VALUE, policy.ageCutoff(5000));
+
+        FakeHistoryDao dao = new FakeHistoryDao();
+        for (int i = 0; i < 100; i++) {
+            record(dao, String.format("%08d", i), String.format("%08d", i), i);
+        }
+        HistoryCompactor.compact(dao, policy, 100, () -> false);
+        assertTrue(dao.getHistoryBytes() <= 1024);
+        assertEquals(99, (long) dao.getLastUsedAt(0));
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        FakeHistoryDao dao = new FakeHistoryDao();
+        for (int i = 0; i < 2000; i++) {
+            record(dao, i + "×1", String.valueOf(i), i);
+        }
+        int[] batches = {0};
+        int deleted = HistoryCompactor.compact(dao, new HistoryRetention("10 rows", 0, 10, 0), 5000,
+                () -> ++batches[0] > 2);
+        assertEquals(2 * HistoryCompactor.BATCH_SIZE, deleted);
+    }
+
+    @Test
+    public void defaultKeepsEverything() {
+        HistoryRetention policy = HistoryRetention.preset(HistoryRetention.DEFAULT_PRESET);
+        assertTrue(policy.isUnlimited());
+        assertFalse(HistoryRetention.PRESETS[0].isUnlimited());
+
+        FakeHistoryDao dao = new FakeHistoryDao();
+        for (int i = 0; i < 1000; i++) {
+            record(dao, i + "+1", String.valueOf(i + 1), i);
+        }
+        assertEquals(0, HistoryCompactor.compact(dao, policy, 5000 * DAY, () -> false));
+        assertEquals(1000, dao.getHistoryCount());
+        assertEquals(0, dao.deleteCalls);
+    }
+
+    @Test
+    public void presetsFallBackToTheDefault() {
+        assertSame(HistoryRetention.PRESETS[HistoryRetention.DEFAULT_PRESET], HistoryRetention.preset(99));
+        assertSame(HistoryRetention.PRESETS[0], HistoryRetention.preset(0));
+    }
+}
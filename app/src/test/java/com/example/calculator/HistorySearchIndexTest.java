@@ -0,0 +1,64 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistorySearchIndexTest {
+
+    private static HistorySearchIndex index(String... expressionResultPairs) {
+        List<CalculationHistory> rows = new ArrayList<>();
+        for (int i = 0; i < expressionResultPairs.length; i += 2) {
+            rows.add(new CalculationHistory(expressionResultPairs[i], expressionResultPairs[i + 1], i));
+        }
+        return new HistorySearchIndex(HistoryStore.from(rows));
+    }
+
+    @Test
+    public void matchesExpressionOrResultCaseInsensitively() {
+        HistorySearchIndex index = index("SIN(30)", "0.5", "12×12", "144", "ln(e)", "1");
+        assertArrayEquals(new int[]{0}, index.search("sin(", null, () -> false));
+        assertArrayEquals(new int[]{1}, index.search("144", null, () -> false));
+        assertArrayEquals(new int[]{0, 1, 2}, index.search("", null, () -> false));
+        assertArrayEquals(new int[]{0, 2}, index.search("(", null, () -> false));
+    }
+
+    @Test
+    public void queryNeverMatchesAcrossExpressionAndResult() {
+        HistorySearchIndex index = index("2+2", "4");
+        assertEquals(0, index.search("24", null, () -> false).length);
+    }
+
+    @Test
+    public void narrowsPreviousMatches() {
+        HistorySearchIndex index = index("100+1", "101", "100+2", "102", "200+1", "201");
+        int[] previous = index.search("100", null, () -> false);
+        assertArrayEquals(new int[]{0, 1}, previous);
+        assertArrayEquals(new int[]{1}, index.search("100+2", previous, () -> false));
+    }
+
+    @Test
+    public void readsResultRangeQueries() {
+        assertArrayEquals(new double[]{Math.nextUp(1000.0), Double.POSITIVE_INFINITY},
+                HistorySearchIndex.valueRange("> 1000"), 0);
+        assertArrayEquals(new double[]{Double.NEGATIVE_INFINITY, 2.5},
+                HistorySearchIndex.valueRange("Result <= 2.5"), 0);
+        assertArrayEquals(new double[]{Double.NEGATIVE_INFINITY, Math.nextDown(-3.0)},
+                HistorySearchIndex.valueRange("<-3"), 0);
+        assertArrayEquals(new double[]{42, 42}, HistorySearchIndex.valueRange("=42"), 0);
+        assertArrayEquals(new double[]{10, 20}, HistorySearchIndex.valueRange("10..20"), 0);
+        assertNull(HistorySearchIndex.valueRange("20..10"));
+        assertNull(HistorySearchIndex.valueRange("1000"));
+        assertNull(HistorySearchIndex.valueRange("sin("));
+        assertNull(HistorySearchIndex.valueRange("> x"));
+    }
+
+    @Test
+    public void returnsNullWhenCancelled() {
+        HistorySearchIndex index = index("1+1", "2");
+        assertNull(index.search("1", null, () -> true));
+    }
+}
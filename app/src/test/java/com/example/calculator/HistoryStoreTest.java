@@ -0,0 +1,86 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistoryStoreTest {
+
+    @Test
+    public void keepsRowOrderAndDeduplicatesStrings() {
+        List<CalculationHistory> rows = new ArrayList<>();
+        rows.add(row(7, "2+2", "4", 300));
+        rows.add(row(5, new String("2+2"), new String("4"), 200));
+        rows.add(row(3, "8÷2", "4", 100));
+        HistoryStore store = HistoryStore.from(rows);
+
+        assertEquals(3, store.size());
+        assertEquals(5, store.id(1));
+        assertEquals(100, store.timestamp(2));
+        assertEquals("8÷2", store.expression(2));
+        assertSame(store.expression(0), store.expression(1));
+        assertSame(store.result(0), store.result(2));
+        assertSame(store.displayResult(0), store.displayResult(2));
+        assertEquals("= 4", store.displayResult(1));
+        assertEquals(3, store.distinctStringCount());
+        assertArrayEquals(new int[]{0, 1, 2}, store.allRows());
+    }
+
+    @Test
+    public void findsRowsByIdAndKeepsPrograms() {
+        List<CalculationHistory> rows = new ArrayList<>();
+        rows.add(row(9, "1+1", "2", 300));
+        rows.add(row(4, "2+2", "4", 200));
+        rows.add(row(2, "3+3", "6", 100));
+        rows.get(1).compiled = new byte[]{1, 2, 3};
+        HistoryStore store = HistoryStore.from(rows);
+
+        List<Integer> ids = new ArrayList<>();
+        ids.add(2);
+        ids.add(9);
+        ids.add(11);
+        assertArrayEquals(new int[]{0, 2}, store.rowsWithIds(ids));
+        assertEquals(0, store.rowsWithIds(new ArrayList<>()).length);
+        assertNull(store.program(0));
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, store.program(1)));
+    }
+
+    // Compares the estimated heap cost of 100k loaded rows against the previous layout:
+    // two lists of entities, each row holding its own expression and result strings
+    @Test
+    public void columnarLayoutIsSeveralTimesSmallerFor100kRows() {
+        Random random = new Random(42);
+        List<CalculationHistory> rows = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int a = random.nextInt(50);
+            int b = random.nextInt(40);
+            // Room materializes fresh String instances for every row
+            rows.add(row(i, new String(a + "×" + b), String.valueOf(a * b), i));
+        }
+
+        long objectLayout = 2 * HistoryStore.arrayBytes(rows.size(), 4);
+        for (CalculationHistory item : rows) {
+            // header + id + two references + timestamp
+            objectLayout += HistoryStore.align(12 + 4 + 2 * 4 + 8)
+                    + HistoryStore.stringBytes(item.expression) + HistoryStore.stringBytes(item.result);
+        }
+
+        HistoryStore store = HistoryStore.from(rows);
+        // Plus the two int[] views (all rows and the current filter)
+        long columnar = store.footprintBytes() + 2 * HistoryStore.arrayBytes(store.size(), 4);
+
+        assertTrue("object layout " + objectLayout + " B vs columnar " + columnar + " B",
+                objectLayout >= 4 * columnar);
+    }
+
+    private static CalculationHistory row(int id, String expression, String result, long timestamp) {
+        CalculationHistory item = new CalculationHistory(expression, result, timestamp);
+        item.id = id;
+        return item;
+    }
+}
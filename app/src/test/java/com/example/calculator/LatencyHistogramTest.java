@@ -0,0 +1,43 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueWithBoundedError() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1_000, 123_456, 9_999_999, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long low = LatencyHistogram.bucketLowest(index);
+            long high = LatencyHistogram.bucketHighest(index);
+            assertTrue(value + " in [" + low + ", " + high + "]", low <= value && value <= high);
+            assertTrue("relative error for " + value, high - low <= Math.max(0, low / 16));
+        }
+    }
+
+    @Test
+    public void reportsPercentilesCountAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_500.0, histogram.mean(), 0.001);
+        assertEquals(500_000, histogram.valueAtPercentile(50), 500_000 / 16.0);
+        assertEquals(990_000, histogram.valueAtPercentile(99), 990_000 / 16.0);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.valueAtPercentile(50));
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ListEvaluatorTest {
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private static double[] list(String expression) throws CalculationException {
+        double[] scalar = new double[1];
+        double[] result = ListEvaluator.evaluate(
+                ExpressionOptimizer.optimize(ExpressionParser.parse(expression), false), false, scalar);
+        assertNotNull(result);
+        return result;
+    }
+
+    private static double scalar(String expression) throws CalculationException {
+        double[] scalar = new double[1];
+        assertNull(ListEvaluator.evaluate(ExpressionParser.parse(expression), false, scalar));
+        return scalar[0];
+    }
+
+    private static String error(String expression) {
+        try {
+            ListEvaluator.evaluate(ExpressionParser.parse(expression), false, new double[1]);
+            fail(expression);
+            return null;
+        } catch (CalculationException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void parsesListLiterals() {
+        assertEquals("(+ (* {1 2 3} 2) {4 5 6})", ExpressionParser.parse("{1,2,3}*2+{4,5,6}").toSExpression());
+        assertEquals("(sum {(neg 1) (+ 2 3)})", ExpressionParser.parse("sum({-1, 2+3})").toSExpression());
+        assertEquals("Empty list", ExpressionParser.parse("{}").firstError().getMessage());
+        assertEquals("Mismatched braces", ExpressionParser.parse("{1, 2").firstError().getMessage());
+        assertEquals("Mismatched braces", ExpressionParser.parse("1}").firstError().getMessage());
+        assertEquals("Missing operand", ExpressionParser.parse("{1,}").firstError().getMessage());
+        assertTrue(ListEvaluator.usesLists(ExpressionParser.parse("seq(1, 3)")));
+        assertFalse(ListEvaluator.usesLists(ExpressionParser.parse("sin(30)+sum(2)")));
+    }
+
+    @Test
+    public void appliesOperatorsElementWise() throws CalculationException {
+        assertArrayEquals(new double[] {6, 9, 12}, list("{1,2,3}*2+{4,5,6}"), 0);
+        assertArrayEquals(new double[] {9, 8, 7}, list("10-{1,2,3}"), 0);
+        assertArrayEquals(new double[] {0.5, 1, 1.5}, list("{1,2,3}÷2"), 0);
+        assertArrayEquals(new double[] {12, 6, 4}, list("12÷{1,2,3}"), 0);
+        assertArrayEquals(new double[] {1, 4, 9}, list("{1,2,3}²"), 0);
+        assertArrayEquals(new double[] {2, 4, 8}, list("2^{1,2,3}"), 0);
+        assertArrayEquals(new double[] {1, 2, 6}, list("{1,2,3}!"), 0);
+        assertArrayEquals(new double[] {-1, -2}, list("-{1,2}"), 0);
+        assertArrayEquals(new double[] {1, 0}, list("cos({0, π÷2})"), 1e-15);
+        assertArrayEquals(new double[] {5, 13}, list("hypot({3, 5}, {4, 12})"), 0);
+        assertArrayEquals(new double[] {5, 4, 3}, list("seq(5, 3)"), 0);
+        // Elements are full expressions and can use variables
+        Variables.set(Variables.define("k"), 3);
+        assertArrayEquals(new double[] {3, 9}, list("{k, k²}"), 0);
+    }
+
+    @Test
+    public void reductionsGiveNumbers() throws CalculationException {
+        assertEquals(6, scalar("sum({1,2,3})"), 0);
+        assertEquals(5050, scalar("sum(seq(1, 100))"), 0);
+        assertEquals(2.5, scalar("mean({1,2,3,4})"), 0);
+        assertEquals(2.5, scalar("median({4,1,3,2})"), 0);
+        assertEquals(-3, scalar("min({2,-3,1})"), 0);
+        assertEquals(2, scalar("max({2,-3,1})"), 0);
+        assertEquals(4, scalar("count({2,2,2,2})"), 0);
+        assertEquals(14, scalar("sum({1,2,3}²)"), 0);
+        // On a single number they are identities, so scalar evaluators accept them too
+        assertEquals(7, scalar("sum(7)"), 0);
+        assertEquals(1, ExpressionEvaluator.evaluate(ExpressionParser.parse("count(7)"), false), 0);
+        // Lists never leak into plain numbers
+        assertEquals(3, scalar("1+2"), 0);
+    }
+
+    @Test
+    public void reportsListErrors() {
+        assertEquals("Lists have different lengths (3 and 2)", error("{1,2,3}+{1,2}"));
+        assertEquals("Matrix rows must all be lists of the same length", error("{1,{2}}"));
+        assertEquals("Division by zero", error("{1,2}÷{1,0}"));
+        assertEquals("Factorial only works with non-negative integers", error("{1,-2}!"));
+        assertEquals("Log of non-positive number", error("log({10, 0})"));
+        assertEquals("seq needs two numbers", error("seq({1}, 3)"));
+        assertEquals("Lists are limited to 10000000 elements", error("seq(1, 2E7)"));
+        try {
+            ExpressionEvaluator.evaluate(ExpressionParser.parse("{1,2}+1"), false);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Lists can't be used here", e.getMessage());
+        }
+        try {
+            ExpressionEvaluator.evaluate(ExpressionParser.parse("sum(seq(1, 3))"), false);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Lists can't be used here", e.getMessage());
+        }
+        try {
+            GraphFunction.compile("{1,2}×x", false);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Graphs can't use lists", e.getMessage());
+        }
+    }
+
+    @Test
+    public void optimizerKeepsListsIntact() throws CalculationException {
+        Ast ast = ExpressionParser.parse("{1+1, 2}×1+{2, 2}×0");
+        Ast optimized = ExpressionOptimizer.optimize(ast, false);
+        double[] scalar = new double[1];
+        assertArrayEquals(new double[] {2, 2}, ListEvaluator.evaluate(optimized, false, scalar), 0);
+        // Hash-consing makes both literals one node, read twice, so it can't be overwritten
+        assertArrayEquals(new double[] {4, 4}, list("{2, 2}+{2, 2}"), 0);
+        assertArrayEquals(new double[] {6, 6}, list("{2, 2}×2+{2, 2}"), 0);
+    }
+
+    // Element-wise list arithmetic must beat evaluating the same scalar expression once
+    // per element by a wide margin
+    @Test
+    public void listKernelsBeatScalarEvaluation() throws CalculationException {
+        Ast ast = ExpressionOptimizer.optimize(ExpressionParser.parse("sum((seq(1, 100000)×2+1)÷3)"), false);
+        double[] scalar = new double[1];
+        long listNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            ListEvaluator.evaluate(ast, false, scalar);
+            listNanos = Math.min(listNanos, System.nanoTime() - start);
+        }
+
+        int k = Variables.define("k");
+        Ast element = ExpressionOptimizer.optimize(ExpressionParser.parse("(k×2+1)÷3"), false);
+        long scalarNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int i = 1; i <= 100_000; i++) {
+                Variables.set(k, i);
+                sum += ExpressionEvaluator.evaluate(element, false);
+            }
+            scalarNanos = Math.min(scalarNanos, System.nanoTime() - start);
+            assertEquals(scalar[0], sum, 1e-3);
+        }
+        assertTrue("list " + listNanos / 1000 + " us, scalar " + scalarNanos / 1000 + " us",
+                listNanos * 2 <= scalarNanos);
+    }
+
+    @Test
+    public void benchmarkMillionElementLists() throws CalculationException {
+        Benchmarks.assumeEnabled();
+        Ast ast = ExpressionOptimizer.optimize(
+                ExpressionParser.parse("sum((seq(1, 1000000)×2+1)÷3)"), false);
+        double[] scalar = new double[1];
+        long listNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            ListEvaluator.evaluate(ast, false, scalar);
+            listNanos = Math.min(listNanos, System.nanoTime() - start);
+        }
+        assertEquals(333334000000.0, scalar[0], 1e-2);
+
+        // The same arithmetic as a million scalar evaluations
+        int k = Variables.define("k");
+        Ast element = ExpressionOptimizer.optimize(ExpressionParser.parse("(k×2+1)÷3"), false);
+        long scalarNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            double sum = 0;
+            for (int i = 1; i <= 1_000_000; i++) {
+                Variables.set(k, i);
+                sum += ExpressionEvaluator.evaluate(element, false);
+            }
+            scalarNanos = Math.min(scalarNanos, System.nanoTime() - start);
+            assertEquals(scalar[0], sum, 1e-2);
+        }
+
+        double[] a = new double[1_000_000];
+        double[] b = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+            b[i] = i + 1;
+        }
+        double[] out = new double[a.length];
+        long kernelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 50; round++) {
+            long start = System.nanoTime();
+            ListEvaluator.multiply(a, b, out);
+            kernelNanos = Math.min(kernelNanos, System.nanoTime() - start);
+        }
+        System.out.printf("1M-element lists: %.2f ms for seq, *, +, /, sum; %.1f ms as scalar evaluations; "
+                + "%.2f ns per element for a list * list%n", listNanos / 1e6, scalarNanos / 1e6, kernelNanos / 1e6);
+    }
+}
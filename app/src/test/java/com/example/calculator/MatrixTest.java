@@ -0,0 +1,202 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MatrixTest {
+
+    private static double[] random(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextDouble() * 2 - 1;
+        }
+        return values;
+    }
+
+    private static double[] naiveMultiply(double[] a, double[] b, int n, int m, int p) {
+        double[] c = new double[n * p];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                double sum = 0;
+                for (int k = 0; k < m; k++) {
+                    sum += a[i * m + k] * b[k * p + j];
+                }
+                c[i * p + j] = sum;
+            }
+        }
+        return c;
+    }
+
+    private static double[] evaluate(String expression, int[] rows) throws CalculationException {
+        double[] result = ListEvaluator.evaluate(
+                ExpressionOptimizer.optimize(ExpressionParser.parse(expression), false), false, new double[1], rows);
+        assertNotNull(result);
+        return result;
+    }
+
+    private static double scalar(String expression) throws CalculationException {
+        double[] scalar = new double[1];
+        assertNull(ListEvaluator.evaluate(ExpressionParser.parse(expression), false, scalar));
+        return scalar[0];
+    }
+
+    private static String error(String expression) {
+        try {
+            ListEvaluator.evaluate(ExpressionParser.parse(expression), false, new double[1]);
+            fail(expression);
+            return null;
+        } catch (CalculationException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void blockedMultiplyMatchesNaive() {
+        Random random = new Random(3);
+        // Sizes around the block size, odd shapes, and one large enough to run in parallel
+        int[][] shapes = {{1, 1, 1}, {3, 5, 2}, {63, 64, 65}, {130, 7, 129}, {200, 150, 170}};
+        for (int[] shape : shapes) {
+            double[] a = random(random, shape[0] * shape[1]);
+            double[] b = random(random, shape[1] * shape[2]);
+            assertArrayEquals(naiveMultiply(a, b, shape[0], shape[1], shape[2]),
+                    Matrix.multiply(a, b, shape[0], shape[1], shape[2]), 1e-12);
+        }
+        double[] a = random(random, 70 * 90);
+        double[] t = Matrix.transpose(a, 70, 90);
+        assertEquals(a[5 * 90 + 80], t[80 * 70 + 5], 0);
+        assertArrayEquals(a, Matrix.transpose(t, 90, 70), 0);
+    }
+
+    @Test
+    public void luBacksDeterminantInverseAndSolve() {
+        assertEquals(-2, Matrix.determinant(new double[] {1, 2, 3, 4}, 2), 1e-12);
+        // Needs a row swap: the first pivot is zero
+        assertEquals(-1, Matrix.determinant(new double[] {0, 1, 1, 0}, 2), 0);
+        assertEquals(0, Matrix.determinant(new double[] {1, 2, 2, 4}, 2), 0);
+        assertNull(Matrix.inverse(new double[] {1, 2, 2, 4}, 2));
+
+        Random random = new Random(5);
+        for (int n : new int[] {1, 4, 50, 300}) {
+            double[] a = random(random, n * n);
+            double[] inverse = Matrix.inverse(a, n);
+            assertArrayEquals(Matrix.identity(n), Matrix.multiply(a, inverse, n, n, n), 1e-8);
+            double[] b = random(random, n * 3);
+            double[] x = Matrix.solve(a, n, b, 3);
+            assertArrayEquals(b, Matrix.multiply(a, x, n, n, 3), 1e-8);
+        }
+        double[] a = {2, 1, 1, 1};
+        assertArrayEquals(Matrix.multiply(a, Matrix.multiply(a, a, 2, 2, 2), 2, 2, 2), Matrix.power(a, 2, 3), 0);
+        assertArrayEquals(Matrix.identity(2), Matrix.power(a, 2, 0), 0);
+        assertArrayEquals(Matrix.inverse(a, 2), Matrix.power(a, 2, -1), 1e-15);
+    }
+
+    @Test
+    public void evaluatesMatrixExpressions() throws CalculationException {
+        int[] rows = new int[1];
+        assertArrayEquals(new double[] {19, 22, 43, 50}, evaluate("{{1,2},{3,4}}×{{5,6},{7,8}}", rows), 0);
+        assertEquals(2, rows[0]);
+        assertArrayEquals(new double[] {7, 10, 15, 22}, evaluate("{{1,2},{3,4}}²", rows), 0);
+        assertArrayEquals(new double[] {-2, 1, 1.5, -0.5}, evaluate("inv({{1,2},{3,4}})", rows), 1e-15);
+        assertArrayEquals(new double[] {1, 3, 5, 2, 4, 6}, evaluate("transpose({{1,2},{3,4},{5,6}})", rows), 0);
+        assertEquals(2, rows[0]);
+        assertArrayEquals(Matrix.identity(3), evaluate("identity(3)", rows), 0);
+        assertEquals(3, rows[0]);
+        // Element-wise with numbers and same-sized matrices
+        assertArrayEquals(new double[] {3, 5, 7, 9}, evaluate("{{1,2},{3,4}}×2+1", rows), 0);
+        assertArrayEquals(new double[] {2, 2, 3, 5}, evaluate("{{1,2},{3,4}}+identity(2)", rows), 0);
+        assertEquals(2, rows[0]);
+        // A list is a column vector to the right of a matrix and a row vector to its left
+        assertArrayEquals(new double[] {5, 11}, evaluate("{{1,2},{3,4}}×{1,2}", rows), 0);
+        assertEquals(0, rows[0]);
+        assertArrayEquals(new double[] {7, 10}, evaluate("{1,2}×{{1,2},{3,4}}", rows), 0);
+        assertArrayEquals(new double[] {1, 2}, evaluate("solve({{2,1},{1,3}}, {4, 7})", rows), 1e-15);
+        assertArrayEquals(new double[] {-2, 1, 1.5, -0.5}, evaluate("{{1,2},{3,4}}^-1", rows), 1e-15);
+
+        assertEquals(-2, scalar("det({{1,2},{3,4}})"), 1e-12);
+        assertEquals(10, scalar("sum({{1,2},{3,4}})"), 0);
+        assertEquals(1, scalar("det(identity(4)×identity(4))"), 0);
+        // On numbers they are 1×1 matrices
+        assertEquals(0.25, scalar("inv(4)"), 0);
+        assertEquals(5, scalar("det(5)"), 0);
+    }
+
+    @Test
+    public void reportsMatrixErrors() {
+        assertEquals("Matrix rows must all be lists of the same length", error("{{1,2},{3}}"));
+        assertEquals("Matrices can't contain matrices", error("{{{1}},{{2}}}"));
+        assertEquals("Matrix is singular", error("inv({{1,2},{2,4}})"));
+        assertEquals("det needs a square matrix", error("det({{1,2,3},{4,5,6}})"));
+        assertEquals("det needs a square matrix", error("det({1,2})"));
+        assertEquals("transpose needs a matrix", error("transpose({1,2})"));
+        assertEquals("Can't multiply 2×3 by 2×3", error("{{1,2,3},{4,5,6}}×{{1,2,3},{4,5,6}}"));
+        assertEquals("Sizes don't match (2×2 and 3×3)", error("identity(2)+identity(3)"));
+        assertEquals("Sizes don't match (2×2 and list of 4)", error("identity(2)+{1,2,3,4}"));
+        assertEquals("Can't divide by a matrix; multiply by inv() instead", error("1÷identity(2)"));
+        assertEquals("Matrix powers need whole exponents", error("identity(2)^0.5"));
+        assertEquals("solve needs a list or matrix with 2 rows", error("solve(identity(2), {1,2,3})"));
+        assertEquals("identity needs a size from 1 to 3162", error("identity(0)"));
+    }
+
+    // The cache-blocked multiply must beat the textbook triple loop once the
+    // matrices outgrow the cache
+    @Test
+    public void blockedMultiplyBeatsNaiveLoop() {
+        Random random = new Random(9);
+        // Both loops compiled before anything is timed
+        double[] small = random(random, 64 * 64);
+        for (int round = 0; round < 50; round++) {
+            Matrix.multiply(small, small, 64, 64, 64);
+            naiveMultiply(small, small, 64, 64, 64);
+        }
+        int n = 256;
+        double[] a = random(random, n * n);
+        double[] b = random(random, n * n);
+        long blockedNanos = Long.MAX_VALUE;
+        long naiveNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            double[] blocked = Matrix.multiply(a, b, n, n, n);
+            blockedNanos = Math.min(blockedNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            double[] naive = naiveMultiply(a, b, n, n, n);
+            naiveNanos = Math.min(naiveNanos, System.nanoTime() - start);
+            assertArrayEquals(naive, blocked, 1e-9);
+        }
+        assertTrue("blocked " + blockedNanos / 1000 + " us, naive " + naiveNanos / 1000 + " us",
+                blockedNanos <= naiveNanos);
+    }
+
+    @Test
+    public void benchmarkMultiplyAndDecompose() {
+        Benchmarks.assumeEnabled();
+        Random random = new Random(9);
+        StringBuilder report = new StringBuilder("matrices:");
+        for (int n : new int[] {4, 16, 64, 256, 1000}) {
+            double[] a = random(random, n * n);
+            double[] b = random(random, n * n);
+            int rounds = n >= 1000 ? 1 : n >= 256 ? 3 : 50;
+            long multiplyNanos = Long.MAX_VALUE;
+            long luNanos = Long.MAX_VALUE;
+            long naiveNanos = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                Matrix.multiply(a, b, n, n, n);
+                multiplyNanos = Math.min(multiplyNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                Matrix.determinant(a, n);
+                luNanos = Math.min(luNanos, System.nanoTime() - start);
+                if (n <= 256) {
+                    start = System.nanoTime();
+                    naiveMultiply(a, b, n, n, n);
+                    naiveNanos = Math.min(naiveNanos, System.nanoTime() - start);
+                }
+            }
+            report.append(String.format(" n=%d multiply %.3f ms (naive %s), LU %.3f ms;", n, multiplyNanos / 1e6,
+                    naiveNanos == Long.MAX_VALUE ? "-" : String.format("%.3f ms", naiveNanos / 1e6), luNanos / 1e6));
+        }
+        System.out.println(report);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NumericSolverTest {
+
+    private static final java.util.function.BooleanSupplier NEVER = () -> false;
+    private static final java.util.function.DoubleConsumer IGNORE = fraction -> { };
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private static GraphFunction compile(String expression) throws CalculationException {
+        return GraphFunction.compile(expression, false);
+    }
+
+    private static double solve(String expression, double a, double b) throws CalculationException {
+        return Solver.solve(compile(expression), a, b, NEVER, IGNORE).value;
+    }
+
+    private static double integrate(String expression, double a, double b) throws CalculationException {
+        return Integrator.integrate(compile(expression), a, b, NEVER, IGNORE).value;
+    }
+
+    @Test
+    public void solvesSmoothFunctions() throws CalculationException {
+        assertEquals(Math.sqrt(2), solve("x²-2", 0, 10), 1e-14);
+        assertEquals(-Math.sqrt(2), solve("x²-2", -10, 0), 1e-14);
+        assertEquals(0.7390851332151607, solve("cos(x)-x", -10, 10), 1e-14);
+        // Reversed bounds and a root on a grid point
+        assertEquals(3, solve("x-3", 10, -10), 0);
+
+        NumericResult result = Solver.solve(compile("e^x-5"), 0, 4, NEVER, IGNORE);
+        assertEquals(Math.log(5), result.value, 1e-14);
+        // Brent needs a handful of evaluations on top of the scan
+        assertTrue(result.evaluations < 300);
+    }
+
+    @Test
+    public void skipsPolesAndReportsMissingRoots() throws CalculationException {
+        // 1÷x changes sign across 0 without a root there
+        try {
+            solve("1÷x", -1, 1);
+            fail();
+        } catch (CalculationException e) {
+            assertTrue(e.getMessage().startsWith("No root found"));
+        }
+        // tan changes sign at its pole at π/2 and at its root at π
+        assertEquals(Math.PI, solve("tan(x)", 1, 4), 1e-12);
+        try {
+            solve("x²+1", -5, 5);
+            fail();
+        } catch (CalculationException e) {
+            assertTrue(e.getMessage().startsWith("No root found"));
+        }
+        try {
+            solve("x", 1, 1);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Bounds must be two different finite numbers", e.getMessage());
+        }
+    }
+
+    @Test
+    public void integratesToHighAccuracy() throws CalculationException {
+        assertEquals(2, integrate("sin(x)", 0, Math.PI), 1e-12);
+        assertEquals(Math.PI / 4, integrate("1÷(1+x²)", 0, 1), 1e-14);
+        assertEquals(-Math.PI / 4, integrate("1÷(1+x²)", 1, 0), 1e-14);
+        // The endpoint singularity in the derivative makes it refine towards 0
+        assertEquals(2.0 / 3, integrate("sqrt(x)", 0, 1), 1e-10);
+        assertEquals(0, integrate("x", 3, 3), 0);
+        // Integrable singularity at an endpoint
+        assertEquals(2, integrate("1÷sqrt(x)", 0, 1), 1e-6);
+
+        NumericResult peaked = Integrator.integrate(compile("e^(-1000×x²)"), -10, 10, NEVER, IGNORE);
+        assertEquals(Math.sqrt(Math.PI / 1000), peaked.value, 1e-12);
+        assertTrue(peaked.error < 1e-10);
+        assertEquals(0, peaked.evaluations % 15);
+    }
+
+    @Test
+    public void divergentIntegralsAreErrors() throws CalculationException {
+        try {
+            integrate("1÷x", -1, 1);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("The integral doesn't converge on this interval", e.getMessage());
+        }
+        try {
+            integrate("sqrt(x)", -1, 1);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("The integral doesn't converge on this interval", e.getMessage());
+        }
+    }
+
+    @Test
+    public void cancelsAndReportsProgress() throws CalculationException {
+        GraphFunction function = compile("sin(1÷x)");
+        assertNull(Integrator.integrate(function, 1e-6, 1, () -> true, IGNORE));
+        assertNull(Solver.solve(compile("x²+1"), -5, 5, () -> true, IGNORE));
+
+        double[] last = {-1};
+        boolean[] increasing = {true};
+        Integrator.integrate(compile("sqrt(x)"), 0, 1, NEVER, fraction -> {
+            increasing[0] &= fraction >= last[0];
+            last[0] = fraction;
+        });
+        assertTrue(increasing[0]);
+        assertEquals(1, last[0], 0);
+    }
+
+    @Test
+    public void benchmarkThroughput() throws CalculationException {
+        Benchmarks.assumeEnabled();
+        GraphFunction function = compile("sin(x)×e^(-x÷10)+sqrt(x)");
+        NumericResult best = null;
+        for (int round = 0; round < 20; round++) {
+            NumericResult result = Integrator.integrate(function, 0, 200, NEVER, IGNORE);
+            if (best == null || result.evaluationsPerSecond() > best.evaluationsPerSecond()) {
+                best = result;
+            }
+        }
+        NumericResult root = null;
+        for (int round = 0; round < 20; round++) {
+            NumericResult result = Solver.solve(compile("cos(x)-x"), -10, 10, NEVER, IGNORE);
+            if (root == null || result.evaluationsPerSecond() > root.evaluationsPerSecond()) {
+                root = result;
+            }
+        }
+        System.out.printf("integration: %d evaluations in %.0f us, %.1f M evaluations/s on %d threads; "
+                        + "root: %d evaluations, %.1f M/s%n", best.evaluations, best.nanos / 1000.0,
+                best.evaluationsPerSecond() / 1e6, Runtime.getRuntime().availableProcessors(),
+                root.evaluations, root.evaluationsPerSecond() / 1e6);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ProgrammerEvaluatorTest {
+
+    private static long eval(String expression, int base, int bits, boolean signed) throws CalculationException {
+        return ProgrammerEvaluator.evaluate(expression, base, bits, signed);
+    }
+
+    private static long eval(String expression) throws CalculationException {
+        return eval(expression, 10, 64, true);
+    }
+
+    private static String error(String expression, int base, int bits) {
+        try {
+            eval(expression, base, bits, true);
+            fail(expression);
+            return null;
+        } catch (CalculationException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void evaluatesIntegerOperators() throws CalculationException {
+        assertEquals(14, eval("2+3×4"));
+        assertEquals(-3, eval("-7÷2"));
+        assertEquals(-1, eval("-7 mod 2"));
+        assertEquals(0x0F, eval("0xFF and 0x0F"));
+        assertEquals(0xFF, eval("0xF0 | 0x0F"));
+        assertEquals(0xF0, eval("0xFF xor 0x0F"));
+        assertEquals(-1, eval("not 0"));
+        assertEquals(-2, eval("~1"));
+        assertEquals(40, eval("5 << 3"));
+        assertEquals(-4, eval("-16 >> 2"));
+        // Precedence, loosest first: or, xor, and, shifts, + -, × ÷ mod
+        assertEquals(1 | 6 & 3, eval("1 or 6 and 3"));
+        assertEquals(1 << 2 + 1, eval("1 << 2+1"));
+        assertEquals(16, eval("(1 << 2) × 4"));
+        assertEquals(Long.MAX_VALUE, eval("0x7FFFFFFFFFFFFFFF"));
+        assertEquals(Long.MIN_VALUE, eval("0x7FFFFFFFFFFFFFFF + 1"));
+        // Hex input reads letters as digits; b and d aren't prefixes there
+        assertEquals(0xB1, eval("0b1", 16, 64, true));
+        assertEquals(0xAB + 1, eval("ab + 1", 16, 64, true));
+        assertEquals(5, eval("101", 2, 64, true));
+        assertEquals(9, eval("0o11", 16, 64, true));
+    }
+
+    @Test
+    public void wrapsToTheWordSize() throws CalculationException {
+        assertEquals(-128, eval("127+1", 10, 8, true));
+        assertEquals(0, eval("255+1", 10, 8, false));
+        assertEquals(-1, eval("FFFF", 16, 16, true));
+        assertEquals(0xFFFF, eval("FFFF", 16, 16, false));
+        assertEquals(0xFFFF, eval("-1", 10, 16, false));
+        // Unsigned words divide and shift as unsigned numbers
+        assertEquals(0x7FFF, eval("FFFF >> 1", 16, 16, false));
+        assertEquals(-1, eval("FFFF >> 1", 16, 16, true));
+        assertEquals(Long.MAX_VALUE, eval("-1 ÷ 2", 10, 64, false));
+        assertEquals(0, eval("1 << 64", 10, 64, false));
+        assertEquals(0x0F, eval("F0 rol 4", 16, 8, false));
+        assertEquals(0x1E, eval("F0 ror 3", 16, 8, false));
+        assertEquals(Long.MIN_VALUE, eval("1 ror 1"));
+        // A negative count rotates the other way
+        assertEquals(0x60, eval("C0 rol -1", 16, 8, true));
+    }
+
+    @Test
+    public void reportsErrors() {
+        assertEquals("Division by zero", error("1÷0", 10, 64));
+        assertEquals("Division by zero", error("1 mod 0", 10, 64));
+        assertEquals("Number doesn't fit in 8 bits", error("256", 10, 8));
+        assertEquals("Number doesn't fit in 64 bits", error("18446744073709551616", 10, 64));
+        assertEquals("Invalid digit '2' for base 2", error("102", 2, 64));
+        assertEquals("Unknown name foo", error("foo", 10, 64));
+        assertEquals("Missing operator", error("1 2", 10, 64));
+        assertEquals("Missing operand", error("1 +", 10, 64));
+        assertEquals("Mismatched parentheses", error("(1+2", 10, 64));
+        assertEquals("Mismatched parentheses", error("1+2)", 10, 64));
+        assertEquals("Shift counts can't be negative", error("1 << -1", 10, 64));
+        assertEquals("Empty expression", error("  ", 10, 64));
+    }
+
+    @Test
+    public void formatsEveryBase() {
+        assertEquals("FF", IntegerFormat.format(255, 16, 64, true));
+        assertEquals("377", IntegerFormat.format(255, 8, 64, true));
+        assertEquals("11111111", IntegerFormat.format(255, 2, 64, true));
+        assertEquals("-1", IntegerFormat.format(-1, 10, 16, true));
+        assertEquals("FFFF", IntegerFormat.format(-1, 16, 16, true));
+        assertEquals("18446744073709551615", IntegerFormat.format(-1, 10, 64, false));
+        assertEquals("-9223372036854775808", IntegerFormat.format(Long.MIN_VALUE, 10, 64, true));
+        assertEquals("1777777777777777777777", IntegerFormat.format(-1, 8, 64, true));
+        assertEquals("0", IntegerFormat.format(0, 2, 8, true));
+        assertEquals("1111 0000", IntegerFormat.grouped(0xF0, 2, 8, false));
+        assertEquals("-1,234,567", IntegerFormat.grouped(-1234567, 10, 64, true));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertEquals(Long.toString(value), IntegerFormat.format(value, 10, 64, true));
+            assertEquals(Long.toUnsignedString(value), IntegerFormat.format(value, 10, 64, false));
+            assertEquals(Long.toHexString(value).toUpperCase(), IntegerFormat.format(value, 16, 64, true));
+            assertEquals(Long.toBinaryString(value), IntegerFormat.format(value, 2, 64, false));
+            assertEquals(Long.toOctalString(value), IntegerFormat.format(value, 8, 64, false));
+        }
+    }
+
+    @Test
+    public void benchmarkEvaluateAndFormat() throws CalculationException {
+        Benchmarks.assumeEnabled();
+        String expression = "(0xDEADBEEF xor 0x12345678) << 3 rol 7 + 1234 × 5678 and not 0xFF";
+        long evaluateNanos = Long.MAX_VALUE;
+        long formatNanos = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                sink += eval(expression);
+            }
+            evaluateNanos = Math.min(evaluateNanos, (System.nanoTime() - start) / 10_000);
+            start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                for (int base : new int[] {16, 10, 8, 2}) {
+                    sink += IntegerFormat.format(sink * 31 + i, base, 64, true).length();
+                }
+            }
+            formatNanos = Math.min(formatNanos, (System.nanoTime() - start) / 40_000);
+        }
+        System.out.printf("programmer mode: %d ns per evaluation, %d ns per base conversion (%d)%n",
+                evaluateNanos, formatNanos, sink & 1);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.calculator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RationalEvaluatorTest {
+
+    private static Rational eval(String expression) throws CalculationException {
+        return RationalEvaluator.evaluate(ExpressionParser.parse(expression));
+    }
+
+    private static String fraction(String expression) throws CalculationException {
+        return eval(expression).toFractionString();
+    }
+
+    private static String decimal(String expression) throws CalculationException {
+        return eval(expression).toDecimalString();
+    }
+
+    @Before
+    public void enableMetrics() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void disableMetrics() {
+        Metrics.setEnabled(false);
+    }
+
+    @Test
+    public void decimalsAreExact() throws CalculationException {
+        assertEquals("3/10", fraction("0.1+0.2"));
+        assertEquals("0.3", decimal("0.1+0.2"));
+        assertEquals("1", fraction("1÷3×3"));
+        assertEquals("1/3", fraction("1÷3"));
+        assertEquals("0.333333333333333", decimal("1÷3"));
+        assertEquals("-7/4", fraction("-(1+3÷4)"));
+        assertEquals("3/20000000", fraction("1.5E-7"));
+        assertEquals("1.5E-7", decimal("1.5E-7"));
+        assertEquals("0", fraction("0.1-0.1"));
+        assertEquals(0, Metrics.counter(Metrics.EXACT_PROMOTIONS));
+    }
+
+    @Test
+    public void hugeExponentsFallBackToFloatingPoint() throws CalculationException {
+        // Past int, so BigDecimal can't parse them; decimal mode gives Infinity and 0
+        assertNull(eval("1E99999999999"));
+        assertNull(eval("12345678901234567890E-99999999999"));
+        assertNull(eval("2×1E+1234567"));
+        assertEquals("1000000", fraction("1E+6"));
+    }
+
+    @Test
+    public void powersAndFactorials() throws CalculationException {
+        assertEquals("1024", fraction("2^10"));
+        assertEquals("1/8", fraction("2^-3"));
+        assertEquals("-27/8", fraction("(-3÷2)^3"));
+        assertEquals("9/4", fraction("1.5²"));
+        assertEquals("1", fraction("7^0"));
+        assertEquals("120", fraction("5!"));
+        assertEquals("2432902008176640000", fraction("20!"));
+        assertEquals(0, Metrics.counter(Metrics.EXACT_PROMOTIONS));
+    }
+
+    @Test
+    public void promotesToBigIntegerOnOverflow() throws CalculationException {
+        assertEquals("51090942171709440000", fraction("21!"));
+        assertEquals(BigInteger.valueOf(2).pow(100).toString(), fraction("2^100"));
+        assertEquals("1/" + BigInteger.valueOf(3).pow(50), fraction("3^-50"));
+        // Back to the long representation once it fits again
+        Rational small = eval("21!÷20!");
+        assertFalse(small.isBig());
+        assertEquals("21", small.toFractionString());
+        assertEquals("10000000000000000000000000000000000000001",
+                fraction("10^40+1"));
+        assertTrue(Metrics.counter(Metrics.EXACT_PROMOTIONS) > 0);
+    }
+
+    @Test
+    public void irrationalExpressionsFallBack() throws CalculationException {
+        assertNull(eval("sin(30)"));
+        assertNull(eval("2×π"));
+        assertNull(eval("2^0.5"));
+        assertNull(eval("2^10000"));
+    }
+
+    @Test
+    public void reportsErrorsWithTheirSpan() {
+        try {
+            eval("1+2÷(3-3)");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Division by zero", e.getMessage());
+            assertEquals(2, e.start);
+            assertEquals(9, e.end);
+        }
+        try {
+            eval("0^-1");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("0 to negative power is undefined", e.getMessage());
+        }
+        try {
+            eval("(1÷2)!");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Factorial only works with non-negative integers", e.getMessage());
+        }
+    }
+
+    @Test
+    public void binaryGcdMatchesBigInteger() {
+        Random random = new Random(11);
+        for (int i = 0; i < 10000; i++) {
+            long a = random.nextLong() >>> (1 + random.nextInt(63));
+            long b = random.nextLong() >>> (1 + random.nextInt(63));
+            assertEquals(BigInteger.valueOf(a).gcd(BigInteger.valueOf(b)).longValue(), RationalEvaluator.gcd(a, b));
+        }
+        assertEquals(7, RationalEvaluator.gcd(0, 7));
+        assertEquals(0, RationalEvaluator.gcd(0, 0));
+    }
+
+    @Test
+    public void randomArithmeticMatchesBigIntegerReference() throws CalculationException {
+        Random random = new Random(5);
+        String[] operators = {"+", "-", "×", "÷"};
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder expression = new StringBuilder();
+            BigInteger numerator = null;
+            BigInteger denominator = BigInteger.ONE;
+            for (int term = 0; term < 6; term++) {
+                long value = 1 + random.nextInt(1 << (1 + random.nextInt(30)));
+                BigInteger v = BigInteger.valueOf(value);
+                if (numerator == null) {
+                    expression.append(value);
+                    numerator = v;
+                    continue;
+                }
+                // Fully parenthesized so the reference can evaluate left to right
+                String operator = operators[random.nextInt(4)];
+                expression.insert(0, '(').append(')').append(operator).append(value);
+                switch (operator) {
+                    case "+": numerator = numerator.add(v.multiply(denominator)); break;
+                    case "-": numerator = numerator.subtract(v.multiply(denominator)); break;
+                    case "×": numerator = numerator.multiply(v); break;
+                    default: denominator = denominator.multiply(v); break;
+                }
+            }
+            BigInteger g = numerator.gcd(denominator);
+            Rational result = eval(expression.toString());
+            assertEquals(expression.toString(), numerator.divide(g), result.bigNumerator());
+            assertEquals(expression.toString(), denominator.divide(g), result.bigDenominator());
+        }
+    }
+}
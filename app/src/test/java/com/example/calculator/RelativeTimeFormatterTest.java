@@ -0,0 +1,118 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RelativeTimeFormatterTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final RelativeTimeFormatter formatter = new RelativeTimeFormatter();
+
+    @Test
+    public void formatsRelativeBuckets() {
+        assertEquals("Just now", format(NOW - 5_000));
+        assertEquals("1 minute ago", format(NOW - RelativeTimeFormatter.MINUTE));
+        assertEquals("5 minutes ago", format(NOW - 5 * RelativeTimeFormatter.MINUTE - 1));
+        assertEquals("1 hour ago", format(NOW - RelativeTimeFormatter.HOUR));
+        assertEquals("3 days ago", format(NOW - 3 * RelativeTimeFormatter.DAY));
+        assertEquals("2 weeks ago", format(NOW - 2 * RelativeTimeFormatter.WEEK));
+    }
+
+    @Test
+    public void cachedLabelExpiresAtBucketBoundary() {
+        HistoryStore store = storeAt(NOW - 59_000);
+        assertEquals("Just now", store.relativeTime(0, NOW, formatter));
+        assertEquals("1 minute ago", store.relativeTime(0, NOW + 1_000, formatter));
+        assertEquals("2 minutes ago", store.relativeTime(0, NOW + 61_000, formatter));
+    }
+
+    @Test
+    public void deadlineFollowsTheRowNotTheWallClockMinute() {
+        // Saved one second before a wall-clock minute: still "Just now" at that minute,
+        // and the tick that changes it is due a minute after the save
+        long minute = NOW - NOW % RelativeTimeFormatter.MINUTE;
+        long timestamp = minute - 1_000;
+        HistoryStore store = storeAt(timestamp);
+        assertEquals(Long.MAX_VALUE, store.relativeTimeUntil(0));
+        assertEquals("Just now", store.relativeTime(0, minute, formatter));
+        long until = store.relativeTimeUntil(0);
+        assertEquals(timestamp + RelativeTimeFormatter.MINUTE, until);
+        assertFalse(store.relativeTimeExpired(0, until - 1));
+        assertTrue(store.relativeTimeExpired(0, until));
+
+        assertEquals("1 minute ago", store.relativeTime(0, until, formatter));
+        assertEquals(timestamp + 2 * RelativeTimeFormatter.MINUTE, store.relativeTimeUntil(0));
+    }
+
+    @Test
+    public void labelsAreKeptPerRow() {
+        HistoryStore store = HistoryStore.from(Arrays.asList(
+                new CalculationHistory("1+1", "2", NOW),
+                new CalculationHistory("2+2", "4", NOW - RelativeTimeFormatter.HOUR)));
+        assertTrue(store.relativeTimeExpired(1, NOW));
+        assertEquals("Just now", store.relativeTime(0, NOW, formatter));
+        assertEquals("1 hour ago", store.relativeTime(1, NOW, formatter));
+        assertSame(store.relativeTime(0, NOW, formatter), store.relativeTime(0, NOW + 1, formatter));
+    }
+
+    @Test
+    public void needsRefreshOnlyAfterBoundaryIsCrossed() {
+        HistoryStore store = storeAt(NOW - 3 * RelativeTimeFormatter.HOUR);
+        store.relativeTime(0, NOW, formatter);
+        assertFalse(store.relativeTimeExpired(0, NOW + 30 * RelativeTimeFormatter.MINUTE));
+        assertTrue(store.relativeTimeExpired(0, NOW + RelativeTimeFormatter.HOUR));
+        // A clock set back before the bucket also invalidates it
+        assertTrue(store.relativeTimeExpired(0, NOW - RelativeTimeFormatter.HOUR));
+    }
+
+    @Test
+    public void rebindingInsideValidityWindowAllocatesNothing() {
+        List<CalculationHistory> history = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            history.add(new CalculationHistory(i + "×2", String.valueOf(i * 2),
+                    NOW - i * RelativeTimeFormatter.HOUR * 7));
+        }
+        HistoryStore store = HistoryStore.from(history);
+
+        // A fling back and forth over every row with 8 recycled holders, so each holder
+        // shows many rows; the first pass fills the per-row caches
+        String[] holders = new String[8];
+        for (int row = 0; row < store.size(); row++) {
+            holders[row % holders.length] = store.relativeTime(row, NOW, formatter);
+            store.displayResult(row);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int pass = 0; pass < 1_000; pass++) {
+            for (int i = 0; i < store.size(); i++) {
+                int row = pass % 2 == 0 ? i : store.size() - 1 - i;
+                store.expression(row);
+                store.displayResult(row);
+                holders[row % holders.length] = store.relativeTime(row, NOW + pass, formatter);
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Allow for the measurement call itself, but nothing proportional to the binds
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals("Just now", store.relativeTime(0, NOW, formatter));
+    }
+
+    private static HistoryStore storeAt(long timestamp) {
+        return HistoryStore.from(Collections.singletonList(new CalculationHistory("1+1", "2", timestamp)));
+    }
+
+    private String format(long timestamp) {
+        return formatter.format(timestamp, NOW);
+    }
+}
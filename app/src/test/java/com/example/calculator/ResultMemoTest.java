@@ -0,0 +1,164 @@
+package com.example.calculator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResultMemoTest {
+
+    private static final long SLOW = ResultMemo.MIN_COST_NANOS;
+    private static final long KEY = 1_000;
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    private static String key(String expression, boolean degreeMode) {
+        return ResultMemo.key(ExpressionParser.parse(expression), degreeMode);
+    }
+
+    @Test
+    public void keysAreCanonical() {
+        assertEquals(key("2×sin(30)", true), key("sin(30) * 2", true));
+        assertEquals(key("1+2+3", true), key("3 + (1+2)", true));
+        assertEquals(key("0.5", true), key("0.50", true));
+        assertNotEquals(key("2-1", true), key("1-2", true));
+        assertNotEquals(key("2^3", true), key("3^2", true));
+        // The angle mode is part of the key
+        assertNotEquals(key("sin(30)", true), key("sin(30)", false));
+    }
+
+    @Test
+    public void onlyPureExpressionsHaveKeys() {
+        Variables.define("rate");
+        assertNull(key("rate×2", true));
+        assertNull(key("ANS+1", true));
+        assertNull(key("L1+1", true));
+        assertNull(key("{1,2}×2", true));
+        assertNull(key("1+", true));
+        assertNotNull(key("170!÷169!", true));
+        assertNotNull(key("total = 2×3", true));
+    }
+
+    @Test
+    public void keysDoNotDependOnOperandOrderDeepDown() {
+        assertEquals(key("(1+sin(2))×(3+4)", false), key("(4+3)×(sin(2)+1)", false));
+        assertEquals(key("2×π", false), key("pi×2", false));
+        assertNotEquals(key("sin(2)+cos(2)", false), key("sin(2)+sin(2)", false));
+    }
+
+    @Test
+    public void remembersSlowResultsAndCountsNetSavings() {
+        ResultMemo memo = new ResultMemo();
+        assertFalse(memo.put("cheap", 1, SLOW - 1, 0));
+        assertTrue(memo.put("slow", 2, SLOW * 3, KEY));
+        assertNull(memo.get("cheap", KEY));
+        assertEquals(2, memo.get("slow", KEY).value, 0);
+        assertEquals(2, memo.get("slow", KEY).value, 0);
+        assertEquals(2, Metrics.counter(Metrics.MEMO_HITS));
+        assertEquals(1, Metrics.counter(Metrics.MEMO_MISSES));
+        // Every key built counts against the time hits saved
+        assertEquals(SLOW * 6 - KEY * 3, Metrics.counter(Metrics.MEMO_NANOS_SAVED));
+    }
+
+    @Test
+    public void skipsResultsNotMuchSlowerThanTheirKey() {
+        ResultMemo memo = new ResultMemo();
+        long keyNanos = SLOW;
+        assertFalse(memo.put("close", 1, keyNanos * ResultMemo.MIN_COST_RATIO - 1, keyNanos));
+        assertTrue(memo.put("far", 1, keyNanos * ResultMemo.MIN_COST_RATIO, keyNanos));
+        assertEquals(1, memo.size());
+    }
+
+    @Test
+    public void collectsHitsForOneWrite() {
+        ResultMemo memo = new ResultMemo();
+        memo.put("a", 1, SLOW, KEY);
+        memo.put("b", 2, SLOW, KEY);
+        memo.get("a", KEY);
+        memo.get("b", KEY);
+        memo.get("a", KEY);
+        memo.get("missing", KEY);
+        assertEquals(2, memo.pendingHits());
+        assertEquals(Arrays.asList("a", "b"), memo.drainHits());
+        assertEquals(0, memo.pendingHits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ResultMemo memo = new ResultMemo();
+        for (int i = 0; i < ResultMemo.CAPACITY; i++) {
+            memo.put("k" + i, i, SLOW, KEY);
+        }
+        // Touch the oldest so the second oldest goes first
+        assertNotNull(memo.get("k0", KEY));
+        memo.put("new", -1, SLOW, KEY);
+        assertEquals(ResultMemo.CAPACITY, memo.size());
+        assertNotNull(memo.get("k0", KEY));
+        assertNull(memo.get("k1", KEY));
+    }
+
+    @Test
+    public void loadedEntriesRankBelowThisSession() {
+        ResultMemo memo = new ResultMemo();
+        memo.put("session", 1, SLOW, KEY);
+        List<MemoEntry> rows = new ArrayList<>();
+        for (int i = 0; i < ResultMemo.CAPACITY + 10; i++) {
+            rows.add(new MemoEntry("disk" + i, ResultMemo.ENGINE_VERSION, i, SLOW, 1000 - i));
+        }
+        rows.add(0, new MemoEntry("stale", ResultMemo.ENGINE_VERSION + 1, 0, SLOW, 2000));
+        memo.load(rows);
+
+        assertEquals(ResultMemo.CAPACITY, memo.size());
+        assertNotNull(memo.get("session", KEY));
+        assertNotNull(memo.get("disk0", KEY));
+        assertNull(memo.get("stale", KEY));
+        assertNull(memo.get("disk" + (ResultMemo.CAPACITY - 1), KEY));
+    }
+
+    // An expression slow enough to be remembered must be much faster to look up, key
+    // included, than to optimize and evaluate again
+    @Test
+    public void hitBeatsEvaluation() throws CalculationException {
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 0; i < 200; i++) {
+            expression.append("+sin(").append(i).append(".5)×cos(").append(i).append(')');
+        }
+        Ast ast = ExpressionParser.parse(expression.toString());
+        ResultMemo memo = new ResultMemo();
+        double value = ExpressionEvaluator.evaluate(ExpressionOptimizer.optimize(ast, true), true);
+        memo.put(ResultMemo.key(ast, true), value, SLOW, KEY);
+        double sink = 0;
+        long evaluateNanos = Long.MAX_VALUE;
+        long hitNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                sink += ExpressionEvaluator.evaluate(ExpressionOptimizer.optimize(ast, true), true);
+            }
+            evaluateNanos = Math.min(evaluateNanos, (System.nanoTime() - start) / 200);
+            start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                sink += memo.get(ResultMemo.key(ast, true), KEY).value;
+            }
+            hitNanos = Math.min(hitNanos, (System.nanoTime() - start) / 200);
+        }
+        assertEquals(value * 200 * 20, sink, Math.abs(sink) * 1e-9);
+        assertTrue("hit " + hitNanos + " ns, evaluation " + evaluateNanos + " ns",
+                hitNanos * ResultMemo.MIN_COST_RATIO <= evaluateNanos);
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.calculator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StatsDataTest {
+
+    private static StatsData of(double... values) {
+        StatsData data = new StatsData();
+        for (double value : values) {
+            data.add(value);
+        }
+        return data;
+    }
+
+    // PERCENTILE.INC on a sorted copy
+    private static double expectedQuantile(double[] values, double q) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double rank = q * (sorted.length - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    @Test
+    public void summarizesSmallLists() {
+        StatsData data = of(2, 4, 4, 4, 5, 5, 7, 9);
+        assertEquals(8, data.size());
+        assertEquals(40, data.sum(), 0);
+        assertEquals(5, data.mean(), 0);
+        assertEquals(4, data.populationVariance(), 1e-15);
+        assertEquals(32.0 / 7, data.variance(), 1e-15);
+        assertEquals(2, data.min(), 0);
+        assertEquals(9, data.max(), 0);
+        assertEquals(4.5, data.median(), 0);
+        assertEquals(4, data.quantile(0.25), 0);
+        assertEquals(5.5, data.quantile(0.75), 0);
+
+        StatsData empty = new StatsData();
+        assertTrue(Double.isNaN(empty.mean()));
+        assertTrue(Double.isNaN(empty.median()));
+        assertTrue(Double.isNaN(of(3).variance()));
+        assertEquals(0, empty.sum(), 0);
+    }
+
+    @Test
+    public void compensatedSumAndWelfordStayAccurate() {
+        StatsData data = new StatsData();
+        for (int i = 0; i < 1_000_000; i++) {
+            data.add(0.1);
+        }
+        assertEquals(100_000, data.sum(), 1e-9);
+        // A large offset ruins the textbook sum-of-squares formula but not Welford's
+        StatsData offset = of(1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16);
+        assertEquals(30, offset.variance(), 1e-6);
+        assertEquals(1e9 + 10, offset.mean(), 0);
+    }
+
+    @Test
+    public void removalUpdatesEveryStatistic() {
+        Random random = new Random(42);
+        double[] values = new double[10_000];
+        StatsData data = new StatsData();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 3;
+            data.add(values[i]);
+        }
+        // Remove the maximum and a few others; removal moves the last value into the gap
+        int maxIndex = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (data.get(i) > data.get(maxIndex)) {
+                maxIndex = i;
+            }
+        }
+        data.remove(maxIndex);
+        data.remove(17);
+        data.removeLast();
+        double[] remaining = data.toArray();
+        assertEquals(values.length - 3, remaining.length);
+
+        double sum = 0;
+        for (double value : remaining) {
+            sum += value;
+        }
+        double mean = sum / remaining.length;
+        double squares = 0;
+        for (double value : remaining) {
+            squares += (value - mean) * (value - mean);
+        }
+        assertEquals(sum, data.sum(), 1e-9);
+        assertEquals(mean, data.mean(), 1e-12);
+        assertEquals(squares / (remaining.length - 1), data.variance(), 1e-9);
+        assertEquals(Arrays.stream(remaining).max().getAsDouble(), data.max(), 0);
+        assertEquals(Arrays.stream(remaining).min().getAsDouble(), data.min(), 0);
+
+        data.clear();
+        assertEquals(0, data.size());
+        assertTrue(Double.isNaN(data.max()));
+    }
+
+    @Test
+    public void quantilesMatchSorting() {
+        Random random = new Random(7);
+        for (int n : new int[] {1, 2, 3, 10, 999, 5000}) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                // Plenty of duplicates
+                values[i] = random.nextInt(n / 2 + 1);
+            }
+            StatsData data = of(values);
+            for (double q : new double[] {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1}) {
+                assertEquals(n + " values, q " + q, expectedQuantile(values, q), data.quantile(q), 1e-9);
+            }
+        }
+        assertTrue(Double.isNaN(of(1, 2).quantile(1.5)));
+    }
+
+    @Test
+    public void persistsOnlyChangedChunks() {
+        StatsData data = new StatsData();
+        int n = 3 * StatsData.CHUNK_SIZE + 10;
+        for (int i = 0; i < n; i++) {
+            data.add(i);
+        }
+        assertArrayEquals(new int[] {0, 1, 2, 3}, data.takeDirtyChunks());
+        data.add(-1);
+        assertArrayEquals(new int[] {3}, data.takeDirtyChunks());
+        data.remove(5);
+        assertArrayEquals(new int[] {0, 3}, data.takeDirtyChunks());
+
+        StatsData restored = new StatsData();
+        for (int chunk = 0; chunk < data.chunkCount(); chunk++) {
+            restored.appendChunk(data.chunkBytes(chunk));
+        }
+        assertArrayEquals(data.toArray(), restored.toArray(), 0);
+        assertEquals(data.mean(), restored.mean(), 1e-9);
+
+        // Shrinking below a chunk boundary leaves a chunk to delete
+        for (int i = 0; i < 12; i++) {
+            data.removeLast();
+        }
+        assertEquals(3, data.chunkCount());
+        assertArrayEquals(new int[] {2, 3}, data.takeDirtyChunks());
+    }
+
+    @Test
+    public void parsesTypedAndPastedLists() throws CalculationException {
+        assertArrayEquals(new double[] {1.5, 2, -7, 1000}, StatsData.parse(" 1.5, 2;−7\n1e3 "), 0);
+        assertEquals(0, StatsData.parse("  ").length);
+        try {
+            StatsData.parse("1, two, 3");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Not a number: two", e.getMessage());
+            assertEquals(3, e.start);
+            assertEquals(6, e.end);
+        }
+        try {
+            StatsData.parse("NaN");
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Not a number: NaN", e.getMessage());
+        }
+    }
+
+    // Best time per value to add 1000 values, with mean and variance kept up to date,
+    // to a list of size values
+    private static long bestAddNanos(int size) {
+        Random random = new Random(1);
+        StatsData data = new StatsData();
+        for (int i = 0; i < size; i++) {
+            data.add(random.nextDouble());
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                data.add(random.nextDouble());
+                data.mean();
+                data.variance();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1000);
+            for (int i = 0; i < 1000; i++) {
+                data.removeLast();
+            }
+        }
+        return best;
+    }
+
+    // Adding a value costs the same at a million values as at a thousand
+    @Test
+    public void addCostDoesNotGrowWithSize() {
+        bestAddNanos(1000);
+        long smallNanos = bestAddNanos(1000);
+        long largeNanos = bestAddNanos(1_000_000);
+        assertTrue("add at 1000 values " + smallNanos + " ns, at 1000000 values " + largeNanos + " ns",
+                largeNanos <= smallNanos * 3);
+    }
+
+    @Test
+    public void benchmarkAddAndQuantiles() {
+        Benchmarks.assumeEnabled();
+        StatsData data = new StatsData();
+        Random random = new Random(1);
+        for (int i = 0; i < 1_000_000; i++) {
+            data.add(random.nextDouble());
+        }
+        long addNanos = Long.MAX_VALUE;
+        long medianNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                data.add(random.nextDouble());
+                data.mean();
+                data.variance();
+            }
+            addNanos = Math.min(addNanos, (System.nanoTime() - start) / 1000);
+            start = System.nanoTime();
+            data.median();
+            data.quantile(0.9);
+            medianNanos = Math.min(medianNanos, System.nanoTime() - start);
+        }
+        System.out.printf("stats over %d values: %d ns per add with mean and variance, "
+                + "median and P90 in %.1f ms%n", data.size(), addNanos, medianNanos / 1e6);
+    }
+}
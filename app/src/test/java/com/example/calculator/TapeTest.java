@@ -0,0 +1,176 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TapeTest {
+
+    private static final double EPSILON = 1e-12;
+
+    private Tape tape;
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+        tape = new Tape(true);
+    }
+
+    private void append(String... lines) {
+        for (String line : lines) {
+            tape.set(tape.size(), line);
+        }
+    }
+
+    @Test
+    public void parsesLineReferences() {
+        assertEquals("(* L3 1.2)", ExpressionParser.parse("L3*1.2").toSExpression());
+        assertEquals(11, Tape.lineIndex("L12"));
+        assertEquals(Ast.NONE, Tape.lineIndex("L0"));
+        assertEquals(Ast.NONE, Tape.lineIndex("L"));
+        assertEquals(Ast.NONE, Tape.lineIndex("Lx"));
+        assertFalse(Variables.isAssignable("L3"));
+        assertTrue(Variables.isAssignable("Lx"));
+    }
+
+    @Test
+    public void lineReferencesNeedTheTape() {
+        try {
+            ExpressionEvaluator.evaluate(ExpressionParser.parse("L1+1"), true);
+            fail();
+        } catch (CalculationException e) {
+            assertEquals("Line references only work on the tape", e.getMessage());
+        }
+    }
+
+    @Test
+    public void editsPropagateToDependents() {
+        append("100", "L1*1.2", "L2+L1", "5");
+        assertEquals(120, tape.value(1), EPSILON);
+        assertEquals(220, tape.value(2), EPSILON);
+
+        assertEquals(3, tape.set(0, "10"));
+        assertEquals(12, tape.value(1), EPSILON);
+        assertEquals(22, tape.value(2), EPSILON);
+        assertEquals(5, tape.value(3), EPSILON);
+
+        // L3 now reads L4 instead of L1, so L1 edits no longer reach it
+        tape.set(2, "L4×2");
+        assertEquals(10, tape.value(2), EPSILON);
+        assertEquals(2, tape.set(0, "1"));
+        assertEquals(10, tape.value(2), EPSILON);
+    }
+
+    @Test
+    public void detectsCycles() {
+        append("1", "L1+1", "L2+1", "L3×2");
+        tape.set(0, "L3");
+        for (int line = 0; line < 4; line++) {
+            assertEquals("Circular reference", tape.error(line).getMessage());
+        }
+        tape.set(0, "2");
+        assertNull(tape.error(0));
+        assertEquals(8, tape.value(3), EPSILON);
+
+        tape.set(1, "L2");
+        assertEquals("Circular reference", tape.error(1).getMessage());
+        assertEquals(2, tape.value(0), EPSILON);
+    }
+
+    @Test
+    public void reportsBadReferences() {
+        append("1÷0", "L1+1", "L9");
+        assertEquals("Division by zero", tape.error(0).getMessage());
+        assertEquals("L1 has an error", tape.error(1).getMessage());
+        assertEquals("No line L9", tape.error(2).getMessage());
+
+        tape.set(0, "4");
+        assertNull(tape.error(1));
+        assertEquals(5, tape.value(1), EPSILON);
+        append("a = 1");
+        assertEquals("Tape lines can't assign variables", tape.error(3).getMessage());
+    }
+
+    @Test
+    public void appendingALineResolvesReferencesToIt() {
+        tape.set(0, "L2×2");
+        assertEquals("No line L2", tape.error(0).getMessage());
+        assertEquals(2, tape.set(1, "5"));
+        assertNull(tape.error(0));
+        assertEquals(10, tape.value(0), EPSILON);
+
+        // The reference is an ordinary edge from then on
+        assertEquals(2, tape.set(1, "6"));
+        assertEquals(12, tape.value(0), EPSILON);
+
+        // Waiting readers that stop referring to the line are forgotten
+        append("L5+1", "L5");
+        tape.set(2, "1");
+        assertEquals("No line L5", tape.error(3).getMessage());
+        assertEquals(2, tape.set(4, "7"));
+        assertEquals(1, tape.value(2), EPSILON);
+        assertEquals(7, tape.value(3), EPSILON);
+    }
+
+    @Test
+    public void variablesUpdateTheLinesReadingThem() {
+        int rate = Variables.define("rate");
+        Variables.set(rate, 0.5);
+        append("200×rate", "L1+1", "7");
+        assertEquals(101, tape.value(1), EPSILON);
+        Variables.set(rate, 2);
+        assertEquals(2, tape.variableChanged(rate));
+        assertEquals(401, tape.value(1), EPSILON);
+        assertEquals(0, tape.variableChanged(Variables.MEMORY));
+    }
+
+    @Test
+    public void loadEvaluatesForwardReferences() {
+        tape.load(new String[] {"L2×2", "3", "sin(30)"});
+        assertEquals(6, tape.value(0), EPSILON);
+        tape.setDegreeMode(false);
+        assertEquals(Math.sin(30), tape.value(2), EPSILON);
+        tape.clear();
+        assertEquals(0, tape.size());
+    }
+
+    private static Tape referenceTape(int length) {
+        String[] lines = new String[length];
+        lines[0] = "1";
+        for (int i = 1; i < lines.length; i++) {
+            // Every tenth line reads L1; the rest are plain numbers
+            lines[i] = i % 10 == 0 ? "L1+" + i : Integer.toString(i);
+        }
+        Tape tape = new Tape(true);
+        tape.load(lines);
+        return tape;
+    }
+
+    // Best time to point the last line, which nothing reads, at an earlier line
+    private static long bestEditNanos(Tape tape) {
+        int last = tape.size() - 1;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 200; round++) {
+            long start = System.nanoTime();
+            tape.set(last, "L" + (round % (last - 1) + 1) + "+1");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Test
+    public void editCostFollowsDependentsNotTapeLength() {
+        Tape large = referenceTape(10_000);
+        assertEquals(1 + 999, large.set(0, "2"));
+        assertEquals(2 + 9990, large.value(9990), EPSILON);
+        assertEquals(1, large.set(5000, "L1×3"));
+
+        Tape small = referenceTape(100);
+        bestEditNanos(small);
+        long smallNanos = bestEditNanos(small);
+        long largeNanos = bestEditNanos(large);
+        assertTrue("100 lines " + smallNanos + " ns, 10000 lines " + largeNanos + " ns",
+                largeNanos <= smallNanos * 4);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UnitConversionTest {
+    private final UnitRegistry units = UnitRegistry.standard();
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private double convert(String input) throws CalculationException {
+        return UnitConversion.evaluate(input, units, false).value;
+    }
+
+    private String error(String input) {
+        try {
+            convert(input);
+            fail(input);
+            return null;
+        } catch (CalculationException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void convertsNamedUnitsThroughTheTable() throws CalculationException {
+        assertEquals(5000, convert("5 km to m"), 1e-9);
+        assertEquals(1.609344, convert("1 mi to km"), 1e-12);
+        assertEquals(96.52, convert("3 ft 2 in to cm"), 1e-9);
+        assertEquals(212, convert("100 °C to °F"), 1e-9);
+        assertEquals(-40, convert("-40 F to C"), 1e-9);
+        assertEquals(273.15, convert("0 degC to K"), 1e-9);
+        assertEquals(3.785411784, convert("1 gal to L"), 1e-12);
+        assertEquals(1024, convert("1 MiB to KiB"), 0);
+        assertEquals(3.6e6, convert("1 kWh to J"), 1e-6);
+        assertEquals(14.503773773, convert("1 bar to psi"), 1e-6);
+        assertEquals(2.20462262185, convert("1 kg → lb"), 1e-9);
+        assertEquals("cm", UnitConversion.evaluate("1 in to cm", units, false).unit);
+    }
+
+    @Test
+    public void convertsCompoundUnits() throws CalculationException {
+        assertEquals(5 / 3.6, convert("5 km/h to m/s"), 1e-12);
+        assertEquals(convert("60 mph to kph"), convert("60 mi/h to km/h"), 1e-12);
+        assertEquals(1e4, convert("1 m² to cm²"), 1e-9);
+        assertEquals(1e4, convert("1 m^2 to cm^2"), 1e-9);
+        assertEquals(1, convert("1 N to kg m/s^2"), 1e-12);
+        assertEquals(1, convert("1 m/s/s to m/s²"), 1e-12);
+        // In compounds °C is a temperature difference
+        assertEquals(5.0 / 9, convert("1 J/°C to J/°F"), 1e-12);
+        // Magnitudes can be expressions and variables
+        assertEquals(7200, convert("(1+1) h to s"), 0);
+        Variables.set(Variables.ANS, 3);
+        assertEquals(3000, convert("ANS km to m"), 1e-9);
+        assertEquals(1.5, convert("1.5E3 g to kg"), 1e-12);
+    }
+
+    @Test
+    public void reportsConversionErrors() {
+        assertEquals("Can't convert km to kg", error("1 km to kg"));
+        assertEquals("Can't convert km/h to m", error("1 km/h to m"));
+        assertEquals("Unknown unit parsec", error("1 parsec to m"));
+        assertEquals("Missing unit", error("1 to m"));
+        assertEquals("Missing unit", error("1 m to "));
+        assertEquals("Missing unit", error("1 m/ to m"));
+        assertEquals("Missing number", error(" to m"));
+        assertEquals("Temperatures can't be added", error("1 °C 2 °C to K"));
+        assertTrue(UnitConversion.isConversion("5 km to m"));
+        assertFalse(UnitConversion.isConversion("5+3"));
+    }
+
+    @Test
+    public void tableAgreesWithScales() throws CalculationException {
+        // Every table entry against the per-unit scale path
+        for (int i = 0; i < units.count(); i++) {
+            UnitRegistry.Unit from = units.parse(units.symbol(i), 0, units.symbol(i).length());
+            for (int j = 0; j < units.count(); j++) {
+                UnitRegistry.Unit to = units.parse(units.symbol(j), 0, units.symbol(j).length());
+                if (!java.util.Arrays.equals(from.dimensions, to.dimensions)) {
+                    continue;
+                }
+                double expected = (2.5 * from.scale + from.offset - to.offset) / to.scale;
+                assertEquals(units.symbol(i) + " to " + units.symbol(j), expected, units.convert(2.5, from, to),
+                        1e-12 * Math.abs(expected) + 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkRegistryAndConversions() throws CalculationException {
+        Benchmarks.assumeEnabled();
+        long loadNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            UnitRegistry.load();
+            loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+        }
+        UnitRegistry.Unit from = units.parse("mi", 0, 2);
+        UnitRegistry.Unit to = units.parse("km", 0, 2);
+        double sink = 0;
+        long tableNanos = Long.MAX_VALUE;
+        long textNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1_000_000; i++) {
+                sink += units.convert(i, from, to);
+            }
+            tableNanos = Math.min(tableNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                sink += convert("5 km/h to m/s");
+            }
+            textNanos = Math.min(textNanos, (System.nanoTime() - start) / 1000);
+        }
+        System.out.printf("units: %d units loaded in %.2f ms, %.1f ns per table conversion, "
+                + "%d ns per parsed conversion (%b)%n", units.count(), loadNanos / 1e6, tableNanos / 1e6,
+                textNanos, sink > 0);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VariablesTest {
+
+    private static final double EPSILON = 1e-12;
+
+    @Before
+    public void setUp() {
+        Variables.reset();
+    }
+
+    private static String firstError(String expression) {
+        Ast ast = ExpressionParser.parse(expression);
+        assertTrue(expression, ast.hasErrors());
+        return ast.firstError().getMessage();
+    }
+
+    @Test
+    public void parsesAssignments() {
+        Ast ast = ExpressionParser.parse("a = 3.2");
+        assertFalse(ast.hasErrors());
+        assertEquals("a", ast.assignment);
+        assertEquals("(= a 3.2)", ast.toSExpression());
+        assertNull(ExpressionParser.parse("3.2").assignment);
+    }
+
+    @Test
+    public void resolvesNamesToSlots() throws CalculationException {
+        int a = Variables.define("a");
+        Variables.set(a, 3.2);
+        Ast ast = ExpressionParser.parse("2×a+ANS");
+        assertEquals("(+ (* 2 a) ANS)", ast.toSExpression());
+        assertTrue(ast.references(a));
+        assertTrue(ast.references(Variables.ANS));
+        assertFalse(ast.references(Variables.MEMORY));
+        Variables.set(Variables.ANS, 1);
+        assertEquals(7.4, ExpressionEvaluator.evaluate(ast, true), EPSILON);
+    }
+
+    @Test
+    public void reevaluatesWithoutReparsing() throws CalculationException {
+        int x = Variables.define("x");
+        Ast ast = ExpressionParser.parse("x²+M");
+        for (int i = 0; i < 10; i++) {
+            Variables.set(x, i);
+            Variables.set(Variables.MEMORY, 0.5);
+            assertEquals(i * i + 0.5, ExpressionEvaluator.evaluate(ast, true), EPSILON);
+        }
+    }
+
+    @Test
+    public void slotsStayStableAsTheTableGrows() {
+        int first = Variables.define("v0");
+        for (int i = 1; i < 20; i++) {
+            Variables.define("v" + i);
+        }
+        assertEquals(first, Variables.slot("v0"));
+        assertEquals(first, Variables.define("v0"));
+        assertEquals(Ast.NONE, Variables.slot("missing"));
+    }
+
+    @Test
+    public void restoresSavedSlots() {
+        Variables.set(Variables.define("rate"), 0.07);
+        Variables.set(Variables.MEMORY, 12);
+        String[] names = Variables.names();
+        double[] values = Variables.values();
+        Variables.reset();
+        Variables.restore(names, values);
+        assertEquals(0.07, Variables.get(Variables.slot("rate")), 0);
+        assertEquals(12, Variables.get(Variables.MEMORY), 0);
+    }
+
+    @Test
+    public void rejectsNamesTheParserReadsAsSomethingElse() {
+        assertTrue(Variables.isAssignable("x1"));
+        assertTrue(Variables.isAssignable("rate"));
+        String[] reserved = {"ANS", "e", "i", "pi", "sin", "sqrt", "1x", "a_b", ""};
+        for (String name : reserved) {
+            assertFalse(name, Variables.isAssignable(name));
+        }
+        assertEquals("Can't assign to sin", firstError("sin = 2"));
+        assertFalse(Variables.isAssignable("e2"));
+        assertFalse(Variables.isAssignable("i2"));
+        assertTrue(Variables.isAssignable("ei"));
+    }
+
+    @Test
+    public void everyAssignableNameReadsBackAsThatVariable() {
+        List<String> names = new ArrayList<>();
+        String alphabet = "aeilnpsgotxEILMN0129";
+        for (char a : alphabet.toCharArray()) {
+            names.add("" + a);
+            for (char b : alphabet.toCharArray()) {
+                names.add("" + a + b);
+                for (char c : alphabet.toCharArray()) {
+                    names.add("" + a + b + c);
+                }
+            }
+        }
+        for (int id = 0; id < FunctionRegistry.count(); id++) {
+            String function = FunctionRegistry.name(id);
+            for (String suffix : new String[]{"", "x", "2", "2x", "25", "ail"}) {
+                names.add(function + suffix);
+            }
+        }
+        int accepted = 0;
+        for (String name : names) {
+            if (!Variables.isAssignable(name)) {
+                continue;
+            }
+            accepted++;
+            Variables.reset();
+            int slot = Variables.define(name);
+            Ast ast = ExpressionParser.parse(name);
+            assertFalse(name, ast.hasErrors());
+            assertEquals(name, Ast.VARIABLE, ast.kinds[ast.root]);
+            assertEquals(name, slot, ast.data[ast.root]);
+        }
+        assertTrue(accepted > 1000);
+    }
+
+    @Test
+    public void reportsUnknownVariables() {
+        assertEquals("Unknown variable q", firstError("q+1"));
+        Variables.define("q");
+        assertFalse(ExpressionParser.parse("q+1").hasErrors());
+    }
+}